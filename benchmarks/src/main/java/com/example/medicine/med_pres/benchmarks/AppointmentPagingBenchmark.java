@@ -0,0 +1,147 @@
+package com.example.medicine.med_pres.benchmarks;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.Banner;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.JdbcTemplateAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.autoconfigure.transaction.TransactionAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import com.example.medicine.med_pres.config.IdSequenceAligner;
+import com.example.medicine.med_pres.config.PerfDataGenerator;
+import com.example.medicine.med_pres.dto.AppointmentView;
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.repository.AppointmentRepository;
+
+/**
+ * The my-appointments keyset queries against the perf profile's H2 database, seeded by
+ * {@link PerfDataGenerator} with {@code rows} appointments over 200 doctors, so the doctor paged
+ * here has rows / 200 of them (50k at 10M). Only the datasource, JPA and AppointmentRepository
+ * are started. Each size gets its own database under target/bench-db, seeded on the first run and
+ * reused afterwards; building the 10M one takes several minutes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class AppointmentPagingBenchmark {
+
+    private static final int DOCTORS = 200;
+    private static final int PAGE_SIZE = 50;
+    // Keyset positions sampled evenly through the doctor's history
+    private static final int POSITIONS = 500;
+    // The perf profile's MySQL mode, plus a 1 GB page cache (in KB) so seeding 10M rows does not thrash the indexes
+    private static final String URL_OPTIONS = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;CASE_INSENSITIVE_IDENTIFIERS=TRUE;CACHE_SIZE=1048576";
+
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    private ConfigurableApplicationContext context;
+    private AppointmentRepository appointmentRepository;
+    private String doctorEmail;
+    private Key[] positions;
+
+    private record Key(LocalDate date, LocalTime time, long id) {
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(PagingContext.class)
+                .web(WebApplicationType.NONE)
+                .bannerMode(Banner.Mode.OFF)
+                .profiles("perf")
+                .run("--spring.datasource.url=jdbc:h2:file:./target/bench-db/appointments-" + rows + URL_OPTIONS,
+                        "--perf.seed.doctors=" + DOCTORS,
+                        "--perf.seed.appointments=" + rows,
+                        "--perf.seed.prescriptions=0",
+                        "--perf.seed.batch-size=5000",
+                        "--logging.level.root=WARN",
+                        "--logging.level.com.example.medicine.med_pres.config.PerfDataGenerator=INFO");
+        appointmentRepository = context.getBean(AppointmentRepository.class);
+
+        // Doctor 1 belongs to doctor0@perf.local; see PerfDataGenerator
+        doctorEmail = "doctor0@perf.local";
+        List<Key> keys = context.getBean(JdbcTemplate.class).query("SELECT appointment_date, appointment_time, id "
+                + "FROM appointments WHERE doctor_id = 1 ORDER BY appointment_date, appointment_time, id",
+                (rs, row) -> new Key(rs.getDate(1).toLocalDate(), rs.getTime(2).toLocalTime(), rs.getLong(3)));
+        // Stop a page short of the end so every position is followed by a full page
+        int usable = Math.max(1, keys.size() - PAGE_SIZE);
+        positions = new Key[Math.min(POSITIONS, usable)];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = keys.get((int) ((long) i * usable / positions.length));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<AppointmentView> firstPage() {
+        return appointmentRepository.findFirstPageByDoctorEmail(doctorEmail, Limit.of(PAGE_SIZE + 1));
+    }
+
+    // A page starting anywhere in the doctor's history; with keyset paging the depth should not matter
+    @Benchmark
+    public List<AppointmentView> pageAfter(Cursor cursor) {
+        Key key = positions[cursor.next++ % positions.length];
+        return appointmentRepository.findPageByDoctorEmailAfter(doctorEmail, key.date(), key.time(), key.id(),
+                Limit.of(PAGE_SIZE + 1));
+    }
+
+    // Just enough of the application to run the repository and the perf seeder
+    @Configuration(proxyBeanMethods = false)
+    @ImportAutoConfiguration({DataSourceAutoConfiguration.class, JdbcTemplateAutoConfiguration.class,
+            HibernateJpaAutoConfiguration.class, TransactionAutoConfiguration.class})
+    @EntityScan(basePackageClasses = Appointment.class)
+    @EnableJpaRepositories(basePackageClasses = AppointmentRepository.class, includeFilters = @ComponentScan.Filter(
+            type = FilterType.ASSIGNABLE_TYPE, classes = AppointmentRepository.class))
+    @Import({PerfDataGenerator.class, IdSequenceAligner.class})
+    static class PagingContext {
+
+        @Bean
+        PasswordEncoder passwordEncoder() {
+            return new BCryptPasswordEncoder();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.medicine.med_pres.benchmarks;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.medicine.med_pres.dto.DoctorView;
+import com.example.medicine.med_pres.repository.DoctorRepository;
+import com.example.medicine.med_pres.service.DoctorSearchIndex;
+import com.example.medicine.med_pres.service.DoctorSearchIndex.Facet;
+
+/**
+ * One {@link DoctorSearchIndex#search} call over a directory of {@code doctors} entries spread
+ * across 40 specializations, 500 cities and 20k clinics, with names drawn from 300 first and
+ * 2000 last names. The repository is stubbed; the index is loaded once per trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class DoctorSearchBenchmark {
+
+    private static final int SPECIALIZATIONS = 40;
+    private static final int CITIES = 500;
+    private static final int CLINICS = 20_000;
+    private static final int FIRST_NAMES = 300;
+    private static final int LAST_NAMES = 2_000;
+
+    @Param({"100000", "1000000"})
+    public int doctors;
+
+    private DoctorSearchIndex index;
+    private Map<Facet, String> noFilters;
+    private Map<Facet, String> cityFilter;
+    private Map<Facet, String> specializationAndCity;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<DoctorView> views = new ArrayList<>(doctors);
+        for (int i = 0; i < doctors; i++) {
+            String name = "First" + (i % FIRST_NAMES) + " Last" + (i * 7 % LAST_NAMES);
+            views.add(new DoctorView((long) i + 1, "Specialty" + (i % SPECIALIZATIONS), "Clinic " + (i % CLINICS),
+                    "City" + (i * 13 % CITIES), null, (long) i + 1_000_000, name, "doctor" + i + "@example.com"));
+        }
+        DoctorRepository repository = mock(DoctorRepository.class, withSettings().stubOnly());
+        when(repository.findAllViews()).thenReturn(views);
+        index = new DoctorSearchIndex(repository);
+
+        noFilters = new EnumMap<>(Facet.class);
+        cityFilter = new EnumMap<>(Facet.class);
+        cityFilter.put(Facet.location, "City42");
+        specializationAndCity = new EnumMap<>(Facet.class);
+        specializationAndCity.put(Facet.specialization, "Specialty7");
+        specializationAndCity.put(Facet.location, "City42");
+        // Loads the index and the unfiltered facet counts
+        index.search("", noFilters, 0, 20);
+    }
+
+    // Landing page: first page of everyone with facet counts
+    @Benchmark
+    public Object unfiltered() {
+        return index.search("", noFilters, 0, 20);
+    }
+
+    @Benchmark
+    public Object exactWord() {
+        return index.search("specialty7", noFilters, 0, 20);
+    }
+
+    // Prefix shared by many words, e.g. while typing; unions into a bitset
+    @Benchmark
+    public Object broadPrefix() {
+        return index.search("last19", noFilters, 0, 20);
+    }
+
+    @Benchmark
+    public Object wordAndFilter() {
+        return index.search("first12", cityFilter, 0, 20);
+    }
+
+    @Benchmark
+    public Object twoFilters() {
+        return index.search("", specializationAndCity, 0, 20);
+    }
+
+    // Misspelled name with no prefix match, so the index scans the first-letter slice of the dictionary
+    @Benchmark
+    public Object fuzzyWord() {
+        return index.search("lsat1234", noFilters, 0, 20);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.medicine.med_pres.benchmarks;
+
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.medicine.med_pres.service.JwtService;
+import com.example.medicine.med_pres.service.TokenRevocationService;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Token issue and per-request verification cost. {@code legacyFilterPath} reproduces the
+ * original filter path (four full parses, parser and key rebuilt each time) as the baseline
+ * for {@code verifyCached}; {@code verifyUncached} also pays for {@code generateToken}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private static final String SECRET_KEY = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+    private static final String EMAIL = "doctor@example.com";
+    private static final Duration ACCESS_TTL = Duration.ofMinutes(15);
+
+    private JwtService jwtService;
+    private String token;
+    private int counter;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService(new TokenRevocationService(null, null, ACCESS_TTL), ACCESS_TTL);
+        token = jwtService.generateToken(EMAIL, "DOCTOR");
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken(EMAIL, "DOCTOR");
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtService.extractUsername(token);
+    }
+
+    @Benchmark
+    public boolean isTokenValid() {
+        return jwtService.isTokenValid(token, EMAIL);
+    }
+
+    @Benchmark
+    public JwtService.VerifiedToken verifyCached() {
+        return jwtService.verify(token);
+    }
+
+    @Benchmark
+    public JwtService.VerifiedToken verifyUncached() {
+        // A distinct subject per call defeats the claims cache, so this is one full parse
+        return jwtService.verify(jwtService.generateToken(EMAIL + (counter++), "DOCTOR"));
+    }
+
+    @Benchmark
+    public String legacyFilterPath() {
+        // extractUsername, then isTokenValid (subject + expiration), then the role claim
+        String username = legacyClaims(token).getSubject();
+        boolean valid = legacyClaims(token).getSubject().equals(username)
+                && !legacyClaims(token).getExpiration().before(new Date());
+        return valid ? legacyClaims(token).get("role", String.class) : null;
+    }
+
+    private static Claims legacyClaims(String token) {
+        return Jwts.parserBuilder()
+                .setSigningKey(Keys.hmacShaKeyFor(Base64.getDecoder().decode(SECRET_KEY)))
+                .build()
+                .parseClaimsJws(token)
+                .getBody();
+    }
+}
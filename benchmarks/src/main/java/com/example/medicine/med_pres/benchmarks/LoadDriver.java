@@ -0,0 +1,205 @@
+package com.example.medicine.med_pres.benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Open-loop HTTP load driver for a running med_pres instance seeded by the perf profile.
+ * Requests are issued on a fixed schedule at the target rate and latency is measured from
+ * the scheduled start, so a slow server shows up as latency instead of a lower offered load.
+ *
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar com.example.medicine.med_pres.benchmarks.LoadDriver \
+ *     --url=http://localhost:8080 --rate=200 --duration=60 --patients=10000 --doctors=1000 \
+ *     --mix=login:10,myAppointments:60,createAppointment:20,createPrescription:10
+ * </pre>
+ */
+public class LoadDriver {
+
+    enum Operation { login, myAppointments, createAppointment, createPrescription }
+
+    private static final Pattern TOKEN = Pattern.compile("\"token\"\\s*:\\s*\"([^\"]+)\"");
+    private static final int ACCOUNTS = 50;
+    // Slots every seeded doctor offers, so booking requests are not rejected as off-schedule
+    private static final String[] DEFAULT_SLOTS = {"09:00", "10:30", "14:00", "15:30"};
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(5))
+            .executor(java.util.concurrent.Executors.newFixedThreadPool(32))
+            .build();
+    private final String url;
+    private final int patients;
+    private final int doctors;
+    private final String password;
+    private final List<String> patientTokens = new ArrayList<>();
+    private final List<String> doctorTokens = new ArrayList<>();
+    private final Map<Operation, ConcurrentLinkedQueue<Long>> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+
+    LoadDriver(String url, int patients, int doctors, String password) {
+        this.url = url;
+        this.patients = patients;
+        this.doctors = doctors;
+        this.password = password;
+        for (Operation op : Operation.values()) {
+            latencies.put(op, new ConcurrentLinkedQueue<>());
+            errors.put(op, new AtomicLong());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new java.util.HashMap<>(Map.of(
+                "url", "http://localhost:8080", "rate", "100", "duration", "30",
+                "patients", "10000", "doctors", "1000", "password", "password",
+                "mix", "login:10,myAppointments:60,createAppointment:20,createPrescription:10"));
+        for (String arg : args) {
+            String[] kv = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(kv[0], kv.length > 1 ? kv[1] : "true");
+        }
+
+        LoadDriver driver = new LoadDriver(options.get("url"), Integer.parseInt(options.get("patients")),
+                Integer.parseInt(options.get("doctors")), options.get("password"));
+        driver.warmUpSessions();
+        driver.run(parseMix(options.get("mix")), Integer.parseInt(options.get("rate")),
+                Integer.parseInt(options.get("duration")));
+        System.exit(0);
+    }
+
+    // Logs in a pool of patient and doctor accounts whose tokens the read/write operations reuse
+    void warmUpSessions() throws Exception {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            patientTokens.add(login("patient" + (i % patients) + "@perf.local").join());
+            doctorTokens.add(login("doctor" + (i % doctors) + "@perf.local").join());
+        }
+    }
+
+    void run(Operation[] mix, int rate, int durationSeconds) throws InterruptedException {
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long total = (long) rate * durationSeconds;
+        long begin = System.nanoTime();
+        List<CompletableFuture<?>> inFlight = Collections.synchronizedList(new ArrayList<>());
+
+        for (long n = 0; n < total; n++) {
+            long scheduled = begin + n * intervalNanos;
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            Operation op = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+            CompletableFuture<?> call = issue(op).handle((status, failure) -> {
+                long latency = System.nanoTime() - scheduled;
+                if (failure != null || status >= 400) {
+                    errors.get(op).incrementAndGet();
+                } else {
+                    latencies.get(op).add(latency);
+                }
+                return null;
+            });
+            inFlight.add(call);
+        }
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).join();
+        report((System.nanoTime() - begin) / 1e9);
+    }
+
+    private CompletableFuture<Integer> issue(Operation op) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (op) {
+            case login:
+                return send(post("/api/auth/login", null, credentials("patient" + random.nextInt(patients) + "@perf.local")));
+            case myAppointments:
+                String token = random.nextBoolean()
+                        ? patientTokens.get(random.nextInt(patientTokens.size()))
+                        : doctorTokens.get(random.nextInt(doctorTokens.size()));
+                return send(HttpRequest.newBuilder(URI.create(url + "/api/appointments/my-appointments/page?size=50"))
+                        .header("Authorization", "Bearer " + token).GET().build());
+            case createAppointment:
+                String date = LocalDate.now().plusDays(1 + random.nextInt(180)).toString();
+                return send(post("/api/appointments", patientTokens.get(random.nextInt(patientTokens.size())),
+                        "{\"doctor\":{\"id\":" + (1 + random.nextInt(doctors)) + "},\"appointmentDate\":\"" + date
+                        + "\",\"appointmentTime\":\"" + DEFAULT_SLOTS[random.nextInt(DEFAULT_SLOTS.length)]
+                        + "\",\"reason\":\"Load test\"}"));
+            default:
+                return send(post("/api/prescriptions", doctorTokens.get(random.nextInt(doctorTokens.size())),
+                        "{\"patientId\":" + (1 + random.nextInt(patients))
+                        + ",\"medicationName\":\"Load test\",\"dosage\":\"10mg\",\"frequency\":\"Once daily\"}"));
+        }
+    }
+
+    private CompletableFuture<String> login(String email) {
+        return client.sendAsync(post("/api/auth/login", null, credentials(email)), HttpResponse.BodyHandlers.ofString())
+                .thenApply(response -> {
+                    Matcher matcher = TOKEN.matcher(response.body());
+                    if (!matcher.find()) {
+                        throw new IllegalStateException("Login failed for " + email + ": " + response.body());
+                    }
+                    return matcher.group(1);
+                });
+    }
+
+    private String credentials(String email) {
+        return "{\"email\":\"" + email + "\",\"password\":\"" + password + "\"}";
+    }
+
+    private HttpRequest post(String path, String token, String json) {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+        if (token != null) {
+            builder.header("Authorization", "Bearer " + token);
+        }
+        return builder.build();
+    }
+
+    private CompletableFuture<Integer> send(HttpRequest request) {
+        return client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).thenApply(HttpResponse::statusCode);
+    }
+
+    private void report(double seconds) {
+        System.out.printf("%-20s %9s %7s %10s %9s %9s %9s %9s %9s%n",
+                "operation", "ok", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms");
+        for (Operation op : Operation.values()) {
+            List<Long> sorted = new ArrayList<>(latencies.get(op));
+            Collections.sort(sorted);
+            System.out.printf("%-20s %9d %7d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                    op, sorted.size(), errors.get(op).get(), sorted.size() / seconds,
+                    percentile(sorted, 0.50), percentile(sorted, 0.90), percentile(sorted, 0.99),
+                    percentile(sorted, 0.999), percentile(sorted, 1.0));
+        }
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) {
+            return 0;
+        }
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    // "login:10,myAppointments:60" -> weighted array to pick from uniformly
+    private static Operation[] parseMix(String mix) {
+        List<Operation> weighted = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] kv = part.split(":");
+            for (int i = 0; i < Integer.parseInt(kv[1].trim()); i++) {
+                weighted.add(Operation.valueOf(kv[0].trim()));
+            }
+        }
+        return weighted.toArray(new Operation[0]);
+    }
+}
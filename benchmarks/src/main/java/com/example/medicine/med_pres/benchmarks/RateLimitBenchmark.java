@@ -0,0 +1,91 @@
+package com.example.medicine.med_pres.benchmarks;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.example.medicine.med_pres.config.RateLimitFilter;
+import com.example.medicine.med_pres.config.RateLimitProperties;
+import com.example.medicine.med_pres.config.RateLimiter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Token-bucket check for one request: the bare limiter across 10k callers, and a full
+ * RateLimitFilter pass on mock servlet objects (which includes building the mocks).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RateLimitBenchmark {
+
+    private static final int PRINCIPALS = 10_000;
+
+    private RateLimiter rateLimiter;
+    private RateLimitFilter filter;
+    private String[] principals;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        RateLimitProperties.Rule create = new RateLimitProperties.Rule();
+        create.setMethod("POST");
+        create.setPath("/api/appointments/**");
+        create.setPerPrincipal(Map.of("PATIENT", "1000000/1m"));
+        create.setPerRole(Map.of("PATIENT", "100000000/1s"));
+        RateLimitProperties.Rule api = new RateLimitProperties.Rule();
+        api.setPath("/api/**");
+        api.setPerPrincipal(Map.of("DEFAULT", "1000000/1m"));
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setRules(List.of(create, api));
+
+        rateLimiter = new RateLimiter(properties);
+        filter = new RateLimitFilter(rateLimiter, properties, new SimpleMeterRegistry(), new ObjectMapper());
+        principals = new String[PRINCIPALS];
+        for (int i = 0; i < PRINCIPALS; i++) {
+            principals[i] = "patient" + i + "@example.com";
+        }
+    }
+
+    @Benchmark
+    public Object limiterOnly(Cursor cursor) {
+        String principal = principals[cursor.next++ % PRINCIPALS];
+        return rateLimiter.tryAcquire("POST", "/api/appointments", principal, "PATIENT");
+    }
+
+    @Benchmark
+    public Object filterPass(Cursor cursor) throws Exception {
+        String principal = principals[cursor.next++ % PRINCIPALS];
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/appointments/my-appointments");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                principal, null, List.of(new SimpleGrantedAuthority("ROLE_PATIENT"))));
+        filter.doFilter(request, response, new MockFilterChain());
+        return response.getHeader("RateLimit-Remaining");
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.medicine.med_pres.benchmarks;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.domain.Limit;
+
+import com.example.medicine.med_pres.dto.AppointmentPage;
+import com.example.medicine.med_pres.dto.AppointmentView;
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.model.Prescription;
+import com.example.medicine.med_pres.model.User;
+import com.example.medicine.med_pres.repository.AppointmentRepository;
+import com.example.medicine.med_pres.service.AppointmentService;
+import com.example.medicine.med_pres.service.ArchiveService;
+import com.example.medicine.med_pres.service.ShardRouter;
+
+/**
+ * In-JVM work of the "my appointments" / "my prescriptions" paths over synthetic tables of
+ * {@code rows} entries, with repositories stubbed so no database is involved.
+ * The {@code legacy*Scan} benchmarks are the findAll-and-filter logic the services used
+ * before these lookups moved into the database; {@code appointmentsKeysetPage} is what is
+ * left in the JVM now.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ServiceFilterBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    private List<Appointment> appointments;
+    private List<Prescription> prescriptions;
+    private AppointmentService appointmentService;
+    private String doctorEmail;
+    private String patientEmail;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Doctor> doctors = SyntheticData.doctors();
+        List<User> patients = SyntheticData.patients();
+        appointments = SyntheticData.appointments(rows, doctors, patients);
+        prescriptions = SyntheticData.prescriptions(rows, doctors, patients);
+        doctorEmail = SyntheticData.doctorEmail(7);
+        patientEmail = SyntheticData.patientEmail(7);
+
+        // A page as the keyset query would return it: this doctor's rows, page size + 1
+        List<AppointmentView> page = appointments.stream()
+                .filter(a -> a.getDoctor().getUser().getEmail().equals(doctorEmail))
+                .limit(51)
+                .map(SyntheticData::view)
+                .collect(Collectors.toList());
+        AppointmentRepository appointmentRepository = mock(AppointmentRepository.class, withSettings().stubOnly());
+        when(appointmentRepository.findFirstPageByDoctorEmail(anyString(), any(Limit.class))).thenReturn(page);
+        // Unsharded: work runs in place
+        ShardRouter shards = mock(ShardRouter.class, withSettings().stubOnly());
+        when(shards.on(anyInt(), any())).thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+        // Nothing archived: history pages read the live table only
+        ArchiveService archive = mock(ArchiveService.class, withSettings().stubOnly());
+        appointmentService = new AppointmentService(appointmentRepository, null, null, null, null, shards, null, null, null, null,
+                null, archive, null);
+    }
+
+    @Benchmark
+    public List<Appointment> appointmentsLegacyScan() {
+        return appointments.stream()
+                .filter(a -> a.getDoctor() != null && a.getDoctor().getUser() != null
+                        && doctorEmail.equals(a.getDoctor().getUser().getEmail()))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public AppointmentPage appointmentsKeysetPage() {
+        return appointmentService.getAppointmentPageByDoctorEmail(doctorEmail, null, 50);
+    }
+
+    @Benchmark
+    public List<Prescription> prescriptionsLegacyScan() {
+        return prescriptions.stream()
+                .filter(p -> p.getPatient() != null && patientEmail.equals(p.getPatient().getEmail()))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.medicine.med_pres.benchmarks;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.example.medicine.med_pres.dto.AppointmentView;
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.model.Prescription;
+import com.example.medicine.med_pres.model.User;
+
+/**
+ * In-memory entity graphs shaped like production data: a fixed pool of doctors and patients
+ * with rows spread evenly across them.
+ */
+final class SyntheticData {
+
+    static final int DOCTORS = 1_000;
+    static final int PATIENTS = 10_000;
+
+    private SyntheticData() {
+    }
+
+    static String doctorEmail(int i) {
+        return "doctor" + i + "@example.com";
+    }
+
+    static String patientEmail(int i) {
+        return "patient" + i + "@example.com";
+    }
+
+    static List<User> patients() {
+        List<User> patients = new ArrayList<>(PATIENTS);
+        for (int i = 0; i < PATIENTS; i++) {
+            patients.add(User.builder().id((long) i).name("Patient " + i).email(patientEmail(i))
+                    .passwordHash("x").role(User.Role.PATIENT).build());
+        }
+        return patients;
+    }
+
+    static List<Doctor> doctors() {
+        List<Doctor> doctors = new ArrayList<>(DOCTORS);
+        for (int i = 0; i < DOCTORS; i++) {
+            User user = User.builder().id((long) (PATIENTS + i)).name("Doctor " + i).email(doctorEmail(i))
+                    .passwordHash("x").role(User.Role.DOCTOR).build();
+            doctors.add(Doctor.builder().id((long) i).user(user).specialization("General")
+                    .clinicName("Clinic " + (i % 50)).location("City " + (i % 20)).build());
+        }
+        return doctors;
+    }
+
+    static List<Appointment> appointments(int count, List<Doctor> doctors, List<User> patients) {
+        List<Appointment> appointments = new ArrayList<>(count);
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        for (int i = 0; i < count; i++) {
+            appointments.add(Appointment.builder()
+                    .id((long) i)
+                    .doctor(doctors.get(i % doctors.size()))
+                    .patient(patients.get(i % patients.size()))
+                    .appointmentDate(start.plusDays(i / 1_000))
+                    .appointmentTime(LocalTime.of(9 + (i % 8), 0))
+                    .status(Appointment.Status.PENDING)
+                    .reason("Checkup")
+                    .build());
+        }
+        return appointments;
+    }
+
+    static List<Prescription> prescriptions(int count, List<Doctor> doctors, List<User> patients) {
+        List<Prescription> prescriptions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            prescriptions.add(Prescription.builder()
+                    .id((long) i)
+                    .doctor(doctors.get(i % doctors.size()))
+                    .patient(patients.get(i % patients.size()))
+                    .medicationName("Medication " + (i % 200))
+                    .dosage("10mg")
+                    .frequency("daily")
+                    .build());
+        }
+        return prescriptions;
+    }
+
+    static AppointmentView view(Appointment a) {
+        Doctor d = a.getDoctor();
+        return new AppointmentView(a.getId(), a.getReason(), a.getAppointmentDate(), a.getAppointmentTime(), a.getStatus(),
+                a.getPatient().getId(), a.getPatient().getName(), a.getPatient().getEmail(),
+                d.getId(), d.getSpecialization(), d.getClinicName(), d.getLocation(),
+                d.getUser().getId(), d.getUser().getName(), d.getUser().getEmail());
+    }
+}
@@ -1,8 +1,29 @@
-import React, { createContext, useContext, useState, useEffect } from 'react'
+import React, { createContext, useContext, useState, useEffect, useCallback } from 'react'
 import { authService } from '../services/authService'
 
 const AuthContext = createContext()
 
+// Refresh the access token this long before it expires
+const REFRESH_MARGIN_MS = 60 * 1000
+
+const clearSession = () => {
+  localStorage.removeItem('token')
+  localStorage.removeItem('refreshToken')
+  localStorage.removeItem('tokenExpiresAt')
+  localStorage.removeItem('user')
+}
+
+const storeTokens = ({ token, refreshToken, expiresIn }) => {
+  localStorage.setItem('token', token)
+  localStorage.setItem('refreshToken', refreshToken)
+  localStorage.setItem('tokenExpiresAt', String(Date.now() + expiresIn * 1000))
+}
+
+// Tabs share one refresh token and presenting a used one ends the session, so tabs take turns
+// refreshing; Web Locks are held across all tabs of the origin
+const withRefreshLock = (work) =>
+  navigator.locks ? navigator.locks.request('auth-refresh', work) : work()
+
 export const useAuth = () => {
   const context = useContext(AuthContext)
   if (!context) {
@@ -23,20 +44,57 @@ export const AuthProvider = ({ children }) => {
       try {
         setUser(JSON.parse(userData))
       } catch (error) {
-        localStorage.removeItem('token')
-        localStorage.removeItem('user')
+        clearSession()
       }
     }
     setLoading(false)
   }, [])
 
+  const logout = useCallback(() => {
+    const refreshToken = localStorage.getItem('refreshToken')
+    if (refreshToken) {
+      authService.logout(refreshToken).catch(() => {})
+    }
+    clearSession()
+    setUser(null)
+  }, [])
+
+  // Keep the short-lived access token fresh while someone is signed in
+  useEffect(() => {
+    if (!user) return undefined
+
+    let timer
+    const schedule = () => {
+      const expiresAt = Number(localStorage.getItem('tokenExpiresAt')) || 0
+      const delay = Math.max(expiresAt - Date.now() - REFRESH_MARGIN_MS, 0)
+      timer = setTimeout(async () => {
+        try {
+          await withRefreshLock(async () => {
+            // Another tab may have refreshed while this one waited; its tokens are already stored
+            const storedExpiresAt = Number(localStorage.getItem('tokenExpiresAt')) || 0
+            if (storedExpiresAt - Date.now() > REFRESH_MARGIN_MS) return
+            const refreshToken = localStorage.getItem('refreshToken')
+            if (!refreshToken) throw new Error('Signed out in another tab')
+            storeTokens(await authService.refresh(refreshToken))
+          })
+          schedule()
+        } catch (error) {
+          logout()
+        }
+      }, delay)
+    }
+    schedule()
+
+    return () => clearTimeout(timer)
+  }, [user, logout])
+
   const login = async (email, password) => {
     try {
       const response = await authService.login(email, password)
-      const { token, role, name } = response
+      const { role, name } = response
       
       const userData = { email, role, name }
-      localStorage.setItem('token', token)
+      storeTokens(response)
       localStorage.setItem('user', JSON.stringify(userData))
       setUser(userData)
       
@@ -55,12 +113,6 @@ export const AuthProvider = ({ children }) => {
     }
   }
 
-  const logout = () => {
-    localStorage.removeItem('token')
-    localStorage.removeItem('user')
-    setUser(null)
-  }
-
   const value = {
     user,
     login,
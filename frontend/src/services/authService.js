@@ -51,6 +51,25 @@ export const authService = {
       }
       throw error
     }
+  },
+
+  async refresh(refreshToken) {
+    const response = await fetch(`${API_BASE_URL}/auth/refresh`, {
+      method: 'POST',
+      headers: { 'Content-Type': 'application/json' },
+      body: JSON.stringify({ refreshToken })
+    })
+
+    if (!response.ok) throw new Error('Session expired')
+    return response.json()
+  },
+
+  async logout(refreshToken) {
+    await fetch(`${API_BASE_URL}/auth/logout`, {
+      method: 'POST',
+      headers: getAuthHeaders(),
+      body: JSON.stringify({ refreshToken })
+    })
   }
 }
 
@@ -2,8 +2,10 @@ package com.example.medicine.med_pres;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MedPresApplication {
 
 	public static void main(String[] args) {
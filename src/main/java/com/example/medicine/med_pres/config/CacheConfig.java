@@ -0,0 +1,21 @@
+package com.example.medicine.med_pres.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Spring Cache over Caffeine. Sizes and TTL come from {@code spring.cache.caffeine.spec};
+ * the caches are declared up front in {@code spring.cache.cache-names} so actuator binds
+ * their hit/miss/eviction counters ({@code cache.gets}, {@code cache.evictions}).
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+
+    public static final String USERS_BY_ID = "usersById";
+    public static final String USERS_BY_EMAIL = "usersByEmail";
+    public static final String DOCTORS_BY_ID = "doctorsById";
+    public static final String DOCTORS_BY_USER_ID = "doctorsByUserId";
+    public static final String DOCTORS_BY_USER_EMAIL = "doctorsByUserEmail";
+    public static final String DOCTOR_DIRECTORY = "doctorDirectory";
+}
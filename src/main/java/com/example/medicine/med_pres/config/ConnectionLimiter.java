@@ -0,0 +1,126 @@
+package com.example.medicine.med_pres.config;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * With virtual threads there is no request thread pool left to cap concurrency, so thousands of
+ * requests can reach the connection pool at once and fail after Hikari's connection timeout.
+ * This wraps the DataSource in a fair semaphore sized to the pool: callers queue here, cheaply
+ * parked, for up to {@code datasource.limiter.acquire-timeout} and enter the pool only when a
+ * connection is free. It also bounds how many threads can be inside the JDBC driver at once,
+ * which caps carrier threads pinned by drivers that still block inside {@code synchronized}.
+ * Only active when {@code spring.threads.virtual.enabled=true} on Java 21+.
+ */
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class ConnectionLimiter implements BeanPostProcessor, Ordered {
+
+    private final Duration acquireTimeout;
+
+    public ConnectionLimiter(@Value("${datasource.limiter.acquire-timeout:60s}") Duration acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource hikari) {
+            return new LimitedDataSource(hikari, hikari.getMaximumPoolSize(), acquireTimeout);
+        }
+        return bean;
+    }
+
+    // Before wrappers such as ShardRoutingDataSource hide the pool
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    static class LimitedDataSource extends DelegatingDataSource {
+
+        private final Semaphore permits;
+        private final long timeoutNanos;
+
+        LimitedDataSource(DataSource target, int maxConcurrency, Duration acquireTimeout) {
+            super(target);
+            this.permits = new Semaphore(maxConcurrency, true);
+            this.timeoutNanos = acquireTimeout.toNanos();
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            acquire();
+            return limited(() -> super.getConnection());
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            acquire();
+            return limited(() -> super.getConnection(username, password));
+        }
+
+        private void acquire() throws SQLException {
+            try {
+                if (!permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS)) {
+                    throw new SQLTransientConnectionException("No database connection became free within "
+                            + Duration.ofNanos(timeoutNanos));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("Interrupted while waiting for a database connection", e);
+            }
+        }
+
+        // Hands out a connection whose close() returns the permit exactly once
+        private Connection limited(ConnectionSupplier open) throws SQLException {
+            Connection connection;
+            try {
+                connection = open.get();
+            } catch (SQLException | RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+                            try {
+                                connection.close();
+                            } finally {
+                                permits.release();
+                            }
+                            return null;
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionSupplier {
+        Connection get() throws SQLException;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.medicine.med_pres.config;
+
+import java.sql.DatabaseMetaData;
+import java.util.Collection;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Component;
+
+import com.example.medicine.med_pres.service.ShardRouter;
+
+/**
+ * Moves each entity id sequence past the highest id already stored in its table.
+ * Needed because rows written under the old IDENTITY ids (or seeded with explicit ids)
+ * are invisible to a freshly created sequence. Runs once after the schema is in place
+ * and before the web server accepts requests; raising is idempotent and never lowers.
+ * On MySQL, Hibernate emulates sequences with a one-row table holding {@code next_val}.
+ * With sharding, every database only counts and hands out ids inside its own
+ * {@link ShardRouter#ID_RANGE} block; rows moved in from other shards keep ids from theirs.
+ */
+@Component
+public class IdSequenceAligner implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(IdSequenceAligner.class);
+    // Matches allocationSize on the entities: a pooled value V hands out ids (V - 50, V]
+    private static final int ALLOCATION_SIZE = 50;
+    private static final Map<String, String> SEQUENCES = Map.of(
+        "users", "users_seq",
+        "doctors", "doctors_seq",
+        "appointments", "appointments_seq",
+        "prescriptions", "prescriptions_seq",
+        "notification_outbox", "notification_outbox_seq"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+
+    public IdSequenceAligner(JdbcTemplate jdbcTemplate, DataSource dataSource) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        alignAll();
+    }
+
+    public void alignAll() {
+        align(jdbcTemplate, dataSource, 0, ShardRouter.ID_RANGE, SEQUENCES.keySet());
+    }
+
+    // Raises the tables' sequences past their highest id in [floor, ceiling) on the given database
+    public static void align(JdbcTemplate jdbcTemplate, DataSource dataSource, long floor, long ceiling,
+            Collection<String> tables) {
+        String product;
+        try {
+            product = JdbcUtils.extractDatabaseMetaData(dataSource, DatabaseMetaData::getDatabaseProductName);
+        } catch (Exception e) {
+            log.warn("event=sequence.align.skipped error={}", e.getMessage());
+            return;
+        }
+        for (String table : tables) {
+            String sequence = SEQUENCES.get(table);
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), ?) FROM " + table + " WHERE id >= ? AND id < ?",
+                Long.class, floor, floor, ceiling);
+            long next = maxId + ALLOCATION_SIZE + 1;
+            if (product.startsWith("MySQL")) {
+                jdbcTemplate.update("UPDATE " + sequence + " SET next_val = ? WHERE next_val < ?", next, next);
+            } else if (product.startsWith("H2")) {
+                Long current = jdbcTemplate.queryForObject(
+                    "SELECT BASE_VALUE FROM INFORMATION_SCHEMA.SEQUENCES WHERE LOWER(SEQUENCE_NAME) = ?", Long.class, sequence);
+                if (current != null && current < next) {
+                    jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + next);
+                }
+            } else {
+                log.warn("event=sequence.align.unsupported database={} sequence={}", product, sequence);
+            }
+        }
+    }
+}
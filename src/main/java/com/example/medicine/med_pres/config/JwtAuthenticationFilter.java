@@ -34,24 +34,19 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             throws ServletException, IOException {
 
         final String authHeader = request.getHeader("Authorization");
-        final String jwt;
-        final String userEmail;
 
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
             filterChain.doFilter(request, response);
             return;
         }
 
-        jwt = authHeader.substring(7);
-        userEmail = jwtService.extractUsername(jwt);
-
-        if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            if (jwtService.isTokenValid(jwt, userEmail)) {
-                String role = jwtService.extractClaim(jwt, claims -> claims.get("role", String.class));
-                System.out.println("DEBUG: Extracted role from token: " + role);
-                System.out.println("DEBUG: Creating authority: ROLE_" + role);
+        if (SecurityContextHolder.getContext().getAuthentication() == null) {
+            JwtService.VerifiedToken token = jwtService.verify(authHeader.substring(7));
+            if (token != null) {
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userEmail, null, List.of(new SimpleGrantedAuthority("ROLE_" + role)));
+                        token.username(), null, List.of(new SimpleGrantedAuthority("ROLE_" + token.role())));
+                // Long-lived requests such as event streams need to know when and how the token stops being valid
+                authToken.setDetails(token);
                 SecurityContextHolder.getContext().setAuthentication(authToken);
             }
         }
@@ -0,0 +1,111 @@
+package com.example.medicine.med_pres.config;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Minimal SMTP server on the loopback interface that accepts every message and discards it,
+ * counting deliveries in {@code smtp.local.received}. A stand-in for a real mail server when
+ * running the perf profile or exercising the notification outbox locally; enabled by
+ * {@code notifications.local-smtp.port}. Speaks just enough SMTP for Jakarta Mail: EHLO/HELO,
+ * MAIL, RCPT, DATA, RSET, NOOP and QUIT, one session per connection.
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.local-smtp.port")
+public class LocalSmtpServer {
+
+    private static final SampledLogger log = new SampledLogger(LocalSmtpServer.class, 100);
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions;
+    private final Counter received;
+
+    public LocalSmtpServer(@Value("${notifications.local-smtp.port}") int port, MeterRegistry registry) throws IOException {
+        this.serverSocket = new ServerSocket(port, 128, InetAddress.getLoopbackAddress());
+        this.received = Counter.builder("smtp.local.received")
+                .description("Messages accepted by the local SMTP stand-in").register(registry);
+        AtomicInteger workers = new AtomicInteger();
+        this.sessions = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-smtp-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        sessions.execute(this::accept);
+        log.info("event=smtp.local.started port={}", serverSocket.getLocalPort());
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                sessions.execute(() -> session(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.warn("event=smtp.local.acceptFailed error={}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void session(Socket socket) {
+        try (socket;
+                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream out = socket.getOutputStream()) {
+            reply(out, "220 localhost ESMTP");
+            String line;
+            while ((line = in.readLine()) != null) {
+                String command = line.length() < 4 ? line.toUpperCase(Locale.ROOT) : line.substring(0, 4).toUpperCase(Locale.ROOT);
+                switch (command) {
+                    case "EHLO" -> reply(out, "250-localhost\r\n250-8BITMIME\r\n250 SIZE 10485760");
+                    case "HELO", "MAIL", "RCPT", "RSET", "NOOP" -> reply(out, "250 OK");
+                    case "DATA" -> {
+                        reply(out, "354 End data with <CR><LF>.<CR><LF>");
+                        while ((line = in.readLine()) != null && !line.equals(".")) {
+                            // Message content is discarded
+                        }
+                        received.increment();
+                        reply(out, "250 OK");
+                    }
+                    case "QUIT" -> {
+                        reply(out, "221 Bye");
+                        return;
+                    }
+                    default -> reply(out, "502 Command not implemented");
+                }
+            }
+        } catch (SocketException e) {
+            // Client went away
+        } catch (IOException e) {
+            log.warn("event=smtp.local.sessionFailed error={}", e.getMessage());
+        }
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.medicine.med_pres.config;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.model.User;
+
+/**
+ * Seeds the perf profile database with synthetic users, doctors, appointments and
+ * prescriptions through batched JDBC inserts. Ids are assigned densely so rows can
+ * reference each other without lookups:
+ * patients are users 1..P, doctor accounts are users P+1..P+D, doctor i belongs to user P+i.
+ */
+@Component
+@Profile("perf")
+public class PerfDataGenerator implements CommandLineRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(PerfDataGenerator.class);
+    private static final String[] SPECIALIZATIONS = {
+        "Cardiology", "Dermatology", "General Practice", "Neurology", "Orthopedics", "Pediatrics", "Psychiatry"
+    };
+    private static final Appointment.Status[] STATUSES = Appointment.Status.values();
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PasswordEncoder passwordEncoder;
+    private final IdSequenceAligner idSequenceAligner;
+
+    @Value("${perf.seed.patients:10000}")
+    private int patients;
+    @Value("${perf.seed.doctors:1000}")
+    private int doctors;
+    @Value("${perf.seed.appointments:200000}")
+    private long appointments;
+    @Value("${perf.seed.prescriptions:100000}")
+    private long prescriptions;
+    @Value("${perf.seed.batch-size:1000}")
+    private int batchSize;
+    @Value("${perf.seed.password:password}")
+    private String password;
+
+    public PerfDataGenerator(JdbcTemplate jdbcTemplate, PasswordEncoder passwordEncoder, IdSequenceAligner idSequenceAligner) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.passwordEncoder = passwordEncoder;
+        this.idSequenceAligner = idSequenceAligner;
+    }
+
+    @Override
+    public void run(String... args) {
+        Long existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users", Long.class);
+        if (existing != null && existing > 0) {
+            log.info("event=perf.seed.skipped existingUsers={}", existing);
+            return;
+        }
+        long started = System.currentTimeMillis();
+        // One hash shared by every account keeps seeding from being BCrypt-bound
+        String passwordHash = passwordEncoder.encode(password);
+
+        insert("INSERT INTO users (id, name, email, password_hash, role) VALUES (?, ?, ?, ?, ?)",
+                (long) patients + doctors, (ps, i) -> {
+                    boolean patient = i < patients;
+                    long n = patient ? i : i - patients;
+                    ps.setLong(1, i + 1);
+                    ps.setString(2, (patient ? "Patient " : "Doctor ") + n);
+                    ps.setString(3, (patient ? "patient" : "doctor") + n + "@perf.local");
+                    ps.setString(4, passwordHash);
+                    ps.setString(5, (patient ? User.Role.PATIENT : User.Role.DOCTOR).name());
+                });
+
+        insert("INSERT INTO doctors (id, user_id, specialization, clinic_name, location, available_slots) VALUES (?, ?, ?, ?, ?, ?)",
+                doctors, (ps, i) -> {
+                    ps.setLong(1, i + 1);
+                    ps.setLong(2, patients + i + 1);
+                    ps.setString(3, SPECIALIZATIONS[(int) (i % SPECIALIZATIONS.length)]);
+                    ps.setString(4, "Clinic " + (i % 500));
+                    ps.setString(5, "City " + (i % 50));
+                    ps.setString(6, "[\"09:00\",\"10:30\",\"14:00\",\"15:30\"]");
+                });
+
+        LocalDate firstDay = LocalDate.now().minusYears(2);
+        insert("INSERT INTO appointments (id, patient_id, doctor_id, reason, appointment_date, appointment_time, status) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                appointments, (ps, i) -> {
+                    ps.setLong(1, i + 1);
+                    ps.setLong(2, (i * 7919) % patients + 1);
+                    ps.setLong(3, i % doctors + 1);
+                    ps.setString(4, "Synthetic visit " + i);
+                    // Spread each doctor's rows over roughly three years of working slots
+                    ps.setDate(5, Date.valueOf(firstDay.plusDays((i / doctors) / 16 % 1095)));
+                    ps.setTime(6, Time.valueOf(LocalTime.of(8, 0).plusMinutes(30 * ((i / doctors) % 16))));
+                    ps.setString(7, STATUSES[(int) (i % STATUSES.length)].name());
+                });
+
+        insert("INSERT INTO prescriptions (id, patient_id, doctor_id, medication_name, dosage, frequency, notes) VALUES (?, ?, ?, ?, ?, ?, ?)",
+                prescriptions, (ps, i) -> {
+                    ps.setLong(1, i + 1);
+                    ps.setLong(2, (i * 104729) % patients + 1);
+                    ps.setLong(3, i % doctors + 1);
+                    ps.setString(4, "Medication " + (i % 300));
+                    ps.setString(5, (5 * (1 + i % 20)) + "mg");
+                    ps.setString(6, i % 2 == 0 ? "Once daily" : "Twice daily");
+                    ps.setString(7, null);
+                });
+
+        idSequenceAligner.alignAll();
+
+        log.info("event=perf.seed.done patients={} doctors={} appointments={} prescriptions={} millis={}",
+                patients, doctors, appointments, prescriptions, System.currentTimeMillis() - started);
+    }
+
+    // Inserts rows 0..count-1 in JDBC batches of batchSize
+    private void insert(String sql, long count, RowWriter writer) {
+        for (long from = 0; from < count; from += batchSize) {
+            long start = from;
+            int size = (int) Math.min(batchSize, count - from);
+            jdbcTemplate.execute((java.sql.Connection connection) -> {
+                try (PreparedStatement ps = connection.prepareStatement(sql)) {
+                    for (int j = 0; j < size; j++) {
+                        writer.write(ps, start + j);
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+                return null;
+            });
+        }
+    }
+
+    @FunctionalInterface
+    private interface RowWriter {
+        void write(PreparedStatement ps, long row) throws SQLException;
+    }
+}
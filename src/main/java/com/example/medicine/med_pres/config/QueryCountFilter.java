@@ -0,0 +1,47 @@
+package com.example.medicine.med_pres.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+@Component
+public class QueryCountFilter extends OncePerRequestFilter {
+
+    private final MeterRegistry registry;
+
+    public QueryCountFilter(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        QueryCountInspector.reset();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            // Tag by route template, not raw URI, to keep cardinality bounded
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            DistributionSummary.builder("jpa.queries.per.request")
+                    .description("SQL statements prepared by Hibernate while handling one request")
+                    .tag("method", request.getMethod())
+                    .tag("uri", pattern != null ? pattern.toString() : "UNKNOWN")
+                    .publishPercentiles(0.5, 0.99, 0.999)
+                    .register(registry)
+                    .record(QueryCountInspector.current());
+        }
+    }
+}
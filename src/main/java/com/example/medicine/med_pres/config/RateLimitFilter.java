@@ -0,0 +1,100 @@
+package com.example.medicine.med_pres.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Applies {@link RateLimiter} to API requests. Runs right after {@link JwtAuthenticationFilter}
+ * so authenticated callers are limited by account and role, and anonymous callers by address.
+ * Limited routes answer with RateLimit-Limit / RateLimit-Remaining / RateLimit-Reset headers,
+ * and with 429 plus Retry-After once a bucket is empty.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String ANONYMOUS = "ANONYMOUS";
+    private static final SampledLogger log = new SampledLogger(RateLimitFilter.class, 100);
+
+    private final RateLimiter rateLimiter;
+    private final RateLimitProperties properties;
+    private final MeterRegistry registry;
+    private final ObjectMapper objectMapper;
+
+    public RateLimitFilter(RateLimiter rateLimiter, RateLimitProperties properties, MeterRegistry registry,
+            ObjectMapper objectMapper) {
+        this.rateLimiter = rateLimiter;
+        this.properties = properties;
+        this.registry = registry;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI();
+        // Login and registration have their own throttle
+        return !properties.isEnabled() || !path.startsWith("/api/") || path.startsWith("/api/auth/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        // Spring Security's anonymous token counts as authenticated; those callers are told apart by address
+        boolean authenticated = authentication != null && authentication.isAuthenticated()
+                && !(authentication instanceof AnonymousAuthenticationToken);
+        String principal = authenticated ? authentication.getName() : request.getRemoteAddr();
+        String role = authenticated ? role(authentication) : ANONYMOUS;
+
+        RateLimiter.Decision decision = rateLimiter.tryAcquire(request.getMethod(), request.getRequestURI(), principal, role);
+        if (decision == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        response.setHeader("RateLimit-Limit", Long.toString(decision.limit()));
+        response.setHeader("RateLimit-Remaining", Long.toString(decision.remaining()));
+        response.setHeader("RateLimit-Reset", Long.toString(decision.resetSeconds()));
+        if (decision.allowed()) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        registry.counter("http.server.requests.throttled", "rule", decision.rule(), "role", role).increment();
+        // Accounts are told apart by role and address here; their keys are emails, which stay out of the logs
+        log.info("event=rateLimit.rejected rule={} role={} ip={}", decision.rule(), role, request.getRemoteAddr());
+        Map<String, Object> body = new HashMap<>();
+        body.put("timestamp", LocalDateTime.now());
+        body.put("error", "Too many requests, please retry later");
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(decision.retryAfterSeconds()));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), body);
+    }
+
+    private static String role(Authentication authentication) {
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            String name = authority.getAuthority();
+            if (name != null && name.startsWith("ROLE_")) {
+                return name.substring(5);
+            }
+        }
+        return ANONYMOUS;
+    }
+}
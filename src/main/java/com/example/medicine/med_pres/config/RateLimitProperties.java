@@ -0,0 +1,49 @@
+package com.example.medicine.med_pres.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * {@code rate-limit.*} settings. Rules are checked in order and the first one matching the
+ * request's method and path applies. Limits are written {@code <requests>/<period>}, e.g.
+ * {@code 20/1m}, and keyed by role (PATIENT, DOCTOR, ADMIN, ANONYMOUS, or DEFAULT for the rest).
+ */
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // Buckets untouched for this long are full again and get dropped
+    private Duration idleTimeout = Duration.ofMinutes(10);
+
+    private List<Rule> rules = new ArrayList<>();
+
+    @Getter
+    @Setter
+    public static class Rule {
+
+        // HTTP method, or empty for any
+        private String method;
+
+        // Exact path, or a prefix ending in /** that also matches the bare prefix
+        private String path;
+
+        // Role -> limit for each caller of that role on its own
+        private Map<String, String> perPrincipal = new LinkedHashMap<>();
+
+        // Role -> limit shared by every caller of that role together
+        private Map<String, String> perRole = new LinkedHashMap<>();
+    }
+}
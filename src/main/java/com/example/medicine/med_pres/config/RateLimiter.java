@@ -0,0 +1,194 @@
+package com.example.medicine.med_pres.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Token buckets for the configured {@link RateLimitProperties} rules, one per caller per rule
+ * plus one per role per rule.
+ *
+ * Each bucket is a single {@link AtomicLong} holding the time at which it will be full again
+ * (the generic cell rate algorithm, equivalent to a token bucket). Taking a token is one read
+ * and one compare-and-set, with no locks and no timer threads. Per-caller buckets live in a
+ * {@link ConcurrentHashMap} per rule, whose bins are locked independently so callers never
+ * contend on one another. A bucket whose refill time has passed is indistinguishable from a
+ * new one, so idle buckets are simply dropped.
+ */
+@Component
+public class RateLimiter {
+
+    private static final String DEFAULT_ROLE = "DEFAULT";
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    public record Decision(boolean allowed, String rule, long limit, long remaining, long resetSeconds,
+            long retryAfterSeconds) {
+    }
+
+    private final List<CompiledRule> rules;
+    private final long idleTimeoutNanos;
+
+    public RateLimiter(RateLimitProperties properties) {
+        this.rules = properties.getRules().stream().map(CompiledRule::new).toList();
+        this.idleTimeoutNanos = properties.getIdleTimeout().toNanos();
+    }
+
+    // Takes one token for this caller, or returns null when no rule limits the request
+    public Decision tryAcquire(String method, String path, String principal, String role) {
+        CompiledRule rule = match(method, path);
+        if (rule == null) {
+            return null;
+        }
+        Limit limit = rule.perPrincipal(role);
+        long now = System.nanoTime();
+        Decision decision = null;
+        if (limit != null) {
+            Bucket bucket = rule.buckets.get(principal);
+            if (bucket == null) {
+                bucket = rule.buckets.computeIfAbsent(principal, key -> new Bucket(now));
+            }
+            decision = decide(rule, limit, bucket.acquire(limit, now));
+            if (!decision.allowed()) {
+                return decision;
+            }
+        }
+        String sharedRole = rule.perRole.containsKey(role) ? role : DEFAULT_ROLE;
+        Limit sharedLimit = rule.perRole.get(sharedRole);
+        if (sharedLimit != null) {
+            Decision roleDecision = decide(rule, sharedLimit, rule.roleBuckets.get(sharedRole).acquire(sharedLimit, now));
+            // Report whichever bucket is closer to running out
+            if (decision == null || !roleDecision.allowed() || roleDecision.remaining() < decision.remaining()) {
+                decision = roleDecision;
+            }
+        }
+        return decision;
+    }
+
+    // Drops per-caller buckets that have been full for longer than the idle timeout
+    @Scheduled(fixedDelay = 60_000, initialDelay = 60_000)
+    public void evictIdle() {
+        long cutoff = System.nanoTime() - idleTimeoutNanos;
+        for (CompiledRule rule : rules) {
+            rule.buckets.values().removeIf(bucket -> bucket.get() - cutoff < 0);
+        }
+    }
+
+    // Number of per-caller buckets currently held
+    public int size() {
+        return rules.stream().mapToInt(rule -> rule.buckets.size()).sum();
+    }
+
+    private CompiledRule match(String method, String path) {
+        for (CompiledRule rule : rules) {
+            if (rule.matches(method, path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private static Decision decide(CompiledRule rule, Limit limit, long aheadNanos) {
+        if (aheadNanos > limit.periodNanos()) {
+            long retryAfter = Math.max(1, ceilSeconds(aheadNanos - limit.periodNanos()));
+            long reset = ceilSeconds(aheadNanos - limit.intervalNanos());
+            return new Decision(false, rule.name, limit.capacity(), 0, reset, retryAfter);
+        }
+        long remaining = (limit.periodNanos() - aheadNanos) / limit.intervalNanos();
+        return new Decision(true, rule.name, limit.capacity(), remaining, ceilSeconds(aheadNanos), 0);
+    }
+
+    private static long ceilSeconds(long nanos) {
+        return (nanos + NANOS_PER_SECOND - 1) / NANOS_PER_SECOND;
+    }
+
+    // capacity requests per period, one token returning every intervalNanos
+    private record Limit(long capacity, long periodNanos, long intervalNanos) {
+
+        static Limit parse(String spec) {
+            int slash = spec.indexOf('/');
+            if (slash < 0) {
+                throw new IllegalArgumentException("Rate limit must look like <requests>/<period>: " + spec);
+            }
+            long capacity = Long.parseLong(spec.substring(0, slash).trim());
+            Duration period = DurationStyle.detectAndParse(spec.substring(slash + 1).trim());
+            if (capacity <= 0 || period.isNegative() || period.isZero()) {
+                throw new IllegalArgumentException("Rate limit must be positive: " + spec);
+            }
+            long intervalNanos = Math.max(1, period.toNanos() / capacity);
+            return new Limit(capacity, intervalNanos * capacity, intervalNanos);
+        }
+    }
+
+    /** Holds the time the bucket is full again; everything else follows from the limit. */
+    private static final class Bucket extends AtomicLong {
+
+        Bucket(long now) {
+            super(now);
+        }
+
+        // Returns how far ahead of now the refill time would be after this request; over the period means denied
+        long acquire(Limit limit, long now) {
+            while (true) {
+                long fullAt = get();
+                long next = (fullAt - now > 0 ? fullAt : now) + limit.intervalNanos();
+                long ahead = next - now;
+                if (ahead > limit.periodNanos() || compareAndSet(fullAt, next)) {
+                    return ahead;
+                }
+            }
+        }
+    }
+
+    private static final class CompiledRule {
+
+        private final String name;
+        private final String method;
+        private final String path;
+        private final boolean prefix;
+        private final Map<String, Limit> perPrincipal = new HashMap<>();
+        private final Map<String, Limit> perRole = new HashMap<>();
+        private final Map<String, Bucket> roleBuckets = new HashMap<>();
+        private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+        CompiledRule(RateLimitProperties.Rule rule) {
+            if (rule.getPath() == null || rule.getPath().isBlank()) {
+                throw new IllegalArgumentException("Every rate-limit rule needs a path");
+            }
+            this.method = rule.getMethod() == null || rule.getMethod().isBlank()
+                    ? null : rule.getMethod().trim().toUpperCase(Locale.ROOT);
+            this.prefix = rule.getPath().endsWith("/**");
+            this.path = prefix ? rule.getPath().substring(0, rule.getPath().length() - 3) : rule.getPath();
+            this.name = (method != null ? method : "*") + " " + rule.getPath();
+            long now = System.nanoTime();
+            rule.getPerPrincipal().forEach((role, spec) -> perPrincipal.put(role.toUpperCase(Locale.ROOT), Limit.parse(spec)));
+            rule.getPerRole().forEach((role, spec) -> {
+                perRole.put(role.toUpperCase(Locale.ROOT), Limit.parse(spec));
+                roleBuckets.put(role.toUpperCase(Locale.ROOT), new Bucket(now));
+            });
+        }
+
+        boolean matches(String requestMethod, String requestPath) {
+            if (method != null && !method.equals(requestMethod)) {
+                return false;
+            }
+            if (!prefix) {
+                return path.equals(requestPath);
+            }
+            return requestPath.startsWith(path)
+                    && (requestPath.length() == path.length() || requestPath.charAt(path.length()) == '/');
+        }
+
+        Limit perPrincipal(String role) {
+            Limit limit = perPrincipal.get(role);
+            return limit != null ? limit : perPrincipal.get(DEFAULT_ROLE);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.medicine.med_pres.config;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Sends read-only transactions to replicas when {@code datasource.replicas.urls} is set; without
+ * it the auto-configured single DataSource is used as before.
+ *
+ * The application DataSource becomes a {@link LazyConnectionDataSourceProxy} over
+ * {@link ReplicaRoutingDataSource}: the real connection is fetched at the first statement, once the
+ * transaction's read-only flag is known, so read-only transactions can be sent to a replica.
+ * Everything else (writes, non-transactional JDBC, schema updates) uses the primary.
+ */
+@Configuration
+@ConditionalOnProperty(name = "datasource.replicas.urls")
+public class ReplicaRoutingConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(@Qualifier("primaryDataSource") DataSource primary,
+            DataSourceProperties properties, MeterRegistry registry,
+            @Value("${datasource.replicas.urls}") List<String> urls,
+            @Value("${datasource.replicas.username:${spring.datasource.username:}}") String username,
+            @Value("${datasource.replicas.password:${spring.datasource.password:}}") String password,
+            @Value("${datasource.replicas.pool-size:10}") int poolSize,
+            @Value("${datasource.replicas.max-lag:2s}") Duration maxLag,
+            @Value("${datasource.replicas.read-your-writes-window:5s}") Duration readYourWritesWindow) {
+        Map<String, HikariDataSource> replicas = new LinkedHashMap<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = new HikariDataSource();
+            replica.setPoolName("replica-" + (i + 1));
+            replica.setJdbcUrl(urls.get(i).trim());
+            replica.setUsername(username);
+            replica.setPassword(password);
+            replica.setDriverClassName(properties.determineDriverClassName());
+            replica.setMaximumPoolSize(poolSize);
+            replica.setReadOnly(true);
+            // A dead replica should fail over to the primary quickly, not hold the request
+            replica.setConnectionTimeout(1_000);
+            replica.setInitializationFailTimeout(-1);
+            replicas.put(replica.getPoolName(), replica);
+        }
+        return new ReplicaRoutingDataSource(primary, replicas, maxLag, readYourWritesWindow, registry);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(replicaRoutingDataSource);
+    }
+
+    // Hibernate otherwise keeps a session's first connection for the whole request (open-in-view),
+    // so a write after a replica read would reuse the replica connection
+    @Bean
+    public HibernatePropertiesCustomizer releaseConnectionsAfterTransaction() {
+        return properties -> properties.put("hibernate.connection.handling_mode",
+                "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.medicine.med_pres.config;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Chooses the database for each connection when replicas are configured (see
+ * {@link ReplicaRoutingConfig}). A connection comes from a replica only when all of these hold:
+ * <ul>
+ * <li>it is for a {@code @Transactional(readOnly = true)} transaction;</li>
+ * <li>the replica's measured lag is within {@code datasource.replicas.max-lag}; lag is read from
+ * a heartbeat row this class writes to the primary every second and reads back from each replica;</li>
+ * <li>the caller has not written in the last {@code datasource.replicas.read-your-writes-window},
+ * so a patient who just booked sees the booking;</li>
+ * <li>the replica hands out a connection; on failure it is marked down until the next heartbeat.</li>
+ * </ul>
+ * Otherwise the read goes to the primary. All reads within one HTTP request use the same replica,
+ * so an ETag and the body it describes never come from replicas at different positions.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements DisposableBean {
+
+    private static final String REQUEST_REPLICA = ReplicaRoutingDataSource.class.getName() + ".replica";
+    private static final SampledLogger log = new SampledLogger(ReplicaRoutingDataSource.class, 100);
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final long maxLagMillis;
+    private final long readYourWritesMillis;
+    private final JdbcTemplate primaryJdbc;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+
+    // Principal -> time of their last read-write connection
+    private final Map<String, Long> lastWriteByPrincipal = new ConcurrentHashMap<>();
+
+    private final Counter replicaReads;
+    private final Counter readYourWritesReads;
+    private final Counter noReplicaReads;
+    private final Counter failedOverReads;
+
+    public ReplicaRoutingDataSource(DataSource primary, Map<String, HikariDataSource> replicas, Duration maxLag,
+            Duration readYourWritesWindow, MeterRegistry registry) {
+        this.primary = primary;
+        this.replicas = replicas.entrySet().stream().map(entry -> new Replica(entry.getKey(), entry.getValue())).toList();
+        this.maxLagMillis = maxLag.toMillis();
+        this.readYourWritesMillis = readYourWritesWindow.toMillis();
+        this.primaryJdbc = new JdbcTemplate(primary);
+        this.replicaReads = readCounter(registry, "replica", "replica");
+        this.readYourWritesReads = readCounter(registry, "primary", "readYourWrites");
+        this.noReplicaReads = readCounter(registry, "primary", "noHealthyReplica");
+        this.failedOverReads = readCounter(registry, "primary", "replicaFailed");
+        for (Replica replica : this.replicas) {
+            Gauge.builder("datasource.replica.lag", replica, r -> r.lagMillis < 0 ? -1 : r.lagMillis / 1000.0)
+                    .description("Replication lag measured from the heartbeat row, -1 when unreachable")
+                    .baseUnit("seconds").tag("replica", replica.name).register(registry);
+            Gauge.builder("datasource.replica.healthy", replica, r -> r.healthy ? 1 : 0)
+                    .tag("replica", replica.name).register(registry);
+        }
+    }
+
+    private static Counter readCounter(MeterRegistry registry, String target, String reason) {
+        return Counter.builder("datasource.reads")
+                .description("Read-only connections by where they were served from and why")
+                .tag("target", target).tag("reason", reason).register(registry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        String principal = currentPrincipal();
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            // Writes, and anything outside a read-only transaction, mark the caller as a recent writer
+            if (principal != null) {
+                lastWriteByPrincipal.put(principal, System.currentTimeMillis());
+            }
+            return primary.getConnection();
+        }
+        if (principal != null) {
+            Long lastWrite = lastWriteByPrincipal.get(principal);
+            if (lastWrite != null && System.currentTimeMillis() - lastWrite < readYourWritesMillis) {
+                readYourWritesReads.increment();
+                return primary.getConnection();
+            }
+        }
+        Replica replica = pickReplica();
+        if (replica == null) {
+            noReplicaReads.increment();
+            return primary.getConnection();
+        }
+        try {
+            Connection connection = replica.dataSource.getConnection();
+            replicaReads.increment();
+            return connection;
+        } catch (SQLException e) {
+            replica.healthy = false;
+            failedOverReads.increment();
+            log.warn("event=replica.down replica={} error={}", replica.name, e.getMessage());
+            return primary.getConnection();
+        }
+    }
+
+    // Replicas are set up with the configured credentials only, so callers bringing their own go to the primary
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return primary.getConnection(username, password);
+    }
+
+    // Writes the heartbeat to the primary and measures how far behind each replica is
+    @Scheduled(fixedDelay = 1_000)
+    public void heartbeat() {
+        long now = System.currentTimeMillis();
+        try {
+            if (primaryJdbc.update("UPDATE replication_heartbeat SET beat_at = ? WHERE id = 1", now) == 0) {
+                primaryJdbc.update("INSERT INTO replication_heartbeat (id, beat_at) VALUES (1, ?)", now);
+            }
+        } catch (DataAccessException e) {
+            log.warn("event=replica.heartbeatFailed error={}", e.getMessage());
+        }
+        for (Replica replica : replicas) {
+            boolean wasHealthy = replica.healthy;
+            try {
+                Long beatAt = replica.jdbc.queryForObject("SELECT beat_at FROM replication_heartbeat WHERE id = 1", Long.class);
+                replica.lagMillis = beatAt == null ? -1 : Math.max(0, System.currentTimeMillis() - beatAt);
+                replica.healthy = beatAt != null && replica.lagMillis <= maxLagMillis;
+            } catch (DataAccessException e) {
+                replica.lagMillis = -1;
+                replica.healthy = false;
+            }
+            if (wasHealthy != replica.healthy) {
+                log.warn("event=replica.{} replica={} lagMillis={}", replica.healthy ? "up" : "down", replica.name, replica.lagMillis);
+            }
+        }
+    }
+
+    // Forgets writers whose read-your-writes window has passed
+    @Scheduled(fixedDelay = 60_000)
+    public void evictWriters() {
+        long cutoff = System.currentTimeMillis() - readYourWritesMillis;
+        lastWriteByPrincipal.values().removeIf(lastWrite -> lastWrite < cutoff);
+    }
+
+    @Override
+    public void destroy() {
+        replicas.forEach(replica -> replica.dataSource.close());
+    }
+
+    // Round-robin over healthy replicas, sticky for the rest of the current HTTP request
+    private Replica pickReplica() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null && request.getAttribute(REQUEST_REPLICA, RequestAttributes.SCOPE_REQUEST) instanceof Replica chosen) {
+            return chosen.healthy ? chosen : null;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(nextReplica.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica candidate = replicas.get((start + i) % size);
+            if (candidate.healthy) {
+                if (request != null) {
+                    request.setAttribute(REQUEST_REPLICA, candidate, RequestAttributes.SCOPE_REQUEST);
+                }
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    // Signed-in caller, or null; anonymous requests all share one name, so they are not tracked
+    private static String currentPrincipal() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && !(authentication instanceof AnonymousAuthenticationToken)
+                ? authentication.getName() : null;
+    }
+
+    private static final class Replica {
+
+        private final String name;
+        private final HikariDataSource dataSource;
+        private final JdbcTemplate jdbc;
+        private volatile long lagMillis = -1;
+        // Down until the first heartbeat has measured it
+        private volatile boolean healthy;
+
+        Replica(String name, HikariDataSource dataSource) {
+            this.name = name;
+            this.dataSource = dataSource;
+            this.jdbc = new JdbcTemplate(dataSource);
+            this.jdbc.setQueryTimeout(1);
+        }
+    }
+}
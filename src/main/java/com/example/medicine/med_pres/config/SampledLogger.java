@@ -0,0 +1,34 @@
+package com.example.medicine.med_pres.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs one in every {@code sampleRate} events at INFO, and every event when DEBUG is
+ * enabled for the owning class. Messages are key=value pairs so they stay greppable.
+ */
+public class SampledLogger {
+
+    private final Logger log;
+    private final long sampleRate;
+    private final AtomicLong events = new AtomicLong();
+
+    public SampledLogger(Class<?> owner, long sampleRate) {
+        this.log = LoggerFactory.getLogger(owner);
+        this.sampleRate = sampleRate;
+    }
+
+    public void info(String format, Object... args) {
+        if (log.isDebugEnabled()) {
+            log.debug(format, args);
+        } else if (events.getAndIncrement() % sampleRate == 0) {
+            log.info(format, args);
+        }
+    }
+
+    public void warn(String format, Object... args) {
+        log.warn(format, args);
+    }
+}
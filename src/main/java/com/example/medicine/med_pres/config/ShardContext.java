@@ -0,0 +1,26 @@
+package com.example.medicine.med_pres.config;
+
+/**
+ * The shard the current thread's next database connection comes from, read by
+ * {@link ShardRoutingDataSource}. Unset means the home database. Set it through
+ * {@code ShardRouter.on(...)}, which restores the previous value afterwards.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    public static Integer get() {
+        return CURRENT.get();
+    }
+
+    public static void set(Integer shard) {
+        if (shard == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(shard);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.medicine.med_pres.config;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Application DataSource when {@code sharding.urls} is set: shard 0 is the home database (the
+ * DataSource that was configured before, replicas included), shards 1..n are the extra
+ * databases. Each connection goes to the shard in {@link ShardContext}. Routing happens when a
+ * connection is acquired, so it relies on Hibernate releasing connections after every
+ * transaction (see {@link ShardingConfig}).
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private final DataSource home;
+    private final List<DataSource> shards;
+    private final List<AutoCloseable> pools;
+
+    public ShardRoutingDataSource(DataSource home, List<DataSource> shards, List<AutoCloseable> pools) {
+        this.home = home;
+        this.shards = List.copyOf(shards);
+        this.pools = List.copyOf(pools);
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(0, home);
+        for (int i = 0; i < shards.size(); i++) {
+            targets.put(i + 1, shards.get(i));
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(home);
+        // An unknown shard number is a bug, not a reason to write to the home database
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.get();
+    }
+
+    // Number of shards including the home database
+    public int size() {
+        return shards.size() + 1;
+    }
+
+    // The DataSource of one shard, bypassing ShardContext
+    public DataSource shard(int index) {
+        return index == 0 ? home : shards.get(index - 1);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        for (AutoCloseable pool : pools) {
+            pool.close();
+        }
+        // The container closes the bean it created, which is now this wrapper
+        if (home instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
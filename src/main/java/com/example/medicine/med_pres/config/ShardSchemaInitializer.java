@@ -0,0 +1,62 @@
+package com.example.medicine.med_pres.config;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.stereotype.Component;
+
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.service.ShardRouter;
+
+/**
+ * Brings the extra shards' schemas up to date at startup, the way {@code ddl-auto=update} does
+ * for the home database: a short-lived persistence unit with the application's JPA settings is
+ * built against each shard and closed again. Then each shard's appointment, prescription and
+ * notification outbox sequences are moved into that shard's id block (see {@link IdSequenceAligner}).
+ */
+@Component
+@ConditionalOnProperty(name = "sharding.urls")
+public class ShardSchemaInitializer implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardSchemaInitializer.class);
+    // Tables written on every shard; one Hibernate id pool serves all shards, so each shard needs its own id block
+    private static final List<String> SHARDED_TABLES = List.of("appointments", "prescriptions", "notification_outbox");
+
+    private final DataSource dataSource;
+    private final EntityManagerFactoryBuilder entityManagerFactoryBuilder;
+
+    public ShardSchemaInitializer(DataSource dataSource, EntityManagerFactoryBuilder entityManagerFactoryBuilder) {
+        this.dataSource = dataSource;
+        this.entityManagerFactoryBuilder = entityManagerFactoryBuilder;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!(dataSource instanceof ShardRoutingDataSource routing)) {
+            log.warn("event=shard.schema.skipped reason=notRouting");
+            return;
+        }
+        for (int shard = 1; shard < routing.size(); shard++) {
+            DataSource target = routing.shard(shard);
+            LocalContainerEntityManagerFactoryBean factory = entityManagerFactoryBuilder.dataSource(target)
+                    .packages(Appointment.class)
+                    .persistenceUnit("shard-" + shard)
+                    .properties(Map.of("hibernate.hbm2ddl.auto", "update"))
+                    .build();
+            factory.afterPropertiesSet();
+            factory.destroy();
+            IdSequenceAligner.align(new JdbcTemplate(target), target, shard * ShardRouter.ID_RANGE,
+                    (shard + 1) * ShardRouter.ID_RANGE, SHARDED_TABLES);
+            log.info("event=shard.schema.updated shard={}", shard);
+        }
+    }
+}
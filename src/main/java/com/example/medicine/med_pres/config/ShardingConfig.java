@@ -0,0 +1,85 @@
+package com.example.medicine.med_pres.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.env.Environment;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * Splits appointments and prescriptions across databases by clinic when {@code sharding.urls}
+ * lists the extra databases; without it everything stays on the single configured database.
+ *
+ * The application DataSource is wrapped in a {@link ShardRoutingDataSource} whose shard 0 is the
+ * original DataSource. Which clinic lives where is decided by {@code ShardRouter}; schemas, id
+ * ranges and reference rows on the extra shards are prepared by {@link ShardSchemaInitializer}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "sharding.urls")
+public class ShardingConfig {
+
+    @Bean
+    public static BeanPostProcessor shardRoutingPostProcessor(Environment environment) {
+        return new ShardRoutingPostProcessor(environment);
+    }
+
+    // Open-in-view would otherwise keep the first connection, and so the first shard, for the whole request
+    @Bean
+    public HibernatePropertiesCustomizer releaseShardConnectionsAfterTransaction() {
+        return properties -> properties.put("hibernate.connection.handling_mode",
+                "DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION");
+    }
+
+    /** Wraps the {@code dataSource} bean; ordered after {@link ConnectionLimiter} so the home pool keeps its limiter. */
+    static class ShardRoutingPostProcessor implements BeanPostProcessor, Ordered {
+
+        private final Environment environment;
+
+        ShardRoutingPostProcessor(Environment environment) {
+            this.environment = environment;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            if (!"dataSource".equals(beanName) || !(bean instanceof DataSource home)) {
+                return bean;
+            }
+            List<String> urls = List.of(environment.getRequiredProperty("sharding.urls", String[].class));
+            String username = environment.getProperty("sharding.username", environment.getProperty("spring.datasource.username", ""));
+            String password = environment.getProperty("sharding.password", environment.getProperty("spring.datasource.password", ""));
+            int poolSize = environment.getProperty("sharding.pool-size", Integer.class, 10);
+            boolean limited = environment.getProperty("spring.threads.virtual.enabled", Boolean.class, false);
+            Duration acquireTimeout = environment.getProperty("datasource.limiter.acquire-timeout", Duration.class,
+                    Duration.ofSeconds(60));
+
+            List<DataSource> shards = new ArrayList<>();
+            List<AutoCloseable> pools = new ArrayList<>();
+            for (int i = 0; i < urls.size(); i++) {
+                HikariDataSource pool = new HikariDataSource();
+                pool.setPoolName("shard-" + (i + 1));
+                pool.setJdbcUrl(urls.get(i).trim());
+                pool.setUsername(username);
+                pool.setPassword(password);
+                pool.setMaximumPoolSize(poolSize);
+                pools.add(pool);
+                shards.add(limited ? new ConnectionLimiter.LimitedDataSource(pool, poolSize, acquireTimeout) : pool);
+            }
+            return new ShardRoutingDataSource(home, shards, pools);
+        }
+
+        @Override
+        public int getOrder() {
+            return Ordered.LOWEST_PRECEDENCE;
+        }
+    }
+}
@@ -1,79 +1,127 @@
 package com.example.medicine.med_pres.controller;
        
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
 
 import java.util.Map;
 
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.dto.AppointmentPage;
+import com.example.medicine.med_pres.dto.AppointmentView;
+import com.example.medicine.med_pres.dto.DayStatusChange;
 import com.example.medicine.med_pres.model.Appointment;
-import com.example.medicine.med_pres.model.Doctor;
-import com.example.medicine.med_pres.model.User;
 import com.example.medicine.med_pres.service.AppointmentService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/appointments")
 public class AppointmentController {
+    private static final SampledLogger log = new SampledLogger(AppointmentController.class, 100);
 
     private final AppointmentService appointmentService;
+    private final ObjectMapper objectMapper;
 
-    public AppointmentController(AppointmentService appointmentService) {
+    public AppointmentController(AppointmentService appointmentService, ObjectMapper objectMapper) {
         this.appointmentService = appointmentService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
     @PreAuthorize("hasRole('PATIENT') or hasRole('ADMIN')")
     public ResponseEntity<Appointment> createAppointment(@RequestBody Appointment appointment, Authentication authentication) {
-        System.out.println("DEBUG: Creating appointment...");
-        
         // Get current patient from JWT token
         String patientEmail = authentication.getName();
-        System.out.println("DEBUG: Patient email from JWT: " + patientEmail);
         
         Appointment savedAppointment = appointmentService.createAppointmentForPatient(appointment, patientEmail);
-        System.out.println("DEBUG: Appointment created with ID: " + savedAppointment.getId());
-        System.out.println("DEBUG: Actual Patient ID used: " + savedAppointment.getPatient().getId());
-        System.out.println("DEBUG: Patient Name: " + savedAppointment.getPatient().getName());
         
         return ResponseEntity.ok(savedAppointment);
     }
 
+    @PostMapping("/batch")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> createAppointments(@RequestBody List<Appointment> appointments) {
+        List<Appointment> saved = appointmentService.createAppointments(appointments);
+        List<Long> ids = saved.stream().map(Appointment::getId).toList();
+        return ResponseEntity.ok(Map.of("count", ids.size(), "ids", ids));
+    }
+
     @GetMapping
     @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR')")
-    public ResponseEntity<List<Appointment>> getAllAppointments() {
-        List<Appointment> appointments = appointmentService.getAllAppointments();
-        System.out.println("DEBUG: Found " + appointments.size() + " appointments");
-        for (Appointment apt : appointments) {
-            System.out.println("DEBUG: Appointment ID: " + apt.getId() + ", Patient: " + 
-                (apt.getPatient() != null ? apt.getPatient().getName() : "null") + 
-                ", Doctor: " + (apt.getDoctor() != null ? apt.getDoctor().getUser().getName() : "null") +
-                ", Status: " + apt.getStatus());
-        }
+    public ResponseEntity<List<AppointmentView>> getAllAppointments() {
+        List<AppointmentView> appointments = appointmentService.getAllAppointments();
+        log.info("event=appointments.all count={}", appointments.size());
         return ResponseEntity.ok(appointments);
     }
     
+    // Admin export: one JSON appointment per line, streamed from a database cursor
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportAppointments(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Appointment.Status status,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out, gzip)) {
+                appointmentService.exportAppointments(from, to, status, writer::write);
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(NdjsonWriter.NDJSON);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
     @GetMapping("/my-appointments")
     @PreAuthorize("hasRole('DOCTOR') or hasRole('PATIENT')")
-    public ResponseEntity<List<Appointment>> getMyAppointments(Authentication authentication) {
+    public ResponseEntity<List<AppointmentView>> getMyAppointments(Authentication authentication, WebRequest webRequest) {
         String userEmail = authentication.getName();
         String role = authentication.getAuthorities().iterator().next().getAuthority();
+        boolean doctor = "ROLE_DOCTOR".equals(role);
+
+        // Unchanged since the client's copy: answer 304 from the change stamp alone
+        String etag = doctor ? appointmentService.doctorAppointmentsTag(userEmail)
+                : appointmentService.patientAppointmentsTag(userEmail);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().cacheControl(CacheControl.noCache().cachePrivate()).eTag(etag);
         
-        if ("ROLE_DOCTOR".equals(role)) {
-            System.out.println("DEBUG: Getting appointments for doctor: " + userEmail);
-            List<Appointment> doctorAppointments = appointmentService.getAppointmentsByDoctorEmail(userEmail);
-            System.out.println("DEBUG: Found " + doctorAppointments.size() + " appointments for this doctor");
-            return ResponseEntity.ok(doctorAppointments);
+        if (doctor) {
+            List<AppointmentView> doctorAppointments = appointmentService.getAppointmentsByDoctorEmail(userEmail);
+            return response.body(doctorAppointments);
         } else {
-            System.out.println("DEBUG: Getting appointments for patient: " + userEmail);
-            List<Appointment> patientAppointments = appointmentService.getAppointmentsByPatientEmail(userEmail);
-            System.out.println("DEBUG: Found " + patientAppointments.size() + " appointments for this patient");
-            return ResponseEntity.ok(patientAppointments);
+            List<AppointmentView> patientAppointments = appointmentService.getAppointmentsByPatientEmail(userEmail);
+            return response.body(patientAppointments);
         }
     }
 
+    @GetMapping("/my-appointments/page")
+    @PreAuthorize("hasRole('DOCTOR') or hasRole('PATIENT')")
+    public ResponseEntity<AppointmentPage> getMyAppointmentsPage(Authentication authentication,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        String userEmail = authentication.getName();
+        String role = authentication.getAuthorities().iterator().next().getAuthority();
+
+        if ("ROLE_DOCTOR".equals(role)) {
+            return ResponseEntity.ok(appointmentService.getAppointmentPageByDoctorEmail(userEmail, cursor, size));
+        }
+        return ResponseEntity.ok(appointmentService.getAppointmentPageByPatientEmail(userEmail, cursor, size));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Appointment> getAppointmentById(@PathVariable Long id) {
         return appointmentService.getAppointmentById(id)
@@ -82,12 +130,12 @@ public class AppointmentController {
     }
 
     @GetMapping("/patient/{patientId}")
-    public ResponseEntity<List<Appointment>> getAppointmentsByPatient(@PathVariable User patientId) {
+    public ResponseEntity<List<AppointmentView>> getAppointmentsByPatient(@PathVariable Long patientId) {
         return ResponseEntity.ok(appointmentService.getAppointmentsByPatient(patientId));
     }
 
     @GetMapping("/doctor/{doctorId}")
-    public ResponseEntity<List<Appointment>> getAppointmentsByDoctor(@PathVariable Doctor doctorId) {
+    public ResponseEntity<List<AppointmentView>> getAppointmentsByDoctor(@PathVariable Long doctorId) {
         return ResponseEntity.ok(appointmentService.getAppointmentsByDoctor(doctorId));
     }
 
@@ -97,14 +145,25 @@ public class AppointmentController {
         return ResponseEntity.ok(appointmentService.updateAppointment(id, appointment));
     }
     
+    // 409 with the current status when the appointment was moved meanwhile or cannot make this move
     @PutMapping("/{id}/status")
     @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR')")
     public ResponseEntity<Appointment> updateAppointmentStatus(@PathVariable Long id, @RequestBody Map<String, String> statusUpdate) {
         String status = statusUpdate.get("status");
-        Appointment updatedAppointment = appointmentService.updateAppointmentStatus(id, status);
+        Appointment updatedAppointment = appointmentService.updateAppointmentStatus(id, status, statusUpdate.get("expectedStatus"));
         return ResponseEntity.ok(updatedAppointment);
     }
 
+    // Moves a doctor's whole day, e.g. approving every pending request or cancelling the day
+    @PutMapping("/status")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR')")
+    public ResponseEntity<Map<String, Object>> updateDayStatus(@RequestBody DayStatusChange change, Authentication authentication) {
+        String role = authentication.getAuthorities().iterator().next().getAuthority();
+        String doctorEmail = "ROLE_DOCTOR".equals(role) ? authentication.getName() : null;
+        List<Long> ids = appointmentService.updateDayStatus(change, doctorEmail).stream().map(Appointment::getId).toList();
+        return ResponseEntity.ok(Map.of("count", ids.size(), "ids", ids));
+    }
+
     @DeleteMapping("/{id}")
     @PreAuthorize("hasRole('ADMIN')")
     public ResponseEntity<Void> deleteAppointment(@PathVariable Long id) {
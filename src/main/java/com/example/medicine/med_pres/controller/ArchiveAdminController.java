@@ -0,0 +1,28 @@
+package com.example.medicine.med_pres.controller;
+
+import java.util.Map;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import com.example.medicine.med_pres.service.ArchiveService;
+
+@RestController
+@RequestMapping("/api/admin/archive")
+@CrossOrigin(origins = {"http://localhost:5173", "http://127.0.0.1:5173"})
+public class ArchiveAdminController {
+
+    private final ArchiveService archiveService;
+
+    public ArchiveAdminController(ArchiveService archiveService) {
+        this.archiveService = archiveService;
+    }
+
+    // Starts an archive run now instead of at the scheduled time; it continues in the background
+    @PostMapping("/run")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> run() {
+        return ResponseEntity.accepted().body(Map.of("started", archiveService.start()));
+    }
+}
@@ -1,12 +1,19 @@
 package com.example.medicine.med_pres.controller;
 
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.exception.TooManyRequestsException;
 import com.example.medicine.med_pres.model.User;
 import com.example.medicine.med_pres.model.Doctor;
 import com.example.medicine.med_pres.service.JwtService;
+import com.example.medicine.med_pres.service.LoginThrottle;
+import com.example.medicine.med_pres.service.PasswordHashingService;
+import com.example.medicine.med_pres.service.RefreshTokenService;
+import com.example.medicine.med_pres.service.TokenRevocationService;
 import com.example.medicine.med_pres.service.UserService;
 import com.example.medicine.med_pres.service.DoctorService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.bind.annotation.CrossOrigin;
 
@@ -16,48 +23,95 @@ import java.util.Map;
 @RequestMapping("/api/auth")
 @CrossOrigin(origins = {"http://localhost:5173", "http://127.0.0.1:5173"})
 public class AuthController {
+    private static final SampledLogger log = new SampledLogger(AuthController.class, 100);
 
     private final UserService userService;
     private final JwtService jwtService;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashing;
+    private final LoginThrottle loginThrottle;
     private final DoctorService doctorService;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationService tokenRevocations;
 
-    public AuthController(UserService userService, JwtService jwtService, PasswordEncoder passwordEncoder, DoctorService doctorService) {
+    public AuthController(UserService userService, JwtService jwtService, PasswordHashingService passwordHashing,
+            LoginThrottle loginThrottle, DoctorService doctorService, RefreshTokenService refreshTokenService,
+            TokenRevocationService tokenRevocations) {
         this.userService = userService;
         this.jwtService = jwtService;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHashing = passwordHashing;
+        this.loginThrottle = loginThrottle;
         this.doctorService = doctorService;
+        this.refreshTokenService = refreshTokenService;
+        this.tokenRevocations = tokenRevocations;
     }
 
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody Map<String, String> loginRequest) {
-        System.out.println("DEBUG: Login attempt for email: " + loginRequest.get("email"));
+    public ResponseEntity<?> login(@RequestBody Map<String, String> loginRequest, HttpServletRequest request) {
         String email = loginRequest.get("email");
         String password = loginRequest.get("password");
+        loginThrottle.checkIp(request.getRemoteAddr());
+        loginThrottle.checkAccount(email);
 
         User user = userService.findByEmail(email);
-        System.out.println("DEBUG: User found: " + (user != null));
-        if (user != null && passwordEncoder.matches(password, user.getPasswordHash())) {
-            String token = jwtService.generateToken(user.getEmail(), user.getRole().toString());
-            System.out.println("DEBUG: Login successful, token generated");
-            return ResponseEntity.ok(Map.of(
-                "token", token, 
-                "role", user.getRole(),
-                "name", user.getName()
-            ));
+        if (user != null && passwordHashing.matches(password, user.getPasswordHash())) {
+            loginThrottle.recordSuccess(email);
+            if (passwordHashing.needsRehash(user.getPasswordHash())) {
+                Long userId = user.getId();
+                passwordHashing.rehashInBackground(password, hash -> userService.updatePasswordHash(userId, hash));
+            }
+            log.info("event=login.succeeded userId={}", user.getId());
+            return ResponseEntity.ok(tokenResponse(user, refreshTokenService.issue(user.getId())));
         }
-        System.out.println("DEBUG: Login failed - invalid credentials");
+        loginThrottle.recordFailure(email);
+        log.info("event=login.failed userId={} userFound={}", user != null ? user.getId() : null, user != null);
         return ResponseEntity.badRequest().body("Invalid credentials");
     }
 
+    // Trade a refresh token for a new access token and a new refresh token; the old one stops working
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody Map<String, String> refreshRequest, HttpServletRequest request) {
+        loginThrottle.checkIp(request.getRemoteAddr());
+        return refreshTokenService.rotate(refreshRequest.get("refreshToken"))
+                .flatMap(rotation -> userService.getUserById(rotation.userId())
+                        .map(user -> ResponseEntity.ok((Object) tokenResponse(user, rotation.refreshToken()))))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid refresh token"));
+    }
+
+    // Revoke the presented access token and the refresh token family it came with
+    @PostMapping("/logout")
+    public ResponseEntity<Void> logout(@RequestBody(required = false) Map<String, String> logoutRequest,
+            @RequestHeader(value = "Authorization", required = false) String authHeader) {
+        if (authHeader != null && authHeader.startsWith("Bearer ")) {
+            JwtService.VerifiedToken token = jwtService.verify(authHeader.substring(7));
+            if (token != null) {
+                tokenRevocations.revokeToken(token.tokenId(), token.expiresAtMillis());
+            }
+        }
+        if (logoutRequest != null) {
+            refreshTokenService.revoke(logoutRequest.get("refreshToken"));
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    private Map<String, Object> tokenResponse(User user, String refreshToken) {
+        return Map.of(
+            "token", jwtService.generateToken(user.getEmail(), user.getRole().toString()),
+            "refreshToken", refreshToken,
+            "expiresIn", jwtService.getAccessTokenTtlSeconds(),
+            "role", user.getRole(),
+            "name", user.getName()
+        );
+    }
+
     @PostMapping("/register")
-    public ResponseEntity<?> register(@RequestBody Map<String, Object> registrationData) {
+    public ResponseEntity<?> register(@RequestBody Map<String, Object> registrationData, HttpServletRequest request) {
         String email = (String) registrationData.get("email");
-        System.out.println("DEBUG: Registration attempt for email: " + email);
+        loginThrottle.checkIp(request.getRemoteAddr());
         
         // Check if user already exists
-        if (userService.findByEmail(email) != null) {
-            System.out.println("DEBUG: Email already exists: " + email);
+        User existing = userService.findByEmail(email);
+        if (existing != null) {
+            log.info("event=register.duplicate userId={}", existing.getId());
             return ResponseEntity.badRequest().body("Email already registered. Please use a different email or login.");
         }
         
@@ -66,19 +120,14 @@ public class AuthController {
             User user = new User();
             user.setName((String) registrationData.get("name"));
             user.setEmail(email);
-            user.setPasswordHash(passwordEncoder.encode((String) registrationData.get("passwordHash")));
+            user.setPasswordHash(passwordHashing.encode((String) registrationData.get("passwordHash")));
             user.setRole(User.Role.valueOf((String) registrationData.get("role")));
             
             User savedUser = userService.createUser(user);
-            System.out.println("DEBUG: User registered successfully with ID: " + savedUser.getId());
+            log.info("event=register.succeeded userId={} role={}", savedUser.getId(), savedUser.getRole());
             
             // If doctor, create doctor profile
             if ("DOCTOR".equals(registrationData.get("role"))) {
-                System.out.println("DEBUG: Creating doctor profile...");
-                System.out.println("DEBUG: Specialization: " + registrationData.get("specialization"));
-                System.out.println("DEBUG: Clinic: " + registrationData.get("clinicName"));
-                System.out.println("DEBUG: Location: " + registrationData.get("location"));
-                
                 Doctor doctor = new Doctor();
                 doctor.setUser(savedUser);
                 doctor.setSpecialization((String) registrationData.get("specialization"));
@@ -87,14 +136,14 @@ public class AuthController {
                 doctor.setAvailableSlots("[\"09:00\",\"10:30\",\"14:00\",\"15:30\"]"); // Default slots
                 
                 Doctor savedDoctor = doctorService.createDoctor(doctor);
-                System.out.println("DEBUG: Doctor profile created successfully!");
-                System.out.println("DEBUG: Doctor ID: " + savedDoctor.getId());
-                System.out.println("DEBUG: Linked to User ID: " + savedUser.getId());
+                log.info("event=register.doctorProfile doctorId={} userId={}", savedDoctor.getId(), savedUser.getId());
             }
             
             return ResponseEntity.ok(Map.of("message", "User registered successfully", "userId", savedUser.getId()));
+        } catch (TooManyRequestsException e) {
+            throw e;
         } catch (Exception e) {
-            System.out.println("DEBUG: Registration failed: " + e.getMessage());
+            log.warn("event=register.failed error={}", e.getMessage());
             return ResponseEntity.badRequest().body("Registration failed: " + e.getMessage());
         }
     }
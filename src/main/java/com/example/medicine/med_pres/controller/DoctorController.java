@@ -1,7 +1,14 @@
 package com.example.medicine.med_pres.controller;
 
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
 import java.util.List;
+import java.util.Map;
 
+import org.springframework.format.annotation.DateTimeFormat;
+
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -10,11 +17,17 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 // import org.springframework.security.core.Authentication;
 // import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
+import com.example.medicine.med_pres.dto.DaySlots;
+import com.example.medicine.med_pres.dto.DoctorSearchResult;
+import com.example.medicine.med_pres.dto.DoctorView;
 import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.service.AvailabilityService;
 import com.example.medicine.med_pres.service.DoctorService;
 
 import io.swagger.v3.oas.annotations.parameters.RequestBody;
@@ -31,9 +44,11 @@ public class DoctorController {
     
 
     private final DoctorService doctorService;
+    private final AvailabilityService availabilityService;
 
-    public DoctorController(DoctorService doctorService) {
+    public DoctorController(DoctorService doctorService, AvailabilityService availabilityService) {
         this.doctorService = doctorService;
+        this.availabilityService = availabilityService;
     }
 
     @PostMapping
@@ -44,8 +59,25 @@ public class DoctorController {
 
     @GetMapping
     @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR') or hasRole('PATIENT')")
-    public ResponseEntity<List<Doctor>> getAllDoctors() {
-        return ResponseEntity.ok(doctorService.getAllDoctors());
+    public ResponseEntity<List<DoctorView>> getAllDoctors(WebRequest webRequest) {
+        // Unchanged since the client's copy: answer 304 from the change stamp alone
+        String etag = doctorService.getAllDoctorsTag();
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache().cachePrivate()).eTag(etag)
+                .body(doctorService.getAllDoctors());
+    }
+
+    @GetMapping("/search")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR') or hasRole('PATIENT')")
+    public ResponseEntity<DoctorSearchResult> searchDoctors(@RequestParam(required = false) String q,
+            @RequestParam(required = false) String specialization,
+            @RequestParam(required = false) String location,
+            @RequestParam(required = false) String clinicName,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(doctorService.searchDoctors(q, specialization, location, clinicName, page, size));
     }
 
     @GetMapping("/{id}")
@@ -67,4 +99,41 @@ public class DoctorController {
         doctorService.deleteDoctor(id);
         return ResponseEntity.noContent().build();
     }
-}
\ No newline at end of file
+
+    @GetMapping("/{id}/free-slots")
+    public ResponseEntity<List<DaySlots>> getFreeSlots(@PathVariable Long id,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(availabilityService.getFreeSlots(id, from, to));
+    }
+
+    @GetMapping("/{id}/schedule")
+    public ResponseEntity<Map<DayOfWeek, List<LocalTime>>> getSchedule(@PathVariable Long id) {
+        return ResponseEntity.ok(availabilityService.getWeeklyTemplate(id));
+    }
+
+    @PutMapping("/{id}/schedule")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR')")
+    public ResponseEntity<Map<DayOfWeek, List<LocalTime>>> updateSchedule(@PathVariable Long id,
+            @org.springframework.web.bind.annotation.RequestBody Map<DayOfWeek, List<LocalTime>> template) {
+        availabilityService.setWeeklyTemplate(id, template);
+        return ResponseEntity.ok(availabilityService.getWeeklyTemplate(id));
+    }
+
+    @PutMapping("/{id}/schedule/overrides/{date}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR')")
+    public ResponseEntity<Void> overrideSchedule(@PathVariable Long id,
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @org.springframework.web.bind.annotation.RequestBody List<LocalTime> times) {
+        availabilityService.setOverride(id, date, times);
+        return ResponseEntity.noContent().build();
+    }
+
+    @DeleteMapping("/{id}/schedule/overrides/{date}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR')")
+    public ResponseEntity<Void> removeScheduleOverride(@PathVariable Long id,
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        availabilityService.removeOverride(id, date);
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.medicine.med_pres.controller;
+
+import com.example.medicine.med_pres.model.User;
+import com.example.medicine.med_pres.service.JwtService;
+import com.example.medicine.med_pres.service.SubscriptionRegistry;
+import com.example.medicine.med_pres.service.UserService;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/api/events")
+@CrossOrigin(origins = {"http://localhost:5173", "http://127.0.0.1:5173"})
+public class EventController {
+
+    private final SubscriptionRegistry subscriptions;
+    private final UserService userService;
+
+    public EventController(SubscriptionRegistry subscriptions, UserService userService) {
+        this.subscriptions = subscriptions;
+        this.userService = userService;
+    }
+
+    // Pushes appointment and prescription changes of the caller; reconnecting with Last-Event-ID resumes the stream.
+    // The stream ends when the access token expires or is revoked, so the client reconnects with a current one.
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @PreAuthorize("hasRole('PATIENT') or hasRole('DOCTOR') or hasRole('ADMIN')")
+    public SseEmitter streamEvents(Authentication authentication,
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        User user = userService.findByEmail(authentication.getName());
+        if (user == null) {
+            throw new RuntimeException("User not found with email: " + authentication.getName());
+        }
+        JwtService.VerifiedToken token = authentication.getDetails() instanceof JwtService.VerifiedToken verified ? verified : null;
+        return subscriptions.subscribe(user.getId(), lastEventId, token);
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.medicine.med_pres.controller;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.http.MediaType;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+/**
+ * Writes one JSON document per line to a response stream, optionally gzip-compressed.
+ * Output is flushed every {@code FLUSH_EVERY} rows so clients see data while the export runs.
+ */
+class NdjsonWriter implements Closeable {
+
+    static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+    private static final int FLUSH_EVERY = 1000;
+
+    private final OutputStream target;
+    private final GZIPOutputStream gzip;
+    private final JsonGenerator json;
+    private final ObjectWriter writer;
+    private long rows;
+
+    NdjsonWriter(ObjectMapper objectMapper, OutputStream out, boolean compress) throws IOException {
+        this.gzip = compress ? new GZIPOutputStream(out, 64 * 1024, true) : null;
+        this.target = compress ? gzip : out;
+        this.json = objectMapper.getFactory().createGenerator(target);
+        this.json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Lines are terminated explicitly, so no extra separator between root values
+        this.json.setRootValueSeparator(new SerializedString(""));
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    void write(Object row) {
+        try {
+            writer.writeValue(json, row);
+            json.writeRaw('\n');
+            if (++rows % FLUSH_EVERY == 0) {
+                json.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        json.close();
+        if (gzip != null) {
+            gzip.finish();
+        }
+        target.flush();
+    }
+}
@@ -1,11 +1,17 @@
 package com.example.medicine.med_pres.controller;
 
+import com.example.medicine.med_pres.dto.PrescriptionView;
 import com.example.medicine.med_pres.model.Prescription;
 import com.example.medicine.med_pres.service.PrescriptionService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.util.List;
 
@@ -15,39 +21,69 @@ import java.util.List;
 public class PrescriptionController {
 
     private final PrescriptionService prescriptionService;
+    private final ObjectMapper objectMapper;
 
-    public PrescriptionController(PrescriptionService prescriptionService) {
+    public PrescriptionController(PrescriptionService prescriptionService, ObjectMapper objectMapper) {
         this.prescriptionService = prescriptionService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping
     @PreAuthorize("hasRole('DOCTOR') or hasRole('ADMIN')")
     public ResponseEntity<Prescription> createPrescription(@RequestBody java.util.Map<String, Object> prescriptionData, Authentication authentication) {
         String doctorEmail = authentication.getName();
-        System.out.println("DEBUG: Creating prescription by doctor: " + doctorEmail);
         
         Prescription prescription = prescriptionService.createPrescriptionForDoctor(prescriptionData, doctorEmail);
-        System.out.println("DEBUG: Prescription created with ID: " + prescription.getId());
         
         return ResponseEntity.ok(prescription);
     }
 
+    @PostMapping("/batch")
+    @PreAuthorize("hasRole('DOCTOR') or hasRole('ADMIN')")
+    public ResponseEntity<java.util.Map<String, Object>> createPrescriptions(@RequestBody List<java.util.Map<String, Object>> prescriptionData, Authentication authentication) {
+        List<Prescription> saved = prescriptionService.createPrescriptionsForDoctor(prescriptionData, authentication.getName());
+        List<Long> ids = saved.stream().map(Prescription::getId).toList();
+        return ResponseEntity.ok(java.util.Map.of("count", ids.size(), "ids", ids));
+    }
+
     @GetMapping
     @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR')")
-    public ResponseEntity<List<Prescription>> getAllPrescriptions() {
+    public ResponseEntity<List<PrescriptionView>> getAllPrescriptions() {
         return ResponseEntity.ok(prescriptionService.getAllPrescriptions());
     }
     
+    // Admin export: one JSON prescription per line, streamed from a database cursor
+    @GetMapping("/export")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StreamingResponseBody> exportPrescriptions(
+            @RequestParam(required = false) Long doctorId,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out, gzip)) {
+                prescriptionService.exportPrescriptions(doctorId, writer::write);
+            }
+        };
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(NdjsonWriter.NDJSON);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+
     @GetMapping("/my-prescriptions")
     @PreAuthorize("hasRole('PATIENT')")
-    public ResponseEntity<List<Prescription>> getMyPrescriptions(Authentication authentication) {
+    public ResponseEntity<List<PrescriptionView>> getMyPrescriptions(Authentication authentication, WebRequest webRequest) {
         String patientEmail = authentication.getName();
-        System.out.println("DEBUG: Getting prescriptions for patient: " + patientEmail);
+
+        // Unchanged since the client's copy: answer 304 from the change stamp alone
+        String etag = prescriptionService.patientPrescriptionsTag(patientEmail);
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
         
-        List<Prescription> patientPrescriptions = prescriptionService.getPrescriptionsByPatientEmail(patientEmail);
-        System.out.println("DEBUG: Found " + patientPrescriptions.size() + " prescriptions for this patient");
+        List<PrescriptionView> patientPrescriptions = prescriptionService.getPrescriptionsByPatientEmail(patientEmail);
         
-        return ResponseEntity.ok(patientPrescriptions);
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache().cachePrivate()).eTag(etag).body(patientPrescriptions);
     }
 
     @GetMapping("/{id}")
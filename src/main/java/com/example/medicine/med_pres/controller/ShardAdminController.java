@@ -0,0 +1,51 @@
+package com.example.medicine.med_pres.controller;
+
+import java.util.List;
+
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+
+import com.example.medicine.med_pres.dto.ShardMove;
+import com.example.medicine.med_pres.dto.ShardStatus;
+import com.example.medicine.med_pres.model.ClinicShard;
+import com.example.medicine.med_pres.service.ShardRebalancer;
+
+@RestController
+@RequestMapping("/api/admin/shards")
+@CrossOrigin(origins = {"http://localhost:5173", "http://127.0.0.1:5173"})
+public class ShardAdminController {
+
+    private final ShardRebalancer rebalancer;
+
+    public ShardAdminController(ShardRebalancer rebalancer) {
+        this.rebalancer = rebalancer;
+    }
+
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<ShardStatus>> getShards() {
+        return ResponseEntity.ok(rebalancer.status());
+    }
+
+    @GetMapping("/clinics")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<ClinicShard>> getClinics() {
+        return ResponseEntity.ok(rebalancer.placements());
+    }
+
+    // Move one clinic; the call returns once its rows are on the target shard
+    @PostMapping("/clinics/{clinicKey}/move")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<ShardMove> moveClinic(@PathVariable String clinicKey, @RequestParam int to) {
+        return ResponseEntity.ok(rebalancer.moveClinic(clinicKey, to));
+    }
+
+    // Even out rows per shard; dryRun only returns the plan
+    @PostMapping("/rebalance")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<ShardMove>> rebalance(@RequestParam(defaultValue = "10") int maxMoves,
+            @RequestParam(defaultValue = "true") boolean dryRun) {
+        return ResponseEntity.ok(rebalancer.rebalance(maxMoves, dryRun));
+    }
+}
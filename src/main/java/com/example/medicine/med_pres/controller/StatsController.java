@@ -0,0 +1,61 @@
+package com.example.medicine.med_pres.controller;
+
+import java.time.LocalDate;
+
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+
+import com.example.medicine.med_pres.dto.DoctorStats;
+import com.example.medicine.med_pres.dto.StatsOverview;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.service.DashboardCounters;
+import com.example.medicine.med_pres.service.DoctorService;
+
+@RestController
+@RequestMapping("/api/stats")
+@CrossOrigin(origins = {"http://localhost:5173", "http://127.0.0.1:5173"})
+public class StatsController {
+    // Days shown when the client does not ask for others: the past and the coming month
+    private static final int DEFAULT_DAYS_EACH_WAY = 30;
+
+    private final DashboardCounters counters;
+    private final DoctorService doctorService;
+
+    public StatsController(DashboardCounters counters, DoctorService doctorService) {
+        this.counters = counters;
+        this.doctorService = doctorService;
+    }
+
+    // Doctors may only see their own dashboard
+    @GetMapping("/doctor/{id}")
+    @PreAuthorize("hasRole('ADMIN') or hasRole('DOCTOR')")
+    public ResponseEntity<DoctorStats> getDoctorStats(@PathVariable Long id, Authentication authentication,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        String role = authentication.getAuthorities().iterator().next().getAuthority();
+        if ("ROLE_DOCTOR".equals(role)) {
+            Long own = doctorService.getDoctorByUserEmail(authentication.getName()).map(Doctor::getId).orElse(null);
+            if (!id.equals(own)) {
+                throw new AccessDeniedException("Doctors can only see their own dashboard");
+            }
+        }
+        LocalDate today = LocalDate.now();
+        return ResponseEntity.ok(counters.doctor(id, from != null ? from : today.minusDays(DEFAULT_DAYS_EACH_WAY),
+                to != null ? to : today.plusDays(DEFAULT_DAYS_EACH_WAY)));
+    }
+
+    @GetMapping("/overview")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<StatsOverview> getOverview(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "20") int top) {
+        LocalDate today = LocalDate.now();
+        return ResponseEntity.ok(counters.overview(from != null ? from : today.minusDays(DEFAULT_DAYS_EACH_WAY),
+                to != null ? to : today.plusDays(DEFAULT_DAYS_EACH_WAY), Math.min(top, 100)));
+    }
+}
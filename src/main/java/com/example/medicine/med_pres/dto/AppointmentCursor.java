@@ -0,0 +1,35 @@
+package com.example.medicine.med_pres.dto;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Base64;
+
+/**
+ * Keyset position in an appointment listing ordered by date, time and id.
+ * Travels to the client as an opaque URL-safe token.
+ */
+public record AppointmentCursor(LocalDate date, LocalTime time, Long id) {
+
+    // Before every appointment: 1000-01-01 is the earliest DATE MySQL stores, and ids start at 1
+    public static final AppointmentCursor START = new AppointmentCursor(LocalDate.of(1000, 1, 1), LocalTime.MIDNIGHT, 0L);
+
+    public static AppointmentCursor of(AppointmentView appointment) {
+        return new AppointmentCursor(appointment.appointmentDate(), appointment.appointmentTime(), appointment.id());
+    }
+
+    public String encode() {
+        String raw = date + "|" + time + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static AppointmentCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\|");
+            return new AppointmentCursor(LocalDate.parse(parts[0]), LocalTime.parse(parts[1]), Long.valueOf(parts[2]));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid appointment cursor: " + token);
+        }
+    }
+}
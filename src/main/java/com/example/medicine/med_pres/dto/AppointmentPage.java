@@ -0,0 +1,19 @@
+package com.example.medicine.med_pres.dto;
+
+import java.util.List;
+
+/**
+ * One page of appointments plus the cursor for the next page
+ * ({@code null} once the listing is exhausted).
+ */
+public record AppointmentPage(List<AppointmentView> items, String nextCursor) {
+
+    // Builds a page from a query that fetched up to size + 1 rows; the extra row only signals that more exist
+    public static AppointmentPage of(List<AppointmentView> fetched, int size) {
+        if (fetched.size() <= size) {
+            return new AppointmentPage(fetched, null);
+        }
+        List<AppointmentView> items = fetched.subList(0, size);
+        return new AppointmentPage(items, AppointmentCursor.of(items.get(size - 1)).encode());
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.medicine.med_pres.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import com.example.medicine.med_pres.model.Appointment;
+
+/**
+ * Appointment read model. Keeps the nested patient/doctor shape the frontend reads, but is
+ * filled from a single flat select instead of an entity graph.
+ */
+public record AppointmentView(Long id, String reason, LocalDate appointmentDate, LocalTime appointmentTime,
+        Appointment.Status status, UserSummary patient, DoctorSummary doctor) {
+
+    // Flat constructor used by JPQL constructor expressions
+    public AppointmentView(Long id, String reason, LocalDate appointmentDate, LocalTime appointmentTime,
+            Appointment.Status status, Long patientId, String patientName, String patientEmail,
+            Long doctorId, String specialization, String clinicName, String location,
+            Long doctorUserId, String doctorName, String doctorEmail) {
+        this(id, reason, appointmentDate, appointmentTime, status,
+                new UserSummary(patientId, patientName, patientEmail),
+                new DoctorSummary(doctorId, specialization, clinicName, location,
+                        new UserSummary(doctorUserId, doctorName, doctorEmail)));
+    }
+}
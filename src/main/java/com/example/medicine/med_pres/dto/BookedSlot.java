@@ -0,0 +1,10 @@
+package com.example.medicine.med_pres.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Date and time of an appointment that currently holds a doctor's slot.
+ */
+public record BookedSlot(LocalDate date, LocalTime time) {
+}
@@ -0,0 +1,8 @@
+package com.example.medicine.med_pres.dto;
+
+/**
+ * Server-sent notice that an appointment or prescription of the subscriber changed. Carries just
+ * enough to decide what to refetch; status is set for appointments only.
+ */
+public record ChangeEvent(long id, String entity, String action, Long recordId, String status) {
+}
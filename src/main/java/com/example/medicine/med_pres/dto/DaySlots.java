@@ -0,0 +1,11 @@
+package com.example.medicine.med_pres.dto;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Free slot start times of one doctor on one day.
+ */
+public record DaySlots(LocalDate date, List<LocalTime> times) {
+}
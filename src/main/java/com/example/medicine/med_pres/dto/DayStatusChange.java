@@ -0,0 +1,11 @@
+package com.example.medicine.med_pres.dto;
+
+import java.time.LocalDate;
+
+/**
+ * Moves every appointment a doctor has on one day to a new status. Only appointments the state
+ * machine allows to make that move are changed; expectedStatus narrows them to one current status.
+ * Doctors move their own day and leave doctorId out; admins name the doctor.
+ */
+public record DayStatusChange(Long doctorId, LocalDate date, String status, String expectedStatus) {
+}
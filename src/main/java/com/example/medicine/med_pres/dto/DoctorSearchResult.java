@@ -0,0 +1,12 @@
+package com.example.medicine.med_pres.dto;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One page of doctor search hits, the total hit count and per-field facet counts
+ * (field -> value -> number of matching doctors) computed over all hits.
+ */
+public record DoctorSearchResult(List<DoctorView> items, int total, int page, int size,
+        Map<String, Map<String, Integer>> facets) {
+}
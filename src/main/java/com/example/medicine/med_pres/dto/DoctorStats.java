@@ -0,0 +1,17 @@
+package com.example.medicine.med_pres.dto;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+
+import com.example.medicine.med_pres.model.Appointment;
+
+/**
+ * One doctor's dashboard: appointments by status, overall and for each day asked for that has any,
+ * and prescriptions written. reconciledAt is when the counts were last rebuilt from the tables.
+ */
+public record DoctorStats(Long doctorId, String specialization,
+        Map<Appointment.Status, Long> appointmentsByStatus,
+        Map<LocalDate, Map<Appointment.Status, Long>> appointmentsByDay,
+        long prescriptions, Instant reconciledAt) {
+}
@@ -0,0 +1,7 @@
+package com.example.medicine.med_pres.dto;
+
+/**
+ * Doctor as embedded in appointment and prescription read models.
+ */
+public record DoctorSummary(Long id, String specialization, String clinicName, String location, UserSummary user) {
+}
@@ -0,0 +1,14 @@
+package com.example.medicine.med_pres.dto;
+
+/**
+ * Doctor directory entry, loaded in one joined select.
+ */
+public record DoctorView(Long id, String specialization, String clinicName, String location, String availableSlots,
+        UserSummary user) {
+
+    // Flat constructor used by JPQL constructor expressions
+    public DoctorView(Long id, String specialization, String clinicName, String location, String availableSlots,
+            Long userId, String userName, String userEmail) {
+        this(id, specialization, clinicName, location, availableSlots, new UserSummary(userId, userName, userEmail));
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.medicine.med_pres.dto;
+
+/**
+ * Prescription read model, filled from a single flat select.
+ */
+public record PrescriptionView(Long id, String medicationName, String dosage, String frequency, String notes,
+        UserSummary patient, DoctorSummary doctor) {
+
+    // Flat constructor used by JPQL constructor expressions
+    public PrescriptionView(Long id, String medicationName, String dosage, String frequency, String notes,
+            Long patientId, String patientName, String patientEmail,
+            Long doctorId, String specialization, String clinicName, String location,
+            Long doctorUserId, String doctorName, String doctorEmail) {
+        this(id, medicationName, dosage, frequency, notes,
+                new UserSummary(patientId, patientName, patientEmail),
+                new DoctorSummary(doctorId, specialization, clinicName, location,
+                        new UserSummary(doctorUserId, doctorName, doctorEmail)));
+    }
+}
@@ -0,0 +1,7 @@
+package com.example.medicine.med_pres.dto;
+
+/**
+ * One clinic moved (or planned to move) between shards, with the appointment and prescription rows it carries.
+ */
+public record ShardMove(String clinicKey, int from, int to, long rows) {
+}
@@ -0,0 +1,7 @@
+package com.example.medicine.med_pres.dto;
+
+/**
+ * Size of one shard: clinics placed on it and the rows it holds.
+ */
+public record ShardStatus(int shard, long clinics, long appointments, long prescriptions) {
+}
@@ -0,0 +1,17 @@
+package com.example.medicine.med_pres.dto;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+
+import com.example.medicine.med_pres.model.Appointment;
+
+/**
+ * Admin dashboard: appointments by status overall, for each day asked for that has any and for each
+ * specialization, and prescriptions in total and for the doctors who wrote the most, by doctor id.
+ */
+public record StatsOverview(Map<Appointment.Status, Long> appointmentsByStatus,
+        Map<LocalDate, Map<Appointment.Status, Long>> appointmentsByDay,
+        Map<String, Map<Appointment.Status, Long>> appointmentsBySpecialization,
+        long prescriptions, Map<Long, Long> prescriptionsByDoctor, Instant reconciledAt) {
+}
@@ -0,0 +1,7 @@
+package com.example.medicine.med_pres.dto;
+
+/**
+ * Public part of a user embedded in read models; never carries the password hash.
+ */
+public record UserSummary(Long id, String name, String email) {
+}
@@ -0,0 +1,15 @@
+package com.example.medicine.med_pres.exception;
+
+// Writes for a clinic are paused while the rebalancer moves it to another shard
+public class ShardMovingException extends RuntimeException {
+    private final long retryAfterSeconds;
+
+    public ShardMovingException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
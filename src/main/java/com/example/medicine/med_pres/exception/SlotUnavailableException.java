@@ -0,0 +1,5 @@
+package com.example.medicine.med_pres.exception;
+
+public class SlotUnavailableException extends RuntimeException {
+public SlotUnavailableException(String message) { super(message); }
+}
@@ -0,0 +1,17 @@
+package com.example.medicine.med_pres.exception;
+
+import com.example.medicine.med_pres.model.Appointment;
+
+// A status change lost the race: the appointment was moved by someone else since the caller last saw it
+public class StatusConflictException extends RuntimeException {
+    private final Appointment.Status currentStatus;
+
+    public StatusConflictException(String message, Appointment.Status currentStatus) {
+        super(message);
+        this.currentStatus = currentStatus;
+    }
+
+    public Appointment.Status getCurrentStatus() {
+        return currentStatus;
+    }
+}
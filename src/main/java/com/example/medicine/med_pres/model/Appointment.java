@@ -2,6 +2,8 @@ package com.example.medicine.med_pres.model;
 
 import java.time.LocalDate;
 import java.time.LocalTime;
+import java.util.EnumSet;
+import java.util.Set;
 
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
@@ -10,9 +12,14 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.PreUpdate;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -20,7 +27,16 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
-@Table(name = "appointments")
+@Table(name = "appointments", indexes = {
+    // Composite keys match the keyset ordering used by the "my appointments" pages
+    @Index(name = "idx_appointments_doctor_schedule", columnList = "doctor_id, appointment_date, appointment_time, id"),
+    @Index(name = "idx_appointments_patient_schedule", columnList = "patient_id, appointment_date, appointment_time, id"),
+    // Time-window scan of the reminder scheduler
+    @Index(name = "idx_appointments_start", columnList = "appointment_date, appointment_time, id")
+}, uniqueConstraints = {
+    // One slot-holding appointment per doctor and start time, across all instances; released rows have a null slot_held
+    @UniqueConstraint(name = "uk_appointments_held_slot", columnNames = {"doctor_id", "appointment_date", "appointment_time", "slot_held"})
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -29,7 +45,8 @@ import lombok.Setter;
 public class Appointment {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "appointments_seq")
+    @SequenceGenerator(name = "appointments_seq", sequenceName = "appointments_seq", allocationSize = 50)
     private Long id; // appointment_id
 
     @ManyToOne
@@ -53,7 +70,36 @@ public class Appointment {
     @Column(nullable = false)
     private Status status;
 
+    // TRUE while the status holds the slot, otherwise null; kept in step by holdSlot() and the status updates
+    @Column(name = "slot_held")
+    private Boolean slotHeld;
+
+    public static Boolean slotHeld(Status status) {
+        return status != null && status.holdsSlot() ? Boolean.TRUE : null;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void holdSlot() {
+        slotHeld = slotHeld(status);
+    }
+
     public enum Status {
-        PENDING, APPROVED, REJECTED, CANCELED
+        PENDING, APPROVED, REJECTED, CANCELED;
+
+        // Whether an appointment in this status keeps its doctor's time slot booked
+        public boolean holdsSlot() {
+            return this == PENDING || this == APPROVED;
+        }
+
+        // Statuses an appointment may be moved to this one from: a request is approved or rejected while
+        // pending, and cancelled until it is rejected. Nothing moves back to PENDING.
+        public Set<Status> sources() {
+            return switch (this) {
+                case PENDING -> EnumSet.noneOf(Status.class);
+                case APPROVED, REJECTED -> EnumSet.of(PENDING);
+                case CANCELED -> EnumSet.of(PENDING, APPROVED);
+            };
+        }
     }
 }
@@ -0,0 +1,57 @@
+package com.example.medicine.med_pres.model;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * An appointment moved out of {@code appointments} once it fell behind the archive horizon. Same
+ * columns and id as the live row; written only by the archiver and read by the history endpoints.
+ */
+@Entity
+@Table(name = "appointments_archive", indexes = {
+    @Index(name = "idx_appointments_archive_doctor_schedule", columnList = "doctor_id, appointment_date, appointment_time, id"),
+    @Index(name = "idx_appointments_archive_patient_schedule", columnList = "patient_id, appointment_date, appointment_time, id"),
+    @Index(name = "idx_appointments_archive_start", columnList = "appointment_date, appointment_time, id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class ArchivedAppointment {
+
+    @Id
+    private Long id;
+
+    @ManyToOne
+    @JoinColumn(name = "patient_id", nullable = false)
+    private User patient;
+
+    @ManyToOne
+    @JoinColumn(name = "doctor_id", nullable = false)
+    private Doctor doctor;
+
+    @Column(columnDefinition = "TEXT")
+    private String reason;
+
+    @Column(nullable = false)
+    private LocalDate appointmentDate;
+
+    @Column(nullable = false)
+    private LocalTime appointmentTime;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Appointment.Status status;
+}
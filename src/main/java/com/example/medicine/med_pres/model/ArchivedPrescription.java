@@ -0,0 +1,53 @@
+package com.example.medicine.med_pres.model;
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.ManyToOne;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A prescription moved out of {@code prescriptions} once it fell behind the archive horizon, with
+ * the same columns and id.
+ */
+@Entity
+@Table(name = "prescriptions_archive", indexes = {
+    @Index(name = "idx_prescriptions_archive_patient", columnList = "patient_id, id"),
+    @Index(name = "idx_prescriptions_archive_doctor", columnList = "doctor_id, id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+public class ArchivedPrescription {
+
+    @Id
+    private Long id;
+
+    @ManyToOne
+    @JoinColumn(name = "patient_id", nullable = false)
+    private User patient;
+
+    @ManyToOne
+    @JoinColumn(name = "doctor_id", nullable = false)
+    private Doctor doctor;
+
+    @Column(name = "medication_name")
+    private String medicationName;
+
+    private String dosage;
+
+    private String frequency;
+
+    @Column(columnDefinition = "TEXT")
+    private String notes;
+
+    @Column(name = "issued_on")
+    private LocalDate issuedOn;
+}
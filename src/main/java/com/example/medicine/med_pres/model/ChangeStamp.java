@@ -0,0 +1,32 @@
+package com.example.medicine.med_pres.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Version counter for one cacheable read, e.g. one patient's appointment list. Bumped by the
+ * services on every write that changes what the read returns, and turned into the read's ETag.
+ */
+@Entity
+@Table(name = "change_stamps")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChangeStamp {
+
+    @Id
+    @Column(length = 100)
+    private String scope;
+
+    @Column(nullable = false)
+    private long version;
+}
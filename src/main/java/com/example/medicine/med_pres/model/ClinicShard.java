@@ -0,0 +1,36 @@
+package com.example.medicine.med_pres.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Shard directory entry: which database holds the appointments and prescriptions of one clinic.
+ * Lives on the home database. {@code moving} is set while the rebalancer copies the clinic to
+ * another shard; writes for the clinic are refused until the move completes.
+ */
+@Entity
+@Table(name = "clinic_shards")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ClinicShard {
+
+    @Id
+    @Column(name = "clinic_key", length = 191)
+    private String clinicKey;
+
+    @Column(nullable = false)
+    private int shard;
+
+    @Column(nullable = false)
+    private boolean moving;
+}
@@ -0,0 +1,46 @@
+package com.example.medicine.med_pres.model;
+
+import java.time.LocalDate;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Per-date exception to a doctor's weekly template. The bitmap replaces the template for
+ * that date entirely; zero means the doctor is unavailable all day.
+ */
+@Entity
+@Table(name = "doctor_schedule_overrides",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"doctor_id", "override_date"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DoctorScheduleOverride {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "doctor_schedule_overrides_seq")
+    @SequenceGenerator(name = "doctor_schedule_overrides_seq", sequenceName = "doctor_schedule_overrides_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "doctor_id", nullable = false)
+    private Long doctorId;
+
+    @Column(name = "override_date", nullable = false)
+    private LocalDate date;
+
+    @Column(name = "slot_bits", nullable = false)
+    private long slotBits;
+}
@@ -0,0 +1,49 @@
+package com.example.medicine.med_pres.model;
+
+import java.time.DayOfWeek;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Recurring weekly availability of a doctor: one row per weekday, with the bookable
+ * 30-minute slots of that day packed into a bitmap (bit i = 00:00 + 30*i minutes).
+ */
+@Entity
+@Table(name = "doctor_schedule_templates",
+    uniqueConstraints = @UniqueConstraint(columnNames = {"doctor_id", "day_of_week"}))
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class DoctorScheduleTemplate {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "doctor_schedule_templates_seq")
+    @SequenceGenerator(name = "doctor_schedule_templates_seq", sequenceName = "doctor_schedule_templates_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "doctor_id", nullable = false)
+    private Long doctorId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "day_of_week", nullable = false)
+    private DayOfWeek dayOfWeek;
+
+    @Column(name = "slot_bits", nullable = false)
+    private long slotBits;
+}
@@ -0,0 +1,82 @@
+package com.example.medicine.med_pres.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Email notification waiting to be sent. Saved in the same transaction as the change it reports,
+ * on the same shard, so a notification exists exactly when the change committed. Drained with
+ * plain JDBC by NotificationDispatcher; times are epoch millis.
+ */
+@Entity
+@Table(name = "notification_outbox", indexes = {
+    // Matches the dispatcher's "due pending rows, oldest first" scan
+    @Index(name = "idx_notification_outbox_due", columnList = "status, next_attempt_at, id"),
+    @Index(name = "idx_notification_outbox_dedup", columnList = "dedup_key")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class OutboxMessage {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notification_outbox_seq")
+    @SequenceGenerator(name = "notification_outbox_seq", sequenceName = "notification_outbox_seq", allocationSize = 50)
+    private Long id;
+
+    // Same key means same notification; only one of them is sent
+    @Column(name = "dedup_key", nullable = false, length = 191)
+    private String dedupKey;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column(nullable = false)
+    private String subject;
+
+    @Column(columnDefinition = "TEXT", nullable = false)
+    private String body;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    // When the row is next due; while a dispatcher holds the row, when its claim runs out
+    @Column(name = "next_attempt_at", nullable = false)
+    private long nextAttemptAt;
+
+    // Set by the dispatcher that claimed the row
+    @Column(name = "claim_token", length = 36)
+    private String claimToken;
+
+    @Column(name = "created_at", nullable = false)
+    private long createdAt;
+
+    @Column(name = "sent_at")
+    private Long sentAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    public enum Status {
+        PENDING, SENT, FAILED
+    }
+}
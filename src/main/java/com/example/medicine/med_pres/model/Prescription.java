@@ -1,12 +1,17 @@
 package com.example.medicine.med_pres.model;
 
+import java.time.LocalDate;
+
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.PrePersist;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -15,7 +20,10 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity
-@Table(name = "prescriptions")
+@Table(name = "prescriptions", indexes = {
+    // Age scan of the archiver
+    @Index(name = "idx_prescriptions_issued", columnList = "issued_on, id")
+})
 @Getter
 @Setter
 @NoArgsConstructor
@@ -24,7 +32,8 @@ import lombok.Setter;
 public class Prescription {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "prescriptions_seq")
+    @SequenceGenerator(name = "prescriptions_seq", sequenceName = "prescriptions_seq", allocationSize = 50)
     private Long id;
 
     @ManyToOne
@@ -44,4 +53,15 @@ public class Prescription {
 
     @Column(columnDefinition = "TEXT")
     private String notes;
+
+    // Null on rows from before the column existed, which are never archived
+    @Column(name = "issued_on")
+    private LocalDate issuedOn;
+
+    @PrePersist
+    void stampIssuedOn() {
+        if (issuedOn == null) {
+            issuedOn = LocalDate.now();
+        }
+    }
 }
\ No newline at end of file
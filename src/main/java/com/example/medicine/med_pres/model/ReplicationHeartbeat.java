@@ -0,0 +1,33 @@
+package com.example.medicine.med_pres.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Single row the primary stamps every second; reading it back from a replica tells how far
+ * behind that replica is. Written and read with plain JDBC by ReplicaRoutingDataSource, the
+ * entity only keeps the table in the schema.
+ */
+@Entity
+@Table(name = "replication_heartbeat")
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ReplicationHeartbeat {
+
+    @Id
+    private Long id;
+
+    // Epoch millis of the last beat
+    @Column(name = "beat_at", nullable = false)
+    private long beatAt;
+}
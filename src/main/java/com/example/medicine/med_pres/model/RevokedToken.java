@@ -0,0 +1,59 @@
+package com.example.medicine.med_pres.model;
+
+import java.time.Instant;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.EnumType;
+import jakarta.persistence.Enumerated;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Revoked access tokens, kept only until the tokens would have expired anyway. A TOKEN row
+ * revokes one token id (jti); a SUBJECT row revokes every token issued to that user before
+ * {@code revokedAt}, e.g. after a role change.
+ */
+@Entity
+@Table(name = "revoked_tokens", indexes = {
+    @Index(name = "idx_revoked_tokens_revoked_at", columnList = "revoked_at")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RevokedToken {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "revoked_tokens_seq")
+    @SequenceGenerator(name = "revoked_tokens_seq", sequenceName = "revoked_tokens_seq", allocationSize = 50)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Kind kind;
+
+    // Token id for TOKEN rows, user email for SUBJECT rows
+    @Column(name = "token_key", nullable = false)
+    private String tokenKey;
+
+    @Column(name = "revoked_at", nullable = false)
+    private Instant revokedAt;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+    public enum Kind {
+        TOKEN, SUBJECT
+    }
+}
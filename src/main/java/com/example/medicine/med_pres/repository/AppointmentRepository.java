@@ -1,15 +1,135 @@
 package com.example.medicine.med_pres.repository;
 
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import com.example.medicine.med_pres.dto.AppointmentCursor;
+import com.example.medicine.med_pres.dto.AppointmentView;
+import com.example.medicine.med_pres.dto.BookedSlot;
 import com.example.medicine.med_pres.model.Appointment;
-import com.example.medicine.med_pres.model.Doctor;
-import com.example.medicine.med_pres.model.User;
+
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 
 public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
 
-    List<Appointment> findByPatientId(User patientId);
-    List<Appointment> findByDoctorId(Doctor doctorId);
+    // Shared select list and joins for AppointmentView; one SQL statement per call. Doctor and patient are
+    // joined on the foreign keys rather than the associations, which keeps fk() free to name the
+    // appointment's own columns
+    String VIEW_SELECT = "SELECT new com.example.medicine.med_pres.dto.AppointmentView("
+            + "a.id, a.reason, a.appointmentDate, a.appointmentTime, a.status, "
+            + "p.id, p.name, p.email, d.id, d.specialization, d.clinicName, d.location, du.id, du.name, du.email) "
+            + "FROM Appointment a JOIN User p ON p.id = fk(a.patient) JOIN Doctor d ON d.id = fk(a.doctor) JOIN d.user du ";
+    // The leading date bound is implied by the rest, but it is what lets the database seek into the
+    // (owner, date, time, id) index instead of reading the owner's rows from the start
+    String KEYSET_AFTER = "a.appointmentDate >= :date AND (a.appointmentDate > :date "
+            + "OR (a.appointmentDate = :date AND (a.appointmentTime > :time "
+            + "OR (a.appointmentTime = :time AND a.id > :id)))) ";
+    String SCHEDULE_ORDER = "ORDER BY a.appointmentDate, a.appointmentTime, a.id";
+    // Keyset pages match the owner on the appointment's own column and sort by it first, the shape that reads
+    // just one page off the owner's schedule index; H2 otherwise starts from the owner and sorts all their rows
+    String OF_DOCTOR_EMAIL = "fk(a.doctor) = (SELECT od.id FROM Doctor od WHERE od.user.email = :email) ";
+    String OF_PATIENT_EMAIL = "fk(a.patient) = (SELECT op.id FROM User op WHERE op.email = :email) ";
+    String DOCTOR_SCHEDULE_ORDER = "ORDER BY fk(a.doctor), a.appointmentDate, a.appointmentTime, a.id";
+    String PATIENT_SCHEDULE_ORDER = "ORDER BY fk(a.patient), a.appointmentDate, a.appointmentTime, a.id";
+
+    @Query(VIEW_SELECT + SCHEDULE_ORDER)
+    List<AppointmentView> findAllViews();
+
+    // Slots a doctor has booked between two dates (inclusive), for the availability index
+    @Query("SELECT new com.example.medicine.med_pres.dto.BookedSlot(a.appointmentDate, a.appointmentTime) "
+            + "FROM Appointment a WHERE a.doctor.id = :doctorId AND a.appointmentDate BETWEEN :from AND :to "
+            + "AND a.status IN :statuses")
+    List<BookedSlot> findBookedSlots(@Param("doctorId") Long doctorId, @Param("from") LocalDate from,
+            @Param("to") LocalDate to, @Param("statuses") Collection<Appointment.Status> statuses);
+
+    // Cursor-backed stream for exports; rows are DTOs, so nothing accumulates in the persistence context
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query(VIEW_SELECT + "WHERE (:from IS NULL OR a.appointmentDate >= :from) "
+            + "AND (:to IS NULL OR a.appointmentDate <= :to) "
+            + "AND (:status IS NULL OR a.status = :status) ORDER BY a.id")
+    Stream<AppointmentView> streamViews(@Param("from") LocalDate from, @Param("to") LocalDate to,
+            @Param("status") Appointment.Status status);
+
+    // All appointments of the patient with this user id
+    @Query(VIEW_SELECT + "WHERE p.id = :patientId " + SCHEDULE_ORDER)
+    List<AppointmentView> findViewsByPatientId(@Param("patientId") Long patientId);
+
+    // All appointments of the doctor with this id
+    @Query(VIEW_SELECT + "WHERE d.id = :doctorId " + SCHEDULE_ORDER)
+    List<AppointmentView> findViewsByDoctorId(@Param("doctorId") Long doctorId);
+
+    // All appointments of the doctor whose user account has this email
+    @Query(VIEW_SELECT + "WHERE du.email = :email " + SCHEDULE_ORDER)
+    List<AppointmentView> findViewsByDoctorEmail(@Param("email") String email);
+
+    // All appointments of the patient with this email
+    @Query(VIEW_SELECT + "WHERE p.email = :email " + SCHEDULE_ORDER)
+    List<AppointmentView> findViewsByPatientEmail(@Param("email") String email);
+
+    // First keyset page of a doctor's appointments; the same query as the later pages, so the same index range
+    default List<AppointmentView> findFirstPageByDoctorEmail(String email, Limit limit) {
+        AppointmentCursor start = AppointmentCursor.START;
+        return findPageByDoctorEmailAfter(email, start.date(), start.time(), start.id(), limit);
+    }
+
+    // Keyset page of a doctor's appointments strictly after (date, time, id)
+    @Query(VIEW_SELECT + "WHERE " + OF_DOCTOR_EMAIL + "AND " + KEYSET_AFTER + DOCTOR_SCHEDULE_ORDER)
+    List<AppointmentView> findPageByDoctorEmailAfter(@Param("email") String email, @Param("date") LocalDate date,
+            @Param("time") LocalTime time, @Param("id") Long id, Limit limit);
+
+    // First keyset page of a patient's appointments
+    default List<AppointmentView> findFirstPageByPatientEmail(String email, Limit limit) {
+        AppointmentCursor start = AppointmentCursor.START;
+        return findPageByPatientEmailAfter(email, start.date(), start.time(), start.id(), limit);
+    }
+
+    // Keyset page of a patient's appointments strictly after (date, time, id)
+    @Query(VIEW_SELECT + "WHERE " + OF_PATIENT_EMAIL + "AND " + KEYSET_AFTER + PATIENT_SCHEDULE_ORDER)
+    List<AppointmentView> findPageByPatientEmailAfter(@Param("email") String email, @Param("date") LocalDate date,
+            @Param("time") LocalTime time, @Param("id") Long id, Limit limit);
+
+    // Compare-and-set of the status: changes the row only while it is still in one of the given statuses
+    default int updateStatusIfIn(Long id, Collection<Appointment.Status> from, Appointment.Status to) {
+        return updateStatusIfIn(id, from, to, Appointment.slotHeld(to));
+    }
+
+    // Bulk updates skip the entity callbacks, so slot_held is set here
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Appointment a SET a.status = :to, a.slotHeld = :slotHeld WHERE a.id = :id AND a.status IN :from")
+    int updateStatusIfIn(@Param("id") Long id, @Param("from") Collection<Appointment.Status> from,
+            @Param("to") Appointment.Status to, @Param("slotHeld") Boolean slotHeld);
+
+    // A doctor's appointments on a day in the given statuses, locked until the transaction ends
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT a FROM Appointment a WHERE a.doctor.id = :doctorId AND a.appointmentDate = :date "
+            + "AND a.status IN :from ORDER BY a.appointmentTime, a.id")
+    List<Appointment> lockDayInStatus(@Param("doctorId") Long doctorId, @Param("date") LocalDate date,
+            @Param("from") Collection<Appointment.Status> from);
+
+    // Same compare-and-set for many rows at once
+    default int updateStatusesIfIn(Collection<Long> ids, Collection<Appointment.Status> from, Appointment.Status to) {
+        return updateStatusesIfIn(ids, from, to, Appointment.slotHeld(to));
+    }
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE Appointment a SET a.status = :to, a.slotHeld = :slotHeld WHERE a.id IN :ids AND a.status IN :from")
+    int updateStatusesIfIn(@Param("ids") Collection<Long> ids, @Param("from") Collection<Appointment.Status> from,
+            @Param("to") Appointment.Status to, @Param("slotHeld") Boolean slotHeld);
+
+    // Oldest rows dated before the cutoff, locked until the archiver's transaction ends
+    @Query(value = "SELECT id FROM appointments WHERE appointment_date < :cutoff "
+            + "ORDER BY appointment_date, appointment_time, id LIMIT :limit FOR UPDATE", nativeQuery = true)
+    List<Long> lockIdsBefore(@Param("cutoff") LocalDate cutoff, @Param("limit") int limit);
 }
@@ -0,0 +1,79 @@
+package com.example.medicine.med_pres.repository;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import com.example.medicine.med_pres.dto.AppointmentCursor;
+import com.example.medicine.med_pres.dto.AppointmentView;
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.model.ArchivedAppointment;
+
+import jakarta.persistence.QueryHint;
+
+// History reads mirror AppointmentRepository's, so results from both merge in the same order
+public interface ArchivedAppointmentRepository extends JpaRepository<ArchivedAppointment, Long> {
+
+    String VIEW_SELECT = "SELECT new com.example.medicine.med_pres.dto.AppointmentView("
+            + "a.id, a.reason, a.appointmentDate, a.appointmentTime, a.status, "
+            + "p.id, p.name, p.email, d.id, d.specialization, d.clinicName, d.location, du.id, du.name, du.email) "
+            + "FROM ArchivedAppointment a JOIN User p ON p.id = fk(a.patient) JOIN Doctor d ON d.id = fk(a.doctor) JOIN d.user du ";
+
+    // Copies live rows, ids included, in one INSERT ... SELECT; the caller deletes them from the live table
+    @Modifying
+    @Query("INSERT INTO ArchivedAppointment (id, patient, doctor, reason, appointmentDate, appointmentTime, status) "
+            + "SELECT a.id, a.patient, a.doctor, a.reason, a.appointmentDate, a.appointmentTime, a.status "
+            + "FROM Appointment a WHERE a.id IN :ids")
+    int copyFromLive(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT MAX(a.appointmentDate) FROM ArchivedAppointment a")
+    LocalDate findLatestDate();
+
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query(VIEW_SELECT + "WHERE (:from IS NULL OR a.appointmentDate >= :from) "
+            + "AND (:to IS NULL OR a.appointmentDate <= :to) "
+            + "AND (:status IS NULL OR a.status = :status) ORDER BY a.id")
+    Stream<AppointmentView> streamViews(@Param("from") LocalDate from, @Param("to") LocalDate to,
+            @Param("status") Appointment.Status status);
+
+    @Query(VIEW_SELECT + "WHERE p.id = :patientId " + AppointmentRepository.SCHEDULE_ORDER)
+    List<AppointmentView> findViewsByPatientId(@Param("patientId") Long patientId);
+
+    @Query(VIEW_SELECT + "WHERE d.id = :doctorId " + AppointmentRepository.SCHEDULE_ORDER)
+    List<AppointmentView> findViewsByDoctorId(@Param("doctorId") Long doctorId);
+
+    @Query(VIEW_SELECT + "WHERE du.email = :email " + AppointmentRepository.SCHEDULE_ORDER)
+    List<AppointmentView> findViewsByDoctorEmail(@Param("email") String email);
+
+    @Query(VIEW_SELECT + "WHERE p.email = :email " + AppointmentRepository.SCHEDULE_ORDER)
+    List<AppointmentView> findViewsByPatientEmail(@Param("email") String email);
+
+    default List<AppointmentView> findFirstPageByDoctorEmail(String email, Limit limit) {
+        AppointmentCursor start = AppointmentCursor.START;
+        return findPageByDoctorEmailAfter(email, start.date(), start.time(), start.id(), limit);
+    }
+
+    @Query(VIEW_SELECT + "WHERE " + AppointmentRepository.OF_DOCTOR_EMAIL + "AND " + AppointmentRepository.KEYSET_AFTER
+            + AppointmentRepository.DOCTOR_SCHEDULE_ORDER)
+    List<AppointmentView> findPageByDoctorEmailAfter(@Param("email") String email, @Param("date") LocalDate date,
+            @Param("time") LocalTime time, @Param("id") Long id, Limit limit);
+
+    default List<AppointmentView> findFirstPageByPatientEmail(String email, Limit limit) {
+        AppointmentCursor start = AppointmentCursor.START;
+        return findPageByPatientEmailAfter(email, start.date(), start.time(), start.id(), limit);
+    }
+
+    @Query(VIEW_SELECT + "WHERE " + AppointmentRepository.OF_PATIENT_EMAIL + "AND " + AppointmentRepository.KEYSET_AFTER
+            + AppointmentRepository.PATIENT_SCHEDULE_ORDER)
+    List<AppointmentView> findPageByPatientEmailAfter(@Param("email") String email, @Param("date") LocalDate date,
+            @Param("time") LocalTime time, @Param("id") Long id, Limit limit);
+}
@@ -0,0 +1,38 @@
+package com.example.medicine.med_pres.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+
+import com.example.medicine.med_pres.dto.PrescriptionView;
+import com.example.medicine.med_pres.model.ArchivedPrescription;
+
+import jakarta.persistence.QueryHint;
+
+public interface ArchivedPrescriptionRepository extends JpaRepository<ArchivedPrescription, Long> {
+
+    String VIEW_SELECT = "SELECT new com.example.medicine.med_pres.dto.PrescriptionView("
+            + "r.id, r.medicationName, r.dosage, r.frequency, r.notes, "
+            + "p.id, p.name, p.email, d.id, d.specialization, d.clinicName, d.location, du.id, du.name, du.email) "
+            + "FROM ArchivedPrescription r JOIN r.patient p JOIN r.doctor d JOIN d.user du ";
+
+    // Copies live rows, ids included, in one INSERT ... SELECT; the caller deletes them from the live table
+    @Modifying
+    @Query("INSERT INTO ArchivedPrescription (id, patient, doctor, medicationName, dosage, frequency, notes, issuedOn) "
+            + "SELECT r.id, r.patient, r.doctor, r.medicationName, r.dosage, r.frequency, r.notes, r.issuedOn "
+            + "FROM Prescription r WHERE r.id IN :ids")
+    int copyFromLive(@Param("ids") Collection<Long> ids);
+
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query(VIEW_SELECT + "WHERE (:doctorId IS NULL OR d.id = :doctorId) ORDER BY r.id")
+    Stream<PrescriptionView> streamViews(@Param("doctorId") Long doctorId);
+
+    @Query(VIEW_SELECT + "WHERE p.email = :email ORDER BY r.id")
+    List<PrescriptionView> findViewsByPatientEmail(@Param("email") String email);
+}
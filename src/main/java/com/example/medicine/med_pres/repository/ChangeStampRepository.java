@@ -0,0 +1,17 @@
+package com.example.medicine.med_pres.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.medicine.med_pres.model.ChangeStamp;
+
+public interface ChangeStampRepository extends JpaRepository<ChangeStamp, String> {
+
+    // Upsert in one statement; never going below the seed keeps versions increasing even if rows are lost
+    @Modifying
+    @Query(value = "INSERT INTO change_stamps (scope, version) VALUES (:scope, :seed) "
+            + "ON DUPLICATE KEY UPDATE version = GREATEST(version + 1, :seed)", nativeQuery = true)
+    int bump(@Param("scope") String scope, @Param("seed") long seed);
+}
@@ -0,0 +1,8 @@
+package com.example.medicine.med_pres.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.medicine.med_pres.model.ClinicShard;
+
+public interface ClinicShardRepository extends JpaRepository<ClinicShard, String> {
+}
@@ -1,7 +1,31 @@
 package com.example.medicine.med_pres.repository;
 
+import java.util.List;
+import java.util.Optional;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import com.example.medicine.med_pres.dto.DoctorView;
 import com.example.medicine.med_pres.model.Doctor;
 
-public interface DoctorRepository extends JpaRepository<Doctor, Long> {}
+public interface DoctorRepository extends JpaRepository<Doctor, Long> {
+
+    @Query("SELECT new com.example.medicine.med_pres.dto.DoctorView("
+            + "d.id, d.specialization, d.clinicName, d.location, d.availableSlots, u.id, u.name, u.email) "
+            + "FROM Doctor d JOIN d.user u ORDER BY d.id")
+    List<DoctorView> findAllViews();
+
+    @Query("SELECT new com.example.medicine.med_pres.dto.DoctorView("
+            + "d.id, d.specialization, d.clinicName, d.location, d.availableSlots, u.id, u.name, u.email) "
+            + "FROM Doctor d JOIN d.user u WHERE d.id = :id")
+    Optional<DoctorView> findViewById(@Param("id") Long id);
+
+    // Doctor profile of the user with this email (users.email and doctors.user_id are both unique)
+    @Query("SELECT d FROM Doctor d JOIN FETCH d.user u WHERE u.email = :email")
+    Optional<Doctor> findByUserEmail(@Param("email") String email);
+
+    @Query("SELECT d FROM Doctor d JOIN FETCH d.user u WHERE u.id = :userId")
+    Optional<Doctor> findByUserId(@Param("userId") Long userId);
+}
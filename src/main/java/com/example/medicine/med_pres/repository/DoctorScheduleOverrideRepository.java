@@ -0,0 +1,15 @@
+package com.example.medicine.med_pres.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.medicine.med_pres.model.DoctorScheduleOverride;
+
+public interface DoctorScheduleOverrideRepository extends JpaRepository<DoctorScheduleOverride, Long> {
+    List<DoctorScheduleOverride> findByDoctorId(Long doctorId);
+    Optional<DoctorScheduleOverride> findByDoctorIdAndDate(Long doctorId, LocalDate date);
+    void deleteByDoctorIdAndDate(Long doctorId, LocalDate date);
+}
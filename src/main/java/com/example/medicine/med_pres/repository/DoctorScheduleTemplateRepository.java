@@ -0,0 +1,12 @@
+package com.example.medicine.med_pres.repository;
+
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import com.example.medicine.med_pres.model.DoctorScheduleTemplate;
+
+public interface DoctorScheduleTemplateRepository extends JpaRepository<DoctorScheduleTemplate, Long> {
+    List<DoctorScheduleTemplate> findByDoctorId(Long doctorId);
+    void deleteByDoctorId(Long doctorId);
+}
@@ -0,0 +1,18 @@
+package com.example.medicine.med_pres.repository;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.medicine.med_pres.model.OutboxMessage;
+
+public interface OutboxMessageRepository extends JpaRepository<OutboxMessage, Long> {
+    boolean existsByDedupKeyAndStatus(String dedupKey, OutboxMessage.Status status);
+
+    // Keys among these already written, whatever became of the message
+    @Query("SELECT m.dedupKey FROM OutboxMessage m WHERE m.dedupKey IN :keys")
+    List<String> findExistingDedupKeys(@Param("keys") Collection<String> keys);
+}
@@ -1,15 +1,45 @@
 package com.example.medicine.med_pres.repository;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import com.example.medicine.med_pres.dto.PrescriptionView;
 import com.example.medicine.med_pres.model.Doctor;
 import com.example.medicine.med_pres.model.Prescription;
 import com.example.medicine.med_pres.model.User;
 
+import jakarta.persistence.QueryHint;
+
 public interface PrescriptionRepository extends JpaRepository<Prescription,Long>{
+
+    // Shared select list and joins for PrescriptionView; one SQL statement per call
+    String VIEW_SELECT = "SELECT new com.example.medicine.med_pres.dto.PrescriptionView("
+            + "r.id, r.medicationName, r.dosage, r.frequency, r.notes, "
+            + "p.id, p.name, p.email, d.id, d.specialization, d.clinicName, d.location, du.id, du.name, du.email) "
+            + "FROM Prescription r JOIN r.patient p JOIN r.doctor d JOIN d.user du ";
+
         List<Prescription> findByPatientId(User patientId);
             List<Prescription> findByDoctorId(Doctor doctorId);
 
+    @Query(VIEW_SELECT + "ORDER BY r.id")
+    List<PrescriptionView> findAllViews();
+
+    // Cursor-backed stream for exports, optionally limited to one doctor
+    @QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+    @Query(VIEW_SELECT + "WHERE (:doctorId IS NULL OR d.id = :doctorId) ORDER BY r.id")
+    Stream<PrescriptionView> streamViews(@Param("doctorId") Long doctorId);
+
+    @Query(VIEW_SELECT + "WHERE p.email = :email ORDER BY r.id")
+    List<PrescriptionView> findViewsByPatientEmail(@Param("email") String email);
+
+    // Oldest rows issued before the cutoff, locked until the archiver's transaction ends
+    @Query(value = "SELECT id FROM prescriptions WHERE issued_on < :cutoff ORDER BY issued_on, id LIMIT :limit FOR UPDATE",
+            nativeQuery = true)
+    List<Long> lockIdsBefore(@Param("cutoff") LocalDate cutoff, @Param("limit") int limit);
 }
@@ -0,0 +1,22 @@
+package com.example.medicine.med_pres.repository;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import com.example.medicine.med_pres.model.RevokedToken;
+
+public interface RevokedTokenRepository extends JpaRepository<RevokedToken, Long> {
+    List<RevokedToken> findByExpiresAtAfter(Instant now);
+
+    // Rows written since the last poll, including those from other instances
+    List<RevokedToken> findByRevokedAtAfterAndExpiresAtAfter(Instant since, Instant now);
+
+    @Modifying
+    @Query("DELETE FROM RevokedToken r WHERE r.expiresAt < :cutoff")
+    int deleteExpired(@Param("cutoff") Instant cutoff);
+}
@@ -0,0 +1,377 @@
+package com.example.medicine.med_pres.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.exception.ShardMovingException;
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.repository.AppointmentRepository;
+
+/**
+ * Sends appointment reminders {@code reminders.leads} ahead of each appointment and cancels
+ * appointments still PENDING when their time comes.
+ *
+ * Only appointments starting within the next {@code reminders.leads} maximum plus two load
+ * intervals are held in memory, as timers on a {@link TimingWheel}. The window is extended every
+ * {@code reminders.load-interval-ms} by a keyset scan of idx_appointments_start on each shard, which
+ * reads just the appointments that entered it; after a restart the same scan rebuilds the window,
+ * starting {@code reminders.catch-up} in the past so reminders and expiries due while the instance
+ * was down still happen. AppointmentService reports every booking, move and cancellation inside the
+ * window. Timers are never removed: one that no longer matches its appointment is dropped when it
+ * fires, and due timers are handled in batches of {@code reminders.batch-size} per shard.
+ */
+@Service
+public class AppointmentReminderScheduler {
+    private static final SampledLogger log = new SampledLogger(AppointmentReminderScheduler.class, 100);
+    private static final long TICK_MILLIS = 1000;
+    private static final int WHEEL_SIZE = 64;
+    private static final long RETRY_MILLIS = 5_000;
+
+    // lead is null for the expiry check at the start of the appointment
+    private record Timer(long appointmentId, long startsAt, Duration lead) {
+    }
+
+    private record Tracked(Long doctorId, long startsAt) {
+    }
+
+    private record Batch(int shard, Duration lead) {
+    }
+
+    private final AppointmentRepository appointmentRepository;
+    private final ShardRouter shards;
+    private final NotificationOutbox notifications;
+    private final AvailabilityService availabilityService;
+    private final ChangeStampService changeStamps;
+    private final ChangeFeed changeFeed;
+    private final DashboardCounters counters;
+    private final boolean enabled;
+    private final List<Duration> leads;
+    private final long horizonMillis;
+    private final long catchUpMillis;
+    private final int batchSize;
+    private final ZoneId zone;
+    private final Counter reminded;
+    private final Counter expired;
+
+    // Guarded by this
+    private TimingWheel<Timer> wheel;
+    private final List<Timer> overdue = new ArrayList<>();
+    private final Map<Long, Tracked> tracked = new HashMap<>();
+    // Appointments starting up to here are tracked; nothing is until the first load
+    private long loadedUntil = Long.MIN_VALUE;
+
+    public AppointmentReminderScheduler(AppointmentRepository appointmentRepository, ShardRouter shards,
+            NotificationOutbox notifications, AvailabilityService availabilityService, ChangeStampService changeStamps,
+            ChangeFeed changeFeed, DashboardCounters counters, MeterRegistry registry,
+            @Value("${reminders.enabled:true}") boolean enabled,
+            @Value("${reminders.leads:24h,1h}") List<Duration> leads,
+            @Value("${reminders.load-interval-ms:600000}") long loadIntervalMillis,
+            @Value("${reminders.catch-up:1h}") Duration catchUp,
+            @Value("${reminders.batch-size:500}") int batchSize,
+            @Value("${reminders.zone:}") String zone) {
+        this.appointmentRepository = appointmentRepository;
+        this.shards = shards;
+        this.notifications = notifications;
+        this.availabilityService = availabilityService;
+        this.changeStamps = changeStamps;
+        this.changeFeed = changeFeed;
+        this.counters = counters;
+        this.enabled = enabled;
+        this.leads = List.copyOf(leads);
+        // Two intervals, so a load running late still finds every reminder ahead of it
+        this.horizonMillis = leads.stream().mapToLong(Duration::toMillis).max().orElse(0) + 2 * loadIntervalMillis;
+        this.catchUpMillis = catchUp.toMillis();
+        this.batchSize = batchSize;
+        this.zone = zone.isBlank() ? ZoneId.systemDefault() : ZoneId.of(zone);
+        Gauge.builder("reminders.tracked", this, AppointmentReminderScheduler::trackedCount)
+                .description("Upcoming appointments held by the reminder scheduler").register(registry);
+        this.reminded = firedCounter(registry, "reminded");
+        this.expired = firedCounter(registry, "expired");
+    }
+
+    private static Counter firedCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("reminders.fired")
+                .description("Appointments reminded of or expired by the reminder scheduler, by outcome")
+                .tag("outcome", outcome).register(registry);
+    }
+
+    // Loads the window once the application is up, catching up on what came due while it was down.
+    // Runs after the shard directory is loaded, which routing due timers to their shard needs.
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(2)
+    public void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            wheel = new TimingWheel<>(TICK_MILLIS, WHEEL_SIZE, now);
+            tracked.clear();
+            overdue.clear();
+            loadedUntil = now - catchUpMillis;
+        }
+        int loaded = load(now, now - catchUpMillis);
+        log.info("event=reminders.rebuilt appointments={} horizonMinutes={}", loaded, horizonMillis / 60_000);
+    }
+
+    // Takes in the appointments that entered the window since the last load
+    @Scheduled(fixedDelayString = "${reminders.load-interval-ms:600000}", initialDelayString = "${reminders.load-interval-ms:600000}")
+    public void extendWindow() {
+        if (enabled) {
+            long now = System.currentTimeMillis();
+            load(now, now);
+        }
+    }
+
+    // Called by AppointmentService after a booking or change has committed
+    public void track(Appointment appointment) {
+        if (!enabled || appointment.getId() == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (wheel == null) {
+                return;
+            }
+            boolean holdsSlot = appointment.getStatus() != null && appointment.getStatus().holdsSlot()
+                    && appointment.getDoctor() != null && appointment.getDoctor().getId() != null;
+            long startsAt = holdsSlot ? startsAt(appointment.getAppointmentDate(), appointment.getAppointmentTime()) : 0;
+            // Past appointments are left to the records; ones beyond the window are picked up when it reaches them
+            if (!holdsSlot || startsAt < now - catchUpMillis || startsAt > loadedUntil) {
+                tracked.remove(appointment.getId());
+                return;
+            }
+            Tracked previous = tracked.put(appointment.getId(), new Tracked(appointment.getDoctor().getId(), startsAt));
+            if (previous == null || previous.startsAt() != startsAt) {
+                addTimers(appointment.getId(), startsAt, now);
+            }
+        }
+    }
+
+    // Called by AppointmentService after an appointment was deleted
+    public synchronized void untrack(Long appointmentId) {
+        tracked.remove(appointmentId);
+    }
+
+    // Hands the timers that came due to their batches
+    @Scheduled(fixedDelay = TICK_MILLIS)
+    public void tick() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<Timer, Tracked> fired = new LinkedHashMap<>();
+        synchronized (this) {
+            if (wheel == null) {
+                return;
+            }
+            List<Timer> expiredTimers = new ArrayList<>(overdue);
+            overdue.clear();
+            wheel.advance(now, expiredTimers::add);
+            for (Timer timer : expiredTimers) {
+                Tracked current = tracked.get(timer.appointmentId());
+                if (current == null || current.startsAt() != timer.startsAt()) {
+                    continue;
+                }
+                if (timer.lead() == null) {
+                    tracked.remove(timer.appointmentId());
+                } else if (timer.startsAt() <= now) {
+                    continue;
+                }
+                fired.put(timer, current);
+            }
+        }
+        // Shard lookups may read the database, so they happen outside the lock
+        Map<Batch, Map<Long, Tracked>> due = new LinkedHashMap<>();
+        fired.forEach((timer, current) -> {
+            try {
+                due.computeIfAbsent(new Batch(shards.shardOfDoctor(current.doctorId()), timer.lead()),
+                        batch -> new LinkedHashMap<>()).put(timer.appointmentId(), current);
+            } catch (RuntimeException e) {
+                log.warn("event=reminders.unroutable appointmentId={} doctorId={} error={}",
+                        timer.appointmentId(), current.doctorId(), e.getMessage());
+            }
+        });
+        due.forEach((batch, timers) -> {
+            List<Long> ids = new ArrayList<>(timers.keySet());
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + batchSize));
+                try {
+                    if (batch.lead() == null) {
+                        expire(batch.shard(), chunk, timers);
+                    } else {
+                        remind(batch.shard(), batch.lead(), chunk, timers);
+                    }
+                } catch (ShardMovingException e) {
+                    retryLater(batch.lead(), chunk, timers, now);
+                } catch (RuntimeException e) {
+                    log.warn("event=reminders.batchFailed shard={} lead={} appointments={} error={}",
+                            batch.shard(), batch.lead(), chunk.size(), e.getMessage());
+                }
+            }
+        });
+    }
+
+    // Reads the appointments starting in (loadedUntil, now + horizon] from every shard, oldest first
+    private int load(long now, long notBefore) {
+        long from;
+        long until = now + horizonMillis;
+        synchronized (this) {
+            if (wheel == null || until <= loadedUntil) {
+                return 0;
+            }
+            from = loadedUntil;
+            // Moved first, so a booking made while the scan runs is tracked by AppointmentService
+            loadedUntil = until;
+        }
+        LocalDateTime start = LocalDateTime.ofInstant(Instant.ofEpochMilli(from), zone);
+        LocalDateTime end = LocalDateTime.ofInstant(Instant.ofEpochMilli(until), zone);
+        int loaded = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            LocalDate afterDate = start.toLocalDate();
+            LocalTime afterTime = start.toLocalTime();
+            long afterId = Long.MAX_VALUE;
+            while (true) {
+                List<Object[]> page = shards.jdbc(shard).query("SELECT id, doctor_id, appointment_date, appointment_time"
+                        + " FROM appointments WHERE appointment_date BETWEEN ? AND ?"
+                        + " AND (appointment_date > ? OR (appointment_date = ? AND (appointment_time > ?"
+                        + " OR (appointment_time = ? AND id > ?))))"
+                        + " AND status IN ('PENDING', 'APPROVED')"
+                        + " ORDER BY appointment_date, appointment_time, id LIMIT " + batchSize,
+                        (row, i) -> new Object[] {row.getLong(1), row.getLong(2),
+                                row.getObject(3, LocalDate.class), row.getObject(4, LocalTime.class)},
+                        afterDate, end.toLocalDate(), afterDate, afterDate, afterTime, afterTime, afterId);
+                boolean pastEnd = false;
+                synchronized (this) {
+                    for (Object[] row : page) {
+                        long startsAt = startsAt((LocalDate) row[2], (LocalTime) row[3]);
+                        if (startsAt > until) {
+                            pastEnd = true;
+                            break;
+                        }
+                        // An appointment AppointmentService already reported is more current than this read
+                        if (tracked.putIfAbsent((Long) row[0], new Tracked((Long) row[1], startsAt)) == null) {
+                            addTimers((Long) row[0], startsAt, notBefore);
+                            loaded++;
+                        }
+                    }
+                }
+                if (pastEnd || page.size() < batchSize) {
+                    break;
+                }
+                Object[] last = page.get(page.size() - 1);
+                afterDate = (LocalDate) last[2];
+                afterTime = (LocalTime) last[3];
+                afterId = (Long) last[0];
+            }
+        }
+        return loaded;
+    }
+
+    // Reminders due before notBefore are skipped; the expiry check always runs
+    private void addTimers(long appointmentId, long startsAt, long notBefore) {
+        for (Duration lead : leads) {
+            long dueAt = startsAt - lead.toMillis();
+            if (dueAt >= notBefore) {
+                addTimer(dueAt, new Timer(appointmentId, startsAt, lead));
+            }
+        }
+        addTimer(startsAt, new Timer(appointmentId, startsAt, null));
+    }
+
+    private void addTimer(long dueAt, Timer timer) {
+        if (!wheel.add(dueAt, timer)) {
+            overdue.add(timer);
+        }
+    }
+
+    // The outbox skips reminders already written, so a batch retried or run by another instance is harmless
+    private void remind(int shard, Duration lead, List<Long> ids, Map<Long, Tracked> timers) {
+        int count = shards.inTransaction(shard, false,
+                () -> notifications.appointmentReminders(stillDue(ids, timers, false), lead));
+        reminded.increment(count);
+        log.info("event=reminders.sent shard={} leadMinutes={} appointments={}", shard, lead.toMinutes(), count);
+    }
+
+    // Cancels the appointments still waiting for approval when their time comes
+    private void expire(int shard, List<Long> ids, Map<Long, Tracked> timers) {
+        List<Appointment> canceled = shards.inTransaction(shard, false, () -> {
+            List<Appointment> pending = stillDue(ids, timers, true);
+            for (Appointment appointment : pending) {
+                shards.shardForWrite(appointment.getDoctor().getId());
+                appointment.setStatus(Appointment.Status.CANCELED);
+            }
+            return appointmentRepository.saveAll(pending);
+        });
+        if (canceled.isEmpty()) {
+            return;
+        }
+        for (Appointment appointment : canceled) {
+            availabilityService.release(appointment.getDoctor().getId(), appointment.getAppointmentDate(),
+                    appointment.getAppointmentTime());
+        }
+        changeStamps.touch(canceled.stream().flatMap(appointment -> Stream.of(
+                ChangeStampService.patientAppointments(appointment.getPatient().getId()),
+                ChangeStampService.doctorAppointments(appointment.getDoctor().getId()))).toArray(String[]::new));
+        canceled.forEach(appointment -> changeFeed.appointment(ChangeFeed.UPDATED, appointment));
+        canceled.forEach(appointment -> counters.appointmentStatusChanged(appointment, Appointment.Status.PENDING));
+        expired.increment(canceled.size());
+        log.info("event=reminders.expired shard={} appointments={}", shard, canceled.size());
+    }
+
+    // The appointments that still start when their timers were set for, and still hold their slot
+    private List<Appointment> stillDue(List<Long> ids, Map<Long, Tracked> timers, boolean pendingOnly) {
+        List<Appointment> current = new ArrayList<>(ids.size());
+        for (Appointment appointment : appointmentRepository.findAllById(ids)) {
+            boolean holds = pendingOnly ? appointment.getStatus() == Appointment.Status.PENDING
+                    : appointment.getStatus() != null && appointment.getStatus().holdsSlot();
+            if (holds && timers.get(appointment.getId()).startsAt()
+                    == startsAt(appointment.getAppointmentDate(), appointment.getAppointmentTime())) {
+                current.add(appointment);
+            }
+        }
+        return current;
+    }
+
+    // A clinic being moved refuses writes for a few seconds; its batch is tried again after that
+    private synchronized void retryLater(Duration lead, List<Long> ids, Map<Long, Tracked> timers, long now) {
+        for (Long id : ids) {
+            Tracked timer = timers.get(id);
+            // An expiry untracked its appointment when it fired; a later report from AppointmentService wins
+            if (lead == null && tracked.putIfAbsent(id, timer) != null) {
+                continue;
+            }
+            addTimer(now + RETRY_MILLIS, new Timer(id, timer.startsAt(), lead));
+        }
+        log.info("event=reminders.deferred appointments={} retryMs={}", ids.size(), RETRY_MILLIS);
+    }
+
+    private long startsAt(LocalDate date, LocalTime time) {
+        return date.atTime(time).atZone(zone).toInstant().toEpochMilli();
+    }
+
+    private synchronized double trackedCount() {
+        return tracked.size();
+    }
+}
@@ -1,28 +1,98 @@
 package com.example.medicine.med_pres.service;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
+import io.micrometer.core.annotation.Timed;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.dto.AppointmentCursor;
+import com.example.medicine.med_pres.dto.AppointmentPage;
+import com.example.medicine.med_pres.dto.AppointmentView;
+import com.example.medicine.med_pres.dto.DayStatusChange;
+import com.example.medicine.med_pres.exception.SlotUnavailableException;
+import com.example.medicine.med_pres.exception.StatusConflictException;
 import com.example.medicine.med_pres.model.Appointment;
 import com.example.medicine.med_pres.model.Doctor;
 import com.example.medicine.med_pres.model.User;
 import com.example.medicine.med_pres.repository.AppointmentRepository;
+import com.example.medicine.med_pres.repository.ArchivedAppointmentRepository;
 
 @Service
+@Timed(value = "service.invocations", percentiles = {0.5, 0.99, 0.999})
 public class AppointmentService {
+    private static final String TABLE = "appointments";
+    // Same order as AppointmentRepository.SCHEDULE_ORDER, for merging results from several shards
+    private static final Comparator<AppointmentView> SCHEDULE_ORDER = Comparator.comparing(AppointmentView::appointmentDate)
+            .thenComparing(AppointmentView::appointmentTime).thenComparing(AppointmentView::id);
+    private static final Function<AppointmentView, Long> VIEW_DOCTOR = view -> view.doctor().id();
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final SampledLogger log = new SampledLogger(AppointmentService.class, 100);
+
     private final AppointmentRepository appointmentRepository;
     private final UserService userService;
+    private final AvailabilityService availabilityService;
+    private final DoctorService doctorService;
+    private final ChangeStampService changeStamps;
+    private final ShardRouter shards;
+    private final ShardRebalancer rebalancer;
+    private final NotificationOutbox notifications;
+    private final ChangeFeed changeFeed;
+    private final AppointmentReminderScheduler reminders;
+    private final ArchivedAppointmentRepository archivedRepository;
+    private final ArchiveService archive;
+    private final DashboardCounters counters;
 
-    public AppointmentService(AppointmentRepository appointmentRepository, UserService userService) {
+    public AppointmentService(AppointmentRepository appointmentRepository, UserService userService,
+            AvailabilityService availabilityService, DoctorService doctorService, ChangeStampService changeStamps,
+            ShardRouter shards, ShardRebalancer rebalancer, NotificationOutbox notifications, ChangeFeed changeFeed,
+            AppointmentReminderScheduler reminders, ArchivedAppointmentRepository archivedRepository,
+            ArchiveService archive, DashboardCounters counters) {
         this.appointmentRepository = appointmentRepository;
         this.userService = userService;
+        this.availabilityService = availabilityService;
+        this.doctorService = doctorService;
+        this.changeStamps = changeStamps;
+        this.shards = shards;
+        this.rebalancer = rebalancer;
+        this.notifications = notifications;
+        this.changeFeed = changeFeed;
+        this.reminders = reminders;
+        this.archivedRepository = archivedRepository;
+        this.archive = archive;
+        this.counters = counters;
     }
 
     // Create Appointment
     public Appointment createAppointment(Appointment appointment) {
-        return appointmentRepository.save(appointment);
+        Appointment saved;
+        try {
+            saved = shards.on(shardForWrite(appointment), () -> appointmentRepository.save(appointment));
+        } catch (RuntimeException e) {
+            throw slotRefused(appointment, e);
+        }
+        touchLists(saved);
+        changeFeed.appointment(ChangeFeed.CREATED, saved);
+        counters.appointmentCreated(saved);
+        reminders.track(saved);
+        return saved;
     }
     
     // Create Appointment with correct patient from JWT
@@ -33,113 +103,490 @@ public class AppointmentService {
             throw new RuntimeException("Patient not found with email: " + patientEmail);
         }
         
-        System.out.println("DEBUG: Found patient - ID: " + patient.getId() + ", Name: " + patient.getName() + ", Email: " + patient.getEmail());
-        
         // Set the correct patient (this will store patient.id in patient_id column)
         appointment.setPatient(patient);
         appointment.setStatus(Appointment.Status.PENDING);
+        if (appointment.getDoctor() == null || appointment.getDoctor().getId() == null) {
+            throw new IllegalArgumentException("Appointment needs doctor.id");
+        }
+
+        // Claim the slot before touching the database so concurrent requests for it fail fast
+        Long doctorId = appointment.getDoctor().getId();
+        int shard = shards.shardForWrite(doctorId);
+        availabilityService.reserve(doctorId, appointment.getAppointmentDate(), appointment.getAppointmentTime(), true);
+        Appointment saved;
+        try {
+            saved = shards.on(shard, () -> appointmentRepository.save(appointment));
+        } catch (RuntimeException e) {
+            availabilityService.release(doctorId, appointment.getAppointmentDate(), appointment.getAppointmentTime());
+            throw slotRefused(appointment, e);
+        }
+        touchLists(saved);
+        changeFeed.appointment(ChangeFeed.CREATED, saved);
+        counters.appointmentCreated(saved);
+        reminders.track(saved);
+        log.info("event=appointment.created appointmentId={} patientId={}", saved.getId(), patient.getId());
         
-        Appointment saved = appointmentRepository.save(appointment);
-        System.out.println("DEBUG: Appointment saved - Patient ID in DB: " + saved.getPatient().getId());
-        
         return saved;
     }
 
-    // Get all Appointments
-    public List<Appointment> getAllAppointments() {
-        return appointmentRepository.findAll();
+    // Create many Appointments in one transaction per shard; inserts go out as JDBC batches
+    public List<Appointment> createAppointments(List<Appointment> appointments) {
+        if (appointments.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " appointments per batch, got " + appointments.size());
+        }
+        for (Appointment appointment : appointments) {
+            if (appointment.getPatient() == null || appointment.getPatient().getId() == null
+                    || appointment.getDoctor() == null || appointment.getDoctor().getId() == null) {
+                throw new IllegalArgumentException("Every appointment in a batch needs patient.id and doctor.id");
+            }
+            appointment.setId(null);
+            if (appointment.getStatus() == null) {
+                appointment.setStatus(Appointment.Status.PENDING);
+            }
+        }
+        Map<Integer, List<Appointment>> byShard = new LinkedHashMap<>();
+        for (Appointment appointment : appointments) {
+            byShard.computeIfAbsent(shards.shardForWrite(appointment.getDoctor().getId()), shard -> new ArrayList<>())
+                    .add(appointment);
+        }
+        // Batches come from admins and integrations, so only double booking is rejected, not off-schedule times
+        List<Appointment> reserved = new ArrayList<>();
+        List<Appointment> saved = new ArrayList<>(appointments.size());
+        try {
+            for (Appointment appointment : appointments) {
+                if (appointment.getStatus().holdsSlot()) {
+                    availabilityService.reserve(appointment.getDoctor().getId(), appointment.getAppointmentDate(),
+                            appointment.getAppointmentTime(), false);
+                    reserved.add(appointment);
+                }
+            }
+            for (Map.Entry<Integer, List<Appointment>> group : byShard.entrySet()) {
+                saved.addAll(shards.inTransaction(group.getKey(), false, () -> {
+                    List<Appointment> written = appointmentRepository.saveAll(group.getValue());
+                    // Flush here so constraint failures surface while the reservations can still be undone
+                    appointmentRepository.flush();
+                    return written;
+                }));
+                // Shards already committed keep their rows, so their slots stay reserved
+                reserved.removeAll(group.getValue());
+            }
+        } catch (RuntimeException e) {
+            reserved.forEach(this::releaseSlot);
+            RuntimeException failure = reserved.stream().map(appointment -> slotRefused(appointment, e))
+                    .filter(refused -> refused != e).findFirst().orElse(e);
+            if (!saved.isEmpty()) {
+                touchLists(saved.toArray(Appointment[]::new));
+                saved.forEach(appointment -> changeFeed.appointment(ChangeFeed.CREATED, appointment));
+                saved.forEach(counters::appointmentCreated);
+                saved.forEach(reminders::track);
+            }
+            throw failure;
+        }
+        touchLists(saved.toArray(Appointment[]::new));
+        saved.forEach(appointment -> changeFeed.appointment(ChangeFeed.CREATED, appointment));
+        saved.forEach(counters::appointmentCreated);
+        saved.forEach(reminders::track);
+        log.info("event=appointments.batchCreated count={}", saved.size());
+        return saved;
+    }
+
+    // Get all Appointments, gathered from every shard
+    public List<AppointmentView> getAllAppointments() {
+        return shards.gather(shard -> appointmentRepository.findAllViews(), VIEW_DOCTOR, SCHEDULE_ORDER);
+    }
+
+    // Stream Appointments matching the filters to the sink, one read-only transaction per shard in turn; returns the row count.
+    // Archived rows come first on each shard when the range reaches back far enough.
+    public long exportAppointments(LocalDate from, LocalDate to, Appointment.Status status, Consumer<AppointmentView> sink) {
+        boolean withArchive = archive.mayHold(from);
+        long count = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            int current = shard;
+            count += shards.inTransaction(shard, true, () -> {
+                long rowsOnShard = 0;
+                if (withArchive) {
+                    try (Stream<AppointmentView> rows = archivedRepository.streamViews(from, to, status)) {
+                        for (AppointmentView row : (Iterable<AppointmentView>) rows::iterator) {
+                            // Skips what a clinic move left behind, which the doctor's shard also exports
+                            if (shards.holds(current, VIEW_DOCTOR.apply(row))) {
+                                sink.accept(row);
+                                rowsOnShard++;
+                            }
+                        }
+                    }
+                }
+                try (Stream<AppointmentView> rows = appointmentRepository.streamViews(from, to, status)) {
+                    for (AppointmentView row : (Iterable<AppointmentView>) rows::iterator) {
+                        if (shards.holds(current, VIEW_DOCTOR.apply(row))) {
+                            sink.accept(row);
+                            rowsOnShard++;
+                        }
+                    }
+                }
+                return rowsOnShard;
+            });
+        }
+        log.info("event=appointments.exported count={} from={} to={} status={}", count, from, to, status);
+        return count;
     }
 
     // Get Appointment by ID
     public Optional<Appointment> getAppointmentById(Long id) {
-        return appointmentRepository.findById(id);
+        return shards.findReadOnly(id, () -> appointmentRepository.findById(id)).map(ShardRouter.Found::value);
     }
 
-    public List<Appointment> getAppointmentsByPatient(User patientId) {
-    return appointmentRepository.findByPatientId(patientId);
-}
+    // Get appointments by patient id, archived ones included; patients visit clinics on any shard
+    public List<AppointmentView> getAppointmentsByPatient(Long patientId) {
+        return shards.gather(shard -> withArchived(appointmentRepository.findViewsByPatientId(patientId), null,
+                () -> archivedRepository.findViewsByPatientId(patientId)), VIEW_DOCTOR, SCHEDULE_ORDER);
+    }
 
-public List<Appointment> getAppointmentsByDoctor(Doctor doctorId) {
-    return appointmentRepository.findByDoctorId(doctorId);
-}
+    // Get appointments by doctor id, archived ones included
+    public List<AppointmentView> getAppointmentsByDoctor(Long doctorId) {
+        return shards.read(shards.shardOfDoctor(doctorId), () -> withArchived(appointmentRepository.findViewsByDoctorId(doctorId),
+                null, () -> archivedRepository.findViewsByDoctorId(doctorId)));
+    }
 
-    // Update Appointment
+    // Update Appointment; the status is kept, since it only moves through updateAppointmentStatus
     public Appointment updateAppointment(Long id, Appointment updatedAppointment) {
-        return appointmentRepository.findById(id).map(existing -> {
+        return shards.find(id, () -> appointmentRepository.findById(id)).map(found -> {
+            Appointment existing = found.value();
+            Appointment previous = Appointment.builder().patient(existing.getPatient()).doctor(existing.getDoctor())
+                    .appointmentDate(existing.getAppointmentDate()).appointmentTime(existing.getAppointmentTime())
+                    .status(existing.getStatus()).build();
             existing.setReason(updatedAppointment.getReason());
             existing.setAppointmentDate(updatedAppointment.getAppointmentDate());
             existing.setAppointmentTime(updatedAppointment.getAppointmentTime());
-            existing.setStatus(updatedAppointment.getStatus());
             existing.setDoctor(updatedAppointment.getDoctor());
             existing.setPatient(updatedAppointment.getPatient());
-            return appointmentRepository.save(existing);
+            return saveMovingSlot(previous, existing, found.shard());
         }).orElseThrow(() -> new RuntimeException("Appointment not found with id " + id));
     }
 
-    // Get appointments by doctor email
-    public List<Appointment> getAppointmentsByDoctorEmail(String doctorEmail) {
-        List<Appointment> allAppointments = appointmentRepository.findAll();
-        System.out.println("DEBUG: Total appointments in database: " + allAppointments.size());
-        
-        List<Appointment> filtered = allAppointments.stream()
-            .filter(appointment -> {
-                if (appointment.getDoctor() == null) {
-                    System.out.println("DEBUG: Appointment " + appointment.getId() + " has no doctor");
-                    return false;
-                }
-                if (appointment.getDoctor().getUser() == null) {
-                    System.out.println("DEBUG: Appointment " + appointment.getId() + " doctor has no user");
-                    return false;
-                }
-                String appointmentDoctorEmail = appointment.getDoctor().getUser().getEmail();
-                boolean matches = doctorEmail.equals(appointmentDoctorEmail);
-                System.out.println("DEBUG: Appointment " + appointment.getId() + 
-                    " - Doctor: " + appointmentDoctorEmail + 
-                    " - Patient: " + (appointment.getPatient() != null ? appointment.getPatient().getName() : "null") +
-                    " - Matches: " + matches);
-                return matches;
-            })
-            .collect(java.util.stream.Collectors.toList());
-            
-        System.out.println("DEBUG: Filtered appointments for " + doctorEmail + ": " + filtered.size());
-        return filtered;
+    // ETag for a doctor's appointment list; names shown in it come from users and doctors
+    @Transactional(readOnly = true)
+    public String doctorAppointmentsTag(String doctorEmail) {
+        Long doctorId = doctorService.getDoctorByUserEmail(doctorEmail).map(Doctor::getId).orElse(null);
+        return changeStamps.etag(ChangeStampService.doctorAppointments(doctorId),
+                ChangeStampService.USERS, ChangeStampService.DOCTORS);
+    }
+
+    // ETag for a patient's appointment list
+    @Transactional(readOnly = true)
+    public String patientAppointmentsTag(String patientEmail) {
+        User patient = userService.findByEmail(patientEmail);
+        return changeStamps.etag(ChangeStampService.patientAppointments(patient != null ? patient.getId() : null),
+                ChangeStampService.USERS, ChangeStampService.DOCTORS);
+    }
+
+    // Get appointments by doctor email, archived ones included
+    public List<AppointmentView> getAppointmentsByDoctorEmail(String doctorEmail) {
+        List<AppointmentView> appointments = shards.read(doctorShard(doctorEmail),
+                () -> withArchived(appointmentRepository.findViewsByDoctorEmail(doctorEmail), null,
+                        () -> archivedRepository.findViewsByDoctorEmail(doctorEmail)));
+        log.info("event=appointments.byDoctor doctorId={} count={}", doctorId(doctorEmail), appointments.size());
+        return appointments;
     }
     
-    // Get appointments by patient email
-    public List<Appointment> getAppointmentsByPatientEmail(String patientEmail) {
-        List<Appointment> allAppointments = appointmentRepository.findAll();
-        System.out.println("DEBUG: Total appointments in database: " + allAppointments.size());
-        
-        List<Appointment> filtered = allAppointments.stream()
-            .filter(appointment -> {
-                if (appointment.getPatient() == null) {
-                    System.out.println("DEBUG: Appointment " + appointment.getId() + " has no patient");
-                    return false;
+    // Get appointments by patient email, archived ones included; patients visit clinics on any shard
+    public List<AppointmentView> getAppointmentsByPatientEmail(String patientEmail) {
+        List<AppointmentView> appointments = shards.gather(
+                shard -> withArchived(appointmentRepository.findViewsByPatientEmail(patientEmail), null,
+                        () -> archivedRepository.findViewsByPatientEmail(patientEmail)), VIEW_DOCTOR, SCHEDULE_ORDER);
+        log.info("event=appointments.byPatient patientId={} count={}", patientId(patientEmail), appointments.size());
+        return appointments;
+    }
+
+    // Get one keyset page of a doctor's appointments
+    public AppointmentPage getAppointmentPageByDoctorEmail(String doctorEmail, String cursor, int size) {
+        int pageSize = clampPageSize(size);
+        Limit limit = Limit.of(pageSize + 1);
+        AppointmentCursor after = cursor == null || cursor.isBlank() ? null : AppointmentCursor.decode(cursor);
+        List<AppointmentView> fetched = shards.read(doctorShard(doctorEmail), () -> withArchived(
+                after == null ? appointmentRepository.findFirstPageByDoctorEmail(doctorEmail, limit)
+                        : appointmentRepository.findPageByDoctorEmailAfter(doctorEmail, after.date(), after.time(), after.id(), limit),
+                after,
+                () -> after == null ? archivedRepository.findFirstPageByDoctorEmail(doctorEmail, limit)
+                        : archivedRepository.findPageByDoctorEmailAfter(doctorEmail, after.date(), after.time(), after.id(), limit)));
+        return AppointmentPage.of(fetched.size() > pageSize + 1 ? fetched.subList(0, pageSize + 1) : fetched, pageSize);
+    }
+
+    // Get one keyset page of a patient's appointments: the same page from every shard, merged and cut to size
+    public AppointmentPage getAppointmentPageByPatientEmail(String patientEmail, String cursor, int size) {
+        int pageSize = clampPageSize(size);
+        Limit limit = Limit.of(pageSize + 1);
+        AppointmentCursor after = cursor == null || cursor.isBlank() ? null : AppointmentCursor.decode(cursor);
+        List<AppointmentView> fetched = shards.gather(shard -> withArchived(
+                after == null ? appointmentRepository.findFirstPageByPatientEmail(patientEmail, limit)
+                        : appointmentRepository.findPageByPatientEmailAfter(patientEmail, after.date(), after.time(), after.id(), limit),
+                after,
+                () -> after == null ? archivedRepository.findFirstPageByPatientEmail(patientEmail, limit)
+                        : archivedRepository.findPageByPatientEmailAfter(patientEmail, after.date(), after.time(), after.id(), limit)),
+                VIEW_DOCTOR, SCHEDULE_ORDER);
+        return AppointmentPage.of(fetched.size() > pageSize + 1 ? fetched.subList(0, pageSize + 1) : fetched, pageSize);
+    }
+
+    // Merges in the same query against the archive when rows after the cursor (or any, without one) may be archived
+    private List<AppointmentView> withArchived(List<AppointmentView> live, AppointmentCursor after,
+            Supplier<List<AppointmentView>> archived) {
+        if (!archive.mayHold(after != null ? after.date() : null)) {
+            return live;
+        }
+        List<AppointmentView> older = archived.get();
+        if (older.isEmpty()) {
+            return live;
+        }
+        List<AppointmentView> merged = new ArrayList<>(older.size() + live.size());
+        merged.addAll(older);
+        merged.addAll(live);
+        // Both parts are already sorted, which the merge sort takes advantage of
+        merged.sort(SCHEDULE_ORDER);
+        return merged;
+    }
+
+    private int clampPageSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    // Update Appointment Status with one conditional UPDATE: applied only while the appointment is still in a
+    // status the move is allowed from (or in expectedStatus, when given), so of two concurrent changes the
+    // second gets a conflict instead of overwriting the first. Repeating a change already made is a no-op.
+    // Sources are tried one at a time in lifecycle order, which also tells which status the move was from.
+    public Appointment updateAppointmentStatus(Long id, String status, String expectedStatus) {
+        Appointment.Status target = parseStatus(status);
+        Set<Appointment.Status> sources = sourcesOf(target, expectedStatus);
+        StatusOutcome outcome = shards.findInTransaction(id, () -> {
+            for (Appointment.Status from : sources) {
+                if (appointmentRepository.updateStatusIfIn(id, Set.of(from), target) > 0) {
+                    Appointment changed = appointmentRepository.findById(id).orElseThrow();
+                    // Refused, and rolled back, while the clinic is being moved
+                    shards.shardForWrite(changed.getDoctor().getId());
+                    notifications.appointmentStatusChanged(changed);
+                    return Optional.of(new StatusOutcome(changed, from));
                 }
-                String appointmentPatientEmail = appointment.getPatient().getEmail();
-                boolean matches = patientEmail.equals(appointmentPatientEmail);
-                System.out.println("DEBUG: Appointment " + appointment.getId() + 
-                    " - Patient: " + appointmentPatientEmail + 
-                    " - Doctor: " + (appointment.getDoctor() != null ? appointment.getDoctor().getUser().getName() : "null") +
-                    " - Matches: " + matches);
-                return matches;
-            })
-            .collect(java.util.stream.Collectors.toList());
-            
-        System.out.println("DEBUG: Filtered appointments for patient " + patientEmail + ": " + filtered.size());
-        return filtered;
-    }
-
-    // Update Appointment Status
-    public Appointment updateAppointmentStatus(Long id, String status) {
-        return appointmentRepository.findById(id).map(existing -> {
-            existing.setStatus(Appointment.Status.valueOf(status));
-            return appointmentRepository.save(existing);
-        }).orElseThrow(() -> new RuntimeException("Appointment not found with id " + id));
+            }
+            return appointmentRepository.findById(id).map(current -> new StatusOutcome(current, null));
+        }).map(ShardRouter.Found::value).orElseThrow(() -> new RuntimeException("Appointment not found with id " + id));
+        Appointment appointment = outcome.appointment();
+        if (outcome.from() == null) {
+            if (appointment.getStatus() == target && expectedStatus == null) {
+                return appointment;
+            }
+            throw new StatusConflictException("Appointment " + id + " is " + appointment.getStatus() + ", "
+                    + (expectedStatus != null ? "not " + expectedStatus : "it cannot be moved to " + target + " from there"),
+                    appointment.getStatus());
+        }
+        statusChanged(List.of(outcome));
+        return appointment;
+    }
+
+    // Moves a doctor's whole day to a new status: the day's rows are locked, changed in one UPDATE and
+    // notified in the same transaction. Appointments not allowed to make the move are left as they are.
+    // doctorEmail is set when a doctor asks, who may only move their own day.
+    public List<Appointment> updateDayStatus(DayStatusChange change, String doctorEmail) {
+        if (change.date() == null) {
+            throw new IllegalArgumentException("A day status change needs a date");
+        }
+        Long doctorId = change.doctorId();
+        if (doctorEmail != null) {
+            Long own = doctorService.getDoctorByUserEmail(doctorEmail).map(Doctor::getId)
+                    .orElseThrow(() -> new IllegalArgumentException("No doctor profile for " + doctorEmail));
+            if (doctorId != null && !doctorId.equals(own)) {
+                throw new AccessDeniedException("Doctors can only change the status of their own appointments");
+            }
+            doctorId = own;
+        } else if (doctorId == null) {
+            throw new IllegalArgumentException("A day status change needs doctorId");
+        }
+        Appointment.Status target = parseStatus(change.status());
+        Set<Appointment.Status> sources = sourcesOf(target, change.expectedStatus());
+        Long doctor = doctorId;
+        List<StatusOutcome> changed = shards.inTransaction(shards.shardForWrite(doctor), false, () -> {
+            List<Appointment> day = appointmentRepository.lockDayInStatus(doctor, change.date(), sources);
+            if (day.isEmpty()) {
+                return List.of();
+            }
+            // Just the locked rows, so one booked for that day meanwhile is not changed unnoticed
+            appointmentRepository.updateStatusesIfIn(day.stream().map(Appointment::getId).toList(), sources, target);
+            // The update cleared the persistence context, so these are detached copies to report from
+            List<StatusOutcome> outcomes = new ArrayList<>(day.size());
+            for (Appointment appointment : day) {
+                outcomes.add(new StatusOutcome(appointment, appointment.getStatus()));
+                appointment.setStatus(target);
+                notifications.appointmentStatusChanged(appointment);
+            }
+            return outcomes;
+        });
+        if (!changed.isEmpty()) {
+            statusChanged(changed);
+        }
+        log.info("event=appointments.dayStatusChanged doctorId={} date={} status={} count={}",
+                doctor, change.date(), target, changed.size());
+        return changed.stream().map(StatusOutcome::appointment).toList();
+    }
+
+    private static Appointment.Status parseStatus(String status) {
+        if (status == null) {
+            throw new IllegalArgumentException("status is required");
+        }
+        try {
+            return Appointment.Status.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown appointment status: " + status);
+        }
+    }
+
+    // Statuses a move to target may start from, optionally narrowed to the one the caller expects
+    private static Set<Appointment.Status> sourcesOf(Appointment.Status target, String expectedStatus) {
+        Set<Appointment.Status> sources = target.sources();
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("Appointments cannot be moved to " + target);
+        }
+        if (expectedStatus == null) {
+            return sources;
+        }
+        Appointment.Status expected = parseStatus(expectedStatus);
+        if (!sources.contains(expected)) {
+            throw new IllegalArgumentException("Appointments cannot be moved from " + expected + " to " + target);
+        }
+        return Set.of(expected);
+    }
+
+    // After committed status changes; every move starts from a status that holds the slot
+    private void statusChanged(List<StatusOutcome> changed) {
+        for (StatusOutcome outcome : changed) {
+            Appointment appointment = outcome.appointment();
+            if (!appointment.getStatus().holdsSlot()) {
+                availabilityService.release(appointment.getDoctor().getId(), appointment.getAppointmentDate(),
+                        appointment.getAppointmentTime());
+            }
+        }
+        touchLists(changed.stream().map(StatusOutcome::appointment).toArray(Appointment[]::new));
+        for (StatusOutcome outcome : changed) {
+            changeFeed.appointment(ChangeFeed.UPDATED, outcome.appointment());
+            counters.appointmentStatusChanged(outcome.appointment(), outcome.from());
+            reminders.track(outcome.appointment());
+        }
+    }
+
+    // Result of a conditional status change on the shard holding the appointment; from is the status it
+    // was moved from, or null when it was not moved
+    private record StatusOutcome(Appointment appointment, Appointment.Status from) {
     }
 
     // Delete Appointment
     public void deleteAppointment(Long id) {
-        appointmentRepository.deleteById(id);
+        shards.find(id, () -> appointmentRepository.findById(id)).ifPresent(found -> {
+            Appointment existing = found.value();
+            shards.shardForWrite(existing.getDoctor().getId());
+            shards.run(found.shard(), () -> appointmentRepository.delete(existing));
+            releaseSlot(existing);
+            touchLists(existing);
+            changeFeed.appointment(ChangeFeed.DELETED, existing);
+            counters.appointmentDeleted(existing);
+            reminders.untrack(existing.getId());
+        });
+    }
+
+    // Save an appointment whose slot or status may have changed, keeping the availability index in step.
+    // The row is saved where it is and then moved if its new doctor's clinic lives on another shard.
+    private Appointment saveMovingSlot(Appointment previous, Appointment updated, int shard) {
+        shards.shardForWrite(previous.getDoctor().getId());
+        int target = shardForWrite(updated);
+        boolean heldBefore = holdsSlot(previous);
+        boolean holdsNow = holdsSlot(updated);
+        boolean sameSlot = heldBefore && holdsNow
+                && previous.getDoctor().getId().equals(updated.getDoctor().getId())
+                && previous.getAppointmentDate().equals(updated.getAppointmentDate())
+                && previous.getAppointmentTime().equals(updated.getAppointmentTime());
+        if (holdsNow && !sameSlot) {
+            availabilityService.reserve(updated.getDoctor().getId(), updated.getAppointmentDate(),
+                    updated.getAppointmentTime(), false);
+        }
+        Appointment saved;
+        try {
+            // A status change and the patient's notification about it commit together
+            boolean statusChanged = previous.getStatus() != updated.getStatus();
+            saved = shards.inTransaction(shard, false, () -> {
+                Appointment result = appointmentRepository.save(updated);
+                if (statusChanged) {
+                    notifications.appointmentStatusChanged(result);
+                }
+                return result;
+            });
+            rebalancer.moveRows(TABLE, List.of(saved.getId()), shard, target);
+        } catch (RuntimeException e) {
+            if (holdsNow && !sameSlot) {
+                releaseSlot(updated);
+            }
+            throw slotRefused(updated, e);
+        }
+        if (heldBefore && !sameSlot) {
+            releaseSlot(previous);
+        }
+        touchLists(previous, saved);
+        changeFeed.appointment(ChangeFeed.UPDATED, saved, previous);
+        counters.appointmentUpdated(previous, saved);
+        reminders.track(saved);
+        return saved;
+    }
+
+    // Marks the patient and doctor appointment lists these appointments appear in as changed
+    private void touchLists(Appointment... appointments) {
+        changeStamps.touch(Arrays.stream(appointments)
+                .flatMap(appointment -> Stream.of(
+                        ChangeStampService.patientAppointments(appointment.getPatient() != null ? appointment.getPatient().getId() : null),
+                        ChangeStampService.doctorAppointments(appointment.getDoctor() != null ? appointment.getDoctor().getId() : null)))
+                .toArray(String[]::new));
+    }
+
+    private int shardForWrite(Appointment appointment) {
+        // Without a doctor the insert fails on the home database, as it always has
+        return appointment.getDoctor() == null || appointment.getDoctor().getId() == null
+                ? ShardRouter.HOME : shards.shardForWrite(appointment.getDoctor().getId());
+    }
+
+    // Shard of the doctor with this user email; unknown doctors have no appointments anywhere
+    private int doctorShard(String doctorEmail) {
+        if (!shards.isSharded()) {
+            return ShardRouter.HOME;
+        }
+        return doctorService.getDoctorByUserEmail(doctorEmail).map(doctor -> shards.shardOfDoctor(doctor.getId()))
+                .orElse(ShardRouter.HOME);
+    }
+
+    // Ids for logs, which keep emails out; both lookups are cached
+    private Long doctorId(String doctorEmail) {
+        return doctorService.getDoctorByUserEmail(doctorEmail).map(Doctor::getId).orElse(null);
+    }
+
+    private Long patientId(String patientEmail) {
+        User patient = userService.findByEmail(patientEmail);
+        return patient != null ? patient.getId() : null;
+    }
+
+    private static boolean holdsSlot(Appointment appointment) {
+        return appointment.getStatus() != null && appointment.getStatus().holdsSlot()
+                && appointment.getDoctor() != null && appointment.getDoctor().getId() != null;
+    }
+
+    // A save failed. If the unique key on held slots refused it although this instance's index let it through,
+    // another instance has the slot: the index is reloaded and the caller gets the usual conflict.
+    private RuntimeException slotRefused(Appointment appointment, RuntimeException failure) {
+        if (failure instanceof DataIntegrityViolationException && holdsSlot(appointment)
+                && availabilityService.resync(appointment.getDoctor().getId(), appointment.getAppointmentDate(),
+                        appointment.getAppointmentTime())) {
+            return new SlotUnavailableException("Slot " + appointment.getAppointmentDate() + " " + appointment.getAppointmentTime()
+                    + " is already booked for doctor " + appointment.getDoctor().getId());
+        }
+        return failure;
+    }
+
+    private void releaseSlot(Appointment appointment) {
+        if (holdsSlot(appointment)) {
+            availabilityService.release(appointment.getDoctor().getId(), appointment.getAppointmentDate(),
+                    appointment.getAppointmentTime());
+        }
     }
 }
\ No newline at end of file
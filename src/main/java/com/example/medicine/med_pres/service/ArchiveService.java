@@ -0,0 +1,198 @@
+package com.example.medicine.med_pres.service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.model.ClinicShard;
+import com.example.medicine.med_pres.repository.AppointmentRepository;
+import com.example.medicine.med_pres.repository.ArchivedAppointmentRepository;
+import com.example.medicine.med_pres.repository.ArchivedPrescriptionRepository;
+import com.example.medicine.med_pres.repository.PrescriptionRepository;
+
+/**
+ * Keeps {@code appointments} and {@code prescriptions} down to the hot working set by moving rows
+ * dated more than {@code archive.horizon} ago into {@code appointments_archive} and
+ * {@code prescriptions_archive} on the same shard.
+ *
+ * A run goes shard by shard in batches of {@code archive.batch-size}: each batch locks the oldest
+ * rows, copies them with one INSERT ... SELECT and deletes them, in one transaction, then pauses
+ * {@code archive.pause-ms} so the live tables stay responsive. Runs happen on {@code archive.cron}
+ * on a thread of their own and stop early while a clinic is being moved between shards.
+ *
+ * History reads ask {@link #mayHold} whether the archive can have rows in the dates they cover, and
+ * merge them in only then.
+ */
+@Service
+public class ArchiveService {
+    private static final SampledLogger log = new SampledLogger(ArchiveService.class, 100);
+
+    private final ShardRouter shards;
+    private final AppointmentRepository appointmentRepository;
+    private final PrescriptionRepository prescriptionRepository;
+    private final ArchivedAppointmentRepository archivedAppointments;
+    private final ArchivedPrescriptionRepository archivedPrescriptions;
+    private final boolean enabled;
+    private final long horizonDays;
+    private final int batchSize;
+    private final long pauseMillis;
+    private final ExecutorService worker;
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Counter appointmentsArchived;
+    private final Counter prescriptionsArchived;
+    // Latest appointment date found in the archive, on any shard; null while none is known
+    private volatile LocalDate latestArchived;
+
+    public ArchiveService(ShardRouter shards, AppointmentRepository appointmentRepository,
+            PrescriptionRepository prescriptionRepository, ArchivedAppointmentRepository archivedAppointments,
+            ArchivedPrescriptionRepository archivedPrescriptions, MeterRegistry registry,
+            @Value("${archive.enabled:true}") boolean enabled,
+            @Value("${archive.horizon:365d}") Duration horizon,
+            @Value("${archive.batch-size:500}") int batchSize,
+            @Value("${archive.pause-ms:200}") long pauseMillis) {
+        this.shards = shards;
+        this.appointmentRepository = appointmentRepository;
+        this.prescriptionRepository = prescriptionRepository;
+        this.archivedAppointments = archivedAppointments;
+        this.archivedPrescriptions = archivedPrescriptions;
+        this.enabled = enabled;
+        this.horizonDays = horizon.toDays();
+        this.batchSize = batchSize;
+        this.pauseMillis = pauseMillis;
+        this.worker = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.appointmentsArchived = archivedCounter(registry, "appointments");
+        this.prescriptionsArchived = archivedCounter(registry, "prescriptions");
+    }
+
+    private static Counter archivedCounter(MeterRegistry registry, String table) {
+        return Counter.builder("archive.rows")
+                .description("Rows moved from the live tables to the archive, by table")
+                .tag("table", table).register(registry);
+    }
+
+    // Whether archived appointments may be dated on or after from; a null from means any date
+    public boolean mayHold(LocalDate from) {
+        LocalDate bound = latestArchived != null ? latestArchived.plusDays(1) : null;
+        if (enabled) {
+            // Rows are archived only once dated before the cutoff, which never runs ahead of today's
+            LocalDate cutoff = cutoff();
+            bound = bound == null || cutoff.isAfter(bound) ? cutoff : bound;
+        }
+        return bound != null && (from == null || from.isBefore(bound));
+    }
+
+    // Learns what earlier runs, with whatever horizon, left in the archive
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(2)
+    public void loadLatestArchived() {
+        latestArchived = shards.onEach(shard -> archivedAppointments.findLatestDate()).stream()
+                .filter(Objects::nonNull).max(LocalDate::compareTo).orElse(null);
+    }
+
+    @Scheduled(cron = "${archive.cron:0 30 3 * * *}")
+    public void scheduledRun() {
+        start();
+    }
+
+    // Starts a run in the background unless one is going or archiving is off; returns whether this call started it
+    public boolean start() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return false;
+        }
+        worker.execute(() -> {
+            try {
+                archive(cutoff());
+            } catch (RuntimeException e) {
+                log.warn("event=archive.failed error={}", e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+        return true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    private LocalDate cutoff() {
+        return LocalDate.now().minusDays(horizonDays);
+    }
+
+    private void archive(LocalDate cutoff) {
+        long appointments = 0;
+        long prescriptions = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            appointments += drain(shard, cutoff, appointmentRepository::lockIdsBefore, ids -> {
+                archivedAppointments.copyFromLive(ids);
+                appointmentRepository.deleteAllByIdInBatch(ids);
+            }, appointmentsArchived);
+            prescriptions += drain(shard, cutoff, prescriptionRepository::lockIdsBefore, ids -> {
+                archivedPrescriptions.copyFromLive(ids);
+                prescriptionRepository.deleteAllByIdInBatch(ids);
+            }, prescriptionsArchived);
+        }
+        if (appointments > 0) {
+            LocalDate latest = cutoff.minusDays(1);
+            latestArchived = latestArchived == null || latest.isAfter(latestArchived) ? latest : latestArchived;
+        }
+        log.info("event=archive.finished cutoff={} appointments={} prescriptions={}", cutoff, appointments, prescriptions);
+    }
+
+    // Archives one table's rows on one shard, a batch per transaction; returns the number of rows moved
+    private long drain(int shard, LocalDate cutoff, LockOldest lockOldest, Consumer<List<Long>> move, Counter archived) {
+        long moved = 0;
+        while (!movingClinics()) {
+            int count = shards.inTransaction(shard, false, () -> {
+                List<Long> ids = lockOldest.lock(cutoff, batchSize);
+                if (!ids.isEmpty()) {
+                    move.accept(ids);
+                }
+                return ids.size();
+            });
+            moved += count;
+            archived.increment(count);
+            if (count < batchSize) {
+                break;
+            }
+            try {
+                Thread.sleep(pauseMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return moved;
+    }
+
+    // A clinic move copies rows by doctor, so archiving meanwhile could leave a row in both places
+    private boolean movingClinics() {
+        return shards.isSharded() && shards.placements().stream().anyMatch(ClinicShard::isMoving);
+    }
+
+    @FunctionalInterface
+    private interface LockOldest {
+        List<Long> lock(LocalDate cutoff, int limit);
+    }
+}
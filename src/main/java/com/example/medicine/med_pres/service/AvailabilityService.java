@@ -0,0 +1,374 @@
+package com.example.medicine.med_pres.service;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.dto.BookedSlot;
+import com.example.medicine.med_pres.dto.DaySlots;
+import com.example.medicine.med_pres.exception.SlotUnavailableException;
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.model.DoctorScheduleOverride;
+import com.example.medicine.med_pres.model.DoctorScheduleTemplate;
+import com.example.medicine.med_pres.repository.AppointmentRepository;
+import com.example.medicine.med_pres.repository.DoctorRepository;
+import com.example.medicine.med_pres.repository.DoctorScheduleOverrideRepository;
+import com.example.medicine.med_pres.repository.DoctorScheduleTemplateRepository;
+
+/**
+ * Doctor availability and slot booking backed by an in-memory index.
+ *
+ * A day is 48 half-hour slots packed into a {@code long} (bit i = 00:00 + 30*i minutes).
+ * Each doctor's weekly template and per-date overrides are cached on first use, and the
+ * booked slots of each doctor-day live in an {@link AtomicLong}, in a cache bounded by size and idle
+ * time; an evicted day is reloaded from the database on its next use. Booking is a
+ * compare-and-set on that bitmap, so two requests for the same slot cannot both win and
+ * requests for different doctor-days never contend.
+ *
+ * The bitmap only knows this instance's bookings. The database has the final word through a unique
+ * key over the slot-holding rows (see {@link Appointment#getSlotHeld()}); when it refuses a booking
+ * the bitmap passed, {@link #resync} reloads the day.
+ */
+@Service
+@Timed(value = "service.invocations", percentiles = {0.5, 0.99, 0.999})
+public class AvailabilityService {
+
+    public static final int SLOT_MINUTES = 30;
+    private static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+    private static final int MAX_RANGE_DAYS = 92;
+    private static final Set<Appointment.Status> SLOT_HOLDING = EnumSet.of(Appointment.Status.PENDING, Appointment.Status.APPROVED);
+    private static final Pattern LEGACY_TIME = Pattern.compile("\\d{1,2}:\\d{2}");
+    private static final SampledLogger log = new SampledLogger(AvailabilityService.class, 100);
+
+    private final DoctorScheduleTemplateRepository templateRepository;
+    private final DoctorScheduleOverrideRepository overrideRepository;
+    private final AppointmentRepository appointmentRepository;
+    private final DoctorRepository doctorRepository;
+    private final ShardRouter shards;
+
+    private final int bookingHorizonDays;
+
+    private final Map<Long, Schedule> schedules = new ConcurrentHashMap<>();
+    private final Cache<DoctorDay, AtomicLong> booked;
+
+    private record DoctorDay(Long doctorId, LocalDate date) {
+    }
+
+    // Weekly bitmaps indexed by DayOfWeek.ordinal() plus per-date overrides
+    private record Schedule(long[] weekly, Map<LocalDate, Long> overrides) {
+
+        long availableOn(LocalDate date) {
+            Long override = overrides.get(date);
+            return override != null ? override : weekly[date.getDayOfWeek().ordinal()];
+        }
+    }
+
+    public AvailabilityService(DoctorScheduleTemplateRepository templateRepository,
+            DoctorScheduleOverrideRepository overrideRepository,
+            AppointmentRepository appointmentRepository, DoctorRepository doctorRepository, ShardRouter shards,
+            MeterRegistry registry,
+            @Value("${availability.max-cached-days:200000}") long maxCachedDays,
+            @Value("${availability.cached-day-idle:30m}") Duration cachedDayIdle,
+            @Value("${availability.booking-horizon-days:365}") int bookingHorizonDays) {
+        this.templateRepository = templateRepository;
+        this.overrideRepository = overrideRepository;
+        this.appointmentRepository = appointmentRepository;
+        this.doctorRepository = doctorRepository;
+        this.shards = shards;
+        this.bookingHorizonDays = bookingHorizonDays;
+        this.booked = Caffeine.newBuilder()
+                .maximumSize(maxCachedDays)
+                .expireAfterAccess(cachedDayIdle)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, booked, "availabilityBookedDays");
+    }
+
+    // Free slots of a doctor per day between two dates (inclusive)
+    public List<DaySlots> getFreeSlots(Long doctorId, LocalDate from, LocalDate to) {
+        if (to.isBefore(from) || from.plusDays(MAX_RANGE_DAYS).isBefore(to)) {
+            throw new IllegalArgumentException("Date range must be ascending and at most " + MAX_RANGE_DAYS + " days");
+        }
+        checkHorizon(to);
+        Schedule schedule = schedule(doctorId);
+        preloadBooked(doctorId, from, to);
+        List<DaySlots> days = new ArrayList<>();
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            long free = schedule.availableOn(date) & ~booked(doctorId, date).get();
+            days.add(new DaySlots(date, toTimes(free)));
+        }
+        return days;
+    }
+
+    /**
+     * Atomically books a slot. With {@code requireAvailable} the slot must also be part of the
+     * doctor's schedule for that date (patient self-booking); otherwise only double booking is
+     * rejected (admin and integration writes).
+     */
+    public void reserve(Long doctorId, LocalDate date, LocalTime time, boolean requireAvailable) {
+        long bit = slotBit(time);
+        checkHorizon(date);
+        // Also turns away unknown doctors before anything is cached for them
+        Schedule schedule = schedule(doctorId);
+        if (requireAvailable && (schedule.availableOn(date) & bit) == 0) {
+            throw new SlotUnavailableException("Doctor " + doctorId + " is not available on " + date + " at " + time);
+        }
+        AtomicLong day = booked(doctorId, date);
+        long current;
+        do {
+            current = day.get();
+            if ((current & bit) != 0) {
+                throw new SlotUnavailableException("Slot " + date + " " + time + " is already booked for doctor " + doctorId);
+            }
+        } while (!day.compareAndSet(current, current | bit));
+    }
+
+    // Reloads a day after the database refused a booking the index allowed, e.g. because another instance
+    // took the slot; returns whether the slot is booked after all
+    public boolean resync(Long doctorId, LocalDate date, LocalTime time) {
+        long bits = bookedBits(bookedSlots(doctorId, date, date));
+        booked.put(new DoctorDay(doctorId, date), new AtomicLong(bits));
+        return (bits & floorBit(time)) != 0;
+    }
+
+    // Frees a slot previously taken by reserve(); a no-op for days not in the index
+    public void release(Long doctorId, LocalDate date, LocalTime time) {
+        AtomicLong day = booked.getIfPresent(new DoctorDay(doctorId, date));
+        if (day != null) {
+            long bit = slotBit(time);
+            day.getAndUpdate(bits -> bits & ~bit);
+        }
+    }
+
+    // Weekly template as weekday -> slot start times
+    public Map<DayOfWeek, List<LocalTime>> getWeeklyTemplate(Long doctorId) {
+        long[] weekly = schedule(doctorId).weekly();
+        Map<DayOfWeek, List<LocalTime>> template = new EnumMap<>(DayOfWeek.class);
+        for (DayOfWeek day : DayOfWeek.values()) {
+            template.put(day, toTimes(weekly[day.ordinal()]));
+        }
+        return template;
+    }
+
+    // Replace the weekly template; weekdays missing from the map are unavailable
+    @Transactional
+    public void setWeeklyTemplate(Long doctorId, Map<DayOfWeek, List<LocalTime>> template) {
+        templateRepository.deleteByDoctorId(doctorId);
+        templateRepository.flush();
+        List<DoctorScheduleTemplate> rows = new ArrayList<>();
+        template.forEach((day, times) -> rows.add(DoctorScheduleTemplate.builder()
+                .doctorId(doctorId).dayOfWeek(day).slotBits(toBits(times)).build()));
+        templateRepository.saveAll(rows);
+        schedules.remove(doctorId);
+    }
+
+    // Override one date; an empty list marks the doctor unavailable that day
+    @Transactional
+    public void setOverride(Long doctorId, LocalDate date, List<LocalTime> times) {
+        DoctorScheduleOverride override = overrideRepository.findByDoctorIdAndDate(doctorId, date)
+                .orElseGet(() -> DoctorScheduleOverride.builder().doctorId(doctorId).date(date).build());
+        override.setSlotBits(toBits(times));
+        overrideRepository.save(override);
+        schedules.remove(doctorId);
+    }
+
+    @Transactional
+    public void removeOverride(Long doctorId, LocalDate date) {
+        overrideRepository.deleteByDoctorIdAndDate(doctorId, date);
+        schedules.remove(doctorId);
+    }
+
+    // Drop everything cached for a doctor (e.g. after the doctor is deleted)
+    public void evictDoctor(Long doctorId) {
+        schedules.remove(doctorId);
+        booked.asMap().keySet().removeIf(key -> key.doctorId().equals(doctorId));
+    }
+
+    // Past days can no longer be booked, so their bitmaps are dropped nightly
+    @Scheduled(cron = "0 5 0 * * *")
+    public void evictPastDays() {
+        LocalDate today = LocalDate.now();
+        booked.asMap().keySet().removeIf(key -> key.date().isBefore(today));
+    }
+
+    // Rows written before slot_held existed, or by hand, hold their slot without claiming it in the unique key.
+    // Claims it for the oldest such row per slot; later ones are double bookings from before and are only counted.
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(2)
+    public void claimHeldSlots() {
+        for (int shard = 0; shard < shards.size(); shard++) {
+            JdbcTemplate jdbc = shards.jdbc(shard);
+            List<Long> ids = jdbc.queryForList("SELECT MIN(a.id) FROM appointments a WHERE a.slot_held IS NULL "
+                    + "AND a.status IN ('PENDING', 'APPROVED') AND NOT EXISTS (SELECT 1 FROM appointments h "
+                    + "WHERE h.doctor_id = a.doctor_id AND h.appointment_date = a.appointment_date "
+                    + "AND h.appointment_time = a.appointment_time AND h.slot_held = TRUE) "
+                    + "GROUP BY a.doctor_id, a.appointment_date, a.appointment_time", Long.class);
+            long claimed = 0;
+            for (int start = 0; start < ids.size(); start += ShardRows.BATCH_SIZE) {
+                List<Long> batch = ids.subList(start, Math.min(ids.size(), start + ShardRows.BATCH_SIZE));
+                claimed += claim(jdbc, batch);
+            }
+            Long doubleBooked = jdbc.queryForObject("SELECT COUNT(*) FROM appointments WHERE slot_held IS NULL "
+                    + "AND status IN ('PENDING', 'APPROVED')", Long.class);
+            if (claimed > 0 || doubleBooked > 0) {
+                log.warn("event=slots.claimed shard={} claimed={} doubleBooked={}", shard, claimed, doubleBooked);
+            }
+        }
+    }
+
+    private static long claim(JdbcTemplate jdbc, List<Long> ids) {
+        String sql = "UPDATE appointments SET slot_held = TRUE WHERE slot_held IS NULL AND id IN (";
+        try {
+            return jdbc.update(sql + ShardRows.placeholders(ids.size()) + ")", ids.toArray());
+        } catch (DataIntegrityViolationException e) {
+            // A slot was booked meanwhile; claim the rest one by one
+            long claimed = 0;
+            for (Long id : ids) {
+                try {
+                    claimed += jdbc.update(sql + "?)", id);
+                } catch (DataIntegrityViolationException taken) {
+                    // Stays a double booking
+                }
+            }
+            return claimed;
+        }
+    }
+
+    public static long slotBit(LocalTime time) {
+        if (time == null || time.getSecond() != 0 || time.getNano() != 0 || time.getMinute() % SLOT_MINUTES != 0) {
+            throw new IllegalArgumentException("Appointment time must start on a " + SLOT_MINUTES + "-minute boundary: " + time);
+        }
+        return 1L << ((time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES);
+    }
+
+    public static long toBits(List<LocalTime> times) {
+        long bits = 0;
+        for (LocalTime time : times) {
+            bits |= slotBit(time);
+        }
+        return bits;
+    }
+
+    public static List<LocalTime> toTimes(long bits) {
+        List<LocalTime> times = new ArrayList<>(Long.bitCount(bits));
+        for (long rest = bits; rest != 0; rest &= rest - 1) {
+            times.add(LocalTime.MIDNIGHT.plusMinutes((long) Long.numberOfTrailingZeros(rest) * SLOT_MINUTES));
+        }
+        return times;
+    }
+
+    private Schedule schedule(Long doctorId) {
+        return schedules.computeIfAbsent(doctorId, this::loadSchedule);
+    }
+
+    private Schedule loadSchedule(Long doctorId) {
+        Doctor doctor = doctorRepository.findById(doctorId)
+                .orElseThrow(() -> new IllegalArgumentException("Doctor not found with id " + doctorId));
+        long[] weekly = new long[7];
+        List<DoctorScheduleTemplate> templates = templateRepository.findByDoctorId(doctorId);
+        if (templates.isEmpty()) {
+            // Doctors registered before templates existed: their legacy slot list applies to every day
+            long legacy = legacySlots(doctor.getAvailableSlots());
+            Arrays.fill(weekly, legacy);
+        }
+        for (DoctorScheduleTemplate template : templates) {
+            weekly[template.getDayOfWeek().ordinal()] = template.getSlotBits();
+        }
+        Map<LocalDate, Long> overrides = new ConcurrentHashMap<>();
+        for (DoctorScheduleOverride override : overrideRepository.findByDoctorId(doctorId)) {
+            overrides.put(override.getDate(), override.getSlotBits());
+        }
+        return new Schedule(weekly, overrides);
+    }
+
+    // Days past the horizon cannot be booked, which also bounds what can be loaded into the index
+    private void checkHorizon(LocalDate date) {
+        if (date.isAfter(LocalDate.now().plusDays(bookingHorizonDays))) {
+            throw new IllegalArgumentException("Appointments can be booked at most " + bookingHorizonDays + " days ahead");
+        }
+    }
+
+    private AtomicLong booked(Long doctorId, LocalDate date) {
+        return booked.get(new DoctorDay(doctorId, date),
+                key -> new AtomicLong(bookedBits(bookedSlots(doctorId, date, date))));
+    }
+
+    // One query for a whole range instead of one per day; days already indexed keep their live bitmap
+    private void preloadBooked(Long doctorId, LocalDate from, LocalDate to) {
+        boolean allLoaded = true;
+        for (LocalDate date = from; !date.isAfter(to) && allLoaded; date = date.plusDays(1)) {
+            allLoaded = booked.getIfPresent(new DoctorDay(doctorId, date)) != null;
+        }
+        if (allLoaded) {
+            return;
+        }
+        Map<LocalDate, Long> bits = new HashMap<>();
+        for (BookedSlot slot : bookedSlots(doctorId, from, to)) {
+            bits.merge(slot.date(), floorBit(slot.time()), (a, b) -> a | b);
+        }
+        for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+            booked.asMap().putIfAbsent(new DoctorDay(doctorId, date), new AtomicLong(bits.getOrDefault(date, 0L)));
+        }
+    }
+
+    // Appointments live on the shard of the doctor's clinic
+    private List<BookedSlot> bookedSlots(Long doctorId, LocalDate from, LocalDate to) {
+        return shards.on(shards.shardOfDoctor(doctorId),
+                () -> appointmentRepository.findBookedSlots(doctorId, from, to, SLOT_HOLDING));
+    }
+
+    private static long bookedBits(List<BookedSlot> slots) {
+        long bits = 0;
+        for (BookedSlot slot : slots) {
+            bits |= floorBit(slot.time());
+        }
+        return bits;
+    }
+
+    // Appointments stored before slot alignment was enforced occupy the slot they start in
+    private static long floorBit(LocalTime time) {
+        return 1L << Math.min(SLOTS_PER_DAY - 1, (time.getHour() * 60 + time.getMinute()) / SLOT_MINUTES);
+    }
+
+    private static long legacySlots(String availableSlots) {
+        long bits = 0;
+        if (availableSlots != null) {
+            Matcher matcher = LEGACY_TIME.matcher(availableSlots);
+            while (matcher.find()) {
+                String[] parts = matcher.group().split(":");
+                bits |= floorBit(LocalTime.of(Integer.parseInt(parts[0]) % 24, Integer.parseInt(parts[1]) % 60));
+            }
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.medicine.med_pres.service;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.springframework.stereotype.Service;
+
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.model.Prescription;
+import com.example.medicine.med_pres.model.User;
+
+/**
+ * Pushes appointment and prescription changes to the streams of the users they concern: the
+ * patient and the doctor's user, before and after the change. Services call it once the change
+ * has committed, next to their change-stamp touches.
+ */
+@Service
+public class ChangeFeed {
+
+    public static final String CREATED = "created";
+    public static final String UPDATED = "updated";
+    public static final String DELETED = "deleted";
+
+    private final SubscriptionRegistry subscriptions;
+    private final DoctorService doctorService;
+
+    public ChangeFeed(SubscriptionRegistry subscriptions, DoctorService doctorService) {
+        this.subscriptions = subscriptions;
+        this.doctorService = doctorService;
+    }
+
+    // previous holds the appointment's parties before an update that may have changed them
+    public void appointment(String action, Appointment appointment, Appointment... previous) {
+        Set<Long> userIds = new LinkedHashSet<>();
+        addParties(userIds, appointment.getPatient(), appointment.getDoctor());
+        for (Appointment before : previous) {
+            addParties(userIds, before.getPatient(), before.getDoctor());
+        }
+        subscriptions.publish(userIds, "appointment", action, appointment.getId(),
+                appointment.getStatus() != null ? appointment.getStatus().name() : null);
+    }
+
+    public void prescription(String action, Prescription prescription, Prescription... previous) {
+        Set<Long> userIds = new LinkedHashSet<>();
+        addParties(userIds, prescription.getPatient(), prescription.getDoctor());
+        for (Prescription before : previous) {
+            addParties(userIds, before.getPatient(), before.getDoctor());
+        }
+        subscriptions.publish(userIds, "prescription", action, prescription.getId(), null);
+    }
+
+    private void addParties(Set<Long> userIds, User patient, Doctor doctor) {
+        if (patient != null && patient.getId() != null) {
+            userIds.add(patient.getId());
+        }
+        if (doctor != null && doctor.getId() != null) {
+            // Rows saved from a request may carry only the doctor's id; the cached profile has the user
+            Doctor profile = doctor.getUser() != null && doctor.getUser().getId() != null ? doctor
+                    : doctorService.getDoctorById(doctor.getId()).orElse(null);
+            if (profile != null && profile.getUser() != null) {
+                userIds.add(profile.getUser().getId());
+            }
+        }
+    }
+}
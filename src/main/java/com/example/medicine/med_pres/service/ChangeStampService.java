@@ -0,0 +1,64 @@
+package com.example.medicine.med_pres.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.medicine.med_pres.model.ChangeStamp;
+import com.example.medicine.med_pres.repository.ChangeStampRepository;
+
+/**
+ * Change stamps behind the ETags of the polled list endpoints. A read's ETag is built from the
+ * stamps of every scope its response depends on, fetched with one primary-key query, so an
+ * unchanged poll is answered with 304 without querying appointments, prescriptions or doctors.
+ *
+ * Writers call {@link #touch} after their change is saved: a reader may then briefly see new
+ * data under the old tag (and simply refetch on the next poll), but never old data under a new tag.
+ */
+@Service
+public class ChangeStampService {
+
+    public static final String USERS = "users";
+    public static final String DOCTORS = "doctors";
+
+    private final ChangeStampRepository changeStampRepository;
+
+    public ChangeStampService(ChangeStampRepository changeStampRepository) {
+        this.changeStampRepository = changeStampRepository;
+    }
+
+    public static String patientAppointments(Long patientId) {
+        return patientId == null ? null : "appointments:patient:" + patientId;
+    }
+
+    public static String doctorAppointments(Long doctorId) {
+        return doctorId == null ? null : "appointments:doctor:" + doctorId;
+    }
+
+    public static String patientPrescriptions(Long patientId) {
+        return patientId == null ? null : "prescriptions:patient:" + patientId;
+    }
+
+    // Bumps each scope once; sorted so concurrent writers lock rows in the same order
+    @Transactional
+    public void touch(String... scopes) {
+        long seed = System.currentTimeMillis();
+        Arrays.stream(scopes).filter(Objects::nonNull).distinct().sorted()
+                .forEach(scope -> changeStampRepository.bump(scope, seed));
+    }
+
+    // Strong ETag over the given scopes; scopes never written (or unknown, null) count as version 0
+    public String etag(String... scopes) {
+        List<String> keys = Arrays.asList(scopes);
+        Map<String, Long> versions = changeStampRepository.findAllById(keys.stream().filter(Objects::nonNull).toList())
+                .stream().collect(Collectors.toMap(ChangeStamp::getScope, ChangeStamp::getVersion));
+        return keys.stream()
+                .map(scope -> Long.toString(scope == null ? 0L : versions.getOrDefault(scope, 0L), Character.MAX_RADIX))
+                .collect(Collectors.joining(".", "\"", "\""));
+    }
+}
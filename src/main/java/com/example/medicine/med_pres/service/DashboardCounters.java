@@ -0,0 +1,327 @@
+package com.example.medicine.med_pres.service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.dto.DoctorStats;
+import com.example.medicine.med_pres.dto.DoctorView;
+import com.example.medicine.med_pres.dto.StatsOverview;
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.model.ClinicShard;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.model.Prescription;
+import com.example.medicine.med_pres.repository.DoctorRepository;
+
+/**
+ * Appointment and prescription counts behind the doctor and admin dashboards, held in memory so a
+ * dashboard costs a few map lookups however many rows there are.
+ *
+ * Appointments are counted by status overall, per day, per specialization and per doctor and day;
+ * prescriptions overall and per doctor. Archived rows still count. AppointmentService,
+ * PrescriptionService, DoctorService and the reminder scheduler report each committed write here,
+ * next to their change-feed calls.
+ *
+ * Every {@code stats.reconcile-interval-ms} the counts are rebuilt from one GROUP BY over the live and
+ * archive tables of each shard and swapped in. That brings in writes made on other instances and
+ * repairs the few a rebuild races with, which may land in the counts it replaces or be counted twice.
+ */
+@Service
+public class DashboardCounters {
+    private static final SampledLogger log = new SampledLogger(DashboardCounters.class, 100);
+    private static final Appointment.Status[] STATUSES = Appointment.Status.values();
+    private static final String NO_SPECIALIZATION = "none";
+    private static final int MAX_DAYS = 366;
+
+    private final ShardRouter shards;
+    private final DoctorRepository doctorRepository;
+    private final Counter drift;
+    private final Map<Long, String> specializations = new ConcurrentHashMap<>();
+    private volatile Counts counts = new Counts(null);
+
+    public DashboardCounters(ShardRouter shards, DoctorRepository doctorRepository, MeterRegistry registry) {
+        this.shards = shards;
+        this.doctorRepository = doctorRepository;
+        this.drift = Counter.builder("stats.reconcile.drift")
+                .description("Dashboard counts corrected by reconciliation against the tables")
+                .register(registry);
+    }
+
+    public void appointmentCreated(Appointment appointment) {
+        count(appointment, 1);
+    }
+
+    public void appointmentDeleted(Appointment appointment) {
+        count(appointment, -1);
+    }
+
+    // previous holds the doctor, date and status before the update
+    public void appointmentUpdated(Appointment previous, Appointment saved) {
+        count(previous, -1);
+        count(saved, 1);
+    }
+
+    public void appointmentStatusChanged(Appointment appointment, Appointment.Status from) {
+        if (countable(appointment)) {
+            count(appointment.getDoctor().getId(), appointment.getAppointmentDate(), from, -1);
+            count(appointment.getDoctor().getId(), appointment.getAppointmentDate(), appointment.getStatus(), 1);
+        }
+    }
+
+    public void prescriptionIssued(Prescription prescription) {
+        countPrescription(prescription, 1);
+    }
+
+    public void prescriptionDeleted(Prescription prescription) {
+        countPrescription(prescription, -1);
+    }
+
+    // previous holds the doctor before the update
+    public void prescriptionUpdated(Prescription previous, Prescription saved) {
+        countPrescription(previous, -1);
+        countPrescription(saved, 1);
+    }
+
+    // A doctor's counts so far move with them to a new specialization
+    public void doctorSaved(Long doctorId, String specialization) {
+        String now = specialization != null ? specialization : NO_SPECIALIZATION;
+        String before = specializations.put(doctorId, now);
+        Counts current = counts;
+        DoctorCounts doctor = current.byDoctor.get(doctorId);
+        if (before == null || before.equals(now) || doctor == null) {
+            return;
+        }
+        for (Appointment.Status status : STATUSES) {
+            long n = doctor.all.get(status);
+            current.bySpecialization.computeIfAbsent(before, key -> new Tally()).add(status, -n);
+            current.bySpecialization.computeIfAbsent(now, key -> new Tally()).add(status, n);
+        }
+    }
+
+    public void doctorDeleted(Long doctorId) {
+        specializations.remove(doctorId);
+    }
+
+    // One doctor's dashboard, with days from through to
+    public DoctorStats doctor(Long doctorId, LocalDate from, LocalDate to) {
+        checkDays(from, to);
+        Counts current = counts;
+        DoctorCounts doctor = current.byDoctor.get(doctorId);
+        if (doctor == null) {
+            return new DoctorStats(doctorId, specializations.get(doctorId), new Tally().snapshot(), Map.of(), 0,
+                    current.reconciledAt);
+        }
+        return new DoctorStats(doctorId, specializations.get(doctorId), doctor.all.snapshot(),
+                days(doctor.byDay, from, to), doctor.prescriptions.get(), current.reconciledAt);
+    }
+
+    // Everyone's dashboard, with days from through to and the top doctors by prescriptions written.
+    // The top list costs a pass over the doctors, not over their rows.
+    public StatsOverview overview(LocalDate from, LocalDate to, int top) {
+        checkDays(from, to);
+        Counts current = counts;
+        Map<String, Map<Appointment.Status, Long>> bySpecialization = new LinkedHashMap<>();
+        current.bySpecialization.entrySet().stream().sorted(Map.Entry.comparingByKey())
+                .forEach(entry -> bySpecialization.put(entry.getKey(), entry.getValue().snapshot()));
+        return new StatsOverview(current.all.snapshot(), days(current.byDay, from, to), bySpecialization,
+                current.prescriptions.get(), topPrescribers(current, Math.max(0, top)), current.reconciledAt);
+    }
+
+    // Rebuilds the counts once the shard directory is loaded, which reading every shard needs
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(2)
+    public void rebuild() {
+        reconcile();
+    }
+
+    @Scheduled(fixedDelayString = "${stats.reconcile-interval-ms:600000}", initialDelayString = "${stats.reconcile-interval-ms:600000}")
+    public synchronized void reconcile() {
+        // A clinic move has its rows on two shards for a while; the next run counts them once
+        if (shards.isSharded() && shards.placements().stream().anyMatch(ClinicShard::isMoving)) {
+            log.info("event=stats.reconcileSkipped reason=clinicMoving");
+            return;
+        }
+        long started = System.currentTimeMillis();
+        Map<Long, String> directory = new ConcurrentHashMap<>();
+        for (DoctorView doctor : doctorRepository.findAllViews()) {
+            directory.put(doctor.id(), doctor.specialization() != null ? doctor.specialization() : NO_SPECIALIZATION);
+        }
+        specializations.putAll(directory);
+        specializations.keySet().retainAll(directory.keySet());
+
+        Counts rebuilt = new Counts(Instant.now());
+        for (int shard = 0; shard < shards.size(); shard++) {
+            // One statement per table pair, so a batch archived meanwhile is seen on exactly one side
+            shards.jdbc(shard).query("SELECT doctor_id, appointment_date, status, COUNT(*) FROM ("
+                    + "SELECT doctor_id, appointment_date, status FROM appointments UNION ALL "
+                    + "SELECT doctor_id, appointment_date, status FROM appointments_archive) counted"
+                    + " GROUP BY doctor_id, appointment_date, status", row -> {
+                        rebuilt.add(row.getLong(1), row.getObject(2, LocalDate.class),
+                                Appointment.Status.valueOf(row.getString(3)), row.getLong(4), specialization(row.getLong(1)));
+                    });
+            shards.jdbc(shard).query("SELECT doctor_id, COUNT(*) FROM ("
+                    + "SELECT doctor_id FROM prescriptions UNION ALL SELECT doctor_id FROM prescriptions_archive) counted"
+                    + " GROUP BY doctor_id", row -> {
+                        rebuilt.addPrescriptions(row.getLong(1), row.getLong(2));
+                    });
+        }
+        Counts replaced = counts;
+        counts = rebuilt;
+        // Nothing to correct on the first run after startup
+        long corrected = 0;
+        if (replaced.reconciledAt != null) {
+            corrected = Math.abs(rebuilt.prescriptions.get() - replaced.prescriptions.get());
+            for (Appointment.Status status : STATUSES) {
+                corrected += Math.abs(rebuilt.all.get(status) - replaced.all.get(status));
+            }
+            drift.increment(corrected);
+        }
+        log.info("event=stats.reconciled doctors={} prescriptions={} drift={} tookMs={}", rebuilt.byDoctor.size(),
+                rebuilt.prescriptions.get(), corrected, System.currentTimeMillis() - started);
+    }
+
+    private static void checkDays(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+            throw new IllegalArgumentException("At most " + MAX_DAYS + " days per dashboard");
+        }
+    }
+
+    private static Map<LocalDate, Map<Appointment.Status, Long>> days(Map<LocalDate, Tally> byDay, LocalDate from, LocalDate to) {
+        Map<LocalDate, Map<Appointment.Status, Long>> days = new LinkedHashMap<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            Tally tally = byDay.get(day);
+            if (tally != null && !tally.isEmpty()) {
+                days.put(day, tally.snapshot());
+            }
+        }
+        return days;
+    }
+
+    private static Map<Long, Long> topPrescribers(Counts current, int top) {
+        Comparator<Map.Entry<Long, Long>> order = Map.Entry.comparingByValue();
+        PriorityQueue<Map.Entry<Long, Long>> smallestFirst = new PriorityQueue<>(order);
+        current.byDoctor.forEach((doctorId, doctor) -> {
+            long written = doctor.prescriptions.get();
+            if (written > 0 && top > 0) {
+                smallestFirst.add(Map.entry(doctorId, written));
+                if (smallestFirst.size() > top) {
+                    smallestFirst.poll();
+                }
+            }
+        });
+        Map<Long, Long> prescribers = new LinkedHashMap<>();
+        smallestFirst.stream().sorted(order.reversed()).forEach(entry -> prescribers.put(entry.getKey(), entry.getValue()));
+        return prescribers;
+    }
+
+    private static boolean countable(Appointment appointment) {
+        return appointment != null && appointment.getStatus() != null && appointment.getAppointmentDate() != null
+                && appointment.getDoctor() != null && appointment.getDoctor().getId() != null;
+    }
+
+    private void count(Appointment appointment, long delta) {
+        if (countable(appointment)) {
+            count(appointment.getDoctor().getId(), appointment.getAppointmentDate(), appointment.getStatus(), delta);
+        }
+    }
+
+    private void count(Long doctorId, LocalDate date, Appointment.Status status, long delta) {
+        counts.add(doctorId, date, status, delta, specialization(doctorId));
+    }
+
+    private void countPrescription(Prescription prescription, long delta) {
+        if (prescription != null && prescription.getDoctor() != null && prescription.getDoctor().getId() != null) {
+            counts.addPrescriptions(prescription.getDoctor().getId(), delta);
+        }
+    }
+
+    // Doctors created on another instance are looked up once, until the next rebuild
+    private String specialization(Long doctorId) {
+        return specializations.computeIfAbsent(doctorId, id -> doctorRepository.findById(id)
+                .map(Doctor::getSpecialization).orElse(NO_SPECIALIZATION));
+    }
+
+    // Appointment counts by status
+    private static final class Tally {
+        private final AtomicLongArray byStatus = new AtomicLongArray(STATUSES.length);
+
+        void add(Appointment.Status status, long delta) {
+            byStatus.addAndGet(status.ordinal(), delta);
+        }
+
+        long get(Appointment.Status status) {
+            return byStatus.get(status.ordinal());
+        }
+
+        boolean isEmpty() {
+            for (int i = 0; i < byStatus.length(); i++) {
+                if (byStatus.get(i) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Map<Appointment.Status, Long> snapshot() {
+            Map<Appointment.Status, Long> snapshot = new EnumMap<>(Appointment.Status.class);
+            for (Appointment.Status status : STATUSES) {
+                snapshot.put(status, get(status));
+            }
+            return snapshot;
+        }
+    }
+
+    private static final class DoctorCounts {
+        private final Tally all = new Tally();
+        private final Map<LocalDate, Tally> byDay = new ConcurrentHashMap<>();
+        private final AtomicLong prescriptions = new AtomicLong();
+    }
+
+    // One generation of counts, from a rebuild plus the writes reported since
+    private static final class Counts {
+        private final Instant reconciledAt;
+        private final Tally all = new Tally();
+        private final Map<LocalDate, Tally> byDay = new ConcurrentHashMap<>();
+        private final Map<String, Tally> bySpecialization = new ConcurrentHashMap<>();
+        private final Map<Long, DoctorCounts> byDoctor = new ConcurrentHashMap<>();
+        private final AtomicLong prescriptions = new AtomicLong();
+
+        Counts(Instant reconciledAt) {
+            this.reconciledAt = reconciledAt;
+        }
+
+        void add(Long doctorId, LocalDate date, Appointment.Status status, long delta, String specialization) {
+            all.add(status, delta);
+            byDay.computeIfAbsent(date, day -> new Tally()).add(status, delta);
+            bySpecialization.computeIfAbsent(specialization, key -> new Tally()).add(status, delta);
+            DoctorCounts doctor = byDoctor.computeIfAbsent(doctorId, id -> new DoctorCounts());
+            doctor.all.add(status, delta);
+            doctor.byDay.computeIfAbsent(date, day -> new Tally()).add(status, delta);
+        }
+
+        void addPrescriptions(Long doctorId, long delta) {
+            prescriptions.addAndGet(delta);
+            byDoctor.computeIfAbsent(doctorId, id -> new DoctorCounts()).prescriptions.addAndGet(delta);
+        }
+    }
+}
@@ -0,0 +1,615 @@
+package com.example.medicine.med_pres.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+
+import org.springframework.stereotype.Component;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.dto.DoctorSearchResult;
+import com.example.medicine.med_pres.dto.DoctorView;
+import com.example.medicine.med_pres.repository.DoctorRepository;
+
+/**
+ * In-memory inverted index over the doctor directory.
+ *
+ * Every indexed doctor gets a slot number, handed out in id order, and posting lists are sorted
+ * int arrays of slots, so intersecting them walks primitive arrays and hits come out ordered by id.
+ * Words of the specialization, location, clinic name and doctor name are kept in a sorted map so
+ * a query word matches every indexed word it is a prefix of; a union too large for an array is
+ * built as a bitset. A word with no prefix match falls back to indexed words within a small edit
+ * distance. Facet filters match whole field values, and each slot records the number of its value
+ * per field, so facet counts are array increments. Hits and facet counts of the unfiltered
+ * directory are computed once per change. The index is built from one query on first use and
+ * maintained by {@link DoctorService} on every doctor write.
+ */
+@Component
+public class DoctorSearchIndex {
+
+    public static final int MAX_PAGE_SIZE = 100;
+    private static final int MAX_FACET_VALUES = 20;
+    private static final int FUZZY_MIN_LENGTH = 4;
+    // Removed slots are reclaimed once there are this many and more than live ones
+    private static final int MIN_COMPACT = 1024;
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final SampledLogger log = new SampledLogger(DoctorSearchIndex.class, 100);
+
+    private static final Facet[] FACETS = Facet.values();
+
+    public enum Facet {
+        specialization(DoctorView::specialization),
+        location(DoctorView::location),
+        clinicName(DoctorView::clinicName);
+
+        private final Function<DoctorView, String> value;
+
+        Facet(Function<DoctorView, String> value) {
+            this.value = value;
+        }
+    }
+
+    private final DoctorRepository doctorRepository;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Slot -> doctor, null once removed
+    private DoctorView[] slots = new DoctorView[1024];
+    private int slotCount;
+    private long maxId = Long.MIN_VALUE;
+    private final Map<Long, Integer> slotOf = new HashMap<>();
+    private final BitSet live = new BitSet();
+    private final NavigableMap<String, Postings> postings = new TreeMap<>();
+    private final Map<Facet, FacetValues> facetValues = new EnumMap<>(Facet.class);
+    // Slot * FACETS.length + facet ordinal -> number of that field's value, -1 for none; counting facets
+    // then reads one cache line per hit
+    private int[] valueNumbers = new int[slots.length * FACETS.length];
+    // Answer to a search with no words and no filters; dropped on every change
+    private volatile Unfiltered unfiltered;
+    private volatile boolean loaded;
+
+    public DoctorSearchIndex(DoctorRepository doctorRepository) {
+        this.doctorRepository = doctorRepository;
+        for (Facet facet : Facet.values()) {
+            facetValues.put(facet, new FacetValues());
+        }
+    }
+
+    /**
+     * Doctors matching every word of {@code query} and every given facet filter, ordered by id.
+     * Blank query and null filters match everything.
+     */
+    public DoctorSearchResult search(String query, Map<Facet, String> filters, int page, int size) {
+        ensureLoaded();
+        int pageSize = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int pageIndex = Math.max(0, page);
+        lock.readLock().lock();
+        try {
+            List<Matches> constraints = new ArrayList<>();
+            for (Map.Entry<Facet, String> filter : filters.entrySet()) {
+                if (filter.getValue() != null && !filter.getValue().isBlank()) {
+                    Postings ids = facetValues.get(filter.getKey()).postings(normalize(filter.getValue()).trim());
+                    constraints.add(ids == null ? new Matches(new int[0], 0, null) : Matches.of(ids));
+                }
+            }
+            for (String word : words(query)) {
+                constraints.add(matching(word));
+            }
+            int[] hits;
+            Map<String, Map<String, Integer>> facets;
+            if (constraints.isEmpty()) {
+                Unfiltered all = unfiltered();
+                hits = all.hits();
+                facets = all.facets();
+            } else {
+                hits = intersect(constraints);
+                facets = countValues(hits);
+            }
+
+            List<DoctorView> items = new ArrayList<>(pageSize);
+            long from = (long) pageIndex * pageSize;
+            for (long i = from; i < hits.length && i < from + pageSize; i++) {
+                items.add(slots[hits[(int) i]]);
+            }
+            return new DoctorSearchResult(items, hits.length, pageIndex, pageSize, facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Add or replace one doctor; a no-op until the index is first loaded, since loading reads the table anyway
+    public void put(DoctorView doctor) {
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                Integer slot = slotOf.get(doctor.id());
+                if (slot != null) {
+                    unindex(slot);
+                    index(slot, doctor);
+                } else if (doctor.id() > maxId) {
+                    append(doctor);
+                } else {
+                    // A new doctor below the highest id would break slot order; renumber everything
+                    List<DoctorView> all = liveDoctors();
+                    all.add(doctor);
+                    all.sort(Comparator.comparing(DoctorView::id));
+                    rebuild(all);
+                }
+                unfiltered = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long doctorId) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = loaded ? slotOf.remove(doctorId) : null;
+            if (slot != null) {
+                unindex(slot);
+                slots[slot] = null;
+                live.clear(slot);
+                int removed = slotCount - slotOf.size();
+                if (removed >= MIN_COMPACT && removed > slotOf.size()) {
+                    rebuild(liveDoctors());
+                }
+                unfiltered = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                long started = System.currentTimeMillis();
+                List<DoctorView> all = new ArrayList<>(doctorRepository.findAllViews());
+                all.sort(Comparator.comparing(DoctorView::id));
+                rebuild(all);
+                loaded = true;
+                log.info("event=doctorIndex.loaded doctors={} words={} tookMs={}",
+                        slotOf.size(), postings.size(), System.currentTimeMillis() - started);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Index doctors from scratch; they must be in id order
+    private void rebuild(List<DoctorView> doctors) {
+        slots = new DoctorView[Math.max(1024, doctors.size())];
+        valueNumbers = new int[slots.length * FACETS.length];
+        slotCount = 0;
+        maxId = Long.MIN_VALUE;
+        slotOf.clear();
+        live.clear();
+        postings.clear();
+        for (Facet facet : Facet.values()) {
+            facetValues.put(facet, new FacetValues());
+        }
+        doctors.forEach(this::append);
+    }
+
+    private void append(DoctorView doctor) {
+        if (slotCount == slots.length) {
+            slots = Arrays.copyOf(slots, slotCount * 2);
+            valueNumbers = Arrays.copyOf(valueNumbers, slots.length * FACETS.length);
+        }
+        maxId = doctor.id();
+        index(slotCount++, doctor);
+    }
+
+    private List<DoctorView> liveDoctors() {
+        List<DoctorView> doctors = new ArrayList<>(slotOf.size() + 1);
+        for (int slot = live.nextSetBit(0); slot >= 0; slot = live.nextSetBit(slot + 1)) {
+            doctors.add(slots[slot]);
+        }
+        return doctors;
+    }
+
+    private void index(int slot, DoctorView doctor) {
+        slots[slot] = doctor;
+        slotOf.put(doctor.id(), slot);
+        live.set(slot);
+        for (String word : words(doctor)) {
+            postings.computeIfAbsent(word, key -> new Postings()).add(slot);
+        }
+        for (Facet facet : FACETS) {
+            valueNumbers[slot * FACETS.length + facet.ordinal()] = facetValues.get(facet).add(slot, facet.value.apply(doctor));
+        }
+    }
+
+    private void unindex(int slot) {
+        for (String word : words(slots[slot])) {
+            Postings ids = postings.get(word);
+            if (ids != null && ids.remove(slot) && ids.size == 0) {
+                postings.remove(word);
+            }
+        }
+        for (Facet facet : FACETS) {
+            int at = slot * FACETS.length + facet.ordinal();
+            facetValues.get(facet).remove(slot, valueNumbers[at]);
+            valueNumbers[at] = -1;
+        }
+    }
+
+    // Slots of doctors with a word starting with this one, or failing that, a word a typo or two away
+    private Matches matching(String word) {
+        Collection<Postings> lists = postings.subMap(word, true, word + Character.MAX_VALUE, false).values();
+        if (lists.isEmpty() && word.length() >= FUZZY_MIN_LENGTH) {
+            int maxEdits = word.length() <= 6 ? 1 : 2;
+            // Typos rarely hit the first letter, which keeps the scan to one slice of the dictionary
+            String first = word.substring(0, 1);
+            List<Postings> near = new ArrayList<>();
+            for (Map.Entry<String, Postings> entry : postings.subMap(first, true, first + Character.MAX_VALUE, false).entrySet()) {
+                if (withinEdits(word, entry.getKey(), maxEdits)) {
+                    near.add(entry.getValue());
+                }
+            }
+            lists = near;
+        }
+        return union(lists);
+    }
+
+    private Matches union(Collection<Postings> lists) {
+        if (lists.isEmpty()) {
+            return new Matches(new int[0], 0, null);
+        }
+        // Exact or unambiguous words use their posting array as is
+        if (lists.size() == 1) {
+            return Matches.of(lists.iterator().next());
+        }
+        long total = 0;
+        for (Postings ids : lists) {
+            total += ids.size;
+        }
+        // A bitset costs a bit per slot, an array 32 bits per entry
+        if (total * Integer.SIZE < slotCount) {
+            int[] merged = new int[(int) total];
+            int size = 0;
+            for (Postings ids : lists) {
+                System.arraycopy(ids.slots, 0, merged, size, ids.size);
+                size += ids.size;
+            }
+            Arrays.sort(merged);
+            int distinct = 0;
+            for (int i = 0; i < size; i++) {
+                if (distinct == 0 || merged[distinct - 1] != merged[i]) {
+                    merged[distinct++] = merged[i];
+                }
+            }
+            return new Matches(merged, distinct, null);
+        }
+        BitSet bits = new BitSet(slotCount);
+        for (Postings ids : lists) {
+            for (int i = 0; i < ids.size; i++) {
+                bits.set(ids.slots[i]);
+            }
+        }
+        return new Matches(null, bits.cardinality(), bits);
+    }
+
+    // Walks the smallest constraint in slot order and keeps the slots every other one contains
+    private static int[] intersect(List<Matches> constraints) {
+        constraints.sort(Comparator.comparingInt(Matches::size));
+        Matches smallest = constraints.get(0);
+        if (constraints.size() == 1 && smallest.bits == null) {
+            return Arrays.copyOf(smallest.slots, smallest.size());
+        }
+        int[] hits = new int[smallest.size()];
+        int count = 0;
+        if (smallest.bits == null) {
+            for (int i = 0; i < smallest.size(); i++) {
+                if (inAll(constraints, smallest.slots[i])) {
+                    hits[count++] = smallest.slots[i];
+                }
+            }
+        } else {
+            for (int slot = smallest.bits.nextSetBit(0); slot >= 0; slot = smallest.bits.nextSetBit(slot + 1)) {
+                if (inAll(constraints, slot)) {
+                    hits[count++] = slot;
+                }
+            }
+        }
+        return count == hits.length ? hits : Arrays.copyOf(hits, count);
+    }
+
+    private static boolean inAll(List<Matches> constraints, int slot) {
+        for (int i = 1; i < constraints.size(); i++) {
+            if (!constraints.get(i).contains(slot)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Several searches may compute this at once after a change; they all get the same answer
+    private Unfiltered unfiltered() {
+        Unfiltered all = unfiltered;
+        if (all == null) {
+            int[] hits = live.stream().toArray();
+            all = new Unfiltered(hits, countValues(hits));
+            unfiltered = all;
+        }
+        return all;
+    }
+
+    // The most frequent values of each field among the hits
+    private Map<String, Map<String, Integer>> countValues(int[] hits) {
+        int[][] counts = new int[FACETS.length][];
+        // A field can have many thousands of values, so only those among the hits are ranked
+        int[][] present = new int[FACETS.length][];
+        int[] distinct = new int[FACETS.length];
+        for (Facet facet : FACETS) {
+            counts[facet.ordinal()] = new int[facetValues.get(facet).size()];
+            present[facet.ordinal()] = new int[Math.min(hits.length, counts[facet.ordinal()].length)];
+        }
+        for (int slot : hits) {
+            int base = slot * FACETS.length;
+            for (int field = 0; field < FACETS.length; field++) {
+                int number = valueNumbers[base + field];
+                if (number >= 0 && counts[field][number]++ == 0) {
+                    present[field][distinct[field]++] = number;
+                }
+            }
+        }
+        Map<String, Map<String, Integer>> facets = new LinkedHashMap<>();
+        for (Facet facet : FACETS) {
+            int field = facet.ordinal();
+            facets.put(facet.name(), facetValues.get(facet).top(counts[field], present[field], distinct[field]));
+        }
+        return Collections.unmodifiableMap(facets);
+    }
+
+    private static Set<String> words(DoctorView doctor) {
+        Set<String> words = new HashSet<>();
+        for (Facet facet : Facet.values()) {
+            words.addAll(words(facet.value.apply(doctor)));
+        }
+        if (doctor.user() != null) {
+            words.addAll(words(doctor.user().name()));
+        }
+        return words;
+    }
+
+    private static List<String> words(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+        List<String> words = new ArrayList<>();
+        for (String word : NON_WORD.split(normalize(text))) {
+            if (!word.isEmpty()) {
+                words.add(word);
+            }
+        }
+        return words;
+    }
+
+    // Lower case without accents, so "Cardiología" and "cardiologia" index alike
+    private static String normalize(String text) {
+        return MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("").toLowerCase();
+    }
+
+    // Levenshtein distance <= maxEdits, computed only inside the diagonal band that can still qualify
+    static boolean withinEdits(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return false;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            Arrays.fill(current, maxEdits + 1);
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = Math.max(1, i - maxEdits); j <= Math.min(b.length(), i + maxEdits); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) {
+                return false;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()] <= maxEdits;
+    }
+
+    private record Unfiltered(int[] hits, Map<String, Map<String, Integer>> facets) {
+    }
+
+    // Facet value numbers sorted by label, and each number's position in that order
+    private record Ordering(int[] byLabel, int[] rankOf) {
+    }
+
+    // Slots matching one query term, as a sorted array or a bitset
+    private static final class Matches {
+
+        private final int[] slots;
+        private final int size;
+        private final BitSet bits;
+        // Where the last lookup in slots ended
+        private int cursor;
+
+        Matches(int[] slots, int size, BitSet bits) {
+            this.slots = slots;
+            this.size = size;
+            this.bits = bits;
+        }
+
+        static Matches of(Postings ids) {
+            return new Matches(ids.slots, ids.size, null);
+        }
+
+        int size() {
+            return size;
+        }
+
+        // Slots must be asked in increasing order: the search gallops forward from the previous answer
+        boolean contains(int slot) {
+            if (bits != null) {
+                return bits.get(slot);
+            }
+            int low = cursor;
+            int high = cursor;
+            for (int step = 1; high < size && slots[high] < slot; step <<= 1) {
+                low = high + 1;
+                high += step;
+            }
+            int at = Arrays.binarySearch(slots, low, Math.min(high + 1, size), slot);
+            cursor = at >= 0 ? at : -at - 1;
+            return at >= 0;
+        }
+    }
+
+    // Sorted slots of the doctors with one word or field value
+    private static final class Postings {
+
+        private int[] slots = new int[1];
+        private int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            // Slots are handed out in increasing order, so this is nearly always an append
+            int at = size == 0 || slots[size - 1] < slot ? size : -Arrays.binarySearch(slots, 0, size, slot) - 1;
+            System.arraycopy(slots, at, slots, at + 1, size - at);
+            slots[at] = slot;
+            size++;
+        }
+
+        boolean remove(int slot) {
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at < 0) {
+                return false;
+            }
+            System.arraycopy(slots, at + 1, slots, at, size - at - 1);
+            size--;
+            return true;
+        }
+    }
+
+    // The distinct values of one facet field, numbered in the order first seen
+    private static final class FacetValues {
+
+        // Normalized value -> number
+        private final Map<String, Integer> numbers = new HashMap<>();
+        // Number -> value as first indexed, and the slots holding it
+        private final List<String> labels = new ArrayList<>();
+        private final List<Postings> holders = new ArrayList<>();
+        // Label order, dropped when a value is added; searches may compute it at once, with the same result
+        private volatile Ordering ordering;
+
+        Postings postings(String normalized) {
+            Integer number = numbers.get(normalized);
+            return number == null ? null : holders.get(number);
+        }
+
+        int size() {
+            return labels.size();
+        }
+
+        // Records the slot under its value and returns the value's number, -1 for no value
+        int add(int slot, String value) {
+            if (value == null || value.isBlank()) {
+                return -1;
+            }
+            int number = numbers.computeIfAbsent(normalize(value).trim(), key -> {
+                labels.add(value.trim());
+                holders.add(new Postings());
+                ordering = null;
+                return labels.size() - 1;
+            });
+            holders.get(number).add(slot);
+            return number;
+        }
+
+        void remove(int slot, int number) {
+            if (number >= 0) {
+                holders.get(number).remove(slot);
+            }
+        }
+
+        // The best ranked of the first distinct numbers in present, by count and then label
+        Map<String, Integer> top(int[] counts, int[] present, int distinct) {
+            Ordering order = ordering();
+            // Count in the high half and label order (earlier is higher) in the low half, so larger keys rank first
+            long[] best = new long[MAX_FACET_VALUES];
+            int kept = 0;
+            int worst = 0;
+            for (int i = 0; i < distinct; i++) {
+                int number = present[i];
+                long key = (long) counts[number] << 32 | (Integer.MAX_VALUE - order.rankOf()[number]);
+                if (kept < best.length) {
+                    best[kept++] = key;
+                    worst = kept == best.length ? lowest(best) : 0;
+                } else if (key > best[worst]) {
+                    best[worst] = key;
+                    worst = lowest(best);
+                }
+            }
+            Arrays.sort(best, 0, kept);
+            Map<String, Integer> top = new LinkedHashMap<>();
+            for (int i = kept - 1; i >= 0; i--) {
+                int number = order.byLabel()[Integer.MAX_VALUE - (int) best[i]];
+                top.put(labels.get(number), counts[number]);
+            }
+            return top;
+        }
+
+        private Ordering ordering() {
+            Ordering order = ordering;
+            if (order == null) {
+                int[] byLabel = IntStream.range(0, labels.size()).boxed()
+                        .sorted(Comparator.comparing(labels::get))
+                        .mapToInt(Integer::intValue)
+                        .toArray();
+                int[] rankOf = new int[byLabel.length];
+                for (int rank = 0; rank < byLabel.length; rank++) {
+                    rankOf[byLabel[rank]] = rank;
+                }
+                order = new Ordering(byLabel, rankOf);
+                ordering = order;
+            }
+            return order;
+        }
+
+        private static int lowest(long[] keys) {
+            int lowest = 0;
+            for (int i = 1; i < keys.length; i++) {
+                if (keys[i] < keys[lowest]) {
+                    lowest = i;
+                }
+            }
+            return lowest;
+        }
+    }
+}
@@ -1,48 +1,145 @@
 package com.example.medicine.med_pres.service;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+import io.micrometer.core.annotation.Timed;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.example.medicine.med_pres.config.CacheConfig;
+import com.example.medicine.med_pres.dto.DoctorSearchResult;
+import com.example.medicine.med_pres.dto.DoctorView;
 import com.example.medicine.med_pres.model.Doctor;
 import com.example.medicine.med_pres.repository.DoctorRepository;
 
 @Service
+@Timed(value = "service.invocations", percentiles = {0.5, 0.99, 0.999})
 public class DoctorService {
     private final DoctorRepository doctorRepository;
+    private final AvailabilityService availabilityService;
+    private final DoctorSearchIndex searchIndex;
+    private final ChangeStampService changeStamps;
+    private final ShardRouter shards;
+    private final ShardReferenceData shardReferenceData;
+    private final ShardRebalancer shardRebalancer;
+    private final DashboardCounters counters;
 
-    public DoctorService(DoctorRepository doctorRepository) {
+    public DoctorService(DoctorRepository doctorRepository, AvailabilityService availabilityService,
+            DoctorSearchIndex searchIndex, ChangeStampService changeStamps, ShardRouter shards,
+            ShardReferenceData shardReferenceData, ShardRebalancer shardRebalancer, DashboardCounters counters) {
         this.doctorRepository = doctorRepository;
+        this.availabilityService = availabilityService;
+        this.searchIndex = searchIndex;
+        this.changeStamps = changeStamps;
+        this.shards = shards;
+        this.shardReferenceData = shardReferenceData;
+        this.shardRebalancer = shardRebalancer;
+        this.counters = counters;
     }
 
     // Create Doctor
+    @CacheEvict(cacheNames = CacheConfig.DOCTOR_DIRECTORY, allEntries = true)
     public Doctor createDoctor(Doctor doctor) {
-        return doctorRepository.save(doctor);
+        Doctor saved = doctorRepository.save(doctor);
+        shardReferenceData.copyDoctors(saved.getId());
+        reindex(saved.getId());
+        counters.doctorSaved(saved.getId(), saved.getSpecialization());
+        changeStamps.touch(ChangeStampService.DOCTORS);
+        return saved;
     }
 
     // Get all Doctors
-    public List<Doctor> getAllDoctors() {
-        return doctorRepository.findAll();
+    @Cacheable(cacheNames = CacheConfig.DOCTOR_DIRECTORY, key = "'all'")
+    @Transactional(readOnly = true)
+    public List<DoctorView> getAllDoctors() {
+        return doctorRepository.findAllViews();
+    }
+
+    // ETag for the directory; entries embed the doctor's user
+    @Transactional(readOnly = true)
+    public String getAllDoctorsTag() {
+        return changeStamps.etag(ChangeStampService.DOCTORS, ChangeStampService.USERS);
+    }
+
+    // Search the directory by free text plus exact specialization, location and clinic filters
+    public DoctorSearchResult searchDoctors(String query, String specialization, String location, String clinicName,
+            int page, int size) {
+        Map<DoctorSearchIndex.Facet, String> filters = new EnumMap<>(DoctorSearchIndex.Facet.class);
+        filters.put(DoctorSearchIndex.Facet.specialization, specialization);
+        filters.put(DoctorSearchIndex.Facet.location, location);
+        filters.put(DoctorSearchIndex.Facet.clinicName, clinicName);
+        return searchIndex.search(query, filters, page, size);
     }
 
     // Get Doctor by ID
+    @Cacheable(cacheNames = CacheConfig.DOCTORS_BY_ID, unless = "#result == null")
+    @Transactional(readOnly = true)
     public Optional<Doctor> getDoctorById(Long id) {
         return doctorRepository.findById(id);
     }
 
+    // Get Doctor profile by the doctor's user email
+    @Cacheable(cacheNames = CacheConfig.DOCTORS_BY_USER_EMAIL, unless = "#result == null")
+    @Transactional(readOnly = true)
+    public Optional<Doctor> getDoctorByUserEmail(String email) {
+        return doctorRepository.findByUserEmail(email);
+    }
+
+    // Get Doctor profile by the doctor's user ID
+    @Cacheable(cacheNames = CacheConfig.DOCTORS_BY_USER_ID, unless = "#result == null")
+    @Transactional(readOnly = true)
+    public Optional<Doctor> getDoctorByUserId(Long userId) {
+        return doctorRepository.findByUserId(userId);
+    }
+
     // Update Doctor
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.DOCTORS_BY_ID, key = "#id"),
+        @CacheEvict(cacheNames = {CacheConfig.DOCTORS_BY_USER_ID, CacheConfig.DOCTORS_BY_USER_EMAIL,
+                CacheConfig.DOCTOR_DIRECTORY}, allEntries = true)
+    })
     public Doctor updateDoctor(Long id, Doctor updatedDoctor) {
         return doctorRepository.findById(id).map(existing -> {
+            int shardBefore = shards.shardOfDoctor(id);
             existing.setSpecialization(updatedDoctor.getSpecialization());
             existing.setClinicName(updatedDoctor.getClinicName());
             existing.setUser(updatedDoctor.getUser());
-            return doctorRepository.save(existing);
+            Doctor saved = doctorRepository.save(existing);
+            shardReferenceData.copyDoctors(id);
+            // A new clinic may live on another shard; the doctor's rows follow
+            shards.forgetDoctor(id);
+            shardRebalancer.moveDoctor(id, shardBefore, shards.shardOfDoctor(id));
+            reindex(id);
+            counters.doctorSaved(id, saved.getSpecialization());
+            changeStamps.touch(ChangeStampService.DOCTORS);
+            return saved;
         }).orElseThrow(() -> new RuntimeException("Doctor not found with id " + id));
     }
 
     // Delete Doctor
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.DOCTORS_BY_ID, key = "#id"),
+        @CacheEvict(cacheNames = {CacheConfig.DOCTORS_BY_USER_ID, CacheConfig.DOCTORS_BY_USER_EMAIL,
+                CacheConfig.DOCTOR_DIRECTORY}, allEntries = true)
+    })
     public void deleteDoctor(Long id) {
         doctorRepository.deleteById(id);
+        shards.forgetDoctor(id);
+        shardReferenceData.deleteDoctor(id);
+        availabilityService.evictDoctor(id);
+        searchIndex.remove(id);
+        counters.doctorDeleted(id);
+        changeStamps.touch(ChangeStampService.DOCTORS);
+    }
+
+    // The index stores flat views; re-read the saved row so nested user fields are complete
+    private void reindex(Long doctorId) {
+        doctorRepository.findViewById(doctorId).ifPresent(searchIndex::put);
     }
-}
\ No newline at end of file
+}
@@ -1,19 +1,107 @@
 package com.example.medicine.med_pres.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
 import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 @Service
+@Timed(value = "service.invocations", percentiles = {0.5, 0.99, 0.999})
 public class JwtService {
 
     private static final String SECRET_KEY = "404E635266556A586E3272357538782F413F4428472B4B6250645367566B5970";
+    private static final int MAX_CACHED_TOKENS = 10_000;
+
+    // Decoded once; the parser is immutable and thread-safe so every request shares it
+    private final Key signInKey = Keys.hmacShaKeyFor(Base64.getDecoder().decode(SECRET_KEY));
+    private final JwtParser parser = Jwts.parserBuilder().setSigningKey(signInKey).build();
+
+    // Verified tokens keyed by SHA-256 digest, so raw tokens are never retained
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+
+    private final TokenRevocationService revocations;
+    private final Duration accessTokenTtl;
+
+    public JwtService(TokenRevocationService revocations, @Value("${auth.access-token-ttl:15m}") Duration accessTokenTtl) {
+        this.revocations = revocations;
+        this.accessTokenTtl = accessTokenTtl;
+    }
+
+    /**
+     * Subject and role of a token whose signature has been checked, valid until {@code expiresAtMillis}.
+     */
+    public record VerifiedToken(String username, String role, String tokenId, long issuedAtMillis, long expiresAtMillis) {
+
+        boolean isExpired(long nowMillis) {
+            return expiresAtMillis <= nowMillis;
+        }
+    }
+
+    /**
+     * Verifies the token once and returns its subject and role, or {@code null} when the
+     * signature is invalid, the token is malformed, it has expired or it has been revoked.
+     * Repeated calls with the same token are answered from a bounded cache until the token
+     * expires; revocation is checked on every call.
+     */
+    public VerifiedToken verify(String token) {
+        long now = System.currentTimeMillis();
+        String digest = digest(token);
+        VerifiedToken cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            if (cached.isExpired(now)) {
+                verifiedTokens.remove(digest);
+                return null;
+            }
+            return isRevoked(cached) ? null : cached;
+        }
+
+        Claims claims;
+        try {
+            claims = parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        Date expiration = claims.getExpiration();
+        if (claims.getSubject() == null || expiration == null || expiration.getTime() <= now) {
+            return null;
+        }
+
+        Date issuedAt = claims.getIssuedAt();
+        VerifiedToken verified = new VerifiedToken(claims.getSubject(), claims.get("role", String.class), claims.getId(),
+                issuedAt != null ? issuedAt.getTime() : 0L, expiration.getTime());
+        if (verifiedTokens.size() >= MAX_CACHED_TOKENS) {
+            evict(now);
+        }
+        verifiedTokens.put(digest, verified);
+        return isRevoked(verified) ? null : verified;
+    }
+
+    // Seconds until a freshly issued access token expires
+    public long getAccessTokenTtlSeconds() {
+        return accessTokenTtl.toSeconds();
+    }
+
+    private boolean isRevoked(VerifiedToken token) {
+        return revocations.isRevoked(token.tokenId(), token.username(), token.issuedAtMillis());
+    }
 
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
@@ -24,39 +112,44 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
+    // Short-lived access token; the jti lets a single token be revoked on logout
     public String generateToken(String username, String role) {
+        long now = System.currentTimeMillis();
         return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(username)
                 .claim("role", role)
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + 1000 * 60 * 60 * 10))
-                .signWith(getSignInKey(), SignatureAlgorithm.HS256)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + accessTokenTtl.toMillis()))
+                .signWith(signInKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     public boolean isTokenValid(String token, String username) {
-        final String extractedUsername = extractUsername(token);
-        return (extractedUsername.equals(username)) && !isTokenExpired(token);
-    }
-
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        final Claims claims = extractAllClaims(token);
+        return claims.getSubject().equals(username) && !claims.getExpiration().before(new Date());
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private Claims extractAllClaims(String token) {
+        return parser.parseClaimsJws(token).getBody();
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSignInKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    // Drops expired entries first, then arbitrary ones until the cache is back under 90% of its bound
+    private void evict(long nowMillis) {
+        verifiedTokens.values().removeIf(entry -> entry.isExpired(nowMillis));
+        Iterator<String> keys = verifiedTokens.keySet().iterator();
+        while (verifiedTokens.size() > MAX_CACHED_TOKENS * 9 / 10 && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
     }
 
-    private Key getSignInKey() {
-        byte[] keyBytes = java.util.Base64.getDecoder().decode(SECRET_KEY);
-        return Keys.hmacShaKeyFor(keyBytes);
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
-}
\ No newline at end of file
+}
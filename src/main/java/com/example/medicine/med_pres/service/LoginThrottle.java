@@ -0,0 +1,103 @@
+package com.example.medicine.med_pres.service;
+
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.exception.TooManyRequestsException;
+
+/**
+ * Fixed-window limits on authentication: attempts per client IP, and failed logins per account.
+ * Checked before any password hashing, so a throttled request costs no BCrypt work.
+ */
+@Component
+public class LoginThrottle {
+
+    private static final SampledLogger log = new SampledLogger(LoginThrottle.class, 100);
+
+    private record Window(long startMillis, int count) {
+    }
+
+    private final int maxAttemptsPerIp;
+    private final long ipWindowMillis;
+    private final int maxFailuresPerAccount;
+    private final long accountWindowMillis;
+
+    private final Map<String, Window> attemptsByIp = new ConcurrentHashMap<>();
+    private final Map<String, Window> failuresByAccount = new ConcurrentHashMap<>();
+
+    public LoginThrottle(@Value("${auth.throttle.ip-attempts:30}") int maxAttemptsPerIp,
+            @Value("${auth.throttle.ip-window:1m}") Duration ipWindow,
+            @Value("${auth.throttle.account-failures:5}") int maxFailuresPerAccount,
+            @Value("${auth.throttle.account-window:15m}") Duration accountWindow) {
+        this.maxAttemptsPerIp = maxAttemptsPerIp;
+        this.ipWindowMillis = ipWindow.toMillis();
+        this.maxFailuresPerAccount = maxFailuresPerAccount;
+        this.accountWindowMillis = accountWindow.toMillis();
+    }
+
+    // Counts one attempt from this IP and rejects it once the IP is over its limit
+    public void checkIp(String ip) {
+        long now = System.currentTimeMillis();
+        Window window = attemptsByIp.compute(ip, (key, current) -> current == null || expired(current, ipWindowMillis, now)
+                ? new Window(now, 1) : new Window(current.startMillis(), current.count() + 1));
+        if (window.count() > maxAttemptsPerIp) {
+            log.info("event=login.throttled scope=ip ip={}", ip);
+            throw new TooManyRequestsException("Too many attempts from this address", retryAfter(window, ipWindowMillis, now));
+        }
+    }
+
+    // Rejects logins to an account that has failed too often recently, even with the right password
+    public void checkAccount(String email) {
+        if (email == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Window window = failuresByAccount.get(key(email));
+        if (window != null && !expired(window, accountWindowMillis, now) && window.count() >= maxFailuresPerAccount) {
+            log.info("event=login.throttled scope=account");
+            throw new TooManyRequestsException("Too many failed logins for this account", retryAfter(window, accountWindowMillis, now));
+        }
+    }
+
+    public void recordFailure(String email) {
+        if (email == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        failuresByAccount.compute(key(email), (key, current) -> current == null || expired(current, accountWindowMillis, now)
+                ? new Window(now, 1) : new Window(current.startMillis(), current.count() + 1));
+    }
+
+    public void recordSuccess(String email) {
+        if (email != null) {
+            failuresByAccount.remove(key(email));
+        }
+    }
+
+    // Keeps both maps proportional to recent traffic
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        attemptsByIp.values().removeIf(window -> expired(window, ipWindowMillis, now));
+        failuresByAccount.values().removeIf(window -> expired(window, accountWindowMillis, now));
+    }
+
+    private static boolean expired(Window window, long windowMillis, long now) {
+        return now - window.startMillis() >= windowMillis;
+    }
+
+    private static long retryAfter(Window window, long windowMillis, long now) {
+        return Math.max(1, (window.startMillis() + windowMillis - now + 999) / 1000);
+    }
+
+    private static String key(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
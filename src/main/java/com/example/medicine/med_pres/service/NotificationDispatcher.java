@@ -0,0 +1,286 @@
+package com.example.medicine.med_pres.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.MimeMessageHelper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+
+/**
+ * Sends the notifications written by {@link NotificationOutbox}, from every shard's outbox.
+ *
+ * Each poll claims up to {@code notifications.batch-size} due rows per round by stamping them with
+ * a claim token and a lease, so several instances can drain the same outbox without sending a row
+ * twice, and a row claimed by an instance that died becomes due again when the lease runs out.
+ * A claimed batch is split into chunks that go out in parallel, one SMTP connection per chunk
+ * carrying all of its messages, over at most {@code notifications.connections} connections at a time.
+ * Rows repeating a key already in the batch are not sent again. Failed messages are retried with
+ * exponential backoff and given up after {@code notifications.max-attempts}. The Message-ID stays
+ * the same across retries, so a resend after a crash between sending and marking is recognisable.
+ */
+@Service
+public class NotificationDispatcher {
+    private static final SampledLogger log = new SampledLogger(NotificationDispatcher.class, 100);
+    private static final String TABLE = "notification_outbox";
+
+    private final ShardRouter router;
+    private final JavaMailSender mailSender;
+    private final String from;
+    private final int batchSize;
+    private final int messagesPerConnection;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final long maxRetryBackoffMillis;
+    private final long claimMillis;
+    private final long sentRetentionMillis;
+    private final ExecutorService senders;
+
+    private final Counter sent;
+    private final Counter duplicates;
+    private final Counter retried;
+    private final Counter failed;
+
+    public NotificationDispatcher(ShardRouter router, ObjectProvider<JavaMailSender> mailSender, MeterRegistry registry,
+            @Value("${notifications.from:no-reply@med-pres.local}") String from,
+            @Value("${notifications.batch-size:500}") int batchSize,
+            @Value("${notifications.connections:8}") int connections,
+            @Value("${notifications.messages-per-connection:100}") int messagesPerConnection,
+            @Value("${notifications.max-attempts:8}") int maxAttempts,
+            @Value("${notifications.retry-backoff:5s}") Duration retryBackoff,
+            @Value("${notifications.max-retry-backoff:1h}") Duration maxRetryBackoff,
+            @Value("${notifications.claim-timeout:2m}") Duration claimTimeout,
+            @Value("${notifications.sent-retention:7d}") Duration sentRetention) {
+        this.router = router;
+        this.mailSender = mailSender.getIfAvailable();
+        this.from = from;
+        this.batchSize = batchSize;
+        this.messagesPerConnection = messagesPerConnection;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoff.toMillis();
+        this.maxRetryBackoffMillis = maxRetryBackoff.toMillis();
+        this.claimMillis = claimTimeout.toMillis();
+        this.sentRetentionMillis = sentRetention.toMillis();
+        AtomicInteger workers = new AtomicInteger();
+        this.senders = this.mailSender == null ? null : Executors.newFixedThreadPool(connections, runnable -> {
+            Thread thread = new Thread(runnable, "smtp-sender-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.sent = outcomeCounter(registry, "sent");
+        this.duplicates = outcomeCounter(registry, "duplicate");
+        this.retried = outcomeCounter(registry, "retried");
+        this.failed = outcomeCounter(registry, "failed");
+    }
+
+    private static Counter outcomeCounter(MeterRegistry registry, String outcome) {
+        return Counter.builder("notifications.dispatched")
+                .description("Outbox notifications handled by the dispatcher, by outcome")
+                .tag("outcome", outcome).register(registry);
+    }
+
+    // Drains every shard's outbox until nothing is due; the next poll starts after this one ends
+    @Scheduled(fixedDelayString = "${notifications.poll-ms:250}")
+    public void dispatch() {
+        if (mailSender == null) {
+            return;
+        }
+        for (int shard = 0; shard < router.size(); shard++) {
+            try {
+                drain(shard);
+            } catch (RuntimeException e) {
+                log.warn("event=notification.drainFailed shard={} error={}", shard, e.getMessage());
+            }
+        }
+    }
+
+    // Drops sent rows once they are old enough not to matter for troubleshooting
+    @Scheduled(fixedDelay = 3_600_000, initialDelay = 60_000)
+    public void purgeSent() {
+        long cutoff = System.currentTimeMillis() - sentRetentionMillis;
+        for (int shard = 0; shard < router.size(); shard++) {
+            int purged = router.jdbc(shard).update("DELETE FROM " + TABLE + " WHERE status = 'SENT' AND sent_at < ?", cutoff);
+            if (purged > 0) {
+                log.info("event=notification.purged shard={} rows={}", shard, purged);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (senders != null) {
+            senders.shutdownNow();
+        }
+    }
+
+    private void drain(int shard) {
+        JdbcTemplate jdbc = router.jdbc(shard);
+        while (true) {
+            List<Pending> batch = claim(jdbc, shard);
+            if (!batch.isEmpty()) {
+                deliver(jdbc, batch);
+            }
+            if (batch.size() < batchSize) {
+                return;
+            }
+        }
+    }
+
+    // Takes due rows no other dispatcher took in the meantime; the lease is their new due time
+    private List<Pending> claim(JdbcTemplate jdbc, int shard) {
+        long now = System.currentTimeMillis();
+        List<Long> ids = jdbc.queryForList("SELECT id FROM " + TABLE
+                + " WHERE status = 'PENDING' AND next_attempt_at <= ? ORDER BY next_attempt_at, id LIMIT " + batchSize,
+                Long.class, now);
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        String token = UUID.randomUUID().toString();
+        String in = " WHERE id IN (" + ShardRows.placeholders(ids.size()) + ")";
+        List<Object> claimArgs = new ArrayList<>(ids.size() + 3);
+        claimArgs.add(token);
+        claimArgs.add(now + claimMillis);
+        claimArgs.addAll(ids);
+        claimArgs.add(now);
+        jdbc.update("UPDATE " + TABLE + " SET claim_token = ?, next_attempt_at = ?" + in
+                + " AND status = 'PENDING' AND next_attempt_at <= ?", claimArgs.toArray());
+        List<Object> readArgs = new ArrayList<>(ids);
+        readArgs.add(token);
+        return jdbc.query("SELECT id, dedup_key, recipient, subject, body, attempts FROM " + TABLE + in
+                + " AND claim_token = ? ORDER BY id", (row, i) -> new Pending(shard, row.getLong(1), row.getString(2),
+                row.getString(3), row.getString(4), row.getString(5), row.getInt(6)), readArgs.toArray());
+    }
+
+    private void deliver(JdbcTemplate jdbc, List<Pending> batch) {
+        Map<String, Pending> unique = new LinkedHashMap<>();
+        List<Long> delivered = new ArrayList<>(batch.size());
+        for (Pending message : batch) {
+            if (unique.putIfAbsent(message.dedupKey(), message) != null) {
+                delivered.add(message.id());
+                duplicates.increment();
+            }
+        }
+        List<Pending> toSend = new ArrayList<>(unique.values());
+        List<Future<Map<Pending, Exception>>> chunks = new ArrayList<>();
+        for (int from = 0; from < toSend.size(); from += messagesPerConnection) {
+            List<Pending> chunk = toSend.subList(from, Math.min(toSend.size(), from + messagesPerConnection));
+            chunks.add(senders.submit(() -> send(chunk)));
+        }
+        Map<Pending, Exception> failures = new LinkedHashMap<>();
+        for (Future<Map<Pending, Exception>> chunk : chunks) {
+            try {
+                failures.putAll(chunk.get());
+            } catch (InterruptedException e) {
+                // Unmarked rows stay claimed and come back when the lease runs out
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Sending notifications failed", e.getCause());
+            }
+        }
+        toSend.stream().filter(message -> !failures.containsKey(message)).forEach(message -> delivered.add(message.id()));
+        markSent(jdbc, delivered);
+        markFailed(jdbc, failures);
+        sent.increment(toSend.size() - failures.size());
+    }
+
+    // Sends the chunk over one connection; returns the messages that failed and why
+    private Map<Pending, Exception> send(List<Pending> chunk) {
+        Map<Pending, Exception> failures = new LinkedHashMap<>();
+        Map<MimeMessage, Pending> messages = new LinkedHashMap<>();
+        for (Pending message : chunk) {
+            try {
+                messages.put(toMimeMessage(message), message);
+            } catch (MessagingException e) {
+                failures.put(message, e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return failures;
+        }
+        try {
+            mailSender.send(messages.keySet().toArray(MimeMessage[]::new));
+        } catch (MailSendException e) {
+            e.getFailedMessages().forEach((message, error) -> failures.put(messages.get(message), error));
+            if (e.getFailedMessages().isEmpty()) {
+                messages.values().forEach(message -> failures.put(message, e));
+            }
+        } catch (MailException e) {
+            messages.values().forEach(message -> failures.put(message, e));
+        }
+        return failures;
+    }
+
+    private MimeMessage toMimeMessage(Pending message) throws MessagingException {
+        MimeMessage mime = mailSender.createMimeMessage();
+        MimeMessageHelper helper = new MimeMessageHelper(mime, false, "UTF-8");
+        helper.setFrom(from);
+        helper.setTo(message.recipient());
+        helper.setSubject(message.subject());
+        helper.setText(message.body());
+        mime.setHeader("Message-ID", "<outbox." + message.shard() + "." + message.id() + "@med-pres>");
+        return mime;
+    }
+
+    private void markSent(JdbcTemplate jdbc, List<Long> ids) {
+        long now = System.currentTimeMillis();
+        for (int from = 0; from < ids.size(); from += ShardRows.BATCH_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + ShardRows.BATCH_SIZE));
+            List<Object> args = new ArrayList<>(chunk.size() + 1);
+            args.add(now);
+            args.addAll(chunk);
+            jdbc.update("UPDATE " + TABLE + " SET status = 'SENT', sent_at = ?, claim_token = NULL WHERE id IN ("
+                    + ShardRows.placeholders(chunk.size()) + ")", args.toArray());
+        }
+    }
+
+    // Schedules another attempt with exponential backoff, or gives up after the last one
+    private void markFailed(JdbcTemplate jdbc, Map<Pending, Exception> failures) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        List<Object[]> args = new ArrayList<>(failures.size());
+        failures.forEach((message, error) -> {
+            int attempts = message.attempts() + 1;
+            boolean giveUp = attempts >= maxAttempts;
+            long backoff = Math.min(maxRetryBackoffMillis, retryBackoffMillis << Math.min(attempts - 1, 30));
+            // Jitter keeps messages that failed together from retrying together
+            backoff += ThreadLocalRandom.current().nextLong(backoff / 5 + 1);
+            String reason = String.valueOf(error.getMessage());
+            args.add(new Object[] { giveUp ? "FAILED" : "PENDING", attempts, now + backoff,
+                    reason.length() > 500 ? reason.substring(0, 500) : reason, message.id() });
+            (giveUp ? failed : retried).increment();
+            log.warn("event=notification.{} shard={} id={} attempts={} error={}", giveUp ? "failed" : "retry",
+                    message.shard(), message.id(), attempts, reason);
+        });
+        jdbc.batchUpdate("UPDATE " + TABLE + " SET status = ?, attempts = ?, next_attempt_at = ?, last_error = ?, "
+                + "claim_token = NULL WHERE id = ?", args);
+    }
+
+    private record Pending(int shard, long id, String dedupKey, String recipient, String subject, String body, int attempts) {
+    }
+}
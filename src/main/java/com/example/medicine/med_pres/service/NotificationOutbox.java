@@ -0,0 +1,134 @@
+package com.example.medicine.med_pres.service;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.model.OutboxMessage;
+import com.example.medicine.med_pres.model.Prescription;
+import com.example.medicine.med_pres.model.User;
+import com.example.medicine.med_pres.repository.OutboxMessageRepository;
+
+/**
+ * Writes patient notifications to the outbox. Callers are inside the transaction that saves the
+ * change being reported, on the same shard, so the notification commits or rolls back with it;
+ * {@link NotificationDispatcher} sends it afterwards. Nothing is written when no mail server is
+ * configured ({@code spring.mail.host}) or {@code notifications.enabled=false}.
+ */
+@Service
+public class NotificationOutbox {
+
+    private final OutboxMessageRepository outboxRepository;
+    private final boolean enabled;
+
+    public NotificationOutbox(OutboxMessageRepository outboxRepository, ObjectProvider<JavaMailSender> mailSender,
+            @Value("${notifications.enabled:true}") boolean enabled) {
+        this.outboxRepository = outboxRepository;
+        this.enabled = enabled && mailSender.getIfAvailable() != null;
+    }
+
+    // Tells the patient their appointment was approved or rejected
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void appointmentStatusChanged(Appointment appointment) {
+        Appointment.Status status = appointment.getStatus();
+        if (status != Appointment.Status.APPROVED && status != Appointment.Status.REJECTED) {
+            return;
+        }
+        String when = appointment.getAppointmentDate() + " at " + appointment.getAppointmentTime();
+        String verb = status == Appointment.Status.APPROVED ? "approved" : "rejected";
+        String dedupKey = "appointment:" + appointment.getId() + ":" + status + ":" + appointment.getAppointmentDate()
+                + "T" + appointment.getAppointmentTime();
+        // A notification still waiting under the same key already says the same thing
+        if (!enabled || outboxRepository.existsByDedupKeyAndStatus(dedupKey, OutboxMessage.Status.PENDING)) {
+            return;
+        }
+        enqueue(dedupKey, appointment.getPatient(),
+                "Your appointment on " + when + " was " + verb,
+                greeting(appointment.getPatient())
+                        + doctorName(appointment.getDoctor()) + " " + verb + " your appointment on " + when
+                        + clinic(appointment.getDoctor()) + ".\n");
+    }
+
+    // Reminds each patient of their upcoming appointment; a reminder already written (by any instance) is not
+    // repeated. Returns how many were written.
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int appointmentReminders(List<Appointment> appointments, Duration lead) {
+        if (!enabled || appointments.isEmpty()) {
+            return 0;
+        }
+        Map<String, Appointment> byKey = new LinkedHashMap<>();
+        for (Appointment appointment : appointments) {
+            byKey.put("reminder:" + appointment.getId() + ":" + lead.toMinutes() + "m:" + appointment.getAppointmentDate()
+                    + "T" + appointment.getAppointmentTime(), appointment);
+        }
+        outboxRepository.findExistingDedupKeys(byKey.keySet()).forEach(byKey::remove);
+        byKey.forEach((dedupKey, appointment) -> {
+            String when = appointment.getAppointmentDate() + " at " + appointment.getAppointmentTime();
+            enqueue(dedupKey, appointment.getPatient(), "Reminder: your appointment on " + when,
+                    greeting(appointment.getPatient()) + "This is a reminder of your appointment with "
+                            + doctorName(appointment.getDoctor()) + " on " + when + clinic(appointment.getDoctor()) + ".\n");
+        });
+        return byKey.size();
+    }
+
+    // Tells the patient a prescription was issued for them; issued once, so its key is never waiting already
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void prescriptionIssued(Prescription prescription) {
+        if (!enabled) {
+            return;
+        }
+        StringBuilder body = new StringBuilder(greeting(prescription.getPatient()))
+                .append(doctorName(prescription.getDoctor())).append(" issued you a prescription.\n\n")
+                .append("Medication: ").append(prescription.getMedicationName()).append('\n');
+        if (prescription.getDosage() != null) {
+            body.append("Dosage: ").append(prescription.getDosage()).append('\n');
+        }
+        if (prescription.getFrequency() != null) {
+            body.append("Frequency: ").append(prescription.getFrequency()).append('\n');
+        }
+        if (prescription.getNotes() != null) {
+            body.append("Notes: ").append(prescription.getNotes()).append('\n');
+        }
+        enqueue("prescription:" + prescription.getId(), prescription.getPatient(),
+                "New prescription: " + prescription.getMedicationName(), body.toString());
+    }
+
+    private void enqueue(String dedupKey, User recipient, String subject, String body) {
+        if (recipient == null || recipient.getEmail() == null || recipient.getEmail().isBlank()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        outboxRepository.save(OutboxMessage.builder()
+                .dedupKey(dedupKey)
+                .recipient(recipient.getEmail())
+                .subject(subject)
+                .body(body)
+                .status(OutboxMessage.Status.PENDING)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+    }
+
+    private static String greeting(User patient) {
+        return "Dear " + (patient != null && patient.getName() != null ? patient.getName() : "patient") + ",\n\n";
+    }
+
+    private static String doctorName(Doctor doctor) {
+        return doctor != null && doctor.getUser() != null && doctor.getUser().getName() != null
+                ? "Dr. " + doctor.getUser().getName() : "Your doctor";
+    }
+
+    private static String clinic(Doctor doctor) {
+        return doctor != null && doctor.getClinicName() != null ? " (" + doctor.getClinicName() + ")" : "";
+    }
+}
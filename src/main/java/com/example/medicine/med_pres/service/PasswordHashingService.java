@@ -0,0 +1,121 @@
+package com.example.medicine.med_pres.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.exception.TooManyRequestsException;
+
+/**
+ * Runs BCrypt on a small dedicated pool so a login storm can use at most
+ * {@code auth.hashing.threads} cores and never the request threads other endpoints need.
+ * Work beyond {@code auth.hashing.queue-capacity} waiting hashes is rejected immediately
+ * with {@link TooManyRequestsException} instead of queueing without bound. Queue depth,
+ * active workers and completions are published as {@code executor.*{name=passwordHashing}}.
+ */
+@Service
+public class PasswordHashingService {
+
+    private static final long RETRY_AFTER_SECONDS = 1;
+    private static final SampledLogger log = new SampledLogger(PasswordHashingService.class, 100);
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final Counter rejected;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder, MeterRegistry registry,
+            @Value("${auth.hashing.threads:0}") int threads,
+            @Value("${auth.hashing.queue-capacity:64}") int queueCapacity,
+            @Value("${auth.hashing.timeout-ms:5000}") long timeoutMillis) {
+        this.passwordEncoder = passwordEncoder;
+        this.timeoutMillis = timeoutMillis;
+        // Default to half the cores so hashing can never take the whole machine
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger workers = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + workers.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, "passwordHashing", Tags.empty()).bindTo(registry);
+        this.rejected = Counter.builder("auth.hashing.rejected")
+                .description("Password hashing requests rejected because the hashing queue was full")
+                .register(registry);
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        if (rawPassword == null || encodedPassword == null) {
+            return false;
+        }
+        return await(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    public String encode(String rawPassword) {
+        return await(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    // True when the hash was made with a lower cost factor than the encoder is configured for
+    public boolean needsRehash(String encodedPassword) {
+        return encodedPassword != null && passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    // Fire-and-forget re-encode for hash upgrades; skipped once the queue is half full so logins keep priority
+    public void rehashInBackground(String rawPassword, Consumer<String> onHashed) {
+        if (executor.getQueue().size() > executor.getQueue().remainingCapacity()) {
+            log.info("event=password.rehash.skipped reason=busy");
+            return;
+        }
+        try {
+            executor.execute(() -> onHashed.accept(passwordEncoder.encode(rawPassword)));
+        } catch (RejectedExecutionException e) {
+            log.info("event=password.rehash.skipped reason=queueFull");
+        }
+    }
+
+    private <T> T await(Callable<T> work) {
+        Future<T> future;
+        try {
+            future = executor.submit(work);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new TooManyRequestsException("Authentication is busy, please retry shortly", RETRY_AFTER_SECONDS);
+        }
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new TooManyRequestsException("Authentication is busy, please retry shortly", RETRY_AFTER_SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
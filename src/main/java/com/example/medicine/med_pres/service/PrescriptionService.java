@@ -1,70 +1,91 @@
 package com.example.medicine.med_pres.service;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import io.micrometer.core.annotation.Timed;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.dto.PrescriptionView;
+import com.example.medicine.med_pres.exception.ShardMovingException;
 import com.example.medicine.med_pres.model.Doctor;
 import com.example.medicine.med_pres.model.Prescription;
 import com.example.medicine.med_pres.model.User;
+import com.example.medicine.med_pres.repository.ArchivedPrescriptionRepository;
 import com.example.medicine.med_pres.repository.PrescriptionRepository;
 import com.example.medicine.med_pres.service.UserService;
 import com.example.medicine.med_pres.service.DoctorService;
 
 @Service
+@Timed(value = "service.invocations", percentiles = {0.5, 0.99, 0.999})
 public class PrescriptionService {
-private final PrescriptionRepository prescriptionRepository;
+    private static final SampledLogger log = new SampledLogger(PrescriptionService.class, 100);
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final String TABLE = "prescriptions";
+    private static final Comparator<PrescriptionView> ID_ORDER = Comparator.comparing(PrescriptionView::id);
+    private static final Function<PrescriptionView, Long> VIEW_DOCTOR = view -> view.doctor().id();
+
+    private final PrescriptionRepository prescriptionRepository;
     private final UserService userService;
     private final DoctorService doctorService;
+    private final ChangeStampService changeStamps;
+    private final ShardRouter shards;
+    private final ShardRebalancer rebalancer;
+    private final NotificationOutbox notifications;
+    private final ChangeFeed changeFeed;
+    private final ArchivedPrescriptionRepository archivedRepository;
+    private final ArchiveService archive;
+    private final DashboardCounters counters;
 
-    public PrescriptionService(PrescriptionRepository prescriptionRepository, UserService userService, DoctorService doctorService) {
+    public PrescriptionService(PrescriptionRepository prescriptionRepository, UserService userService, DoctorService doctorService,
+            ChangeStampService changeStamps, ShardRouter shards, ShardRebalancer rebalancer, NotificationOutbox notifications,
+            ChangeFeed changeFeed, ArchivedPrescriptionRepository archivedRepository, ArchiveService archive,
+            DashboardCounters counters) {
         this.prescriptionRepository = prescriptionRepository;
         this.userService = userService;
         this.doctorService = doctorService;
+        this.changeStamps = changeStamps;
+        this.shards = shards;
+        this.rebalancer = rebalancer;
+        this.notifications = notifications;
+        this.changeFeed = changeFeed;
+        this.archivedRepository = archivedRepository;
+        this.archive = archive;
+        this.counters = counters;
     }
 
     // Create Prescription
     public Prescription createPrescription(Prescription prescription) {
-        return prescriptionRepository.save(prescription);
+        Prescription saved = shards.on(shardForWrite(prescription), () -> prescriptionRepository.save(prescription));
+        touchLists(saved.getPatient());
+        changeFeed.prescription(ChangeFeed.CREATED, saved);
+        counters.prescriptionIssued(saved);
+        return saved;
     }
     
     // Create Prescription with current doctor from JWT
     public Prescription createPrescriptionForDoctor(java.util.Map<String, Object> prescriptionData, String doctorEmail) {
         try {
-            System.out.println("DEBUG: Starting prescription creation for doctor: " + doctorEmail);
-            
             // Find patient
             Long patientId = Long.valueOf(prescriptionData.get("patientId").toString());
             User patient = userService.findById(patientId);
             if (patient == null) {
                 throw new RuntimeException("Patient not found with ID: " + patientId);
             }
-            System.out.println("DEBUG: Found patient: " + patient.getName());
-            
-            // Find doctor user
-            User doctorUser = userService.findByEmail(doctorEmail);
-            if (doctorUser == null) {
-                throw new RuntimeException("Doctor not found with email: " + doctorEmail);
-            }
-            System.out.println("DEBUG: Found doctor user: " + doctorUser.getName());
-            
-            // Find existing doctor profile from database
-            java.util.List<com.example.medicine.med_pres.model.Doctor> allDoctors = 
-                doctorService.getAllDoctors();
             
-            com.example.medicine.med_pres.model.Doctor doctor = null;
-            for (com.example.medicine.med_pres.model.Doctor d : allDoctors) {
-                if (d.getUser() != null && doctorEmail.equals(d.getUser().getEmail())) {
-                    doctor = d;
-                    break;
-                }
-            }
-            
-            if (doctor == null) {
-                throw new RuntimeException("Doctor profile not found for email: " + doctorEmail);
-            }
-            System.out.println("DEBUG: Found doctor profile: " + doctor.getId());
+            // Find doctor profile (joined with its user) by the JWT subject
+            Doctor doctor = doctorService.getDoctorByUserEmail(doctorEmail)
+                .orElseThrow(() -> new RuntimeException("Doctor profile not found for email: " + doctorEmail));
             
             // Create prescription
             Prescription prescription = new Prescription();
@@ -75,77 +96,199 @@ private final PrescriptionRepository prescriptionRepository;
             prescription.setFrequency((String) prescriptionData.get("frequency"));
             prescription.setNotes((String) prescriptionData.get("notes"));
             
-            System.out.println("DEBUG: Saving prescription...");
-            Prescription saved = prescriptionRepository.save(prescription);
-            System.out.println("DEBUG: Prescription saved with ID: " + saved.getId());
+            // The prescription and the patient's notification about it commit together
+            Prescription saved = shards.inTransaction(shards.shardForWrite(doctor.getId()), false, () -> {
+                Prescription result = prescriptionRepository.save(prescription);
+                notifications.prescriptionIssued(result);
+                return result;
+            });
+            touchLists(patient);
+            changeFeed.prescription(ChangeFeed.CREATED, saved);
+            counters.prescriptionIssued(saved);
+            log.info("event=prescription.created prescriptionId={} doctorId={} patientId={}", saved.getId(), doctor.getId(), patient.getId());
             
             return saved;
+        } catch (ShardMovingException e) {
+            throw e;
         } catch (Exception e) {
-            System.out.println("DEBUG: Error creating prescription: " + e.getMessage());
-            e.printStackTrace();
+            log.warn("event=prescription.failed error={}", e.getMessage());
             throw new RuntimeException("Failed to create prescription: " + e.getMessage());
         }
     }
 
-    // Get all Prescriptions
-    public List<Prescription> getAllPrescriptions() {
-        return prescriptionRepository.findAll();
+    // Create many Prescriptions for the current doctor in one transaction
+    public List<Prescription> createPrescriptionsForDoctor(List<Map<String, Object>> prescriptionData, String doctorEmail) {
+        if (prescriptionData.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("At most " + MAX_BATCH_SIZE + " prescriptions per batch, got " + prescriptionData.size());
+        }
+        Doctor doctor = doctorService.getDoctorByUserEmail(doctorEmail)
+            .orElseThrow(() -> new IllegalArgumentException("Doctor profile not found for email: " + doctorEmail));
+        int shard = shards.shardForWrite(doctor.getId());
+
+        // Resolve all patients with one query instead of one lookup per row
+        List<Long> patientIds = prescriptionData.stream()
+            .map(data -> Long.valueOf(String.valueOf(data.get("patientId"))))
+            .collect(Collectors.toList());
+        Map<Long, User> patients = userService.findAllById(patientIds).stream()
+            .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        List<Prescription> prescriptions = new ArrayList<>(prescriptionData.size());
+        for (int i = 0; i < prescriptionData.size(); i++) {
+            Map<String, Object> data = prescriptionData.get(i);
+            User patient = patients.get(patientIds.get(i));
+            if (patient == null) {
+                throw new IllegalArgumentException("Patient not found with ID: " + patientIds.get(i));
+            }
+            Prescription prescription = new Prescription();
+            prescription.setPatient(patient);
+            prescription.setDoctor(doctor);
+            prescription.setMedicationName((String) data.get("medicationName"));
+            prescription.setDosage((String) data.get("dosage"));
+            prescription.setFrequency((String) data.get("frequency"));
+            prescription.setNotes((String) data.get("notes"));
+            prescriptions.add(prescription);
+        }
+        List<Prescription> saved = shards.inTransaction(shard, false, () -> {
+            List<Prescription> result = prescriptionRepository.saveAll(prescriptions);
+            result.forEach(notifications::prescriptionIssued);
+            return result;
+        });
+        touchLists(patients.values().toArray(User[]::new));
+        saved.forEach(prescription -> changeFeed.prescription(ChangeFeed.CREATED, prescription));
+        saved.forEach(counters::prescriptionIssued);
+        log.info("event=prescriptions.batchCreated doctorId={} count={}", doctor.getId(), saved.size());
+        return saved;
+    }
+
+    // Get all Prescriptions, gathered from every shard
+    public List<PrescriptionView> getAllPrescriptions() {
+        return shards.gather(shard -> prescriptionRepository.findAllViews(), VIEW_DOCTOR, ID_ORDER);
+    }
+
+    // Stream Prescriptions (optionally of one doctor) to the sink, one read-only transaction per shard involved; returns the row count.
+    // Archived rows come first on each shard.
+    public long exportPrescriptions(Long doctorId, Consumer<PrescriptionView> sink) {
+        boolean withArchive = archive.mayHold(null);
+        long count = 0;
+        for (int shard = 0; shard < shards.size(); shard++) {
+            if (doctorId != null && shard != shards.shardOfDoctor(doctorId)) {
+                continue;
+            }
+            int current = shard;
+            count += shards.inTransaction(shard, true, () -> {
+                long rowsOnShard = 0;
+                if (withArchive) {
+                    try (Stream<PrescriptionView> rows = archivedRepository.streamViews(doctorId)) {
+                        for (PrescriptionView row : (Iterable<PrescriptionView>) rows::iterator) {
+                            // Skips what a clinic move left behind, which the doctor's shard also exports
+                            if (shards.holds(current, VIEW_DOCTOR.apply(row))) {
+                                sink.accept(row);
+                                rowsOnShard++;
+                            }
+                        }
+                    }
+                }
+                try (Stream<PrescriptionView> rows = prescriptionRepository.streamViews(doctorId)) {
+                    for (PrescriptionView row : (Iterable<PrescriptionView>) rows::iterator) {
+                        if (shards.holds(current, VIEW_DOCTOR.apply(row))) {
+                            sink.accept(row);
+                            rowsOnShard++;
+                        }
+                    }
+                }
+                return rowsOnShard;
+            });
+        }
+        log.info("event=prescriptions.exported count={} doctorId={}", count, doctorId);
+        return count;
     }
 
     // Get Prescription by ID
     public Optional<Prescription> getPrescriptionById(Long id) {
-        return prescriptionRepository.findById(id);
+        return shards.findReadOnly(id, () -> prescriptionRepository.findById(id)).map(ShardRouter.Found::value);
     }
 
     public List<Prescription> getPrescriptionsByPatient(User patientId) {
-        return prescriptionRepository.findByPatientId(patientId);
+        return shards.gather(shard -> prescriptionRepository.findByPatientId(patientId), prescription -> prescription.getDoctor().getId(),
+                Comparator.comparing(Prescription::getId));
     }
 
     public List<Prescription> getPrescriptionsByDoctor(Doctor doctorId) {
-        return prescriptionRepository.findByDoctorId(doctorId);
+        return shards.read(shards.shardOfDoctor(doctorId.getId()), () -> prescriptionRepository.findByDoctorId(doctorId));
     }
     
-    // Get prescriptions by patient email
-    public List<Prescription> getPrescriptionsByPatientEmail(String patientEmail) {
-        List<Prescription> allPrescriptions = prescriptionRepository.findAll();
-        System.out.println("DEBUG: Total prescriptions in database: " + allPrescriptions.size());
-        
-        List<Prescription> filtered = allPrescriptions.stream()
-            .filter(prescription -> {
-                if (prescription.getPatient() == null) {
-                    System.out.println("DEBUG: Prescription " + prescription.getId() + " has no patient");
-                    return false;
-                }
-                String prescriptionPatientEmail = prescription.getPatient().getEmail();
-                boolean matches = patientEmail.equals(prescriptionPatientEmail);
-                System.out.println("DEBUG: Prescription " + prescription.getId() + 
-                    " - Patient: " + prescriptionPatientEmail + 
-                    " - Medication: " + prescription.getMedicationName() +
-                    " - Matches: " + matches);
-                return matches;
-            })
-            .collect(java.util.stream.Collectors.toList());
-            
-        System.out.println("DEBUG: Filtered prescriptions for " + patientEmail + ": " + filtered.size());
-        return filtered;
+    // ETag for a patient's prescription list; names shown in it come from users and doctors
+    @Transactional(readOnly = true)
+    public String patientPrescriptionsTag(String patientEmail) {
+        User patient = userService.findByEmail(patientEmail);
+        return changeStamps.etag(ChangeStampService.patientPrescriptions(patient != null ? patient.getId() : null),
+                ChangeStampService.USERS, ChangeStampService.DOCTORS);
+    }
+
+    // Get prescriptions by patient email, archived ones included; patients see doctors on any shard
+    public List<PrescriptionView> getPrescriptionsByPatientEmail(String patientEmail) {
+        boolean withArchive = archive.mayHold(null);
+        List<PrescriptionView> prescriptions = shards.gather(shard -> {
+            List<PrescriptionView> live = prescriptionRepository.findViewsByPatientEmail(patientEmail);
+            if (!withArchive) {
+                return live;
+            }
+            List<PrescriptionView> all = new ArrayList<>(archivedRepository.findViewsByPatientEmail(patientEmail));
+            all.addAll(live);
+            all.sort(ID_ORDER);
+            return all;
+        }, VIEW_DOCTOR, ID_ORDER);
+        User patient = userService.findByEmail(patientEmail);
+        log.info("event=prescriptions.byPatient patientId={} count={}", patient != null ? patient.getId() : null, prescriptions.size());
+        return prescriptions;
     }
 
     // Update Prescription
     public Prescription updatePrescription(Long id, Prescription updatedPrescription) {
-        return prescriptionRepository.findById(id).map(existing -> {
+        return shards.find(id, () -> prescriptionRepository.findById(id)).map(found -> {
+            Prescription existing = found.value();
+            shards.shardForWrite(existing.getDoctor().getId());
+            Prescription previous = Prescription.builder().patient(existing.getPatient()).doctor(existing.getDoctor()).build();
             existing.setMedicationName(updatedPrescription.getMedicationName());
             existing.setDosage(updatedPrescription.getDosage());
             existing.setFrequency(updatedPrescription.getFrequency());
             existing.setNotes(updatedPrescription.getNotes());
             existing.setDoctor(updatedPrescription.getDoctor());
             existing.setPatient(updatedPrescription.getPatient());
-            return prescriptionRepository.save(existing);
+            int target = shardForWrite(existing);
+            Prescription saved = shards.on(found.shard(), () -> prescriptionRepository.save(existing));
+            // Moves with its doctor when the new doctor's clinic lives on another shard
+            rebalancer.moveRows(TABLE, List.of(saved.getId()), found.shard(), target);
+            touchLists(previous.getPatient(), saved.getPatient());
+            changeFeed.prescription(ChangeFeed.UPDATED, saved, previous);
+            counters.prescriptionUpdated(previous, saved);
+            return saved;
         }).orElseThrow(() -> new RuntimeException("Prescription not found with id " + id));
     }
 
     // Delete Prescription
     public void deletePrescription(Long id) {
-        prescriptionRepository.deleteById(id);
+        shards.find(id, () -> prescriptionRepository.findById(id)).ifPresent(found -> {
+            Prescription existing = found.value();
+            shards.shardForWrite(existing.getDoctor().getId());
+            shards.run(found.shard(), () -> prescriptionRepository.delete(existing));
+            touchLists(existing.getPatient());
+            changeFeed.prescription(ChangeFeed.DELETED, existing);
+            counters.prescriptionDeleted(existing);
+        });
+    }
+
+    private int shardForWrite(Prescription prescription) {
+        // Without a doctor the insert fails on the home database, as it always has
+        return prescription.getDoctor() == null || prescription.getDoctor().getId() == null
+                ? ShardRouter.HOME : shards.shardForWrite(prescription.getDoctor().getId());
+    }
+
+    // Marks these patients' prescription lists as changed
+    private void touchLists(User... patients) {
+        changeStamps.touch(Arrays.stream(patients)
+                .map(patient -> ChangeStampService.patientPrescriptions(patient != null ? patient.getId() : null))
+                .toArray(String[]::new));
     }
 }
     
\ No newline at end of file
@@ -0,0 +1,117 @@
+package com.example.medicine.med_pres.service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.UUID;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.model.RefreshToken;
+import com.example.medicine.med_pres.repository.RefreshTokenRepository;
+
+@Service
+@Timed(value = "service.invocations", percentiles = {0.5, 0.99, 0.999})
+public class RefreshTokenService {
+
+    private static final SampledLogger log = new SampledLogger(RefreshTokenService.class, 100);
+
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final Duration refreshTokenTtl;
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * Result of a successful rotation: the user the token belonged to and its replacement.
+     */
+    public record Rotation(Long userId, String refreshToken) {
+    }
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+            @Value("${auth.refresh-token-ttl:14d}") Duration refreshTokenTtl) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.refreshTokenTtl = refreshTokenTtl;
+    }
+
+    // Issue the first refresh token of a new family (one per login)
+    public String issue(Long userId) {
+        return issue(userId, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Consumes a refresh token and issues its successor. Empty when the token is unknown,
+     * expired or revoked. Presenting a token that was already consumed revokes its whole
+     * family, since one of the two holders must have copied it.
+     */
+    @Transactional
+    public Optional<Rotation> rotate(String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            return Optional.empty();
+        }
+        Optional<RefreshToken> found = refreshTokenRepository.findByTokenHash(digest(rawToken));
+        if (found.isEmpty()) {
+            return Optional.empty();
+        }
+        RefreshToken token = found.get();
+        Instant now = Instant.now();
+        if (token.isRevoked() || !token.getExpiresAt().isAfter(now)) {
+            return Optional.empty();
+        }
+        if (refreshTokenRepository.markUsed(token.getId(), now) == 0) {
+            int revoked = refreshTokenRepository.revokeFamily(token.getFamilyId());
+            log.warn("event=refreshToken.reuse userId={} family={} revoked={}", token.getUserId(), token.getFamilyId(), revoked);
+            return Optional.empty();
+        }
+        return Optional.of(new Rotation(token.getUserId(), issue(token.getUserId(), token.getFamilyId())));
+    }
+
+    // Logout: the presented token and every token rotated from the same login stop working
+    @Transactional
+    public void revoke(String rawToken) {
+        if (rawToken == null || rawToken.isBlank()) {
+            return;
+        }
+        refreshTokenRepository.findByTokenHash(digest(rawToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId()));
+    }
+
+    @Transactional
+    public void revokeAllForUser(Long userId) {
+        refreshTokenRepository.revokeByUserId(userId);
+    }
+
+    @Scheduled(cron = "0 15 3 * * *")
+    @Transactional
+    public void purgeExpired() {
+        int deleted = refreshTokenRepository.deleteExpired(Instant.now());
+        log.info("event=refreshTokens.purged deleted={}", deleted);
+    }
+
+    private String issue(Long userId, String familyId) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String raw = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        refreshTokenRepository.save(RefreshToken.builder().tokenHash(digest(raw)).userId(userId).familyId(familyId)
+                .expiresAt(Instant.now().plus(refreshTokenTtl)).build());
+        return raw;
+    }
+
+    // Only digests are stored, so a leaked table cannot be replayed
+    private static String digest(String rawToken) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(rawToken.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.medicine.med_pres.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.dto.ShardMove;
+import com.example.medicine.med_pres.dto.ShardStatus;
+import com.example.medicine.med_pres.model.ClinicShard;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.repository.DoctorRepository;
+
+/**
+ * Moves clinics between shards while the application keeps serving.
+ *
+ * A move flags the clinic as moving, so every instance refuses writes for it (503 with
+ * Retry-After) once it has refreshed its directory, waits that long, copies the clinic's
+ * appointments and prescriptions to the target with their ids, points the directory at the
+ * target, waits again so no instance still reads the source, and deletes the copied rows there.
+ * Reads keep working throughout; only writes for the moving clinic pause, for about the copy time.
+ * A failed copy clears the flag and removes what was copied, leaving the clinic where it was.
+ */
+@Service
+public class ShardRebalancer {
+    private static final SampledLogger log = new SampledLogger(ShardRebalancer.class, 100);
+    // Archived rows stay with their clinic too
+    private static final List<String> SHARDED_TABLES = List.of("appointments", "prescriptions",
+            "appointments_archive", "prescriptions_archive");
+
+    private final ShardRouter router;
+    private final DoctorRepository doctorRepository;
+    private final long settleMillis;
+    // One move at a time per instance
+    private final Object moveLock = new Object();
+
+    public ShardRebalancer(ShardRouter router, DoctorRepository doctorRepository,
+            @Value("${sharding.move-settle-ms:10000}") long settleMillis) {
+        this.router = router;
+        this.doctorRepository = doctorRepository;
+        this.settleMillis = settleMillis;
+    }
+
+    // Clinics and rows per shard
+    public List<ShardStatus> status() {
+        Map<Integer, Long> clinics = new HashMap<>();
+        router.placements().forEach(placement -> clinics.merge(placement.getShard(), 1L, Long::sum));
+        List<ShardStatus> status = new ArrayList<>();
+        for (int shard = 0; shard < router.size(); shard++) {
+            JdbcTemplate jdbc = router.jdbc(shard);
+            status.add(new ShardStatus(shard, clinics.getOrDefault(shard, 0L),
+                    jdbc.queryForObject("SELECT COUNT(*) FROM appointments", Long.class),
+                    jdbc.queryForObject("SELECT COUNT(*) FROM prescriptions", Long.class)));
+        }
+        return status;
+    }
+
+    // Moves one clinic's rows to the target shard
+    public ShardMove moveClinic(String clinicKey, int target) {
+        return moveClinics(List.of(clinicKey), target).get(0);
+    }
+
+    // Moves several clinics to the target shard, sharing the two settle waits
+    public List<ShardMove> moveClinics(List<String> clinicKeys, int target) {
+        router.checkShard(target);
+        synchronized (moveLock) {
+            Map<Long, String> clinicOfDoctor = clinicOfDoctor();
+            Map<String, List<Long>> doctorsByClinic = new LinkedHashMap<>();
+            clinicKeys.forEach(key -> doctorsByClinic.put(key, new ArrayList<>()));
+            clinicOfDoctor.forEach((doctorId, key) -> {
+                if (doctorsByClinic.containsKey(key)) {
+                    doctorsByClinic.get(key).add(doctorId);
+                }
+            });
+            doctorsByClinic.forEach((key, doctorIds) -> {
+                if (doctorIds.isEmpty()) {
+                    throw new IllegalArgumentException("No doctors belong to clinic " + key);
+                }
+            });
+
+            Map<String, ShardMove> moves = new LinkedHashMap<>();
+            List<String> moving = new ArrayList<>();
+            for (String key : clinicKeys) {
+                int source = router.placement(key).getShard();
+                moves.put(key, new ShardMove(key, source, target, 0));
+                if (source != target) {
+                    moving.add(key);
+                }
+            }
+            if (moving.isEmpty()) {
+                return new ArrayList<>(moves.values());
+            }
+            log.info("event=shard.moveStarted clinics={} to={}", moving.size(), target);
+            moving.forEach(key -> router.setMoving(key, true));
+            Map<String, Map<String, List<Long>>> copied = new LinkedHashMap<>();
+            RuntimeException failure = null;
+            try {
+                settle();
+                for (String key : moving) {
+                    copied.put(key, copy(doctorsByClinic.get(key), moves.get(key).from(), target));
+                    router.assign(key, target);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+                moving.stream().filter(key -> !copied.containsKey(key)).forEach(key -> router.setMoving(key, false));
+                log.warn("event=shard.moveFailed clinics={} moved={} to={} error={}", moving.size(), copied.size(), target, e.getMessage());
+            }
+            if (!copied.isEmpty()) {
+                settle();
+                copied.forEach((key, ids) -> {
+                    ShardMove move = moves.get(key);
+                    moves.put(key, new ShardMove(key, move.from(), target, delete(ids, move.from())));
+                });
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            log.info("event=shard.moveFinished clinics={} to={} rows={}", moving.size(), target,
+                    moves.values().stream().mapToLong(ShardMove::rows).sum());
+            return new ArrayList<>(moves.values());
+        }
+    }
+
+    // Moves one doctor's rows after their clinic, and so their shard, changed
+    public long moveDoctor(Long doctorId, int source, int target) {
+        if (source == target) {
+            return 0;
+        }
+        synchronized (moveLock) {
+            long rows = delete(copy(List.of(doctorId), source, target), source);
+            log.info("event=shard.doctorMoved doctorId={} from={} to={} rows={}", doctorId, source, target, rows);
+            return rows;
+        }
+    }
+
+    // Moves single rows, e.g. an appointment whose new doctor belongs to a clinic on another shard
+    public long moveRows(String table, List<Long> ids, int source, int target) {
+        if (source == target || ids.isEmpty()) {
+            return 0;
+        }
+        List<Map<String, Object>> rows = router.jdbc(source).queryForList("SELECT * FROM " + table + " WHERE id IN ("
+                + ShardRows.placeholders(ids.size()) + ")", ids.toArray());
+        ShardRows.upsert(router.jdbc(target), table, rows);
+        return delete(Map.of(table, ids), source);
+    }
+
+    // Plans moves that even out rows per shard, largest imbalance first, and runs them unless dryRun
+    public List<ShardMove> rebalance(int maxMoves, boolean dryRun) {
+        Map<Long, String> clinicOfDoctor = clinicOfDoctor();
+
+        // Load of each clinic on the shard that actually holds its rows
+        long[] loads = new long[router.size()];
+        List<Map<String, Long>> clinicLoads = new ArrayList<>();
+        for (int shard = 0; shard < router.size(); shard++) {
+            Map<String, Long> perClinic = new LinkedHashMap<>();
+            for (String table : SHARDED_TABLES) {
+                router.jdbc(shard).query("SELECT doctor_id, COUNT(*) FROM " + table + " GROUP BY doctor_id", row -> {
+                    String clinic = clinicOfDoctor.get(row.getLong(1));
+                    if (clinic != null) {
+                        perClinic.merge(clinic, row.getLong(2), Long::sum);
+                    }
+                });
+            }
+            clinicLoads.add(perClinic);
+            loads[shard] = perClinic.values().stream().mapToLong(Long::longValue).sum();
+        }
+
+        List<ShardMove> plan = new ArrayList<>();
+        while (plan.size() < maxMoves) {
+            int heavy = 0;
+            int light = 0;
+            for (int shard = 1; shard < loads.length; shard++) {
+                heavy = loads[shard] > loads[heavy] ? shard : heavy;
+                light = loads[shard] < loads[light] ? shard : light;
+            }
+            long gap = loads[heavy] - loads[light];
+            // The clinic closest to half the gap narrows it the most; anything at or above the gap would not help
+            String best = null;
+            long bestLoad = 0;
+            for (Map.Entry<String, Long> entry : clinicLoads.get(heavy).entrySet()) {
+                long load = entry.getValue();
+                if (load < gap && Math.min(load, gap - load) > Math.min(bestLoad, gap - bestLoad)) {
+                    best = entry.getKey();
+                    bestLoad = load;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            clinicLoads.get(heavy).remove(best);
+            clinicLoads.get(light).put(best, bestLoad);
+            loads[heavy] -= bestLoad;
+            loads[light] += bestLoad;
+            plan.add(new ShardMove(best, heavy, light, bestLoad));
+        }
+        log.info("event=shard.rebalancePlanned moves={} dryRun={}", plan.size(), dryRun);
+        if (dryRun) {
+            return plan;
+        }
+        // Clinics going the same way move together
+        Map<List<Integer>, List<String>> groups = new LinkedHashMap<>();
+        plan.forEach(move -> groups.computeIfAbsent(List.of(move.from(), move.to()), route -> new ArrayList<>()).add(move.clinicKey()));
+        List<ShardMove> done = new ArrayList<>(plan.size());
+        groups.forEach((route, clinics) -> done.addAll(moveClinics(clinics, route.get(1))));
+        return done;
+    }
+
+    // Directory entries, for the admin view
+    public List<ClinicShard> placements() {
+        return router.placements();
+    }
+
+    private Map<Long, String> clinicOfDoctor() {
+        Map<Long, String> clinicOfDoctor = new HashMap<>();
+        for (Doctor doctor : router.on(ShardRouter.HOME, () -> doctorRepository.findAll())) {
+            clinicOfDoctor.put(doctor.getId(), ShardRouter.clinicKey(doctor));
+        }
+        return clinicOfDoctor;
+    }
+
+    // Copies the doctors' rows, ids included; returns the copied ids per table
+    private Map<String, List<Long>> copy(List<Long> doctorIds, int source, int target) {
+        Map<String, List<Long>> copied = new LinkedHashMap<>();
+        String doctors = ShardRows.placeholders(doctorIds.size());
+        for (String table : SHARDED_TABLES) {
+            List<Long> ids = new ArrayList<>();
+            copied.put(table, ids);
+            long after = 0;
+            while (true) {
+                List<Object> args = new ArrayList<>(doctorIds);
+                args.add(after);
+                List<Map<String, Object>> rows = router.jdbc(source).queryForList("SELECT * FROM " + table
+                        + " WHERE doctor_id IN (" + doctors + ") AND id > ? ORDER BY id LIMIT " + ShardRows.BATCH_SIZE,
+                        args.toArray());
+                if (rows.isEmpty()) {
+                    break;
+                }
+                try {
+                    ShardRows.upsert(router.jdbc(target), table, rows);
+                } catch (RuntimeException e) {
+                    delete(copied, target);
+                    throw e;
+                }
+                rows.forEach(row -> ids.add(((Number) row.get("id")).longValue()));
+                after = ids.get(ids.size() - 1);
+            }
+        }
+        return copied;
+    }
+
+    // Deletes the given ids per table from one shard; returns the number of rows deleted
+    private long delete(Map<String, List<Long>> idsByTable, int shard) {
+        long deleted = 0;
+        for (Map.Entry<String, List<Long>> entry : idsByTable.entrySet()) {
+            List<Long> ids = entry.getValue();
+            for (int from = 0; from < ids.size(); from += ShardRows.BATCH_SIZE) {
+                List<Long> chunk = ids.subList(from, Math.min(ids.size(), from + ShardRows.BATCH_SIZE));
+                deleted += router.jdbc(shard).update("DELETE FROM " + entry.getKey() + " WHERE id IN ("
+                        + ShardRows.placeholders(chunk.size()) + ")", chunk.toArray());
+            }
+        }
+        return deleted;
+    }
+
+    private void settle() {
+        try {
+            Thread.sleep(settleMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while moving a clinic", e);
+        }
+    }
+}
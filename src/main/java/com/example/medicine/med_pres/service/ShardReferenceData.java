@@ -0,0 +1,118 @@
+package com.example.medicine.med_pres.service;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+
+/**
+ * Keeps copies of the users and doctors rows on every extra shard. Appointments and prescriptions
+ * reference both tables and their list queries join them, so each shard needs the rows locally.
+ * The home database stays the only place they are written and read from; copies are refreshed
+ * right after each change and in full at startup, which also repairs copies missed while a shard
+ * was down. Password hashes are not copied.
+ */
+@Service
+public class ShardReferenceData {
+    private static final SampledLogger log = new SampledLogger(ShardReferenceData.class, 100);
+
+    private final ShardRouter router;
+
+    public ShardReferenceData(ShardRouter router) {
+        this.router = router;
+    }
+
+    // Copies these users to every extra shard
+    public void copyUsers(Long... userIds) {
+        copy("users", userIds);
+    }
+
+    // Copies these doctors, and their users, to every extra shard
+    public void copyDoctors(Long... doctorIds) {
+        if (!router.isSharded() || doctorIds.length == 0) {
+            return;
+        }
+        List<Long> userIds = router.jdbc(ShardRouter.HOME).queryForList(
+                "SELECT user_id FROM doctors WHERE id IN (" + ShardRows.placeholders(doctorIds.length) + ")",
+                Long.class, (Object[]) doctorIds);
+        copy("users", userIds.toArray(Long[]::new));
+        copy("doctors", doctorIds);
+    }
+
+    public void deleteUser(Long userId) {
+        delete("users", userId);
+    }
+
+    public void deleteDoctor(Long doctorId) {
+        delete("doctors", doctorId);
+    }
+
+    // Full copy once runners (including the perf seeder) are done; users first, doctors reference them
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(0)
+    public void copyAll() {
+        if (!router.isSharded()) {
+            return;
+        }
+        long users = copyTable("users");
+        long doctors = copyTable("doctors");
+        log.info("event=shard.referenceCopied shards={} users={} doctors={}", router.size() - 1, users, doctors);
+    }
+
+    private void copy(String table, Long... ids) {
+        if (!router.isSharded() || ids.length == 0) {
+            return;
+        }
+        List<Map<String, Object>> rows = router.jdbc(ShardRouter.HOME).queryForList(
+                "SELECT * FROM " + table + " WHERE id IN (" + ShardRows.placeholders(ids.length) + ")", (Object[]) ids);
+        writeEverywhere(table, rows);
+    }
+
+    private long copyTable(String table) {
+        JdbcTemplate home = router.jdbc(ShardRouter.HOME);
+        long copied = 0;
+        long after = 0;
+        while (true) {
+            List<Map<String, Object>> rows = home.queryForList(
+                    "SELECT * FROM " + table + " WHERE id > ? ORDER BY id LIMIT " + ShardRows.BATCH_SIZE, after);
+            if (rows.isEmpty()) {
+                return copied;
+            }
+            writeEverywhere(table, rows);
+            copied += rows.size();
+            after = ((Number) rows.get(rows.size() - 1).get("id")).longValue();
+        }
+    }
+
+    // A shard that cannot be written is logged and caught up by the next full copy
+    private void writeEverywhere(String table, List<Map<String, Object>> rows) {
+        if ("users".equals(table)) {
+            rows.forEach(row -> row.put("password_hash", ""));
+        }
+        for (int shard = 1; shard < router.size(); shard++) {
+            try {
+                ShardRows.upsert(router.jdbc(shard), table, rows);
+            } catch (DataAccessException e) {
+                log.warn("event=shard.referenceCopyFailed shard={} table={} rows={} error={}", shard, table, rows.size(), e.getMessage());
+            }
+        }
+    }
+
+    // Rows still referenced by a shard's appointments or prescriptions stay there
+    private void delete(String table, Long id) {
+        for (int shard = 1; shard < router.size(); shard++) {
+            try {
+                router.jdbc(shard).update("DELETE FROM " + table + " WHERE id = ?", id);
+            } catch (DataAccessException e) {
+                log.warn("event=shard.referenceDeleteFailed shard={} table={} id={} error={}", shard, table, id, e.getMessage());
+            }
+        }
+    }
+}
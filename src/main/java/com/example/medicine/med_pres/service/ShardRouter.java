@@ -0,0 +1,408 @@
+package com.example.medicine.med_pres.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import javax.sql.DataSource;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.config.ShardContext;
+import com.example.medicine.med_pres.config.ShardRoutingDataSource;
+import com.example.medicine.med_pres.exception.ShardMovingException;
+import com.example.medicine.med_pres.model.ClinicShard;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.repository.ClinicShardRepository;
+import com.example.medicine.med_pres.repository.DoctorRepository;
+
+/**
+ * Decides which database holds a clinic's appointments and prescriptions, and runs work there.
+ *
+ * Shard 0 is the home database, which also keeps everything that is not sharded; shards 1..n are
+ * {@code sharding.urls}. The directory ({@link ClinicShard}) lives on the home database and is
+ * cached here, refreshed every few seconds so several instances agree. A clinic seen for the first
+ * time is placed by a stable hash of its key and the placement is stored, so adding shards later
+ * never moves existing clinics; only the rebalancer does. Clinics that already have rows when
+ * sharding is switched on are adopted onto the home database, where those rows are.
+ *
+ * Without {@code sharding.urls} there is one shard and every method here runs work directly.
+ */
+@Service
+public class ShardRouter {
+    public static final int HOME = 0;
+    // Each shard's sequences hand out ids in [shard * ID_RANGE, (shard + 1) * ID_RANGE), so ids stay unique when rows move
+    public static final long ID_RANGE = 1L << 40;
+    private static final SampledLogger log = new SampledLogger(ShardRouter.class, 100);
+
+    private final ClinicShardRepository directory;
+    private final DoctorRepository doctorRepository;
+    private final TransactionTemplate readTransaction;
+    private final TransactionTemplate writeTransaction;
+    private final int shardCount;
+    private final long moveRetryAfterSeconds;
+    private final ExecutorService scatterPool;
+    private final List<JdbcTemplate> shardJdbc = new ArrayList<>();
+
+    private final Map<String, ClinicShard> placements = new ConcurrentHashMap<>();
+    private final Map<Long, String> clinicByDoctor = new ConcurrentHashMap<>();
+    // Until existing clinics are adopted, unknown clinics go home without being recorded
+    private volatile boolean adopted;
+
+    public ShardRouter(ClinicShardRepository directory, DoctorRepository doctorRepository,
+            PlatformTransactionManager transactionManager, DataSource dataSource,
+            @Value("${sharding.urls:}") List<String> urls,
+            @Value("${sharding.scatter-threads:16}") int scatterThreads,
+            @Value("${sharding.move-retry-after-seconds:5}") long moveRetryAfterSeconds) {
+        this.directory = directory;
+        this.doctorRepository = doctorRepository;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.shardCount = urls.size() + 1;
+        this.moveRetryAfterSeconds = moveRetryAfterSeconds;
+        for (int shard = 0; shard < shardCount; shard++) {
+            shardJdbc.add(new JdbcTemplate(dataSource instanceof ShardRoutingDataSource routing ? routing.shard(shard) : dataSource));
+        }
+        AtomicInteger workers = new AtomicInteger();
+        this.scatterPool = shardCount == 1 ? null : Executors.newFixedThreadPool(scatterThreads, runnable -> {
+            Thread thread = new Thread(runnable, "shard-scatter-" + workers.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    // Number of shards including the home database
+    public int size() {
+        return shardCount;
+    }
+
+    // Directory key of a clinic: the trimmed, lower-cased clinic name, or the doctor for doctors without one
+    public static String clinicKey(String clinicName, Long doctorId) {
+        if (clinicName == null || clinicName.isBlank()) {
+            return "doctor-" + doctorId;
+        }
+        return clinicName.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public static String clinicKey(Doctor doctor) {
+        return clinicKey(doctor.getClinicName(), doctor.getId());
+    }
+
+    // Shard holding this doctor's appointments and prescriptions
+    public int shardOfDoctor(Long doctorId) {
+        if (!isSharded()) {
+            return HOME;
+        }
+        return placement(clinicOfDoctor(doctorId)).getShard();
+    }
+
+    // Shard to write this doctor's rows to; refused while the doctor's clinic is being moved
+    public int shardForWrite(Long doctorId) {
+        if (!isSharded()) {
+            return HOME;
+        }
+        String clinic = clinicOfDoctor(doctorId);
+        ClinicShard placement = placement(clinic);
+        if (placement.isMoving()) {
+            throw new ShardMovingException("Clinic " + clinic + " is being moved, please retry shortly", moveRetryAfterSeconds);
+        }
+        return placement.getShard();
+    }
+
+    // Shard of a clinic, placing it on first use
+    public ClinicShard placement(String clinicKey) {
+        ClinicShard placement = placements.get(clinicKey);
+        if (placement != null) {
+            return placement;
+        }
+        if (!adopted) {
+            return ClinicShard.builder().clinicKey(clinicKey).shard(HOME).build();
+        }
+        int shard = Math.floorMod(mix(clinicKey.hashCode()), shardCount);
+        ClinicShard stored = on(HOME, () -> {
+            try {
+                return directory.findById(clinicKey)
+                        .orElseGet(() -> directory.save(ClinicShard.builder().clinicKey(clinicKey).shard(shard).build()));
+            } catch (DataIntegrityViolationException e) {
+                // Another instance placed it first
+                return directory.findById(clinicKey).orElseThrow(() -> e);
+            }
+        });
+        placements.put(clinicKey, stored);
+        log.info("event=shard.placed clinic={} shard={}", clinicKey, stored.getShard());
+        return stored;
+    }
+
+    // Snapshot of the directory
+    public List<ClinicShard> placements() {
+        return new ArrayList<>(placements.values());
+    }
+
+    // Flags a clinic as moving (writes refused) or not, on the home database and locally
+    public void setMoving(String clinicKey, boolean moving) {
+        ClinicShard updated = on(HOME, () -> {
+            ClinicShard placement = directory.findById(clinicKey)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown clinic " + clinicKey));
+            placement.setMoving(moving);
+            return directory.save(placement);
+        });
+        placements.put(clinicKey, updated);
+    }
+
+    // Points a clinic at another shard and clears its moving flag
+    public void assign(String clinicKey, int shard) {
+        checkShard(shard);
+        ClinicShard updated = on(HOME, () -> {
+            ClinicShard placement = directory.findById(clinicKey)
+                    .orElseGet(() -> ClinicShard.builder().clinicKey(clinicKey).build());
+            placement.setShard(shard);
+            placement.setMoving(false);
+            return directory.save(placement);
+        });
+        placements.put(clinicKey, updated);
+    }
+
+    // Called when a doctor's clinic changes or the doctor is removed
+    public void forgetDoctor(Long doctorId) {
+        clinicByDoctor.remove(doctorId);
+    }
+
+    public void checkShard(int shard) {
+        if (shard < 0 || shard >= shardCount) {
+            throw new IllegalArgumentException("No shard " + shard + "; shards are 0.." + (shardCount - 1));
+        }
+    }
+
+    // JDBC straight to one shard, outside ShardContext and any running transaction
+    public JdbcTemplate jdbc(int shard) {
+        checkShard(shard);
+        return shardJdbc.get(shard);
+    }
+
+    // Runs work with connections from the given shard, restoring the caller's shard afterwards.
+    // Callers must not be inside a transaction: a running transaction keeps its connection.
+    public <T> T on(int shard, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+        Integer previous = ShardContext.get();
+        ShardContext.set(shard);
+        try {
+            return work.get();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    public void run(int shard, Runnable work) {
+        on(shard, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    // Runs work in its own transaction on the given shard
+    public <T> T inTransaction(int shard, boolean readOnly, Supplier<T> work) {
+        TransactionTemplate transaction = readOnly ? readTransaction : writeTransaction;
+        return on(shard, () -> transaction.execute(status -> work.get()));
+    }
+
+    // Runs reads in a read-only transaction on the given shard, so they may go to a replica and
+    // don't count the caller as a recent writer
+    public <T> T read(int shard, Supplier<T> work) {
+        return inTransaction(shard, true, work);
+    }
+
+    // Runs work against every shard in parallel and returns the results in shard order
+    public <T> List<T> onEach(IntFunction<T> work) {
+        if (!isSharded()) {
+            return List.of(work.apply(HOME));
+        }
+        SecurityContext security = SecurityContextHolder.getContext();
+        List<Future<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            futures.add(scatterPool.submit(() -> {
+                // Replica routing tells callers apart by principal, so carry it over
+                SecurityContextHolder.setContext(security);
+                try {
+                    return on(target, () -> work.apply(target));
+                } finally {
+                    SecurityContextHolder.clearContext();
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Interrupted while querying shards", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+        }
+        return results;
+    }
+
+    // A row and the shard it was found on
+    public record Found<T>(int shard, T value) {
+    }
+
+    // Finds a sharded row by id: first on the shard whose id block the id is from, where it was written,
+    // then on all shards in case it has moved since
+    public <T> Optional<Found<T>> find(Long id, Supplier<Optional<T>> lookup) {
+        if (!isSharded()) {
+            return lookup.get().map(value -> new Found<>(HOME, value));
+        }
+        int origin = (int) Math.min(shardCount - 1, Math.max(0, id / ID_RANGE));
+        Optional<T> atOrigin = on(origin, lookup);
+        if (atOrigin.isPresent()) {
+            return Optional.of(new Found<>(origin, atOrigin.get()));
+        }
+        List<Optional<T>> found = onEach(shard -> shard == origin ? Optional.<T>empty() : lookup.get());
+        for (int shard = 0; shard < found.size(); shard++) {
+            if (found.get(shard).isPresent()) {
+                return Optional.of(new Found<>(shard, found.get(shard).get()));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // Like find, with the lookup in its own write transaction on each shard tried; for conditional
+    // updates by id, which change the row on the one shard that has it and nothing elsewhere
+    public <T> Optional<Found<T>> findInTransaction(Long id, Supplier<Optional<T>> work) {
+        return find(id, () -> writeTransaction.execute(status -> work.get()));
+    }
+
+    // Like find, with the lookup in a read-only transaction on each shard tried
+    public <T> Optional<Found<T>> findReadOnly(Long id, Supplier<Optional<T>> lookup) {
+        return find(id, () -> readTransaction.execute(status -> lookup.get()));
+    }
+
+    // Scatter-gather: runs the query in a read-only transaction on every shard and merges the results in the given order.
+    // A moved clinic's rows stay on its old shard until the settle wait is over, so rows are kept only from the
+    // shard their doctor is placed on.
+    public <T> List<T> gather(IntFunction<List<T>> query, Function<? super T, Long> doctorOf, Comparator<? super T> order) {
+        List<List<T>> parts = onEach(shard -> readTransaction.execute(status -> query.apply(shard)));
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        List<T> merged = new ArrayList<>(parts.stream().mapToInt(List::size).sum());
+        for (int shard = 0; shard < parts.size(); shard++) {
+            for (T row : parts.get(shard)) {
+                if (holds(shard, doctorOf.apply(row))) {
+                    merged.add(row);
+                }
+            }
+        }
+        // Each part is already sorted, which the merge sort takes advantage of
+        merged.sort(order);
+        return merged;
+    }
+
+    // Whether this shard has the live rows of the doctor, rather than a copy left behind by a move
+    public boolean holds(int shard, Long doctorId) {
+        return !isSharded() || shardOfDoctor(doctorId) == shard;
+    }
+
+    // Records clinics that already have doctors as living on the home database, then enables hash placement
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(1)
+    public void adoptExistingClinics() {
+        if (!isSharded()) {
+            return;
+        }
+        Map<String, ClinicShard> known = new HashMap<>();
+        on(HOME, () -> directory.findAll()).forEach(placement -> known.put(placement.getClinicKey(), placement));
+        Map<String, ClinicShard> adopt = new HashMap<>();
+        for (Doctor doctor : on(HOME, () -> doctorRepository.findAll())) {
+            String key = clinicKey(doctor);
+            clinicByDoctor.put(doctor.getId(), key);
+            if (!known.containsKey(key)) {
+                adopt.computeIfAbsent(key, k -> ClinicShard.builder().clinicKey(k).shard(HOME).build());
+            }
+        }
+        if (!adopt.isEmpty()) {
+            on(HOME, () -> directory.saveAll(adopt.values()));
+        }
+        known.putAll(adopt);
+        placements.putAll(known);
+        adopted = true;
+        log.info("event=shard.directoryLoaded shards={} clinics={} adopted={}", shardCount, known.size(), adopt.size());
+    }
+
+    // Picks up placements and moves made by other instances
+    @Scheduled(fixedDelayString = "${sharding.directory-refresh-ms:5000}")
+    public void refreshDirectory() {
+        if (!isSharded() || !adopted) {
+            return;
+        }
+        for (ClinicShard placement : on(HOME, () -> directory.findAll())) {
+            placements.put(placement.getClinicKey(), placement);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scatterPool != null) {
+            scatterPool.shutdownNow();
+        }
+    }
+
+    private String clinicOfDoctor(Long doctorId) {
+        if (doctorId == null) {
+            throw new IllegalArgumentException("Doctor id is required");
+        }
+        String clinic = clinicByDoctor.get(doctorId);
+        if (clinic == null) {
+            Doctor doctor = on(HOME, () -> doctorRepository.findById(doctorId))
+                    .orElseThrow(() -> new IllegalArgumentException("Doctor not found with id " + doctorId));
+            clinic = clinicKey(doctor);
+            clinicByDoctor.put(doctorId, clinic);
+        }
+        return clinic;
+    }
+
+    // Spreads similar keys (clinic names often share prefixes) across shards
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.medicine.med_pres.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Plain-JDBC row copying between shards. Rows keep their ids and every column is copied as read,
+ * so copies stay exact whatever the entity mapping is. Writes are upserts on the primary key,
+ * which makes a copy that was interrupted safe to run again.
+ */
+final class ShardRows {
+
+    static final int BATCH_SIZE = 1000;
+
+    private ShardRows() {
+    }
+
+    // Inserts the rows into the table, overwriting rows with the same id; all rows share one column set
+    static int upsert(JdbcTemplate jdbc, String table, List<Map<String, Object>> rows) {
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        List<String> columns = new ArrayList<>(rows.get(0).keySet());
+        String sql = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+                + columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ") ON DUPLICATE KEY UPDATE "
+                + columns.stream().filter(column -> !column.equalsIgnoreCase("id"))
+                        .map(column -> column + " = VALUES(" + column + ")").collect(Collectors.joining(", "));
+        List<Object[]> values = new ArrayList<>(rows.size());
+        for (Map<String, Object> row : rows) {
+            values.add(columns.stream().map(row::get).toArray());
+        }
+        jdbc.batchUpdate(sql, values);
+        return rows.size();
+    }
+
+    // "?, ?, ?" for an IN list of the given size
+    static String placeholders(int count) {
+        return String.join(", ", Collections.nCopies(count, "?"));
+    }
+}
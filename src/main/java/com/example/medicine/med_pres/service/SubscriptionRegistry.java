@@ -0,0 +1,352 @@
+package com.example.medicine.med_pres.service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.dto.ChangeEvent;
+
+/**
+ * Open server-sent event streams, per user. An idle stream is an async servlet request holding no
+ * thread; events are written by a small sender pool, so tens of thousands of open streams cost
+ * memory and sockets only.
+ *
+ * Every subscriber has a bounded queue. A publish only appends to the queues and hands busy ones to
+ * the sender pool, so a slow client never holds up the publisher or other subscribers. A subscriber
+ * whose queue overflows is disconnected and resumes from its Last-Event-ID on reconnect. Writes
+ * block, so a client that stops reading holds its sender thread; once a send has taken longer than
+ * {@code events.send-timeout} the subscriber is dropped and the pool gets a thread in place of the
+ * stuck one until the connector's own write timeout ends the send. For that,
+ * each user's most recent events are kept for {@code events.replay-window}; a client asking to
+ * resume from further back gets a {@code resync} event telling it to reload its lists instead.
+ * Event ids increase for the life of the instance and are seeded from the clock, so ids from before
+ * a restart are simply older. Only changes made through this instance are pushed.
+ *
+ * A stream lasts at most as long as the access token it was opened with, and ends early when
+ * {@link TokenRevocationService} revokes that token or its user.
+ */
+@Component
+public class SubscriptionRegistry {
+
+    private static final SampledLogger log = new SampledLogger(SubscriptionRegistry.class, 100);
+    // Queued in place of an event to have the sender write a heartbeat comment
+    private static final Object HEARTBEAT = new Object();
+
+    private final long timeoutMillis;
+    private final int bufferSize;
+    private final int replaySize;
+    private final long replayWindowMillis;
+    private final long sendTimeoutNanos;
+    private final int senderThreads;
+    private final int maxStuckSenders;
+    private final ThreadPoolExecutor senders;
+    private int stuckSenders;
+    private final AtomicLong nextEventId = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final Map<Long, Channel> channels = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Counter overflows;
+    private final Counter slowClients;
+
+    public SubscriptionRegistry(MeterRegistry registry,
+            @Value("${events.timeout:30m}") Duration timeout,
+            @Value("${events.buffer-size:256}") int bufferSize,
+            @Value("${events.replay-size:64}") int replaySize,
+            @Value("${events.replay-window:5m}") Duration replayWindow,
+            @Value("${events.sender-threads:4}") int senderThreads,
+            @Value("${events.send-timeout:10s}") Duration sendTimeout,
+            @Value("${events.max-stuck-senders:32}") int maxStuckSenders) {
+        this.timeoutMillis = timeout.toMillis();
+        this.bufferSize = bufferSize;
+        this.replaySize = replaySize;
+        this.replayWindowMillis = replayWindow.toMillis();
+        this.sendTimeoutNanos = sendTimeout.toNanos();
+        this.senderThreads = senderThreads;
+        this.maxStuckSenders = maxStuckSenders;
+        AtomicInteger workers = new AtomicInteger();
+        this.senders = new ThreadPoolExecutor(senderThreads, senderThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "sse-sender-" + workers.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        Gauge.builder("events.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open server-sent event streams").register(registry);
+        this.overflows = Counter.builder("events.overflows")
+                .description("Streams disconnected because the client fell too far behind").register(registry);
+        this.slowClients = Counter.builder("events.slow-clients")
+                .description("Streams dropped because one send took longer than the send timeout").register(registry);
+        Gauge.builder("events.senders.stuck", this, SubscriptionRegistry::stuckSenders)
+                .description("Sender threads still blocked writing to a dropped stream").register(registry);
+    }
+
+    // Opens a stream for the user, first replaying what they missed after lastEventId; token is the access token
+    // the stream was opened with, if any
+    public SseEmitter subscribe(Long userId, Long lastEventId, JwtService.VerifiedToken token) {
+        long timeout = token == null ? timeoutMillis
+                : Math.max(1, Math.min(timeoutMillis, token.expiresAtMillis() - System.currentTimeMillis()));
+        SseEmitter emitter = new SseEmitter(timeout);
+        Subscriber subscriber = new Subscriber(emitter, token);
+        // Registering inside compute keeps publishes for this user from slipping between the replay and the live events
+        Channel channel = channels.compute(userId, (id, existing) -> {
+            Channel current = existing != null ? existing : new Channel(nextEventId.get());
+            if (lastEventId != null) {
+                if (lastEventId < current.evictedUpTo) {
+                    subscriber.queue.offer(new ChangeEvent(current.evictedUpTo, "resync", "resync", null, null));
+                }
+                for (ChangeEvent event : current.recent) {
+                    if (event.id() > lastEventId) {
+                        subscriber.queue.offer(event);
+                    }
+                }
+            }
+            current.subscribers.add(subscriber);
+            return current;
+        });
+        emitter.onCompletion(() -> unsubscribe(channel, subscriber));
+        emitter.onTimeout(() -> unsubscribe(channel, subscriber));
+        emitter.onError(error -> unsubscribe(channel, subscriber));
+        subscriberCount.incrementAndGet();
+        // Sends the response headers right away, so the client sees the stream open
+        subscriber.queue.offer(HEARTBEAT);
+        schedule(subscriber);
+        return emitter;
+    }
+
+    public ChangeEvent publish(Set<Long> userIds, String entity, String action, Long recordId, String status) {
+        ChangeEvent event = new ChangeEvent(nextEventId.incrementAndGet(), entity, action, recordId, status);
+        long now = System.currentTimeMillis();
+        for (Long userId : userIds) {
+            if (userId == null) {
+                continue;
+            }
+            channels.compute(userId, (id, existing) -> {
+                Channel channel = existing != null ? existing : new Channel(event.id() - 1);
+                channel.recent.addLast(event);
+                channel.lastEventAt = now;
+                while (channel.recent.size() > replaySize) {
+                    channel.evictedUpTo = channel.recent.removeFirst().id();
+                }
+                for (Subscriber subscriber : channel.subscribers) {
+                    if (subscriber.queue.offer(event)) {
+                        schedule(subscriber);
+                    } else {
+                        overflows.increment();
+                        log.info("event=events.overflow userId={} buffered={}", userId, bufferSize);
+                        unsubscribe(channel, subscriber);
+                        subscriber.close();
+                    }
+                }
+                return channel;
+            });
+        }
+        return event;
+    }
+
+    // Keeps idle streams open through proxies, and finds connections that died silently
+    @Scheduled(fixedDelayString = "${events.heartbeat-ms:20000}")
+    public void heartbeat() {
+        for (Channel channel : channels.values()) {
+            for (Subscriber subscriber : channel.subscribers) {
+                // A subscriber with a backlog is being written to anyway
+                if (subscriber.queue.isEmpty() && subscriber.queue.offer(HEARTBEAT)) {
+                    schedule(subscriber);
+                }
+            }
+        }
+    }
+
+    // Ends the streams a revocation applies to: those opened with the revoked token, or with any token of the
+    // revoked subject issued up to revokedAtMillis
+    public void closeRevoked(String tokenId, String subject, long revokedAtMillis) {
+        for (Channel channel : channels.values()) {
+            for (Subscriber subscriber : channel.subscribers) {
+                JwtService.VerifiedToken token = subscriber.token;
+                if (token != null && (token.tokenId() != null && token.tokenId().equals(tokenId)
+                        || token.username().equals(subject) && token.issuedAtMillis() <= revokedAtMillis)) {
+                    unsubscribe(channel, subscriber);
+                    subscriber.close();
+                }
+            }
+        }
+    }
+
+    // Drops subscribers whose current send is blocked past the timeout, so their thread is replaced
+    @Scheduled(fixedDelayString = "${events.send-check-ms:1000}")
+    public void dropSlowClients() {
+        long now = System.nanoTime();
+        for (Map.Entry<Long, Channel> entry : channels.entrySet()) {
+            for (Subscriber subscriber : entry.getValue().subscribers) {
+                long started;
+                synchronized (subscriber) {
+                    started = subscriber.sendStartedAt;
+                    if (started == 0 || now - started < sendTimeoutNanos || subscriber.dropped) {
+                        continue;
+                    }
+                    subscriber.dropped = true;
+                }
+                unsubscribe(entry.getValue(), subscriber);
+                slowClients.increment();
+                log.info("event=events.slowClient userId={} blockedMs={}", entry.getKey(), (now - started) / 1_000_000);
+                resizeSenders(1);
+            }
+        }
+    }
+
+    // Forgets users with no open stream and no event recent enough to replay
+    @Scheduled(fixedDelay = 60_000, initialDelay = 60_000)
+    public void evictIdleChannels() {
+        long cutoff = System.currentTimeMillis() - replayWindowMillis;
+        for (Long userId : channels.keySet()) {
+            channels.computeIfPresent(userId, (id, channel) ->
+                    channel.subscribers.isEmpty() && channel.lastEventAt < cutoff ? null : channel);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        channels.values().forEach(channel -> channel.subscribers.forEach(Subscriber::close));
+        senders.shutdownNow();
+    }
+
+    private void unsubscribe(Channel channel, Subscriber subscriber) {
+        if (channel.subscribers.remove(subscriber)) {
+            subscriberCount.decrementAndGet();
+        }
+        subscriber.closed = true;
+    }
+
+    // At most one sender works on a subscriber at a time, so its events go out in order
+    private void schedule(Subscriber subscriber) {
+        if (!subscriber.closed && subscriber.scheduled.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            Object next;
+            while (!subscriber.closed && (next = subscriber.queue.poll()) != null) {
+                if (next == HEARTBEAT) {
+                    send(subscriber, SseEmitter.event().comment("heartbeat"));
+                } else {
+                    ChangeEvent event = (ChangeEvent) next;
+                    send(subscriber, SseEmitter.event().id(Long.toString(event.id())).name(event.entity()).data(event));
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // Client is gone or the stream already completed; the emitter callbacks unsubscribe it
+            subscriber.closed = true;
+        } finally {
+            if (subscriber.dropped) {
+                // This thread was replaced while it was stuck; give the place back
+                resizeSenders(-1);
+            }
+            subscriber.scheduled.set(false);
+        }
+        if (subscriber.closed) {
+            // Closed while this thread held the subscriber, so completing the stream was left to it
+            subscriber.close();
+        } else if (!subscriber.queue.isEmpty()) {
+            // An event may have been queued after the last poll but before the flag was cleared
+            schedule(subscriber);
+        }
+    }
+
+    private void send(Subscriber subscriber, SseEmitter.SseEventBuilder event) throws IOException {
+        subscriber.sendStartedAt = System.nanoTime();
+        try {
+            subscriber.emitter.send(event);
+        } finally {
+            // Once this is cleared the watchdog leaves the subscriber alone
+            synchronized (subscriber) {
+                subscriber.sendStartedAt = 0;
+            }
+        }
+    }
+
+    // Grows the pool by one for each stuck sender, up to maxStuckSenders, and shrinks it as they come back
+    private synchronized void resizeSenders(int delta) {
+        stuckSenders += delta;
+        int size = senderThreads + Math.min(stuckSenders, maxStuckSenders);
+        if (size > senders.getMaximumPoolSize()) {
+            senders.setMaximumPoolSize(size);
+            senders.setCorePoolSize(size);
+        } else if (size < senders.getCorePoolSize()) {
+            senders.setCorePoolSize(size);
+            senders.setMaximumPoolSize(size);
+        }
+    }
+
+    private synchronized int stuckSenders() {
+        return stuckSenders;
+    }
+
+    private static final class Channel {
+
+        // Only touched inside channels.compute for the channel's user
+        private final ArrayDeque<ChangeEvent> recent = new ArrayDeque<>();
+        // Events up to this id are no longer kept; a new channel knows nothing from before it existed
+        private long evictedUpTo;
+        private long lastEventAt = System.currentTimeMillis();
+        private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+        Channel(long evictedUpTo) {
+            this.evictedUpTo = evictedUpTo;
+        }
+    }
+
+    private final class Subscriber {
+
+        private final SseEmitter emitter;
+        private final JwtService.VerifiedToken token;
+        private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(bufferSize);
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private volatile boolean closed;
+        // System.nanoTime() when the running send started, 0 between sends; cleared and read under the subscriber's lock
+        private volatile long sendStartedAt;
+        // Set by the watchdog when a send took too long
+        private volatile boolean dropped;
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        Subscriber(SseEmitter emitter, JwtService.VerifiedToken token) {
+            this.emitter = emitter;
+            this.token = token;
+        }
+
+        // A send in progress holds the emitter's lock, so while a sender has the subscriber the stream is
+        // completed by that sender once it lets go, rather than blocking the caller behind a slow client
+        void close() {
+            closed = true;
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    if (completed.compareAndSet(false, true)) {
+                        emitter.complete();
+                    }
+                } finally {
+                    scheduled.set(false);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.medicine.med_pres.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical hashed timing wheel. Level 0 has {@code size} buckets of one tick each; every level
+ * above has buckets as wide as the whole level below, so three levels of 64 one-second buckets
+ * cover about three days, and levels are added as far-off timers need them. Adding a timer and
+ * expiring it are O(1); a timer is moved down at most once per level as its time approaches.
+ *
+ * Timers are due at the start of their tick, so they fire up to one tick early. Cancelling is left
+ * to the caller: fired timers that no longer apply are simply ignored. Not thread-safe.
+ */
+final class TimingWheel<T> {
+
+    private record Timer<T>(long dueAt, T task) {
+    }
+
+    private final long tickMillis;
+    private final int size;
+    // levels.get(k) holds buckets of tickMillis * size^k milliseconds
+    private final List<List<Timer<T>>[]> levels = new ArrayList<>();
+    // Start of the tick handled last
+    private long current;
+    private int timers;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, int size, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.size = size;
+        this.current = startMillis - Math.floorMod(startMillis, tickMillis);
+        levels.add(new List[size]);
+    }
+
+    int timers() {
+        return timers;
+    }
+
+    // Returns false, without adding, when the timer is due in the current tick or earlier
+    boolean add(long dueAt, T task) {
+        if (dueAt < current + tickMillis) {
+            return false;
+        }
+        insert(new Timer<>(dueAt, task));
+        timers++;
+        return true;
+    }
+
+    // Moves time forward to now, handing every timer that came due to the consumer in due order per tick
+    void advance(long now, Consumer<T> expired) {
+        while (current + tickMillis <= now) {
+            current += tickMillis;
+            // Highest level first, so a timer can cascade through several levels in one tick
+            long width = tickMillis;
+            for (int level = 1; level < levels.size(); level++) {
+                width *= size;
+            }
+            for (int level = levels.size() - 1; level >= 1; level--) {
+                if (current % width == 0) {
+                    List<Timer<T>> bucket = take(level, current / width);
+                    if (bucket != null) {
+                        bucket.forEach(this::insert);
+                    }
+                }
+                width /= size;
+            }
+            List<Timer<T>> due = take(0, current / tickMillis);
+            if (due != null) {
+                timers -= due.size();
+                due.forEach(timer -> expired.accept(timer.task()));
+            }
+        }
+    }
+
+    // Places the timer on the lowest level whose range reaches it
+    private void insert(Timer<T> timer) {
+        long width = tickMillis;
+        for (int level = 0; ; level++) {
+            long slot = timer.dueAt() / width;
+            if (slot - current / width < size) {
+                bucket(level, slot).add(timer);
+                return;
+            }
+            width *= size;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Timer<T>> bucket(int level, long slot) {
+        while (levels.size() <= level) {
+            levels.add(new List[size]);
+        }
+        List<Timer<T>>[] buckets = levels.get(level);
+        int index = (int) Math.floorMod(slot, (long) size);
+        if (buckets[index] == null) {
+            buckets[index] = new ArrayList<>();
+        }
+        return buckets[index];
+    }
+
+    private List<Timer<T>> take(int level, long slot) {
+        List<Timer<T>>[] buckets = levels.get(level);
+        int index = (int) Math.floorMod(slot, (long) size);
+        List<Timer<T>> bucket = buckets[index];
+        buckets[index] = null;
+        return bucket;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.medicine.med_pres.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.example.medicine.med_pres.config.SampledLogger;
+import com.example.medicine.med_pres.model.RevokedToken;
+import com.example.medicine.med_pres.repository.RevokedTokenRepository;
+
+/**
+ * Revoked access tokens, answered from memory on every authenticated request.
+ *
+ * Revoked token ids go into a Bloom filter in front of an exact map. Nearly every token
+ * was never revoked, so the common check is a few bit probes with no allocation and no
+ * database access. A filter hit is confirmed against the map, so false positives never
+ * reject a valid token. Per-user revocations (role change, deletion) are a map from email
+ * to revocation time. Every revocation is also written to {@code revoked_tokens}; rows live
+ * only as long as the access-token TTL, so the table stays small. The table is reloaded at
+ * startup and polled so revocations made on other instances apply here too. Event streams
+ * opened with a token are closed as soon as its revocation is known here.
+ */
+@Service
+public class TokenRevocationService implements SmartInitializingSingleton {
+
+    private static final int BLOOM_BITS = 1 << 20;
+    private static final int BLOOM_HASHES = 5;
+    private static final Duration POLL_OVERLAP = Duration.ofSeconds(5);
+    private static final SampledLogger log = new SampledLogger(TokenRevocationService.class, 100);
+
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final SubscriptionRegistry subscriptions;
+    private final Duration accessTokenTtl;
+
+    // Token id -> expiry millis, and user email -> revocation millis
+    private final Map<String, Long> revokedTokenIds = new ConcurrentHashMap<>();
+    private final Map<String, Long> revokedSubjects = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloom = new BloomFilter();
+    private volatile Instant lastPoll = Instant.EPOCH;
+
+    public TokenRevocationService(RevokedTokenRepository revokedTokenRepository, SubscriptionRegistry subscriptions,
+            @Value("${auth.access-token-ttl:15m}") Duration accessTokenTtl) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.subscriptions = subscriptions;
+        this.accessTokenTtl = accessTokenTtl;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        pollRevocations();
+    }
+
+    // True when the token id was revoked, or its user was revoked after the token was issued
+    public boolean isRevoked(String tokenId, String subject, long issuedAtMillis) {
+        if (!revokedSubjects.isEmpty()) {
+            Long revokedAt = revokedSubjects.get(subject);
+            // JWT issue times have second precision, so a token from the revocation's own second is revoked too
+            if (revokedAt != null && issuedAtMillis <= revokedAt) {
+                return true;
+            }
+        }
+        return tokenId != null && bloom.mightContain(tokenId) && revokedTokenIds.containsKey(tokenId);
+    }
+
+    // Revoke one access token until it would have expired anyway
+    public void revokeToken(String tokenId, long expiresAtMillis) {
+        if (tokenId == null || expiresAtMillis <= System.currentTimeMillis()) {
+            return;
+        }
+        revokedTokenRepository.save(RevokedToken.builder().kind(RevokedToken.Kind.TOKEN).tokenKey(tokenId)
+                .revokedAt(Instant.now()).expiresAt(Instant.ofEpochMilli(expiresAtMillis)).build());
+        remember(RevokedToken.Kind.TOKEN, tokenId, expiresAtMillis, System.currentTimeMillis());
+    }
+
+    // Revoke every access token issued to this user so far
+    public void revokeSubject(String subject) {
+        if (subject == null) {
+            return;
+        }
+        Instant now = Instant.now();
+        revokedTokenRepository.save(RevokedToken.builder().kind(RevokedToken.Kind.SUBJECT).tokenKey(subject)
+                .revokedAt(now).expiresAt(now.plus(accessTokenTtl)).build());
+        remember(RevokedToken.Kind.SUBJECT, subject, now.plus(accessTokenTtl).toEpochMilli(), now.toEpochMilli());
+        log.info("event=token.subjectRevoked subject={}", subject);
+    }
+
+    // Picks up revocations written by other instances since the last poll
+    @Scheduled(fixedDelay = 30_000, initialDelay = 30_000)
+    public void pollRevocations() {
+        Instant now = Instant.now();
+        try {
+            List<RevokedToken> rows = lastPoll.equals(Instant.EPOCH)
+                    ? revokedTokenRepository.findByExpiresAtAfter(now)
+                    : revokedTokenRepository.findByRevokedAtAfterAndExpiresAtAfter(lastPoll.minus(POLL_OVERLAP), now);
+            for (RevokedToken row : rows) {
+                remember(row.getKind(), row.getTokenKey(), row.getExpiresAt().toEpochMilli(), row.getRevokedAt().toEpochMilli());
+            }
+            lastPoll = now;
+        } catch (RuntimeException e) {
+            log.warn("event=token.revocations.pollFailed error={}", e.getMessage());
+        }
+    }
+
+    // Drops expired revocations; the filter cannot forget, so it is rebuilt from the survivors
+    @Scheduled(fixedDelay = 600_000, initialDelay = 600_000)
+    @Transactional
+    public void purgeExpired() {
+        long now = System.currentTimeMillis();
+        revokedTokenIds.values().removeIf(expiresAt -> expiresAt <= now);
+        revokedSubjects.values().removeIf(revokedAt -> revokedAt + accessTokenTtl.toMillis() <= now);
+        BloomFilter rebuilt = new BloomFilter();
+        revokedTokenIds.keySet().forEach(rebuilt::add);
+        bloom = rebuilt;
+        // A revocation that landed in the old filter while this one was filling is in the map; copy it over
+        revokedTokenIds.keySet().forEach(rebuilt::add);
+        int deleted = revokedTokenRepository.deleteExpired(Instant.ofEpochMilli(now));
+        log.info("event=token.revocations.purged deleted={} live={}", deleted, revokedTokenIds.size());
+    }
+
+    private void remember(RevokedToken.Kind kind, String key, long expiresAtMillis, long revokedAtMillis) {
+        if (kind == RevokedToken.Kind.SUBJECT) {
+            revokedSubjects.merge(key, revokedAtMillis, Math::max);
+            subscriptions.closeRevoked(null, key, revokedAtMillis);
+        } else {
+            revokedTokenIds.put(key, expiresAtMillis);
+            bloom.add(key);
+            subscriptions.closeRevoked(key, null, revokedAtMillis);
+        }
+    }
+
+    /**
+     * Fixed-size Bloom filter over token ids. Probes come from the string's cached hash code
+     * mixed into two independent values (double hashing), so checks allocate nothing.
+     */
+    static final class BloomFilter {
+
+        private final AtomicLongArray words = new AtomicLongArray(BLOOM_BITS / 64);
+
+        void add(String key) {
+            long hash = mix(key.hashCode());
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+                long mask = 1L << bit;
+                words.getAndUpdate(bit >>> 6, word -> word | mask);
+            }
+        }
+
+        boolean mightContain(String key) {
+            long hash = mix(key.hashCode());
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // MurmurHash3 64-bit finalizer
+        private static long mix(long value) {
+            value ^= value >>> 33;
+            value *= 0xff51afd7ed558ccdL;
+            value ^= value >>> 33;
+            value *= 0xc4ceb3f53fe1a85bL;
+            value ^= value >>> 33;
+            return value;
+        }
+    }
+}
@@ -1,60 +1,140 @@
 package com.example.medicine.med_pres.service;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 
+import io.micrometer.core.annotation.Timed;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.annotation.Caching;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.example.medicine.med_pres.config.CacheConfig;
 import com.example.medicine.med_pres.model.User;
 import com.example.medicine.med_pres.repository.UserRepository;
 
 @Service
+@Timed(value = "service.invocations", percentiles = {0.5, 0.99, 0.999})
 public class UserService {
 
     private final UserRepository userRepository;
+    private final TokenRevocationService tokenRevocations;
+    private final RefreshTokenService refreshTokens;
+    private final ChangeStampService changeStamps;
+    private final ShardReferenceData shardReferenceData;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, TokenRevocationService tokenRevocations,
+            RefreshTokenService refreshTokens, ChangeStampService changeStamps, ShardReferenceData shardReferenceData) {
         this.userRepository = userRepository;
+        this.tokenRevocations = tokenRevocations;
+        this.refreshTokens = refreshTokens;
+        this.changeStamps = changeStamps;
+        this.shardReferenceData = shardReferenceData;
     }
 
     // Create User
     public User createUser(User user) {
-        return userRepository.save(user);
+        User saved = userRepository.save(user);
+        // Appointments and prescriptions on other shards reference the user
+        shardReferenceData.copyUsers(saved.getId());
+        return saved;
     }
 
     // Get all Users
+    @Transactional(readOnly = true)
     public List<User> getAllUsers() {
         return userRepository.findAll();
     }
 
     // Get User by ID
+    @Cacheable(cacheNames = CacheConfig.USERS_BY_ID, unless = "#result == null")
+    @Transactional(readOnly = true)
     public Optional<User> getUserById(Long id) {
         return userRepository.findById(id);
     }
 
     // Update User
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.USERS_BY_ID, key = "#id"),
+        // The old email is unknown here, and doctor entries embed the user
+        @CacheEvict(cacheNames = {CacheConfig.USERS_BY_EMAIL, CacheConfig.DOCTORS_BY_ID, CacheConfig.DOCTORS_BY_USER_ID,
+                CacheConfig.DOCTORS_BY_USER_EMAIL, CacheConfig.DOCTOR_DIRECTORY}, allEntries = true)
+    })
     public User updateUser(Long id, User updatedUser) {
         return userRepository.findById(id).map(existing -> {
+            // Tokens carry the email and role, so changing either (or the password) signs the user out everywhere
+            boolean credentialsChanged = !Objects.equals(existing.getEmail(), updatedUser.getEmail())
+                    || existing.getRole() != updatedUser.getRole()
+                    || !Objects.equals(existing.getPasswordHash(), updatedUser.getPasswordHash());
+            String previousEmail = existing.getEmail();
             existing.setName(updatedUser.getName());
             existing.setEmail(updatedUser.getEmail());
             existing.setPasswordHash(updatedUser.getPasswordHash());
             existing.setRole(updatedUser.getRole());
-            return userRepository.save(existing);
+            User saved = userRepository.save(existing);
+            shardReferenceData.copyUsers(id);
+            // Names and emails are shown in doctor, appointment and prescription lists
+            changeStamps.touch(ChangeStampService.USERS);
+            if (credentialsChanged) {
+                revokeTokens(id, previousEmail);
+            }
+            return saved;
         }).orElseThrow(() -> new RuntimeException("User not found with id " + id));
     }
 
+    // Replace only the password hash, e.g. after a cost-factor upgrade
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.USERS_BY_ID, key = "#id"),
+        @CacheEvict(cacheNames = CacheConfig.USERS_BY_EMAIL, allEntries = true)
+    })
+    public void updatePasswordHash(Long id, String passwordHash) {
+        userRepository.findById(id).ifPresent(user -> {
+            user.setPasswordHash(passwordHash);
+            userRepository.save(user);
+        });
+    }
+
     // Delete User
+    @Caching(evict = {
+        @CacheEvict(cacheNames = CacheConfig.USERS_BY_ID, key = "#id"),
+        // The old email is unknown here, and doctor entries embed the user
+        @CacheEvict(cacheNames = {CacheConfig.USERS_BY_EMAIL, CacheConfig.DOCTORS_BY_ID, CacheConfig.DOCTORS_BY_USER_ID,
+                CacheConfig.DOCTORS_BY_USER_EMAIL, CacheConfig.DOCTOR_DIRECTORY}, allEntries = true)
+    })
     public void deleteUser(Long id) {
-        userRepository.deleteById(id);
+        userRepository.findById(id).ifPresent(user -> {
+            userRepository.delete(user);
+            shardReferenceData.deleteUser(id);
+            changeStamps.touch(ChangeStampService.USERS);
+            revokeTokens(id, user.getEmail());
+        });
     }
 
     // Find User by Email
+    @Cacheable(cacheNames = CacheConfig.USERS_BY_EMAIL, unless = "#result == null")
+    @Transactional(readOnly = true)
     public User findByEmail(String email) {
         return userRepository.findByEmail(email).orElse(null);
     }
     
     // Find User by ID
+    @Cacheable(cacheNames = CacheConfig.USERS_BY_ID, unless = "#result == null")
+    @Transactional(readOnly = true)
     public User findById(Long id) {
         return userRepository.findById(id).orElse(null);
     }
-}
\ No newline at end of file
+
+    // Find Users by IDs in one query
+    @Transactional(readOnly = true)
+    public List<User> findAllById(Collection<Long> ids) {
+        return userRepository.findAllById(ids);
+    }
+
+    private void revokeTokens(Long userId, String email) {
+        refreshTokens.revokeAllForUser(userId);
+        tokenRevocations.revokeSubject(email);
+    }
+}
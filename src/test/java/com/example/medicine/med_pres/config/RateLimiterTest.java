@@ -0,0 +1,136 @@
+package com.example.medicine.med_pres.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class RateLimiterTest {
+
+    @Test
+    void bucketAllowsItsCapacityThenDenies() {
+        RateLimiter limiter = limiter(rule("POST", "/api/appointments/**", Map.of("PATIENT", "3/1h"), Map.of()));
+
+        for (long remaining = 2; remaining >= 0; remaining--) {
+            RateLimiter.Decision decision = limiter.tryAcquire("POST", "/api/appointments", "alice", "PATIENT");
+            assertTrue(decision.allowed());
+            assertEquals(3, decision.limit());
+            assertEquals(remaining, decision.remaining());
+        }
+        RateLimiter.Decision denied = limiter.tryAcquire("POST", "/api/appointments", "alice", "PATIENT");
+
+        assertFalse(denied.allowed());
+        assertEquals(0, denied.remaining());
+        assertEquals("POST /api/appointments/**", denied.rule());
+        // One token comes back every 20 minutes
+        assertTrue(denied.retryAfterSeconds() >= 1 && denied.retryAfterSeconds() <= 1200, "retry after " + denied.retryAfterSeconds());
+    }
+
+    @Test
+    void callersHaveTheirOwnBuckets() {
+        RateLimiter limiter = limiter(rule(null, "/api/**", Map.of("DEFAULT", "1/1h"), Map.of()));
+
+        assertTrue(limiter.tryAcquire("GET", "/api/doctors", "alice", "PATIENT").allowed());
+        assertFalse(limiter.tryAcquire("GET", "/api/doctors", "alice", "PATIENT").allowed());
+
+        assertTrue(limiter.tryAcquire("GET", "/api/doctors", "bob", "PATIENT").allowed());
+        assertEquals(2, limiter.size());
+    }
+
+    @Test
+    void roleLimitFallsBackToDefault() {
+        RateLimiter limiter = limiter(rule(null, "/api/**", Map.of("ADMIN", "5/1h", "DEFAULT", "1/1h"), Map.of()));
+
+        assertEquals(5, limiter.tryAcquire("GET", "/api/users", "root", "ADMIN").limit());
+        assertEquals(1, limiter.tryAcquire("GET", "/api/users", "alice", "PATIENT").limit());
+    }
+
+    @Test
+    void sharedRoleBucketLimitsAllCallersTogether() {
+        RateLimiter limiter = limiter(rule("POST", "/api/appointments", Map.of("PATIENT", "100/1h"), Map.of("PATIENT", "2/1h")));
+
+        assertTrue(limiter.tryAcquire("POST", "/api/appointments", "alice", "PATIENT").allowed());
+        RateLimiter.Decision second = limiter.tryAcquire("POST", "/api/appointments", "bob", "PATIENT");
+        RateLimiter.Decision third = limiter.tryAcquire("POST", "/api/appointments", "carol", "PATIENT");
+
+        assertTrue(second.allowed());
+        // The shared bucket is closer to running out, so it is the one reported
+        assertEquals(2, second.limit());
+        assertEquals(0, second.remaining());
+        assertFalse(third.allowed());
+    }
+
+    @Test
+    void tokensComeBackOverTime() throws InterruptedException {
+        RateLimiter limiter = limiter(rule(null, "/api/**", Map.of("DEFAULT", "2/200ms"), Map.of()));
+        limiter.tryAcquire("GET", "/api/x", "alice", "PATIENT");
+        limiter.tryAcquire("GET", "/api/x", "alice", "PATIENT");
+        assertFalse(limiter.tryAcquire("GET", "/api/x", "alice", "PATIENT").allowed());
+
+        Thread.sleep(250);
+
+        assertTrue(limiter.tryAcquire("GET", "/api/x", "alice", "PATIENT").allowed());
+    }
+
+    @Test
+    void firstMatchingRuleAppliesAndOthersAreUnlimited() {
+        RateLimiter limiter = limiter(
+                rule("POST", "/api/appointments/**", Map.of("DEFAULT", "1/1h"), Map.of()),
+                rule(null, "/api/**", Map.of("DEFAULT", "10/1h"), Map.of()));
+
+        assertEquals(1, limiter.tryAcquire("POST", "/api/appointments/7", "alice", "PATIENT").limit());
+        assertEquals(10, limiter.tryAcquire("GET", "/api/appointments/7", "alice", "PATIENT").limit());
+        assertEquals(10, limiter.tryAcquire("POST", "/api/appointmentsX", "alice", "PATIENT").limit());
+        assertNull(limiter.tryAcquire("GET", "/actuator/health", "alice", "PATIENT"));
+    }
+
+    @Test
+    void idleBucketsAreEvictedOnceFull() throws InterruptedException {
+        RateLimitProperties properties = properties(rule(null, "/api/**", Map.of("DEFAULT", "1/100ms"), Map.of()));
+        properties.setIdleTimeout(Duration.ZERO);
+        RateLimiter limiter = new RateLimiter(properties);
+        assertNotNull(limiter.tryAcquire("GET", "/api/x", "alice", "PATIENT"));
+
+        limiter.evictIdle();
+        assertEquals(1, limiter.size());
+        Thread.sleep(150);
+        limiter.evictIdle();
+
+        assertEquals(0, limiter.size());
+    }
+
+    @Test
+    void malformedRulesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> limiter(rule(null, "/api/**", Map.of("DEFAULT", "lots"), Map.of())));
+        assertThrows(IllegalArgumentException.class, () -> limiter(rule(null, "/api/**", Map.of("DEFAULT", "0/1m"), Map.of())));
+        assertThrows(IllegalArgumentException.class, () -> limiter(rule(null, " ", Map.of("DEFAULT", "1/1m"), Map.of())));
+    }
+
+    private static RateLimiter limiter(RateLimitProperties.Rule... rules) {
+        return new RateLimiter(properties(rules));
+    }
+
+    private static RateLimitProperties properties(RateLimitProperties.Rule... rules) {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setRules(List.of(rules));
+        return properties;
+    }
+
+    private static RateLimitProperties.Rule rule(String method, String path, Map<String, String> perPrincipal,
+            Map<String, String> perRole) {
+        RateLimitProperties.Rule rule = new RateLimitProperties.Rule();
+        rule.setMethod(method);
+        rule.setPath(path);
+        rule.setPerPrincipal(perPrincipal);
+        rule.setPerRole(perRole);
+        return rule;
+    }
+}
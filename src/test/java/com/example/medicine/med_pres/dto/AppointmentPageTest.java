@@ -0,0 +1,82 @@
+package com.example.medicine.med_pres.dto;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.example.medicine.med_pres.model.Appointment;
+
+class AppointmentPageTest {
+
+    @Test
+    void cursorRoundTripsThroughItsToken() {
+        AppointmentCursor cursor = new AppointmentCursor(LocalDate.of(2025, 3, 9), LocalTime.of(14, 30), 123456789L);
+
+        String token = cursor.encode();
+
+        assertTrue(token.matches("[A-Za-z0-9_-]+"), "token should be URL-safe without padding: " + token);
+        assertEquals(cursor, AppointmentCursor.decode(token));
+    }
+
+    @Test
+    void decodeRejectsMalformedTokens() {
+        String notBase64 = "not a cursor!";
+        String missingId = new AppointmentCursor(LocalDate.of(2025, 3, 9), LocalTime.NOON, 1L).encode().substring(0, 10);
+        String badDate = Base64.getUrlEncoder().encodeToString("2025-13-40|10:00|1".getBytes(StandardCharsets.UTF_8));
+
+        for (String token : List.of(notBase64, missingId, badDate)) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> AppointmentCursor.decode(token));
+            assertTrue(e.getMessage().contains(token));
+        }
+    }
+
+    @Test
+    void pageWithoutExtraRowHasNoNextCursor() {
+        List<AppointmentView> fetched = views(3);
+
+        AppointmentPage page = AppointmentPage.of(fetched, 3);
+
+        assertEquals(fetched, page.items());
+        assertNull(page.nextCursor());
+    }
+
+    @Test
+    void extraRowIsDroppedAndCursorPointsAtLastItem() {
+        List<AppointmentView> fetched = views(4);
+
+        AppointmentPage page = AppointmentPage.of(fetched, 3);
+
+        assertEquals(fetched.subList(0, 3), page.items());
+        AppointmentCursor next = AppointmentCursor.decode(page.nextCursor());
+        assertEquals(AppointmentCursor.of(fetched.get(2)), next);
+        assertEquals(fetched.get(2).id(), next.id());
+    }
+
+    @Test
+    void emptyResultIsAnEmptyLastPage() {
+        AppointmentPage page = AppointmentPage.of(List.of(), 50);
+
+        assertTrue(page.items().isEmpty());
+        assertNull(page.nextCursor());
+    }
+
+    private static List<AppointmentView> views(int count) {
+        List<AppointmentView> views = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            views.add(new AppointmentView((long) i + 1, "Checkup", LocalDate.of(2025, 1, 1).plusDays(i),
+                    LocalTime.of(9, 0), Appointment.Status.PENDING, 1L, "Patient", "patient@example.com",
+                    2L, "Cardiology", "Clinic", "City", 3L, "Doctor", "doctor@example.com"));
+        }
+        return views;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.medicine.med_pres.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import com.example.medicine.med_pres.exception.StatusConflictException;
+import com.example.medicine.med_pres.model.Appointment;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.repository.AppointmentRepository;
+import com.example.medicine.med_pres.repository.ArchivedAppointmentRepository;
+
+class AppointmentStatusTest {
+
+    private static final Long ID = 5L;
+    private static final Long DOCTOR = 2L;
+    private static final LocalDate DATE = LocalDate.of(2025, 3, 10);
+    private static final LocalTime TIME = LocalTime.of(9, 0);
+
+    private final Appointment stored = Appointment.builder().id(ID).doctor(Doctor.builder().id(DOCTOR).build())
+            .appointmentDate(DATE).appointmentTime(TIME).status(Appointment.Status.PENDING).build();
+    private AppointmentRepository appointmentRepository;
+    private AvailabilityService availabilityService;
+    private NotificationOutbox notifications;
+    private DashboardCounters counters;
+    private AppointmentService service;
+
+    // One appointment behind a repository whose conditional update behaves like the JPQL one
+    @BeforeEach
+    void setUp() {
+        appointmentRepository = mock(AppointmentRepository.class);
+        when(appointmentRepository.findById(ID)).thenAnswer(call -> Optional.of(copy(stored)));
+        when(appointmentRepository.updateStatusIfIn(eq(ID), anyCollection(), any(Appointment.Status.class))).thenAnswer(call -> {
+            Collection<Appointment.Status> from = call.getArgument(1);
+            if (!from.contains(stored.getStatus())) {
+                return 0;
+            }
+            stored.setStatus(call.getArgument(2));
+            return 1;
+        });
+        ShardRouter shards = mock(ShardRouter.class);
+        when(shards.findInTransaction(anyLong(), any())).thenAnswer(call ->
+                call.<Supplier<Optional<Object>>>getArgument(1).get().map(value -> new ShardRouter.Found<>(ShardRouter.HOME, value)));
+        availabilityService = mock(AvailabilityService.class);
+        notifications = mock(NotificationOutbox.class);
+        counters = mock(DashboardCounters.class);
+        service = new AppointmentService(appointmentRepository, mock(UserService.class), availabilityService,
+                mock(DoctorService.class), mock(ChangeStampService.class), shards, mock(ShardRebalancer.class),
+                notifications, mock(ChangeFeed.class), mock(AppointmentReminderScheduler.class),
+                mock(ArchivedAppointmentRepository.class), mock(ArchiveService.class), counters);
+    }
+
+    @Test
+    void sourcesFollowTheLifecycle() {
+        assertTrue(Appointment.Status.PENDING.sources().isEmpty());
+        assertEquals(EnumSet.of(Appointment.Status.PENDING), Appointment.Status.APPROVED.sources());
+        assertEquals(EnumSet.of(Appointment.Status.PENDING), Appointment.Status.REJECTED.sources());
+        assertEquals(EnumSet.of(Appointment.Status.PENDING, Appointment.Status.APPROVED), Appointment.Status.CANCELED.sources());
+        for (Appointment.Status status : Appointment.Status.values()) {
+            assertTrue(status.sources().stream().allMatch(Appointment.Status::holdsSlot), status + " starts from a slot holder");
+        }
+    }
+
+    @Test
+    void approvingAPendingAppointmentKeepsItsSlot() {
+        Appointment approved = service.updateAppointmentStatus(ID, "APPROVED", null);
+
+        assertEquals(Appointment.Status.APPROVED, approved.getStatus());
+        verify(notifications).appointmentStatusChanged(approved);
+        verify(counters).appointmentStatusChanged(approved, Appointment.Status.PENDING);
+        verify(availabilityService, never()).release(any(), any(), any());
+    }
+
+    @Test
+    void cancellingTriesEachSourceInLifecycleOrderAndFreesTheSlot() {
+        stored.setStatus(Appointment.Status.APPROVED);
+
+        Appointment canceled = service.updateAppointmentStatus(ID, "CANCELED", null);
+
+        assertEquals(Appointment.Status.CANCELED, canceled.getStatus());
+        InOrder order = inOrder(appointmentRepository);
+        order.verify(appointmentRepository).updateStatusIfIn(ID, Set.of(Appointment.Status.PENDING), Appointment.Status.CANCELED);
+        order.verify(appointmentRepository).updateStatusIfIn(ID, Set.of(Appointment.Status.APPROVED), Appointment.Status.CANCELED);
+        verify(counters).appointmentStatusChanged(canceled, Appointment.Status.APPROVED);
+        verify(availabilityService).release(DOCTOR, DATE, TIME);
+    }
+
+    @Test
+    void repeatingAChangeAlreadyMadeIsANoOp() {
+        stored.setStatus(Appointment.Status.APPROVED);
+
+        Appointment unchanged = service.updateAppointmentStatus(ID, "APPROVED", null);
+
+        assertEquals(Appointment.Status.APPROVED, unchanged.getStatus());
+        verify(notifications, never()).appointmentStatusChanged(any());
+        verify(counters, never()).appointmentStatusChanged(any(), any());
+    }
+
+    @Test
+    void moveFromAStatusThatDoesNotAllowItConflicts() {
+        stored.setStatus(Appointment.Status.REJECTED);
+
+        StatusConflictException e = assertThrows(StatusConflictException.class,
+                () -> service.updateAppointmentStatus(ID, "APPROVED", null));
+
+        assertSame(Appointment.Status.REJECTED, e.getCurrentStatus());
+        assertEquals(Appointment.Status.REJECTED, stored.getStatus());
+        verify(notifications, never()).appointmentStatusChanged(any());
+    }
+
+    @Test
+    void expectedStatusThatNoLongerHoldsConflicts() {
+        // Someone approved it after the caller loaded it as pending
+        stored.setStatus(Appointment.Status.APPROVED);
+
+        StatusConflictException cancel = assertThrows(StatusConflictException.class,
+                () -> service.updateAppointmentStatus(ID, "CANCELED", "PENDING"));
+        // With an expectation even the repeat is reported, since the caller's view was stale
+        StatusConflictException approve = assertThrows(StatusConflictException.class,
+                () -> service.updateAppointmentStatus(ID, "APPROVED", "PENDING"));
+
+        assertSame(Appointment.Status.APPROVED, cancel.getCurrentStatus());
+        assertSame(Appointment.Status.APPROVED, approve.getCurrentStatus());
+        assertEquals(Appointment.Status.APPROVED, stored.getStatus());
+    }
+
+    @Test
+    void impossibleMovesAreRejectedWithoutTouchingTheRow() {
+        assertThrows(IllegalArgumentException.class, () -> service.updateAppointmentStatus(ID, "PENDING", null));
+        assertThrows(IllegalArgumentException.class, () -> service.updateAppointmentStatus(ID, "CANCELED", "REJECTED"));
+        assertThrows(IllegalArgumentException.class, () -> service.updateAppointmentStatus(ID, "DONE", null));
+        assertThrows(IllegalArgumentException.class, () -> service.updateAppointmentStatus(ID, null, null));
+
+        verify(appointmentRepository, never()).updateStatusIfIn(any(), anyCollection(), any());
+    }
+
+    @Test
+    void unknownAppointmentIsNotFound() {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> service.updateAppointmentStatus(99L, "APPROVED", null));
+
+        assertTrue(e.getMessage().contains("not found"));
+    }
+
+    private static Appointment copy(Appointment appointment) {
+        return Appointment.builder().id(appointment.getId()).doctor(appointment.getDoctor())
+                .appointmentDate(appointment.getAppointmentDate()).appointmentTime(appointment.getAppointmentTime())
+                .status(appointment.getStatus()).build();
+    }
+}
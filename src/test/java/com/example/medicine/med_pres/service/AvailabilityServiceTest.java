@@ -0,0 +1,132 @@
+package com.example.medicine.med_pres.service;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.medicine.med_pres.dto.BookedSlot;
+import com.example.medicine.med_pres.exception.SlotUnavailableException;
+import com.example.medicine.med_pres.model.Doctor;
+import com.example.medicine.med_pres.model.DoctorScheduleTemplate;
+import com.example.medicine.med_pres.repository.AppointmentRepository;
+import com.example.medicine.med_pres.repository.DoctorRepository;
+import com.example.medicine.med_pres.repository.DoctorScheduleOverrideRepository;
+import com.example.medicine.med_pres.repository.DoctorScheduleTemplateRepository;
+
+class AvailabilityServiceTest {
+
+    private static final Long DOCTOR = 1L;
+    private static final LocalTime NINE = LocalTime.of(9, 0);
+    private static final LocalTime NINE_THIRTY = LocalTime.of(9, 30);
+
+    private final LocalDate tomorrow = LocalDate.now().plusDays(1);
+    private AppointmentRepository appointmentRepository;
+    private DoctorRepository doctorRepository;
+    private AvailabilityService service;
+
+    // Doctor 1 works 09:00 and 09:30 every day; nothing is booked in the database
+    @BeforeEach
+    void setUp() {
+        DoctorScheduleTemplateRepository templateRepository = mock(DoctorScheduleTemplateRepository.class);
+        appointmentRepository = mock(AppointmentRepository.class);
+        doctorRepository = mock(DoctorRepository.class);
+        ShardRouter shards = mock(ShardRouter.class);
+        when(shards.on(anyInt(), any())).thenAnswer(call -> call.<Supplier<Object>>getArgument(1).get());
+        when(doctorRepository.findById(DOCTOR)).thenReturn(Optional.of(Doctor.builder().id(DOCTOR).build()));
+        List<DoctorScheduleTemplate> templates = new ArrayList<>();
+        for (DayOfWeek day : DayOfWeek.values()) {
+            templates.add(DoctorScheduleTemplate.builder()
+                    .doctorId(DOCTOR).dayOfWeek(day).slotBits(AvailabilityService.toBits(List.of(NINE, NINE_THIRTY))).build());
+        }
+        when(templateRepository.findByDoctorId(DOCTOR)).thenReturn(templates);
+        service = new AvailabilityService(templateRepository, mock(DoctorScheduleOverrideRepository.class),
+                appointmentRepository, doctorRepository, shards, new SimpleMeterRegistry(), 1000, Duration.ofMinutes(30), 30);
+    }
+
+    @Test
+    void slotCanBeReservedOnlyOnce() {
+        service.reserve(DOCTOR, tomorrow, NINE, true);
+
+        assertThrows(SlotUnavailableException.class, () -> service.reserve(DOCTOR, tomorrow, NINE, true));
+        assertThrows(SlotUnavailableException.class, () -> service.reserve(DOCTOR, tomorrow, NINE, false));
+        assertDoesNotThrow(() -> service.reserve(DOCTOR, tomorrow, NINE_THIRTY, true));
+        assertDoesNotThrow(() -> service.reserve(DOCTOR, tomorrow.plusDays(1), NINE, true));
+    }
+
+    @Test
+    void releasedSlotIsFreeAgain() {
+        service.reserve(DOCTOR, tomorrow, NINE, true);
+        assertEquals(List.of(NINE_THIRTY), service.getFreeSlots(DOCTOR, tomorrow, tomorrow).get(0).times());
+
+        service.release(DOCTOR, tomorrow, NINE);
+
+        assertEquals(List.of(NINE, NINE_THIRTY), service.getFreeSlots(DOCTOR, tomorrow, tomorrow).get(0).times());
+        assertDoesNotThrow(() -> service.reserve(DOCTOR, tomorrow, NINE, true));
+    }
+
+    @Test
+    void onlyPatientBookingsMustFallInsideTheSchedule() {
+        LocalTime evening = LocalTime.of(18, 0);
+
+        assertThrows(SlotUnavailableException.class, () -> service.reserve(DOCTOR, tomorrow, evening, true));
+
+        assertDoesNotThrow(() -> service.reserve(DOCTOR, tomorrow, evening, false));
+        assertThrows(SlotUnavailableException.class, () -> service.reserve(DOCTOR, tomorrow, evening, false));
+    }
+
+    @Test
+    void slotsBookedInTheDatabaseAreTaken() {
+        // Rows from before slot alignment hold the slot they start in
+        when(appointmentRepository.findBookedSlots(eq(DOCTOR), any(), any(), any()))
+                .thenReturn(List.of(new BookedSlot(tomorrow, LocalTime.of(9, 10))));
+
+        assertThrows(SlotUnavailableException.class, () -> service.reserve(DOCTOR, tomorrow, NINE, true));
+        assertDoesNotThrow(() -> service.reserve(DOCTOR, tomorrow, NINE_THIRTY, true));
+    }
+
+    @Test
+    void resyncPicksUpBookingsMadeElsewhere() {
+        service.reserve(DOCTOR, tomorrow, NINE, true);
+        when(appointmentRepository.findBookedSlots(eq(DOCTOR), any(), any(), any()))
+                .thenReturn(List.of(new BookedSlot(tomorrow, NINE_THIRTY)));
+
+        assertTrue(service.resync(DOCTOR, tomorrow, NINE_THIRTY));
+
+        // The reload replaces the day, so the local booking that never reached the database is gone
+        assertEquals(List.of(NINE), service.getFreeSlots(DOCTOR, tomorrow, tomorrow).get(0).times());
+        assertFalse(service.resync(DOCTOR, tomorrow, NINE));
+    }
+
+    @Test
+    void invalidRequestsAreRejectedBeforeAnythingIsBooked() {
+        assertThrows(IllegalArgumentException.class, () -> service.reserve(DOCTOR, tomorrow, LocalTime.of(9, 15), true));
+        assertThrows(IllegalArgumentException.class, () -> service.reserve(DOCTOR, LocalDate.now().plusDays(31), NINE, true));
+        assertThrows(IllegalArgumentException.class, () -> service.reserve(99L, tomorrow, NINE, false));
+        assertThrows(IllegalArgumentException.class, () -> service.getFreeSlots(DOCTOR, tomorrow, tomorrow.minusDays(1)));
+
+        verify(appointmentRepository, never()).findBookedSlots(anyLong(), any(), any(), any());
+    }
+}
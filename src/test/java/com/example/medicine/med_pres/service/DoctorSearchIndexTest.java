@@ -0,0 +1,138 @@
+package com.example.medicine.med_pres.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.medicine.med_pres.dto.DoctorSearchResult;
+import com.example.medicine.med_pres.dto.DoctorView;
+import com.example.medicine.med_pres.repository.DoctorRepository;
+
+class DoctorSearchIndexTest {
+
+    private DoctorRepository doctorRepository;
+    private DoctorSearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        doctorRepository = mock(DoctorRepository.class);
+        // Out of id order on purpose; hits come back ordered by id regardless
+        when(doctorRepository.findAllViews()).thenReturn(List.of(
+                doctor(30L, "Cardiology", "Heart Center", "Boston", "Ana Lopez"),
+                doctor(10L, "cardiology", "Heart Center", "Málaga", "Ben Carter"),
+                doctor(20L, "Dermatology", "Skin Clinic", "Boston", "Cara Diaz"),
+                doctor(40L, "Neurology", null, "Chicago", "Dan Cardoso")));
+        index = new DoctorSearchIndex(doctorRepository);
+    }
+
+    @Test
+    void queryWordsMatchAsPrefixesWithoutCaseOrAccents() {
+        assertEquals(List.of(10L, 30L, 40L), ids(search("CARD")));
+        assertEquals(List.of(10L), ids(search("MALAGA")));
+        assertEquals(List.of(10L), ids(search("málaga")));
+        assertEquals(List.of(30L), ids(search("cardio bos")));
+        assertEquals(List.of(), ids(search("cardio chicago")));
+        verify(doctorRepository, times(1)).findAllViews();
+    }
+
+    @Test
+    void wordWithoutPrefixMatchFallsBackToNearWords() {
+        // One edit for words up to six letters, two beyond
+        assertEquals(List.of(20L, 30L), ids(search("bostn")));
+        assertEquals(List.of(20L), ids(search("dermatolgoy")));
+        // The first letter has to be right, and short words are never fuzzy
+        assertEquals(List.of(), ids(search("vostn")));
+        assertEquals(List.of(), ids(search("bsn")));
+    }
+
+    @Test
+    void facetFiltersMatchWholeValues() {
+        DoctorSearchResult boston = index.search("", Map.of(DoctorSearchIndex.Facet.location, " boston "), 0, 10);
+        DoctorSearchResult partial = index.search("", Map.of(DoctorSearchIndex.Facet.location, "bost"), 0, 10);
+        DoctorSearchResult heartInBoston = index.search("", Map.of(DoctorSearchIndex.Facet.location, "Boston",
+                DoctorSearchIndex.Facet.clinicName, "heart center"), 0, 10);
+
+        assertEquals(List.of(20L, 30L), ids(boston));
+        assertEquals(List.of(), ids(partial));
+        assertEquals(List.of(30L), ids(heartInBoston));
+    }
+
+    @Test
+    void facetsCountValuesAmongTheHits() {
+        DoctorSearchResult all = search("");
+        DoctorSearchResult hearts = search("heart");
+
+        assertEquals(4, all.total());
+        assertEquals(Map.of("Boston", 2, "Málaga", 1, "Chicago", 1), all.facets().get("location"));
+        // Case aside these are one value, labelled as first indexed, which is in id order
+        assertEquals(Map.of("cardiology", 2, "Dermatology", 1, "Neurology", 1), all.facets().get("specialization"));
+        assertEquals(Map.of("Heart Center", 2, "Skin Clinic", 1), all.facets().get("clinicName"));
+        assertEquals(Map.of("Boston", 1, "Málaga", 1), hearts.facets().get("location"));
+        // Most frequent first, ties by label
+        assertEquals(List.of("Boston", "Chicago", "Málaga"), new ArrayList<>(all.facets().get("location").keySet()));
+    }
+
+    @Test
+    void putAndRemoveKeepTheIndexCurrent() {
+        assertEquals(List.of(20L, 30L), ids(search("boston")));
+
+        index.put(doctor(20L, "Dermatology", "Skin Clinic", "Denver", "Cara Diaz"));
+        index.put(doctor(50L, "Oncology", "Cancer Institute", "Boston", "Eve Fox"));
+        // Below the highest id, so the slots are renumbered
+        index.put(doctor(5L, "Oncology", "Cancer Institute", "Boston", "Finn Gray"));
+        index.remove(30L);
+
+        assertEquals(List.of(5L, 50L), ids(search("boston")));
+        assertEquals(List.of(20L), ids(search("denver")));
+        assertEquals(List.of(5L, 10L, 20L, 40L, 50L), ids(search("")));
+        assertEquals(Map.of("Boston", 2, "Málaga", 1, "Chicago", 1, "Denver", 1), search("").facets().get("location"));
+        assertEquals(Map.of("Oncology", 2, "cardiology", 1, "Dermatology", 1, "Neurology", 1),
+                search("").facets().get("specialization"));
+    }
+
+    @Test
+    void pagesSliceTheHitsInIdOrder() {
+        DoctorSearchResult second = index.search("", Map.of(), 1, 3);
+        DoctorSearchResult beyond = index.search("", Map.of(), 5, 3);
+
+        assertEquals(List.of(40L), ids(second));
+        assertEquals(4, second.total());
+        assertTrue(beyond.items().isEmpty());
+        assertEquals(DoctorSearchIndex.MAX_PAGE_SIZE, index.search("", Map.of(), 0, 10_000).size());
+    }
+
+    @Test
+    void withinEditsCountsInsertionsDeletionsAndSubstitutions() {
+        assertTrue(DoctorSearchIndex.withinEdits("cardio", "cardio", 0));
+        assertTrue(DoctorSearchIndex.withinEdits("cardio", "cardo", 1));
+        assertTrue(DoctorSearchIndex.withinEdits("cardio", "carrdio", 1));
+        assertTrue(DoctorSearchIndex.withinEdits("cardio", "kardio", 1));
+        assertFalse(DoctorSearchIndex.withinEdits("cardio", "kardo", 1));
+        assertTrue(DoctorSearchIndex.withinEdits("cardio", "kardo", 2));
+        assertFalse(DoctorSearchIndex.withinEdits("cardio", "car", 2));
+    }
+
+    private DoctorSearchResult search(String query) {
+        return index.search(query, Map.of(), 0, DoctorSearchIndex.MAX_PAGE_SIZE);
+    }
+
+    private static List<Long> ids(DoctorSearchResult result) {
+        return result.items().stream().map(DoctorView::id).toList();
+    }
+
+    private static DoctorView doctor(Long id, String specialization, String clinicName, String location, String name) {
+        return new DoctorView(id, specialization, clinicName, location, null, id + 1000, name,
+                name.toLowerCase().replace(' ', '.') + "@example.com");
+    }
+}
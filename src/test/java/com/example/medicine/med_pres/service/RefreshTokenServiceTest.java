@@ -0,0 +1,118 @@
+package com.example.medicine.med_pres.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.medicine.med_pres.model.RefreshToken;
+import com.example.medicine.med_pres.repository.RefreshTokenRepository;
+
+class RefreshTokenServiceTest {
+
+    private final List<RefreshToken> stored = new ArrayList<>();
+    private RefreshTokenService service;
+
+    // Backs the repository with a list, with the same conditional updates as the JPQL
+    @BeforeEach
+    void setUp() {
+        RefreshTokenRepository repository = mock(RefreshTokenRepository.class);
+        when(repository.save(any(RefreshToken.class))).thenAnswer(call -> {
+            RefreshToken token = call.getArgument(0);
+            token.setId((long) stored.size() + 1);
+            stored.add(token);
+            return token;
+        });
+        when(repository.findByTokenHash(anyString())).thenAnswer(call ->
+                stored.stream().filter(token -> token.getTokenHash().equals(call.getArgument(0))).findFirst());
+        when(repository.markUsed(anyLong(), any(Instant.class))).thenAnswer(call -> {
+            RefreshToken token = stored.get((int) (long) call.<Long>getArgument(0) - 1);
+            if (token.getUsedAt() != null) {
+                return 0;
+            }
+            token.setUsedAt(call.getArgument(1));
+            return 1;
+        });
+        when(repository.revokeFamily(anyString())).thenAnswer(call -> {
+            int revoked = 0;
+            for (RefreshToken token : stored) {
+                if (token.getFamilyId().equals(call.getArgument(0)) && !token.isRevoked()) {
+                    token.setRevoked(true);
+                    revoked++;
+                }
+            }
+            return revoked;
+        });
+        service = new RefreshTokenService(repository, Duration.ofDays(14));
+    }
+
+    @Test
+    void rotationConsumesTheTokenAndIssuesASuccessorInTheSameFamily() {
+        String first = service.issue(7L);
+
+        Optional<RefreshTokenService.Rotation> rotation = service.rotate(first);
+
+        assertTrue(rotation.isPresent());
+        assertEquals(7L, rotation.get().userId());
+        assertNotEquals(first, rotation.get().refreshToken());
+        assertEquals(2, stored.size());
+        assertEquals(stored.get(0).getFamilyId(), stored.get(1).getFamilyId());
+        assertTrue(service.rotate(rotation.get().refreshToken()).isPresent());
+    }
+
+    @Test
+    void onlyDigestsAreStored() {
+        String raw = service.issue(7L);
+
+        assertEquals(64, stored.get(0).getTokenHash().length());
+        assertNotEquals(raw, stored.get(0).getTokenHash());
+    }
+
+    @Test
+    void reusingAConsumedTokenRevokesTheWholeFamily() {
+        String first = service.issue(7L);
+        String second = service.rotate(first).orElseThrow().refreshToken();
+        String otherLogin = service.issue(7L);
+
+        // Someone replays the consumed token
+        assertTrue(service.rotate(first).isEmpty());
+
+        assertTrue(service.rotate(second).isEmpty(), "the legitimate successor is revoked too");
+        assertTrue(service.rotate(otherLogin).isPresent(), "other logins are a different family");
+    }
+
+    @Test
+    void unknownBlankAndExpiredTokensDoNotRotate() {
+        assertTrue(service.rotate(null).isEmpty());
+        assertTrue(service.rotate(" ").isEmpty());
+        assertTrue(service.rotate("never-issued").isEmpty());
+
+        String expired = service.issue(7L);
+        stored.get(0).setExpiresAt(Instant.now().minusSeconds(1));
+        assertTrue(service.rotate(expired).isEmpty());
+    }
+
+    @Test
+    void logoutRevokesTheFamily() {
+        String first = service.issue(7L);
+        String second = service.rotate(first).orElseThrow().refreshToken();
+
+        service.revoke(second);
+
+        assertTrue(service.rotate(second).isEmpty());
+        assertTrue(stored.stream().allMatch(RefreshToken::isRevoked));
+    }
+}
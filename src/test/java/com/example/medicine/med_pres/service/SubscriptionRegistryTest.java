@@ -0,0 +1,190 @@
+package com.example.medicine.med_pres.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.example.medicine.med_pres.dto.ChangeEvent;
+
+class SubscriptionRegistryTest {
+
+    private static final Long USER = 1L;
+    private static final int REPLAY_SIZE = 3;
+
+    private SubscriptionRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SubscriptionRegistry(new SimpleMeterRegistry(), Duration.ofMinutes(30), 16, REPLAY_SIZE,
+                Duration.ofMinutes(5), 2, Duration.ofSeconds(10), 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        registry.shutdown();
+    }
+
+    @Test
+    void liveEventsReachOnlyTheirUsersInOrder() throws Exception {
+        Client client = open(USER, null, null);
+        Client other = open(2L, null, null);
+
+        ChangeEvent first = publish(USER);
+        ChangeEvent second = publish(USER, 2L);
+        ChangeEvent third = publish(USER);
+
+        client.await(3);
+        assertEquals(List.of(first, second, third), client.events);
+        assertEquals(List.of(second), other.await(1).events);
+    }
+
+    @Test
+    void reconnectReplaysWhatWasMissed() throws Exception {
+        ChangeEvent seen = publish(USER);
+        ChangeEvent missed = publish(USER);
+        ChangeEvent alsoMissed = publish(USER);
+
+        Client resumed = open(USER, seen.id(), null);
+        Client fresh = open(USER, null, null);
+        ChangeEvent live = publish(USER);
+
+        assertEquals(List.of(missed, alsoMissed, live), resumed.await(3).events);
+        assertEquals(List.of(live), fresh.await(1).events);
+    }
+
+    @Test
+    void resumingFromBeyondTheReplayBufferAsksForAResync() throws Exception {
+        ChangeEvent lost = publish(USER);
+        List<ChangeEvent> kept = List.of(publish(USER), publish(USER), publish(USER));
+
+        Client behind = open(USER, lost.id() - 1, null).await(REPLAY_SIZE + 1);
+        Client caughtUp = open(USER, lost.id(), null).await(REPLAY_SIZE);
+
+        assertEquals("resync", behind.events.get(0).entity());
+        assertEquals(lost.id(), behind.events.get(0).id());
+        assertEquals(kept, behind.events.subList(1, behind.events.size()));
+        assertEquals(kept, caughtUp.events);
+    }
+
+    @Test
+    void idsFromBeforeThisInstanceAskForAResync() throws Exception {
+        // An id this instance never handed out, e.g. from before a restart
+        Client client = open(7L, 1L, null).await(1);
+
+        assertEquals("resync", client.events.get(0).entity());
+    }
+
+    @Test
+    void revocationEndsTheStreamsItAppliesTo() throws Exception {
+        long now = System.currentTimeMillis();
+        Client revokedToken = open(USER, null, token("alice", "token-1", now));
+        Client otherToken = open(USER, null, token("alice", "token-2", now));
+        Client otherUser = open(2L, null, token("bob", "token-3", now));
+
+        registry.closeRevoked("token-1", null, now);
+        await(revokedToken.completed::get);
+        assertFalse(otherToken.completed.get());
+
+        registry.closeRevoked(null, "alice", now + 1);
+        await(otherToken.completed::get);
+        assertFalse(otherUser.completed.get());
+        // Closed streams no longer get events
+        publish(USER);
+        assertEquals(List.of(), revokedToken.events);
+    }
+
+    @Test
+    void streamEndsWhenItsTokenExpires() throws Exception {
+        long now = System.currentTimeMillis();
+        JwtService.VerifiedToken token = new JwtService.VerifiedToken("alice", "PATIENT", "token-1", now, now + 60_000);
+
+        long expiring = open(USER, null, token).emitter.getTimeout();
+        long untimed = open(USER, null, null).emitter.getTimeout();
+
+        assertTrue(expiring > 0 && expiring <= 60_000, "timeout " + expiring);
+        assertEquals(Duration.ofMinutes(30).toMillis(), untimed);
+    }
+
+    private ChangeEvent publish(Long... userIds) {
+        return registry.publish(Set.of(userIds), "appointment", "updated", 42L, "APPROVED");
+    }
+
+    private static JwtService.VerifiedToken token(String username, String tokenId, long issuedAtMillis) {
+        return new JwtService.VerifiedToken(username, "PATIENT", tokenId, issuedAtMillis, issuedAtMillis + 900_000);
+    }
+
+    private Client open(Long userId, Long lastEventId, JwtService.VerifiedToken token) throws Exception {
+        return new Client(registry.subscribe(userId, lastEventId, token));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean(), "timed out");
+    }
+
+    // Stands in for the servlet response: the emitter's handler is package-private, so it is attached the
+    // way Spring MVC does, and records the events written and whether the stream was completed
+    private static final class Client {
+
+        private final SseEmitter emitter;
+        private final List<ChangeEvent> events = new CopyOnWriteArrayList<>();
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        Client(SseEmitter emitter) throws Exception {
+            this.emitter = emitter;
+            Class<?> handlerType = Class.forName(ResponseBodyEmitter.class.getName() + "$Handler");
+            Object handler = Proxy.newProxyInstance(handlerType.getClassLoader(), new Class<?>[] {handlerType},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "send" -> capture(args[0]);
+                            case "complete" -> completed.set(true);
+                            case "hashCode" -> {
+                                return System.identityHashCode(proxy);
+                            }
+                            case "equals" -> {
+                                return proxy == args[0];
+                            }
+                            default -> {
+                            }
+                        }
+                        return null;
+                    });
+            Method initialize = ResponseBodyEmitter.class.getDeclaredMethod("initialize", handlerType);
+            initialize.setAccessible(true);
+            initialize.invoke(emitter, handler);
+        }
+
+        Client await(int count) throws InterruptedException {
+            SubscriptionRegistryTest.await(() -> events.size() >= count);
+            return this;
+        }
+
+        private void capture(Object sent) {
+            if (sent instanceof Collection<?> items) {
+                items.forEach(item -> capture(((ResponseBodyEmitter.DataWithMediaType) item).getData()));
+            } else if (sent instanceof ChangeEvent event) {
+                events.add(event);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.medicine.med_pres.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class TimingWheelTest {
+
+    private static final long TICK = 1000;
+    private static final long START = 1_700_000_000_500L;
+
+    @Test
+    void timerFiresInItsTickAndNotBefore() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, START);
+        List<String> fired = new ArrayList<>();
+        assertTrue(wheel.add(START + 2_700, "a"));
+
+        wheel.advance(START + 2_400, fired::add);
+        assertTrue(fired.isEmpty());
+
+        // Due at the start of its tick, 200ms early here
+        wheel.advance(START + 2_500, fired::add);
+        assertEquals(List.of("a"), fired);
+        assertEquals(0, wheel.timers());
+    }
+
+    @Test
+    void timerInTheCurrentTickIsRefused() {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 8, START);
+
+        assertFalse(wheel.add(START, "now"));
+        assertFalse(wheel.add(START - 5_000, "past"));
+        assertTrue(wheel.add(START + 500, "next tick"));
+        assertEquals(1, wheel.timers());
+    }
+
+    @Test
+    void farTimersCascadeDownThroughEveryLevel() {
+        // Levels of 4 buckets: 4s, 16s, 64s, 256s... so a timer an hour out starts five levels up
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 4, START);
+        long[] offsets = {3_000, 15_000, 17_000, 63_000, 65_000, 255_000, 3_600_000};
+        for (long offset : offsets) {
+            wheel.add(START + offset, offset);
+        }
+        List<Long> fired = new ArrayList<>();
+
+        for (long now = START; now <= START + 3_601_000; now += TICK) {
+            int before = fired.size();
+            wheel.advance(now, fired::add);
+            for (int i = before; i < fired.size(); i++) {
+                assertEquals(tickOf(START + fired.get(i)), tickOf(now), "timer " + fired.get(i) + " fired at " + (now - START));
+            }
+        }
+
+        assertEquals(List.of(3_000L, 15_000L, 17_000L, 63_000L, 65_000L, 255_000L, 3_600_000L), fired);
+        assertEquals(0, wheel.timers());
+    }
+
+    @Test
+    void randomTimersEachFireOnceInTheirTick() {
+        Random random = new Random(42);
+        TimingWheel<Integer> wheel = new TimingWheel<>(TICK, 16, START);
+        List<Long> dueAt = new ArrayList<>();
+        Set<Integer> fired = new HashSet<>();
+        long now = START;
+        for (int round = 0; round < 2_000; round++) {
+            long due = now + TICK + random.nextInt(5_000_000);
+            if (wheel.add(due, dueAt.size())) {
+                dueAt.add(due);
+            }
+            // Uneven steps, sometimes many ticks at once
+            long next = now + random.nextInt(random.nextBoolean() ? 3_000 : 60_000);
+            long reached = next;
+            wheel.advance(next, task -> {
+                assertTrue(fired.add(task), "fired twice: " + task);
+                assertTrue(tickOf(dueAt.get(task)) <= tickOf(reached), "fired early: " + task);
+            });
+            now = next;
+            for (int task = 0; task < dueAt.size(); task++) {
+                if (tickOf(dueAt.get(task)) <= tickOf(now)) {
+                    assertTrue(fired.contains(task), "missed: " + task);
+                }
+            }
+        }
+        assertEquals(dueAt.size() - fired.size(), wheel.timers());
+    }
+
+    private static long tickOf(long millis) {
+        return Math.floorDiv(millis, TICK);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.medicine.med_pres.service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.example.medicine.med_pres.model.RevokedToken;
+import com.example.medicine.med_pres.repository.RevokedTokenRepository;
+
+class TokenRevocationServiceTest {
+
+    private static final Duration TTL = Duration.ofMinutes(15);
+
+    private RevokedTokenRepository repository;
+    private SubscriptionRegistry subscriptions;
+    private TokenRevocationService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(RevokedTokenRepository.class);
+        subscriptions = mock(SubscriptionRegistry.class);
+        service = new TokenRevocationService(repository, subscriptions, TTL);
+    }
+
+    @Test
+    void bloomFilterHasNoFalseNegativesAndFewFalsePositives() {
+        TokenRevocationService.BloomFilter bloom = new TokenRevocationService.BloomFilter();
+        List<String> added = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            String id = UUID.randomUUID().toString();
+            added.add(id);
+            bloom.add(id);
+        }
+
+        added.forEach(id -> assertTrue(bloom.mightContain(id), id));
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (bloom.mightContain(UUID.randomUUID().toString())) {
+                falsePositives++;
+            }
+        }
+        // 1M bits and 5 probes for 10k keys gives well under 0.1%
+        assertTrue(falsePositives < 100, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void revokedTokenIsRejectedUntilItExpires() {
+        long expiresAt = System.currentTimeMillis() + TTL.toMillis();
+
+        service.revokeToken("token-1", expiresAt);
+
+        assertTrue(service.isRevoked("token-1", "alice@example.com", System.currentTimeMillis()));
+        assertFalse(service.isRevoked("token-2", "alice@example.com", System.currentTimeMillis()));
+        verify(repository).save(any(RevokedToken.class));
+        verify(subscriptions).closeRevoked(eq("token-1"), isNull(), anyLong());
+    }
+
+    @Test
+    void alreadyExpiredTokenIsNotRecorded() {
+        service.revokeToken("token-1", System.currentTimeMillis() - 1);
+
+        assertFalse(service.isRevoked("token-1", "alice@example.com", System.currentTimeMillis()));
+        verify(repository, never()).save(any());
+    }
+
+    @Test
+    void subjectRevocationCoversTokensIssuedUpToIt() {
+        long before = System.currentTimeMillis() - 60_000;
+
+        service.revokeSubject("alice@example.com");
+        long after = System.currentTimeMillis() + 1_000;
+
+        assertTrue(service.isRevoked("old", "alice@example.com", before));
+        assertFalse(service.isRevoked("new", "alice@example.com", after));
+        assertFalse(service.isRevoked("other", "bob@example.com", before));
+        verify(subscriptions).closeRevoked(isNull(), eq("alice@example.com"), anyLong());
+    }
+
+    @Test
+    void pollPicksUpRevocationsFromOtherInstances() {
+        Instant now = Instant.now();
+        when(repository.findByExpiresAtAfter(any())).thenReturn(List.of(
+                revocation(RevokedToken.Kind.TOKEN, "remote-token", now, now.plus(TTL)),
+                revocation(RevokedToken.Kind.SUBJECT, "bob@example.com", now, now.plus(TTL))));
+
+        service.pollRevocations();
+
+        assertTrue(service.isRevoked("remote-token", "alice@example.com", now.toEpochMilli()));
+        assertTrue(service.isRevoked("any", "bob@example.com", now.toEpochMilli() - 1_000));
+    }
+
+    @Test
+    void purgeForgetsExpiredTokensAndKeepsLiveOnes() {
+        Instant now = Instant.now();
+        when(repository.findByExpiresAtAfter(any())).thenReturn(List.of(
+                revocation(RevokedToken.Kind.TOKEN, "expired", now.minusSeconds(60), now.minusSeconds(1)),
+                revocation(RevokedToken.Kind.TOKEN, "live", now, now.plus(TTL))));
+        service.pollRevocations();
+        assertTrue(service.isRevoked("expired", "alice@example.com", now.toEpochMilli()));
+
+        service.purgeExpired();
+
+        assertFalse(service.isRevoked("expired", "alice@example.com", now.toEpochMilli()));
+        assertTrue(service.isRevoked("live", "alice@example.com", now.toEpochMilli()));
+        verify(repository).deleteExpired(any());
+    }
+
+    private static RevokedToken revocation(RevokedToken.Kind kind, String key, Instant revokedAt, Instant expiresAt) {
+        return RevokedToken.builder().kind(kind).tokenKey(key).revokedAt(revokedAt).expiresAt(expiresAt).build();
+    }
+}